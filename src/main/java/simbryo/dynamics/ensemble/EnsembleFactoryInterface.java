@@ -0,0 +1,28 @@
+package simbryo.dynamics.ensemble;
+
+import simbryo.SimulationInterface;
+
+/**
+ * Factory creating the simulations of an ensemble.
+ *
+ * @author royer
+ * @param <S>
+ *          simulation type
+ * @param <P>
+ *          parameter set type
+ */
+@FunctionalInterface
+public interface EnsembleFactoryInterface<S extends SimulationInterface, P>
+{
+  /**
+   * Creates a simulation for a given seed and parameter set. This method is
+   * called concurrently from the worker threads of the ensemble runner.
+   * 
+   * @param pSeed
+   *          seed
+   * @param pParameters
+   *          parameter set
+   * @return new simulation
+   */
+  S create(long pSeed, P pParameters);
+}
@@ -0,0 +1,235 @@
+package simbryo.dynamics.ensemble;
+
+import simbryo.SimulationInterface;
+
+/**
+ * A job of an ensemble: one simulation created from a seed and a parameter
+ * set, and run for a given number of steps.
+ *
+ * @author royer
+ * @param <S>
+ *          simulation type
+ * @param <P>
+ *          parameter set type
+ */
+public class EnsembleJob<S extends SimulationInterface, P>
+{
+  /**
+   * Job states.
+   */
+  public enum State
+  {
+   /**
+    * Waiting for a worker thread.
+    */
+   Pending,
+
+   /**
+    * Running.
+    */
+   Running,
+
+   /**
+    * All steps done.
+    */
+   Done,
+
+   /**
+    * Cancelled before all steps were done.
+    */
+   Cancelled,
+
+   /**
+    * Failed with an exception.
+    */
+   Failed
+  }
+
+  private final int mIndex;
+  private final long mSeed;
+  private final P mParameters;
+  private final long mNumberOfSteps;
+
+  private volatile State mState = State.Pending;
+  private volatile boolean mCancelRequested;
+  private volatile long mNumberOfStepsDone;
+  private volatile long mStartTime;
+  private volatile long mStopTime;
+  private volatile Throwable mFailure;
+
+  EnsembleJob(int pIndex, long pSeed, P pParameters, long pNumberOfSteps)
+  {
+    super();
+    mIndex = pIndex;
+    mSeed = pSeed;
+    mParameters = pParameters;
+    mNumberOfSteps = pNumberOfSteps;
+  }
+
+  /**
+   * Returns the index of this job within its ensemble.
+   * 
+   * @return job index
+   */
+  public int getIndex()
+  {
+    return mIndex;
+  }
+
+  /**
+   * Returns the seed of this job.
+   * 
+   * @return seed
+   */
+  public long getSeed()
+  {
+    return mSeed;
+  }
+
+  /**
+   * Returns the parameter set of this job.
+   * 
+   * @return parameter set
+   */
+  public P getParameters()
+  {
+    return mParameters;
+  }
+
+  /**
+   * Returns the number of steps to run.
+   * 
+   * @return number of steps
+   */
+  public long getNumberOfSteps()
+  {
+    return mNumberOfSteps;
+  }
+
+  /**
+   * Returns the number of steps done so far.
+   * 
+   * @return number of steps done
+   */
+  public long getNumberOfStepsDone()
+  {
+    return mNumberOfStepsDone;
+  }
+
+  /**
+   * Returns the progress of this job within [0,1].
+   * 
+   * @return progress
+   */
+  public double getProgress()
+  {
+    return mNumberOfSteps == 0 ? 1
+                               : (double) mNumberOfStepsDone
+                                 / mNumberOfSteps;
+  }
+
+  /**
+   * Returns the state of this job.
+   * 
+   * @return state
+   */
+  public State getState()
+  {
+    return mState;
+  }
+
+  /**
+   * Returns true if this job is done, cancelled or failed.
+   * 
+   * @return true if finished
+   */
+  public boolean isFinished()
+  {
+    return mState == State.Done || mState == State.Cancelled
+           || mState == State.Failed;
+  }
+
+  /**
+   * Returns the exception that made this job fail, or null.
+   * 
+   * @return failure or null
+   */
+  public Throwable getFailure()
+  {
+    return mFailure;
+  }
+
+  /**
+   * Requests cancellation of this job. A pending job will not start, a running
+   * job stops at the next cancellation check.
+   */
+  public void cancel()
+  {
+    mCancelRequested = true;
+  }
+
+  /**
+   * Returns true if cancellation was requested.
+   * 
+   * @return true if cancellation was requested
+   */
+  public boolean isCancelRequested()
+  {
+    return mCancelRequested;
+  }
+
+  /**
+   * Returns the wall-time this job has been running, or ran, in seconds.
+   * 
+   * @return elapsed time in seconds
+   */
+  public double getElapsedTimeInSeconds()
+  {
+    if (mStartTime == 0)
+      return 0;
+    final long lStopTime = mStopTime == 0 ? System.nanoTime()
+                                          : mStopTime;
+    return (lStopTime - mStartTime) * 1e-9;
+  }
+
+  /**
+   * Returns the number of steps per second for this job.
+   * 
+   * @return steps per second
+   */
+  public double getStepsPerSecond()
+  {
+    final double lElapsedTime = getElapsedTimeInSeconds();
+    return lElapsedTime == 0 ? 0 : mNumberOfStepsDone / lElapsedTime;
+  }
+
+  void start()
+  {
+    mStartTime = System.nanoTime();
+    mState = State.Running;
+  }
+
+  void addStepsDone(long pNumberOfSteps)
+  {
+    mNumberOfStepsDone += pNumberOfSteps;
+  }
+
+  void stop(State pState, Throwable pFailure)
+  {
+    mFailure = pFailure;
+    mStopTime = System.nanoTime();
+    mState = pState;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("EnsembleJob [index=%d, seed=%d, parameters=%s, state=%s, progress=%.1f%%]",
+                         mIndex,
+                         mSeed,
+                         mParameters,
+                         mState,
+                         100 * getProgress());
+  }
+
+}
@@ -0,0 +1,370 @@
+package simbryo.dynamics.ensemble;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simbryo.SimulationInterface;
+import simbryo.dynamics.ensemble.EnsembleJob.State;
+import simbryo.util.parallel.ParallelRange;
+
+/**
+ * Runs many independent simulations concurrently on a bounded thread pool.
+ * Simulations are created by a factory from a seed and a parameter set, each
+ * job runs from start to end on a single worker thread, and a sink receives the
+ * simulations every report period to save snapshots or summaries. Since the
+ * pool already keeps all processors busy, ranges within a simulation are
+ * processed serially on the worker thread (see
+ * {@link ParallelRange#setSerialForCurrentThread(boolean)}).
+ *
+ * @author royer
+ * @param <S>
+ *          simulation type
+ * @param <P>
+ *          parameter set type
+ */
+public class EnsembleRunner<S extends SimulationInterface, P>
+{
+  private static final int cCancellationCheckPeriod = 100;
+
+  private final EnsembleFactoryInterface<S, P> mFactory;
+  private final EnsembleSinkInterface<S, P> mSink;
+  private final long mNumberOfSteps;
+  private final long mReportPeriod;
+
+  private final ExecutorService mExecutorService;
+  private final ArrayList<EnsembleJob<S, P>> mJobList = new ArrayList<>();
+
+  private final AtomicLong mTotalNumberOfStepsDone = new AtomicLong();
+  private final AtomicInteger mNumberOfFinishedJobs = new AtomicInteger();
+  private volatile long mStartTime;
+
+  /**
+   * Instantiates an ensemble runner with as many threads as there are
+   * processors.
+   * 
+   * @param pFactory
+   *          simulation factory
+   * @param pSink
+   *          sink, can be null
+   * @param pNumberOfSteps
+   *          number of steps per simulation
+   * @param pReportPeriod
+   *          number of steps between calls to the sink
+   */
+  public EnsembleRunner(EnsembleFactoryInterface<S, P> pFactory,
+                        EnsembleSinkInterface<S, P> pSink,
+                        long pNumberOfSteps,
+                        long pReportPeriod)
+  {
+    this(pFactory,
+         pSink,
+         pNumberOfSteps,
+         pReportPeriod,
+         Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Instantiates an ensemble runner.
+   * 
+   * @param pFactory
+   *          simulation factory
+   * @param pSink
+   *          sink, can be null
+   * @param pNumberOfSteps
+   *          number of steps per simulation
+   * @param pReportPeriod
+   *          number of steps between calls to the sink
+   * @param pNumberOfThreads
+   *          number of worker threads, i.e. maximal number of simulations
+   *          running concurrently
+   */
+  public EnsembleRunner(EnsembleFactoryInterface<S, P> pFactory,
+                        EnsembleSinkInterface<S, P> pSink,
+                        long pNumberOfSteps,
+                        long pReportPeriod,
+                        int pNumberOfThreads)
+  {
+    super();
+    if (pNumberOfSteps < 0 || pReportPeriod < 1 || pNumberOfThreads < 1)
+      throw new IllegalArgumentException("Invalid number of steps, report period or number of threads");
+    mFactory = pFactory;
+    mSink = pSink;
+    mNumberOfSteps = pNumberOfSteps;
+    mReportPeriod = pReportPeriod;
+    mExecutorService = Executors.newFixedThreadPool(pNumberOfThreads,
+                                                    new WorkerThreadFactory());
+  }
+
+  /**
+   * Submits a job for a given seed and parameter set.
+   * 
+   * @param pSeed
+   *          seed
+   * @param pParameters
+   *          parameter set
+   * @return job
+   * @throws IllegalStateException
+   *           if the runner has been shut down
+   */
+  public EnsembleJob<S, P> submit(long pSeed, P pParameters)
+  {
+    synchronized (mJobList)
+    {
+      if (mExecutorService.isShutdown())
+        throw new IllegalStateException("Ensemble runner is shut down");
+      if (mStartTime == 0)
+        mStartTime = System.nanoTime();
+      final EnsembleJob<S, P> lJob = new EnsembleJob<>(mJobList.size(),
+                                                       pSeed,
+                                                       pParameters,
+                                                       mNumberOfSteps);
+      mExecutorService.execute(() -> run(lJob));
+      mJobList.add(lJob);
+      return lJob;
+    }
+  }
+
+  /**
+   * Submits one job for each combination of seed and parameter set.
+   * 
+   * @param pSeeds
+   *          seeds
+   * @param pParameterSets
+   *          parameter sets
+   * @return submitted jobs
+   */
+  public List<EnsembleJob<S, P>> submitAll(long[] pSeeds,
+                                           List<P> pParameterSets)
+  {
+    ArrayList<EnsembleJob<S, P>> lJobList = new ArrayList<>();
+    for (P lParameters : pParameterSets)
+      for (long lSeed : pSeeds)
+        lJobList.add(submit(lSeed, lParameters));
+    return lJobList;
+  }
+
+  private void run(EnsembleJob<S, P> pJob)
+  {
+    if (pJob.isCancelRequested())
+    {
+      finish(pJob, State.Cancelled, null);
+      return;
+    }
+
+    pJob.start();
+    ParallelRange.setSerialForCurrentThread(true);
+    try
+    {
+      final S lSimulation = mFactory.create(pJob.getSeed(),
+                                            pJob.getParameters());
+
+      long lStepsUntilReport = mReportPeriod;
+      while (pJob.getNumberOfStepsDone() < mNumberOfSteps)
+      {
+        if (pJob.isCancelRequested())
+        {
+          finish(pJob, State.Cancelled, null);
+          return;
+        }
+
+        final int lNumberOfSteps =
+                                 (int) Math.min(Math.min(cCancellationCheckPeriod,
+                                                         lStepsUntilReport),
+                                                mNumberOfSteps
+                                                                  - pJob.getNumberOfStepsDone());
+        lSimulation.simulationSteps(lNumberOfSteps);
+        pJob.addStepsDone(lNumberOfSteps);
+        mTotalNumberOfStepsDone.addAndGet(lNumberOfSteps);
+
+        lStepsUntilReport -= lNumberOfSteps;
+        if (lStepsUntilReport == 0)
+        {
+          lStepsUntilReport = mReportPeriod;
+          if (mSink != null
+              && pJob.getNumberOfStepsDone() < mNumberOfSteps)
+            mSink.accept(pJob, lSimulation, false);
+        }
+      }
+
+      if (mSink != null)
+        mSink.accept(pJob, lSimulation, true);
+      finish(pJob, State.Done, null);
+    }
+    catch (Throwable e)
+    {
+      finish(pJob, State.Failed, e);
+    }
+    finally
+    {
+      ParallelRange.setSerialForCurrentThread(false);
+    }
+  }
+
+  private void finish(EnsembleJob<S, P> pJob,
+                      State pState,
+                      Throwable pFailure)
+  {
+    pJob.stop(pState, pFailure);
+    mNumberOfFinishedJobs.incrementAndGet();
+    synchronized (mNumberOfFinishedJobs)
+    {
+      mNumberOfFinishedJobs.notifyAll();
+    }
+  }
+
+  /**
+   * Returns all jobs submitted so far.
+   * 
+   * @return unmodifiable list of jobs
+   */
+  public List<EnsembleJob<S, P>> getJobs()
+  {
+    synchronized (mJobList)
+    {
+      return Collections.unmodifiableList(new ArrayList<>(mJobList));
+    }
+  }
+
+  /**
+   * Returns the number of jobs submitted so far.
+   * 
+   * @return number of jobs
+   */
+  public int getNumberOfJobs()
+  {
+    synchronized (mJobList)
+    {
+      return mJobList.size();
+    }
+  }
+
+  /**
+   * Returns the number of finished jobs: done, cancelled or failed.
+   * 
+   * @return number of finished jobs
+   */
+  public int getNumberOfFinishedJobs()
+  {
+    return mNumberOfFinishedJobs.get();
+  }
+
+  /**
+   * Returns the overall progress within [0,1], in steps.
+   * 
+   * @return progress
+   */
+  public double getProgress()
+  {
+    final long lTotal = getNumberOfJobs() * mNumberOfSteps;
+    return lTotal == 0 ? 1
+                       : (double) mTotalNumberOfStepsDone.get() / lTotal;
+  }
+
+  /**
+   * Returns the wall-time since the first job was submitted, in seconds.
+   * 
+   * @return elapsed time in seconds
+   */
+  public double getElapsedTimeInSeconds()
+  {
+    return mStartTime == 0 ? 0 : (System.nanoTime() - mStartTime) * 1e-9;
+  }
+
+  /**
+   * Returns the number of simulation steps per second, over all jobs.
+   * 
+   * @return steps per second
+   */
+  public double getStepsPerSecond()
+  {
+    final double lElapsedTime = getElapsedTimeInSeconds();
+    return lElapsedTime == 0 ? 0
+                             : mTotalNumberOfStepsDone.get()
+                               / lElapsedTime;
+  }
+
+  /**
+   * Returns the number of finished jobs per second.
+   * 
+   * @return jobs per second
+   */
+  public double getJobsPerSecond()
+  {
+    final double lElapsedTime = getElapsedTimeInSeconds();
+    return lElapsedTime == 0 ? 0
+                             : mNumberOfFinishedJobs.get()
+                               / lElapsedTime;
+  }
+
+  /**
+   * Waits until all submitted jobs are finished.
+   * 
+   * @param pTimeout
+   *          timeout
+   * @param pTimeUnit
+   *          timeout unit
+   * @return true if all jobs are finished, false if the timeout elapsed
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  public boolean awaitCompletion(long pTimeout, TimeUnit pTimeUnit) throws InterruptedException
+  {
+    final long lDeadline = System.nanoTime() + pTimeUnit.toNanos(pTimeout);
+    synchronized (mNumberOfFinishedJobs)
+    {
+      while (mNumberOfFinishedJobs.get() < getNumberOfJobs())
+      {
+        final long lRemaining = lDeadline - System.nanoTime();
+        if (lRemaining <= 0)
+          return false;
+        TimeUnit.NANOSECONDS.timedWait(mNumberOfFinishedJobs,
+                                       lRemaining);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Requests cancellation of all submitted jobs.
+   */
+  public void cancelAll()
+  {
+    for (EnsembleJob<S, P> lJob : getJobs())
+      lJob.cancel();
+  }
+
+  /**
+   * Shuts down the worker threads once all submitted jobs are finished. No
+   * job can be submitted afterwards.
+   */
+  public void shutdown()
+  {
+    synchronized (mJobList)
+    {
+      mExecutorService.shutdown();
+    }
+  }
+
+  private static class WorkerThreadFactory implements ThreadFactory
+  {
+    private final AtomicInteger mCounter = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable pRunnable)
+    {
+      Thread lThread = new Thread(pRunnable,
+                                  "EnsembleRunner-"
+                                             + mCounter.getAndIncrement());
+      lThread.setDaemon(true);
+      return lThread;
+    }
+  }
+
+}
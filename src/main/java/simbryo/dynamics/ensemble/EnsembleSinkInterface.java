@@ -0,0 +1,32 @@
+package simbryo.dynamics.ensemble;
+
+import simbryo.SimulationInterface;
+
+/**
+ * Sink receiving the simulations of an ensemble while they run, typically to
+ * save snapshots or compute summaries.
+ *
+ * @author royer
+ * @param <S>
+ *          simulation type
+ * @param <P>
+ *          parameter set type
+ */
+@FunctionalInterface
+public interface EnsembleSinkInterface<S extends SimulationInterface, P>
+{
+  /**
+   * Called from the worker thread running a job, every report period and once
+   * the job is done. Implementations must be thread-safe: different jobs call
+   * this method concurrently. The simulation must not be retained or modified,
+   * it keeps running after this call returns.
+   * 
+   * @param pJob
+   *          job
+   * @param pSimulation
+   *          simulation
+   * @param pFinal
+   *          true if this is the last call for this job
+   */
+  void accept(EnsembleJob<S, P> pJob, S pSimulation, boolean pFinal);
+}
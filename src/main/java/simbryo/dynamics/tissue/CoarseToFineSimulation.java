@@ -0,0 +1,430 @@
+package simbryo.dynamics.tissue;
+
+import java.io.IOException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import simbryo.dynamics.tissue.cellprop.operators.CellPropertyOperatorInterface;
+import simbryo.util.pipeline.PipelineStage;
+
+/**
+ * Coarse-to-fine simulation. Early developmental stages have few cells that
+ * mostly relax toward mechanical equilibrium between divisions, simulating
+ * them at full resolution is wasteful. A coarse tissue, typically constructed
+ * with a coarser neighborhood grid, is first simulated with fewer, larger
+ * steps: each coarse step stands for a given number of fine steps (coarsening
+ * factor), the operator stages advance the cell properties accordingly through
+ * their time step multipliers, and the event scheduler is given the coarsening
+ * factor as time scale so that events scheduled at fine step t fire at coarse
+ * step ceil(t/k). The mechanical stages run once per coarse step and thus relax
+ * the tissue over fewer steps. Once a handover criterion is met, for example a
+ * number of cells or a division index, the state of the coarse tissue is handed
+ * over through an in-memory tissue snapshot to a fine tissue of the same
+ * class, which is then simulated at full resolution. Time step indices of the
+ * fine tissue count fine steps. The fine tissue keeps the events scheduled by
+ * its constructor, periodic events continue from the handover time step and
+ * one-shot events scheduled before it are dropped, events scheduled on the
+ * coarse tissue during the simulation are not handed over. Lineages restart
+ * from the cells present at handover.
+ *
+ * A validation mode runs both the coarse-to-fine and a full resolution
+ * simulation over the same number of steps and compares the statistics of
+ * their final states.
+ *
+ * @param <T>
+ *          tissue type
+ * @author royer
+ */
+public class CoarseToFineSimulation<T extends TissueDynamics>
+{
+  private final Supplier<T> mCoarseTissueFactory;
+  private final Supplier<T> mFineTissueFactory;
+  private final int mCoarseningFactor;
+
+  private volatile Predicate<T> mHandoverCriterion;
+  private volatile int mHandoverCheckPeriod = 100;
+
+  private volatile long mHandoverTimeStepIndex = -1;
+
+  /**
+   * Result of a validation: statistics of the final states of the
+   * coarse-to-fine and full resolution simulations, and elapsed times.
+   */
+  public static final class Validation
+  {
+    private final TissueStatistics mCoarseToFineStatistics;
+    private final TissueStatistics mFullStatistics;
+    private final long mCoarseToFineElapsedTimeInNanoseconds;
+    private final long mFullElapsedTimeInNanoseconds;
+
+    private Validation(TissueStatistics pCoarseToFineStatistics,
+                       TissueStatistics pFullStatistics,
+                       long pCoarseToFineElapsedTimeInNanoseconds,
+                       long pFullElapsedTimeInNanoseconds)
+    {
+      mCoarseToFineStatistics = pCoarseToFineStatistics;
+      mFullStatistics = pFullStatistics;
+      mCoarseToFineElapsedTimeInNanoseconds =
+                                            pCoarseToFineElapsedTimeInNanoseconds;
+      mFullElapsedTimeInNanoseconds = pFullElapsedTimeInNanoseconds;
+    }
+
+    /**
+     * Returns the statistics of the final state of the coarse-to-fine
+     * simulation.
+     *
+     * @return coarse-to-fine statistics
+     */
+    public TissueStatistics getCoarseToFineStatistics()
+    {
+      return mCoarseToFineStatistics;
+    }
+
+    /**
+     * Returns the statistics of the final state of the full resolution
+     * simulation.
+     *
+     * @return full resolution statistics
+     */
+    public TissueStatistics getFullStatistics()
+    {
+      return mFullStatistics;
+    }
+
+    /**
+     * Returns the elapsed time of the coarse-to-fine simulation.
+     *
+     * @return elapsed time in nanoseconds
+     */
+    public long getCoarseToFineElapsedTimeInNanoseconds()
+    {
+      return mCoarseToFineElapsedTimeInNanoseconds;
+    }
+
+    /**
+     * Returns the elapsed time of the full resolution simulation.
+     *
+     * @return elapsed time in nanoseconds
+     */
+    public long getFullElapsedTimeInNanoseconds()
+    {
+      return mFullElapsedTimeInNanoseconds;
+    }
+
+    /**
+     * Returns the speed-up of the coarse-to-fine simulation over the full
+     * resolution simulation.
+     *
+     * @return speed-up
+     */
+    public double getSpeedUp()
+    {
+      return (double) mFullElapsedTimeInNanoseconds
+             / Math.max(1, mCoarseToFineElapsedTimeInNanoseconds);
+    }
+
+    /**
+     * Returns the largest relative difference between the cell counts, mean
+     * radii and densities of the two final states.
+     *
+     * @return maximal relative difference
+     */
+    public float getMaximalRelativeDifference()
+    {
+      float lDifference =
+                        relativeDifference(mCoarseToFineStatistics.getNumberOfCells(),
+                                           mFullStatistics.getNumberOfCells());
+      lDifference =
+                  Math.max(lDifference,
+                           relativeDifference(mCoarseToFineStatistics.getMeanRadius(),
+                                              mFullStatistics.getMeanRadius()));
+      lDifference =
+                  Math.max(lDifference,
+                           relativeDifference(mCoarseToFineStatistics.getDensity(),
+                                              mFullStatistics.getDensity()));
+      return lDifference;
+    }
+
+    /**
+     * Returns true if the cell counts, mean radii and densities of the two
+     * final states agree within a given relative tolerance.
+     *
+     * @param pTolerance
+     *          relative tolerance
+     * @return true if valid
+     */
+    public boolean isValid(float pTolerance)
+    {
+      return getMaximalRelativeDifference() <= pTolerance;
+    }
+
+    private static float relativeDifference(float pValue,
+                                            float pReference)
+    {
+      if (pReference == 0)
+        return pValue == 0 ? 0 : Float.POSITIVE_INFINITY;
+      return Math.abs(pValue - pReference) / Math.abs(pReference);
+    }
+
+    @Override
+    public String toString()
+    {
+      return String.format("Validation [coarse-to-fine=%s, full=%s, speed-up=%g]",
+                           mCoarseToFineStatistics,
+                           mFullStatistics,
+                           getSpeedUp());
+    }
+  }
+
+  /**
+   * Instantiates a coarse-to-fine simulation given factories for the coarse
+   * and fine tissues, and a coarsening factor. Both factories must create
+   * tissues of the same class and with the same cell properties, typically
+   * differing only by their neighborhood grid. By default the handover happens
+   * at the end of the coarse simulation.
+   *
+   * @param pCoarseTissueFactory
+   *          coarse tissue factory
+   * @param pFineTissueFactory
+   *          fine tissue factory
+   * @param pCoarseningFactor
+   *          number of fine steps per coarse step
+   */
+  public CoarseToFineSimulation(Supplier<T> pCoarseTissueFactory,
+                                Supplier<T> pFineTissueFactory,
+                                int pCoarseningFactor)
+  {
+    super();
+    if (pCoarseningFactor < 1)
+      throw new IllegalArgumentException("Coarsening factor must be at least 1");
+    mCoarseTissueFactory = pCoarseTissueFactory;
+    mFineTissueFactory = pFineTissueFactory;
+    mCoarseningFactor = pCoarseningFactor;
+    mHandoverCriterion = t -> false;
+  }
+
+  /**
+   * Returns the coarsening factor.
+   *
+   * @return number of fine steps per coarse step
+   */
+  public int getCoarseningFactor()
+  {
+    return mCoarseningFactor;
+  }
+
+  /**
+   * Returns the number of coarse steps between two evaluations of the handover
+   * criterion.
+   *
+   * @return handover check period in coarse steps
+   */
+  public int getHandoverCheckPeriod()
+  {
+    return mHandoverCheckPeriod;
+  }
+
+  /**
+   * Sets the number of coarse steps between two evaluations of the handover
+   * criterion. The coarse tissue is simulated in batches of that many steps,
+   * so that its steady state monitor can fast-forward within a batch and its
+   * viewer is updated once per batch. The handover thus happens up to a check
+   * period after the criterion is first met. Use a multiple of the steady state
+   * monitor's check period so that batches end on its checks.
+   *
+   * @param pHandoverCheckPeriod
+   *          handover check period in coarse steps
+   */
+  public void setHandoverCheckPeriod(int pHandoverCheckPeriod)
+  {
+    if (pHandoverCheckPeriod < 1)
+      throw new IllegalArgumentException("Handover check period must be at least one, was: "
+                                         + pHandoverCheckPeriod);
+    mHandoverCheckPeriod = pHandoverCheckPeriod;
+  }
+
+  /**
+   * Sets the handover criterion: the coarse tissue is handed over to the fine
+   * tissue at the first check at which the criterion is met (see
+   * setHandoverCheckPeriod).
+   *
+   * @param pHandoverCriterion
+   *          handover criterion evaluated on the coarse tissue
+   */
+  public void setHandoverCriterion(Predicate<T> pHandoverCriterion)
+  {
+    mHandoverCriterion = pHandoverCriterion;
+  }
+
+  /**
+   * Sets the handover criterion to a number of cells: the coarse tissue is
+   * handed over once it has at least that many cells.
+   *
+   * @param pNumberOfCells
+   *          number of cells
+   */
+  public void setHandoverNumberOfCells(int pNumberOfCells)
+  {
+    setHandoverCriterion(t -> t.getNumberOfParticles() >= pNumberOfCells);
+  }
+
+  /**
+   * Returns the time step index, in fine steps, at which the last simulation
+   * handed over from the coarse to the fine tissue, or -1 if no simulation was
+   * run.
+   *
+   * @return handover time step index
+   */
+  public long getHandoverTimeStepIndex()
+  {
+    return mHandoverTimeStepIndex;
+  }
+
+  /**
+   * Simulates a given number of fine steps, coarse until the handover
+   * criterion is met and at full resolution afterwards.
+   *
+   * @param pNumberOfSteps
+   *          number of fine steps
+   * @return fine tissue at the end of the simulation
+   */
+  public T simulate(long pNumberOfSteps)
+  {
+    T lCoarseTissue = mCoarseTissueFactory.get();
+    coarsen(lCoarseTissue);
+
+    final long lNumberOfCoarseSteps = pNumberOfSteps / mCoarseningFactor;
+    final Predicate<T> lHandoverCriterion = mHandoverCriterion;
+    final int lHandoverCheckPeriod = mHandoverCheckPeriod;
+    while (lCoarseTissue.getTimeStepIndex() < lNumberOfCoarseSteps
+           && !lHandoverCriterion.test(lCoarseTissue))
+    {
+      long lTimeStepIndex = lCoarseTissue.getTimeStepIndex();
+      long lNextCheck = (lTimeStepIndex / lHandoverCheckPeriod + 1)
+                        * lHandoverCheckPeriod;
+      lCoarseTissue.simulationSteps((int) (Math.min(lNextCheck,
+                                                    lNumberOfCoarseSteps)
+                                           - lTimeStepIndex));
+    }
+
+    T lFineTissue = handover(lCoarseTissue);
+    mHandoverTimeStepIndex = lFineTissue.getTimeStepIndex();
+
+    long lRemainingSteps = pNumberOfSteps
+                           - lFineTissue.getTimeStepIndex();
+    while (lRemainingSteps > 0)
+    {
+      int lNumberOfSteps = (int) Math.min(lRemainingSteps,
+                                          Integer.MAX_VALUE);
+      lFineTissue.simulationSteps(lNumberOfSteps);
+      lRemainingSteps -= lNumberOfSteps;
+    }
+    return lFineTissue;
+  }
+
+  /**
+   * Runs both a coarse-to-fine and a full resolution simulation over a given
+   * number of fine steps, and compares the statistics of their final states.
+   * The last step of each simulation is run with statistics collection.
+   *
+   * @param pNumberOfSteps
+   *          number of fine steps, at least one
+   * @return validation
+   */
+  public Validation validate(long pNumberOfSteps)
+  {
+    if (pNumberOfSteps < 1)
+      throw new IllegalArgumentException("At least one step is needed for validation");
+
+    long lStartTime = System.nanoTime();
+    T lCoarseToFineTissue = simulate(pNumberOfSteps - 1);
+    TissueStatistics lCoarseToFineStatistics =
+                                             stepWithStatistics(lCoarseToFineTissue);
+    long lCoarseToFineElapsedTime = System.nanoTime() - lStartTime;
+
+    lStartTime = System.nanoTime();
+    T lFullTissue = mFineTissueFactory.get();
+    long lRemainingSteps = pNumberOfSteps - 1;
+    while (lRemainingSteps > 0)
+    {
+      int lNumberOfSteps = (int) Math.min(lRemainingSteps,
+                                          Integer.MAX_VALUE);
+      lFullTissue.simulationSteps(lNumberOfSteps);
+      lRemainingSteps -= lNumberOfSteps;
+    }
+    TissueStatistics lFullStatistics = stepWithStatistics(lFullTissue);
+    long lFullElapsedTime = System.nanoTime() - lStartTime;
+
+    return new Validation(lCoarseToFineStatistics,
+                          lFullStatistics,
+                          lCoarseToFineElapsedTime,
+                          lFullElapsedTime);
+  }
+
+  /**
+   * Scales the time step multipliers of all operator stages of a coarse tissue,
+   * and the time scale of its event scheduler, by the coarsening factor.
+   *
+   * @param pCoarseTissue
+   *          coarse tissue
+   */
+  private void coarsen(T pCoarseTissue)
+  {
+    pCoarseTissue.getEventScheduler()
+                 .setTimeScale(pCoarseTissue.getEventScheduler()
+                                            .getTimeScale()
+                               * mCoarseningFactor);
+    for (PipelineStage lStage : pCoarseTissue.getPipeline().getStages())
+    {
+      CellPropertyOperatorInterface<?> lOperator =
+                                                 pCoarseTissue.getStageOperator(lStage.getName());
+      if (lOperator != null)
+        lOperator.setTimeStepMultiplier(lOperator.getTimeStepMultiplier()
+                                        * mCoarseningFactor);
+    }
+  }
+
+  /**
+   * Hands the state of a coarse tissue over to a new fine tissue.
+   *
+   * @param pCoarseTissue
+   *          coarse tissue
+   * @return fine tissue
+   */
+  private T handover(T pCoarseTissue)
+  {
+    T lFineTissue = mFineTissueFactory.get();
+    try
+    {
+      TissueSnapshot.load(TissueSnapshot.save(pCoarseTissue, false),
+                          lFineTissue);
+    }
+    catch (IOException e)
+    {
+      throw new IllegalStateException("Could not hand over coarse tissue",
+                                      e);
+    }
+    lFineTissue.restoreSnapshot(lFineTissue.getNumberOfParticles(),
+                                pCoarseTissue.getTimeStepIndex()
+                                                                 * mCoarseningFactor);
+    return lFineTissue;
+  }
+
+  private static TissueStatistics stepWithStatistics(TissueDynamics pTissueDynamics)
+  {
+    TissueStatisticsCollector lStatisticsCollector =
+                                                   pTissueDynamics.getStatisticsCollector();
+    int lPeriod = lStatisticsCollector.getPeriod();
+    lStatisticsCollector.setPeriod(1);
+    try
+    {
+      pTissueDynamics.simulationSteps(1);
+    }
+    finally
+    {
+      lStatisticsCollector.setPeriod(lPeriod);
+    }
+    return lStatisticsCollector.getLastStatistics();
+  }
+
+}
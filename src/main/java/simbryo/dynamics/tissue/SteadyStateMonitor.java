@@ -0,0 +1,326 @@
+package simbryo.dynamics.tissue;
+
+import java.io.Serializable;
+
+/**
+ * Steady state monitor. Between structural events, tissues spend many steps
+ * just relaxing toward mechanical equilibrium. This monitor periodically
+ * checks the kinetic energy per cell, the maximal overlap between cells, and
+ * the deviation of radii from target radii. When the tissue is at rest and no
+ * structural event is expected within the next steps, the tissue can skip the
+ * mechanical stages and fast-forward its operator stages directly to shortly
+ * before the next event.
+ *
+ * @author royer
+ */
+public class SteadyStateMonitor implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private volatile boolean mEnabled = false;
+  private volatile int mCheckPeriod = 100;
+  private volatile float mKineticEnergyThreshold = 2e-8f;
+  private volatile float mOverlapThreshold = 0.05f;
+  private volatile float mRadiusDeviationThreshold = 0.01f;
+  private volatile int mSafetyMargin = 10;
+  private volatile int mMaxNumberOfFastForwardSteps = 1000;
+
+  private volatile float mLastKineticEnergy;
+  private volatile float mLastMaximalOverlap;
+  private volatile float mLastMaximalRadiusDeviation;
+
+  private volatile long mNumberOfFastForwards;
+  private volatile long mNumberOfFastForwardedSteps;
+
+  /**
+   * Instantiates a disabled steady state monitor with default thresholds.
+   */
+  public SteadyStateMonitor()
+  {
+    super();
+  }
+
+  /**
+   * Returns true if fast-forwarding is enabled.
+   *
+   * @return true if enabled
+   */
+  public boolean isEnabled()
+  {
+    return mEnabled;
+  }
+
+  /**
+   * Enables or disables fast-forwarding.
+   *
+   * @param pEnabled
+   *          true to enable
+   */
+  public void setEnabled(boolean pEnabled)
+  {
+    mEnabled = pEnabled;
+  }
+
+  /**
+   * Returns the number of steps between two steady state checks.
+   *
+   * @return check period in steps
+   */
+  public int getCheckPeriod()
+  {
+    return mCheckPeriod;
+  }
+
+  /**
+   * Sets the number of steps between two steady state checks.
+   *
+   * @param pCheckPeriod
+   *          check period in steps
+   */
+  public void setCheckPeriod(int pCheckPeriod)
+  {
+    if (pCheckPeriod < 1)
+      throw new IllegalArgumentException("Check period must be at least one, was: "
+                                         + pCheckPeriod);
+    mCheckPeriod = pCheckPeriod;
+  }
+
+  /**
+   * Returns the kinetic energy per cell below which the tissue is considered
+   * at rest.
+   *
+   * @return kinetic energy threshold
+   */
+  public float getKineticEnergyThreshold()
+  {
+    return mKineticEnergyThreshold;
+  }
+
+  /**
+   * Sets the kinetic energy per cell below which the tissue is considered at
+   * rest.
+   *
+   * @param pKineticEnergyThreshold
+   *          kinetic energy threshold
+   */
+  public void setKineticEnergyThreshold(float pKineticEnergyThreshold)
+  {
+    mKineticEnergyThreshold = pKineticEnergyThreshold;
+  }
+
+  /**
+   * Returns the maximal relative overlap below which the tissue is considered
+   * relaxed.
+   *
+   * @return overlap threshold
+   */
+  public float getOverlapThreshold()
+  {
+    return mOverlapThreshold;
+  }
+
+  /**
+   * Sets the maximal relative overlap below which the tissue is considered
+   * relaxed.
+   *
+   * @param pOverlapThreshold
+   *          overlap threshold
+   */
+  public void setOverlapThreshold(float pOverlapThreshold)
+  {
+    mOverlapThreshold = pOverlapThreshold;
+  }
+
+  /**
+   * Returns the maximal relative deviation of radii from target radii below
+   * which the tissue is considered relaxed.
+   *
+   * @return radius deviation threshold
+   */
+  public float getRadiusDeviationThreshold()
+  {
+    return mRadiusDeviationThreshold;
+  }
+
+  /**
+   * Sets the maximal relative deviation of radii from target radii below which
+   * the tissue is considered relaxed.
+   *
+   * @param pRadiusDeviationThreshold
+   *          radius deviation threshold
+   */
+  public void setRadiusDeviationThreshold(float pRadiusDeviationThreshold)
+  {
+    mRadiusDeviationThreshold = pRadiusDeviationThreshold;
+  }
+
+  /**
+   * Returns the number of steps before the next structural event at which
+   * fast-forwarding stops.
+   *
+   * @return safety margin in steps
+   */
+  public int getSafetyMargin()
+  {
+    return mSafetyMargin;
+  }
+
+  /**
+   * Sets the number of steps before the next structural event at which
+   * fast-forwarding stops.
+   *
+   * @param pSafetyMargin
+   *          safety margin in steps
+   */
+  public void setSafetyMargin(int pSafetyMargin)
+  {
+    mSafetyMargin = pSafetyMargin;
+  }
+
+  /**
+   * Returns the maximal number of steps skipped in one fast-forward.
+   *
+   * @return maximal number of fast-forward steps
+   */
+  public int getMaxNumberOfFastForwardSteps()
+  {
+    return mMaxNumberOfFastForwardSteps;
+  }
+
+  /**
+   * Sets the maximal number of steps skipped in one fast-forward.
+   *
+   * @param pMaxNumberOfFastForwardSteps
+   *          maximal number of fast-forward steps
+   */
+  public void setMaxNumberOfFastForwardSteps(int pMaxNumberOfFastForwardSteps)
+  {
+    mMaxNumberOfFastForwardSteps = pMaxNumberOfFastForwardSteps;
+  }
+
+  /**
+   * Returns the kinetic energy per cell measured at the last check.
+   *
+   * @return last kinetic energy per cell
+   */
+  public float getLastKineticEnergy()
+  {
+    return mLastKineticEnergy;
+  }
+
+  /**
+   * Returns the maximal relative overlap measured at the last check.
+   *
+   * @return last maximal overlap
+   */
+  public float getLastMaximalOverlap()
+  {
+    return mLastMaximalOverlap;
+  }
+
+  /**
+   * Returns the maximal relative radius deviation measured at the last check.
+   *
+   * @return last maximal radius deviation
+   */
+  public float getLastMaximalRadiusDeviation()
+  {
+    return mLastMaximalRadiusDeviation;
+  }
+
+  /**
+   * Returns the number of fast-forwards performed so far.
+   *
+   * @return number of fast-forwards
+   */
+  public long getNumberOfFastForwards()
+  {
+    return mNumberOfFastForwards;
+  }
+
+  /**
+   * Returns the total number of steps skipped by fast-forwarding so far.
+   *
+   * @return number of fast-forwarded steps
+   */
+  public long getNumberOfFastForwardedSteps()
+  {
+    return mNumberOfFastForwardedSteps;
+  }
+
+  /**
+   * Returns true if the given measurements correspond to a tissue at rest, and
+   * records them.
+   *
+   * @param pKineticEnergyPerCell
+   *          kinetic energy per cell
+   * @param pMaximalOverlap
+   *          maximal relative overlap
+   * @param pMaximalRadiusDeviation
+   *          maximal relative radius deviation
+   * @return true if at steady state
+   */
+  public boolean isSteadyState(float pKineticEnergyPerCell,
+                               float pMaximalOverlap,
+                               float pMaximalRadiusDeviation)
+  {
+    mLastKineticEnergy = pKineticEnergyPerCell;
+    mLastMaximalOverlap = pMaximalOverlap;
+    mLastMaximalRadiusDeviation = pMaximalRadiusDeviation;
+    return pKineticEnergyPerCell <= mKineticEnergyThreshold
+           && pMaximalOverlap <= mOverlapThreshold
+           && pMaximalRadiusDeviation <= mRadiusDeviationThreshold;
+  }
+
+  /**
+   * Returns the number of steps that a tissue can fast-forward at its current
+   * time step, or zero if it should step normally.
+   *
+   * @param pTissueDynamics
+   *          tissue dynamics
+   * @param pMaxNumberOfSteps
+   *          maximal number of steps, typically the remaining steps to
+   *          simulate
+   * @return number of steps to fast-forward
+   */
+  public int getNumberOfFastForwardSteps(TissueDynamics pTissueDynamics,
+                                         int pMaxNumberOfSteps)
+  {
+    if (!mEnabled
+        || pTissueDynamics.getTimeStepIndex() % mCheckPeriod != 0)
+      return 0;
+
+    long lHorizon =
+                  Math.min(pTissueDynamics.getStepsUntilNextStructuralEvent(),
+                           pTissueDynamics.getStepsUntilNextScheduledEvent())
+                    - mSafetyMargin;
+    lHorizon = Math.min(lHorizon,
+                        Math.min(pMaxNumberOfSteps,
+                                 mMaxNumberOfFastForwardSteps));
+    if (lHorizon < mCheckPeriod)
+      return 0;
+
+    int lNumberOfParticles = pTissueDynamics.getNumberOfParticles();
+    if (lNumberOfParticles == 0
+        || !isSteadyState(pTissueDynamics.getKineticEnergy()
+                          / lNumberOfParticles,
+                          pTissueDynamics.getMaximalOverlap(),
+                          pTissueDynamics.getMaximalRadiusDeviation()))
+      return 0;
+
+    return (int) lHorizon;
+  }
+
+  /**
+   * Records a fast-forward of a given number of steps.
+   *
+   * @param pNumberOfSteps
+   *          number of steps skipped
+   */
+  public void recordFastForward(int pNumberOfSteps)
+  {
+    mNumberOfFastForwards++;
+    mNumberOfFastForwardedSteps += pNumberOfSteps;
+  }
+
+}
@@ -0,0 +1,242 @@
+package simbryo.dynamics.tissue;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queue of structural changes (cell division, removal, relabeling) requested
+ * during a simulation step. Operators can append to this queue concurrently
+ * without locking while they iterate over a fixed population, the changes are
+ * then applied in one batch at the end of the step. Changes are stored in
+ * primitive arrays indexed by an atomic cursor, changes that do not fit are
+ * kept in an overflow queue and the arrays are enlarged when the queue is
+ * sorted.
+ *
+ * @author royer
+ */
+public class StructuralChangeQueue implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private static final int cInitialCapacity = 1024;
+
+  /**
+   * Structural change types, in the order in which they are applied.
+   */
+  public enum StructuralChangeType
+  {
+   /**
+    * Changes the species of a cell.
+    */
+   Relabel,
+
+   /**
+    * Divides a cell, the daughter cell is added at the end.
+    */
+   Divide,
+
+   /**
+    * Removes a cell, the last cell takes its id.
+    */
+   Remove
+  }
+
+  private static final StructuralChangeType[] cTypes =
+                                                     StructuralChangeType.values();
+
+  private static class Change
+  {
+    final byte mType;
+    final int mId;
+    final float mParameter;
+
+    Change(byte pType, int pId, float pParameter)
+    {
+      mType = pType;
+      mId = pId;
+      mParameter = pParameter;
+    }
+  }
+
+  private transient AtomicInteger mCursor;
+  private transient byte[] mTypes;
+  private transient int[] mIds;
+  private transient float[] mParameters;
+  private transient ConcurrentLinkedQueue<Change> mOverflow;
+
+  private transient long[] mSortKeys;
+  private transient int mNumberOfSortedChanges;
+
+  /**
+   * Instantiates an empty structural change queue.
+   */
+  public StructuralChangeQueue()
+  {
+    super();
+    allocate(cInitialCapacity);
+  }
+
+  private void allocate(int pCapacity)
+  {
+    mCursor = new AtomicInteger();
+    mTypes = new byte[pCapacity];
+    mIds = new int[pCapacity];
+    mParameters = new float[pCapacity];
+    mOverflow = new ConcurrentLinkedQueue<>();
+    mSortKeys = new long[0];
+    mNumberOfSortedChanges = 0;
+  }
+
+  private void readObject(ObjectInputStream pObjectInputStream) throws IOException,
+                                                                ClassNotFoundException
+  {
+    pObjectInputStream.defaultReadObject();
+    allocate(cInitialCapacity);
+  }
+
+  /**
+   * Appends a structural change to this queue. This method can be called
+   * concurrently from several threads.
+   * 
+   * @param pType
+   *          change type
+   * @param pId
+   *          cell id
+   * @param pParameter
+   *          parameter: value passed to the division hook for divisions,
+   *          species for relabelings, ignored for removals.
+   */
+  public void add(StructuralChangeType pType, int pId, float pParameter)
+  {
+    final byte lType = (byte) pType.ordinal();
+    final int lIndex = mCursor.getAndIncrement();
+    if (lIndex < mTypes.length)
+    {
+      mTypes[lIndex] = lType;
+      mIds[lIndex] = pId;
+      mParameters[lIndex] = pParameter;
+    }
+    else
+      mOverflow.add(new Change(lType, pId, pParameter));
+  }
+
+  /**
+   * Returns true if no change has been added since the last clear.
+   * 
+   * @return true if empty
+   */
+  public boolean isEmpty()
+  {
+    return mCursor.get() == 0;
+  }
+
+  /**
+   * Sorts the changes added so far in the order in which they must be applied:
+   * relabelings, then divisions by increasing id, then removals by decreasing
+   * id so that removing a cell never moves a cell that is still to be removed.
+   * This order does not depend on the order in which changes were added. This
+   * method must not be called concurrently with add().
+   * 
+   * @return number of changes
+   */
+  public int sort()
+  {
+    final int lNumberOfChanges = mCursor.get();
+
+    if (lNumberOfChanges > mTypes.length)
+    {
+      final int lCapacity = Math.max(2 * mTypes.length,
+                                     lNumberOfChanges);
+      int lIndex = mTypes.length;
+      mTypes = Arrays.copyOf(mTypes, lCapacity);
+      mIds = Arrays.copyOf(mIds, lCapacity);
+      mParameters = Arrays.copyOf(mParameters, lCapacity);
+      for (Change lChange : mOverflow)
+      {
+        mTypes[lIndex] = lChange.mType;
+        mIds[lIndex] = lChange.mId;
+        mParameters[lIndex] = lChange.mParameter;
+        lIndex++;
+      }
+      mOverflow.clear();
+    }
+
+    if (mSortKeys.length < lNumberOfChanges)
+      mSortKeys = new long[mTypes.length];
+
+    // key: type (8 bits) | ordered id (31 bits) | index (24 bits)
+    for (int k = 0; k < lNumberOfChanges; k++)
+    {
+      final int lId = mIds[k];
+      final long lOrderedId = cTypes[mTypes[k]] == StructuralChangeType.Remove
+                                                                               ? Integer.MAX_VALUE
+                                                                                 - lId
+                                                                               : lId;
+      mSortKeys[k] = ((long) mTypes[k] << 55) | (lOrderedId << 24)
+                     | k;
+    }
+    Arrays.sort(mSortKeys, 0, lNumberOfChanges);
+
+    mNumberOfSortedChanges = lNumberOfChanges;
+    return lNumberOfChanges;
+  }
+
+  /**
+   * Returns the type of the k-th sorted change.
+   * 
+   * @param pIndex
+   *          index within the sorted changes
+   * @return change type
+   */
+  public StructuralChangeType getType(int pIndex)
+  {
+    return cTypes[mTypes[getIndex(pIndex)]];
+  }
+
+  /**
+   * Returns the cell id of the k-th sorted change.
+   * 
+   * @param pIndex
+   *          index within the sorted changes
+   * @return cell id
+   */
+  public int getId(int pIndex)
+  {
+    return mIds[getIndex(pIndex)];
+  }
+
+  /**
+   * Returns the parameter of the k-th sorted change.
+   * 
+   * @param pIndex
+   *          index within the sorted changes
+   * @return parameter
+   */
+  public float getParameter(int pIndex)
+  {
+    return mParameters[getIndex(pIndex)];
+  }
+
+  private int getIndex(int pIndex)
+  {
+    if (pIndex >= mNumberOfSortedChanges)
+      throw new IndexOutOfBoundsException("Change index " + pIndex
+                                          + " not sorted");
+    return (int) (mSortKeys[pIndex] & 0xFFFFFF);
+  }
+
+  /**
+   * Removes all changes.
+   */
+  public void clear()
+  {
+    mCursor.set(0);
+    mOverflow.clear();
+    mNumberOfSortedChanges = 0;
+  }
+
+}
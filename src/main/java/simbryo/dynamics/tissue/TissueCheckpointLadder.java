@@ -0,0 +1,64 @@
+package simbryo.dynamics.tissue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+import simbryo.util.serialization.CheckpointLadder;
+
+/**
+ * Checkpoint ladder for tissues. Checkpoints are compressed tissue snapshots
+ * instead of Java serialization: only the live particles and the subclass
+ * specific state are written, and checkpoints are restored into a tissue
+ * freshly obtained from the factory, so that everything that is not state
+ * (force fields, operators, pipeline, monitors) is always built by the current
+ * code.
+ *
+ * @param <T>
+ *          tissue type
+ * @author royer
+ */
+public class TissueCheckpointLadder<T extends TissueDynamics> extends
+                                   CheckpointLadder<T>
+{
+
+  /**
+   * Instantiates a tissue checkpoint ladder.
+   *
+   * @param pCacheDirectory
+   *          cache directory
+   * @param pKey
+   *          key identifying model class, parameters and seed
+   * @param pCheckpointInterval
+   *          number of time steps between checkpoints
+   * @param pMaxNumberOfCheckpoints
+   *          maximal number of checkpoints kept for this key
+   */
+  public TissueCheckpointLadder(File pCacheDirectory,
+                                String pKey,
+                                int pCheckpointInterval,
+                                int pMaxNumberOfCheckpoints)
+  {
+    super(pCacheDirectory,
+          pKey,
+          pCheckpointInterval,
+          pMaxNumberOfCheckpoints);
+  }
+
+  @Override
+  protected void writeCheckpoint(T pTissueDynamics,
+                                 File pFile) throws IOException
+  {
+    TissueSnapshot.save(pTissueDynamics, pFile, true);
+  }
+
+  @Override
+  protected T readCheckpoint(File pFile,
+                             Supplier<T> pFactory) throws Exception
+  {
+    T lTissueDynamics = pFactory.get();
+    TissueSnapshot.load(pFile, lTissueDynamics);
+    return lTissueDynamics;
+  }
+
+}
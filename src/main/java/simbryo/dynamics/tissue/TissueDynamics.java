@@ -1,15 +1,28 @@
 package simbryo.dynamics.tissue;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
 
+import simbryo.dynamics.tissue.StructuralChangeQueue.StructuralChangeType;
 import simbryo.dynamics.tissue.cellprop.CellProperty;
+import simbryo.dynamics.tissue.cellprop.CellPropertyArena;
+import simbryo.dynamics.tissue.cellprop.CellPropertyArena.Layout;
 import simbryo.dynamics.tissue.cellprop.VectorCellProperty;
 import simbryo.dynamics.tissue.cellprop.operators.CellPropertyOperatorInterface;
+import simbryo.dynamics.tissue.lineage.LineageLog;
 import simbryo.particles.ParticleSystem;
 import simbryo.particles.forcefield.interaction.impl.CollisionForceField;
+import simbryo.particles.integration.SemiImplicitContactIntegrator;
+import simbryo.particles.neighborhood.NeighborhoodCache;
+import simbryo.particles.solver.OverlapSolver;
 import simbryo.particles.viewer.ParticleViewerInterface;
 import simbryo.particles.viewer.three.ParticleViewer3D;
 import simbryo.util.DoubleBufferingFloatArray;
+import simbryo.util.geom.GeometryUtils;
+import simbryo.util.pipeline.Pipeline;
+import simbryo.util.pipeline.PipelineStage;
+import simbryo.util.sequence.EventScheduler;
+import simbryo.util.serialization.StructuralCopy;
 
 /**
  * Tissue dynamics extend from a particle system with standard dynamics
@@ -35,15 +48,54 @@ public class TissueDynamics extends ParticleSystem
   protected static final float Ar = 0.05f;
   protected static final float Fb = 0.00001f;
 
+  protected static final float Dn = 0.001f;
+
+  /**
+   * Names of the standard pipeline stages, in execution order.
+   */
+  public static final String cEventStage = "events";
+  public static final String cBrownianMotionStage = "brownian motion";
+  public static final String cRadiusSmoothingStage = "radius smoothing";
+  public static final String cCollisionStage = "collision";
+  public static final String cIntegrationStage = "integration";
+  public static final String cBoundsStage = "bounds";
+  public static final String cOverlapStage = "overlap";
+  public static final String cStructuralChangesStage =
+                                                     "structural changes";
+  public static final String cNeighborhoodGridStage =
+                                                    "neighborhood grid";
+
   private final DoubleBufferingFloatArray mTargetRadii;
 
   protected final CollisionForceField mCollisionForceField;
 
-  protected ArrayList<CellProperty> mCellPropertyList =
-                                                      new ArrayList<>();
+  protected volatile OverlapSolver mOverlapSolver;
+
+  protected volatile SemiImplicitContactIntegrator mContactIntegrator;
+
+  protected final StructuralChangeQueue mStructuralChangeQueue =
+                                                             new StructuralChangeQueue();
+
+  protected final CellPropertyArena mCellPropertyArena;
+
+  protected final LineageLog mLineageLog;
+
+  protected final Pipeline mPipeline = new Pipeline();
+
+  private final HashMap<PipelineStage, CellPropertyOperatorInterface<?>> mOperatorStageMap =
+                                                                                         new HashMap<>();
+
+  protected final SteadyStateMonitor mSteadyStateMonitor =
+                                                         new SteadyStateMonitor();
+
+  protected final TissueStatisticsCollector mStatisticsCollector =
+                                                                new TissueStatisticsCollector();
 
   protected volatile long mTimeStepIndex = 0;
-  // protected final Sequence mSequence = new Sequence();
+
+  protected final EventScheduler mEventScheduler = new EventScheduler();
+
+  protected volatile boolean mParallelOperators = true;
 
   private transient ParticleViewer3D mParticleViewer3D;
 
@@ -71,11 +123,30 @@ public class TissueDynamics extends ParticleSystem
           pGridDimensions);
 
     mTargetRadii =
-                 new DoubleBufferingFloatArray(cMaximumNumberOfCells);
+                 new DoubleBufferingFloatArray(cMaximumNumberOfCells,
+                                               true);
+
+    mCellPropertyArena = new CellPropertyArena(cMaximumNumberOfCells,
+                                               Layout.Columns);
+
+    mLineageLog = new LineageLog(cMaximumNumberOfCells);
 
     mCollisionForceField = new CollisionForceField(pCollisionForce,
                                                    pDrag,
                                                    false);
+
+    mPipeline.addStage(cEventStage, s -> mEventScheduler.fireUntil(s));
+    mPipeline.addStage(cBrownianMotionStage, s -> addBrownianMotion(Fb));
+    mPipeline.addStage(cRadiusSmoothingStage,
+                       s -> smoothToTargetRadius(Ar));
+    mPipeline.addStage(cCollisionStage, s -> applyCollisions());
+    mPipeline.addStage(cIntegrationStage, s -> integrate());
+    mPipeline.addStage(cBoundsStage, s -> enforceBounds(Db));
+    mPipeline.addStage(cOverlapStage, s -> solveOverlaps());
+    mPipeline.addStage(cStructuralChangesStage,
+                       s -> applyStructuralChanges());
+    mPipeline.addStage(cNeighborhoodGridStage,
+                       s -> updateNeighborhoodGrid());
   }
 
   /**
@@ -89,6 +160,274 @@ public class TissueDynamics extends ParticleSystem
     return mTimeStepIndex;
   }
 
+  /**
+   * Returns the pipeline of stages executed at each simulation step. Subclasses
+   * insert their own stages relative to the standard ones, and stages can be
+   * rescheduled, disabled and timed.
+   * 
+   * @return simulation pipeline
+   */
+  public Pipeline getPipeline()
+  {
+    return mPipeline;
+  }
+
+  /**
+   * Returns the arena in which the values of all cell properties of this
+   * tissue are stored.
+   * 
+   * @return cell property arena
+   */
+  public CellPropertyArena getCellPropertyArena()
+  {
+    return mCellPropertyArena;
+  }
+
+  /**
+   * Returns the lineage log of this tissue, in which all cell divisions are
+   * recorded.
+   * 
+   * @return lineage log
+   */
+  public LineageLog getLineageLog()
+  {
+    return mLineageLog;
+  }
+
+  /**
+   * Sets the layout of the cell property arena. Interleaving the values of
+   * each cell makes copying and cloning cells a single block copy, columns keep
+   * the values of each property contiguous for operators. Values are
+   * preserved.
+   * 
+   * @param pLayout
+   *          arena layout
+   */
+  public void setCellPropertyArenaLayout(Layout pLayout)
+  {
+    mCellPropertyArena.setLayout(pLayout);
+  }
+
+  /**
+   * Returns the steady state monitor of this tissue. Fast-forwarding through
+   * steady states is disabled by default.
+   * 
+   * @return steady state monitor
+   */
+  public SteadyStateMonitor getSteadyStateMonitor()
+  {
+    return mSteadyStateMonitor;
+  }
+
+  /**
+   * Returns the statistics collector of this tissue. Statistics collection is
+   * disabled by default.
+   * 
+   * @return statistics collector
+   */
+  public TissueStatisticsCollector getStatisticsCollector()
+  {
+    return mStatisticsCollector;
+  }
+
+  /**
+   * Returns the event scheduler of this tissue. Events scheduled at a given
+   * time step fire at the beginning of that step.
+   * 
+   * @return event scheduler
+   */
+  public EventScheduler getEventScheduler()
+  {
+    return mEventScheduler;
+  }
+
+  /**
+   * Returns the number of steps before the next event of the event scheduler,
+   * or Long.MAX_VALUE if no event is scheduled.
+   * 
+   * @return steps until next scheduled event
+   */
+  public long getStepsUntilNextScheduledEvent()
+  {
+    long lNextEventTimeStepIndex =
+                                 mEventScheduler.getNextEventTimeStepIndex();
+    if (lNextEventTimeStepIndex == Long.MAX_VALUE)
+      return Long.MAX_VALUE;
+    return Math.max(0, lNextEventTimeStepIndex - mTimeStepIndex);
+  }
+
+  /**
+   * Returns a lower bound for the number of steps before the next structural
+   * event (division, removal, or any change that should not be skipped by
+   * fast-forwarding) that is not scheduled on the event scheduler. The default
+   * implementation returns zero, which disables fast-forwarding, subclasses
+   * that can predict their events override this method.
+   * 
+   * @return steps until next structural event
+   */
+  public long getStepsUntilNextStructuralEvent()
+  {
+    return 0;
+  }
+
+  /**
+   * Returns an independent copy of this tissue, including its cell properties,
+   * force fields, operators, pipeline and lineage log. The object graph is
+   * first copied without the contents of the particle arrays (positions,
+   * velocities, radii, target radii and species) and of the cell property
+   * arena, which are then copied directly over the range of the live
+   * particles only. The neighborhood grid of the copy is rebuilt from the
+   * copied positions. A shared developmental prefix can thus be simulated once
+   * and then forked into variants that are simulated independently. This
+   * method should not be called while a simulation step is running.
+   * 
+   * @return forked tissue
+   */
+  public TissueDynamics fork()
+  {
+    final int lNumberOfParticles = getNumberOfParticles();
+    final int lLength = lNumberOfParticles * getDimension();
+
+    TissueDynamics lFork = StructuralCopy.copy(this,
+                                               mPositions,
+                                               mVelocities,
+                                               mRadii,
+                                               mTargetRadii,
+                                               mSpecies,
+                                               mCellPropertyArena);
+    mPositions.copyTo(lFork.mPositions, lLength);
+    mVelocities.copyTo(lFork.mVelocities, lLength);
+    mRadii.copyTo(lFork.mRadii, lNumberOfParticles);
+    mTargetRadii.copyTo(lFork.mTargetRadii, lNumberOfParticles);
+    System.arraycopy(mSpecies, 0, lFork.mSpecies, 0, lNumberOfParticles);
+    mCellPropertyArena.copyTo(lFork.mCellPropertyArena,
+                              lNumberOfParticles);
+    lFork.updateNeighborhoodGrid();
+    return lFork;
+  }
+
+  /**
+   * Returns the number of bytes of subclass specific state written to binary
+   * snapshots (see TissueSnapshot). State that is rebuilt by the constructor,
+   * such as force fields, operators and pipeline stages, does not need to be
+   * written. The default implementation returns zero.
+   * 
+   * @return number of bytes of snapshot state
+   */
+  protected int getSnapshotStateLength()
+  {
+    return 0;
+  }
+
+  /**
+   * Writes subclass specific state to a binary snapshot. Exactly
+   * getSnapshotStateLength() bytes must be written.
+   * 
+   * @param pBuffer
+   *          little-endian buffer
+   */
+  protected void writeSnapshotState(ByteBuffer pBuffer)
+  {
+  }
+
+  /**
+   * Reads subclass specific state from a binary snapshot, as written by
+   * writeSnapshotState.
+   * 
+   * @param pBuffer
+   *          little-endian buffer
+   */
+  protected void readSnapshotState(ByteBuffer pBuffer)
+  {
+  }
+
+  /**
+   * Restores the number of particles and the time step index from a snapshot.
+   * Events scheduled before the restored time step are skipped. Lineages are
+   * not part of snapshots: restored cells are the founders of a new lineage
+   * log.
+   * 
+   * @param pNumberOfParticles
+   *          number of particles
+   * @param pTimeStepIndex
+   *          time step index
+   */
+  void restoreSnapshot(int pNumberOfParticles, long pTimeStepIndex)
+  {
+    setNumberOfParticles(pNumberOfParticles);
+    mLineageLog.clear(pNumberOfParticles);
+    mTimeStepIndex = pTimeStepIndex;
+    mEventScheduler.skipUntil(pTimeStepIndex);
+  }
+
+  /**
+   * Returns the overlap solver used after each integration step, or null if
+   * overlaps are only resolved by the collision force field.
+   * 
+   * @return overlap solver or null
+   */
+  public OverlapSolver getOverlapSolver()
+  {
+    return mOverlapSolver;
+  }
+
+  /**
+   * Sets the overlap solver used after each integration step. Setting null
+   * disables it.
+   * 
+   * @param pOverlapSolver
+   *          overlap solver or null
+   */
+  public void setOverlapSolver(OverlapSolver pOverlapSolver)
+  {
+    mOverlapSolver = pOverlapSolver;
+  }
+
+  /**
+   * Returns the semi-implicit contact integrator, or null if collisions and
+   * drag are integrated explicitly.
+   * 
+   * @return semi-implicit contact integrator or null
+   */
+  public SemiImplicitContactIntegrator getContactIntegrator()
+  {
+    return mContactIntegrator;
+  }
+
+  /**
+   * Sets the semi-implicit contact integrator used instead of explicitly
+   * applying the collision force field. Setting null switches back to explicit
+   * integration.
+   * 
+   * @param pContactIntegrator
+   *          semi-implicit contact integrator or null
+   */
+  public void setContactIntegrator(SemiImplicitContactIntegrator pContactIntegrator)
+  {
+    mContactIntegrator = pContactIntegrator;
+  }
+
+  /**
+   * Returns true if operators are applied in parallel when they support it.
+   * 
+   * @return true if operators are applied in parallel
+   */
+  public boolean isParallelOperators()
+  {
+    return mParallelOperators;
+  }
+
+  /**
+   * Sets whether operators are applied in parallel when they support it.
+   * 
+   * @param pParallelOperators
+   *          true to apply operators in parallel
+   */
+  public void setParallelOperators(boolean pParallelOperators)
+  {
+    mParallelOperators = pParallelOperators;
+  }
+
   /**
    * Sets the target radius for a given particle id.
    * 
@@ -102,6 +441,16 @@ public class TissueDynamics extends ParticleSystem
     mTargetRadii.getCurrentArray()[pParticleId] = pTargetRadius;
   }
 
+  /**
+   * Returns the target radii array.
+   * 
+   * @return target radii
+   */
+  public DoubleBufferingFloatArray getTargetRadii()
+  {
+    return mTargetRadii;
+  }
+
   /**
    * Returns the target radius for a given particle id.
    * 
@@ -114,29 +463,158 @@ public class TissueDynamics extends ParticleSystem
     return mTargetRadii.getCurrentArray()[pParticleId];
   }
 
+  @Override
+  public int addParticle(float... pPosition)
+  {
+    final int lParticleId = super.addParticle(pPosition);
+    if (lParticleId >= 0)
+      mLineageLog.addFounder(lParticleId);
+    return lParticleId;
+  }
+
+  @Override
+  public int cloneParticle(int pSourceParticleId, float pNoiseFactor)
+  {
+    // the daughter is not a founder, so the lineage aware addParticle is not
+    // used:
+    final int lDaughterId = super.addParticle();
+    if (lDaughterId < 0)
+      return lDaughterId;
+    copyParticle(pSourceParticleId, lDaughterId);
+    addNoiseToParticle(lDaughterId, pNoiseFactor, 0, 0);
+    mLineageLog.addDivision(mTimeStepIndex, pSourceParticleId, lDaughterId);
+    return lDaughterId;
+  }
+
   @Override
   public void copyParticle(int pSourceParticleId,
                            int pDestinationParticleId)
   {
     super.copyParticle(pSourceParticleId, pDestinationParticleId);
     mTargetRadii.getCurrentArray()[pDestinationParticleId] =
-                                                           mTargetRadii.getCurrentArray()[pDestinationParticleId];
+                                                           mTargetRadii.getCurrentArray()[pSourceParticleId];
+
+    mCellPropertyArena.copyParticle(pSourceParticleId,
+                                    pDestinationParticleId);
+    mLineageLog.copy(pSourceParticleId, pDestinationParticleId);
   }
 
   @Override
-  public int cloneParticle(int pSourceParticleId, float pNoiseFactor)
+  public void removeParticle(int pParticleId)
+  {
+    final int lLastParticleId = getNumberOfParticles() - 1;
+    super.removeParticle(pParticleId);
+    mEventScheduler.cancelCellEvents(pParticleId);
+    mEventScheduler.moveCellEvents(lLastParticleId, pParticleId);
+  }
+
+  /**
+   * Returns the queue of structural changes applied at the end of each
+   * simulation step.
+   * 
+   * @return structural change queue
+   */
+  public StructuralChangeQueue getStructuralChangeQueue()
+  {
+    return mStructuralChangeQueue;
+  }
+
+  /**
+   * Requests the division of a cell at the end of the current simulation step.
+   * Can be called concurrently, typically from within operators.
+   * 
+   * @param pParticleId
+   *          id of cell to divide
+   * @param pValue
+   *          value passed to the division hook
+   */
+  public void requestDivision(int pParticleId, float pValue)
   {
-    int lNewParticleId = super.cloneParticle(pSourceParticleId,
-                                             pNoiseFactor);
-    mTargetRadii.getCurrentArray()[lNewParticleId] =
-                                                   mTargetRadii.getCurrentArray()[pSourceParticleId];
+    mStructuralChangeQueue.add(StructuralChangeType.Divide,
+                               pParticleId,
+                               pValue);
+  }
 
-    for (CellProperty lMorphogen : mCellPropertyList)
+  /**
+   * Requests the removal of a cell at the end of the current simulation step.
+   * Can be called concurrently, typically from within operators.
+   * 
+   * @param pParticleId
+   *          id of cell to remove
+   */
+  public void requestRemoval(int pParticleId)
+  {
+    mStructuralChangeQueue.add(StructuralChangeType.Remove,
+                               pParticleId,
+                               0);
+  }
+
+  /**
+   * Requests a change of species for a cell at the end of the current
+   * simulation step. Can be called concurrently, typically from within
+   * operators.
+   * 
+   * @param pParticleId
+   *          id of cell to relabel
+   * @param pSpecies
+   *          new species
+   */
+  public void requestRelabel(int pParticleId, int pSpecies)
+  {
+    mStructuralChangeQueue.add(StructuralChangeType.Relabel,
+                               pParticleId,
+                               pSpecies);
+  }
+
+  /**
+   * Applies all pending structural changes in one batch and clears the queue.
+   * This is done automatically at the end of each simulation step, before the
+   * neighborhood grid is updated.
+   */
+  public void applyStructuralChanges()
+  {
+    if (mStructuralChangeQueue.isEmpty())
+      return;
+
+    final int lNumberOfChanges = mStructuralChangeQueue.sort();
+    for (int k = 0; k < lNumberOfChanges; k++)
     {
-      lMorphogen.copyValue(pSourceParticleId, lNewParticleId);
+      final int lId = mStructuralChangeQueue.getId(k);
+      final float lParameter = mStructuralChangeQueue.getParameter(k);
+      switch (mStructuralChangeQueue.getType(k))
+      {
+      case Relabel:
+        setSpecies(lId, (int) lParameter);
+        break;
+      case Divide:
+        final int lDaughterId = cloneParticle(lId, Dn);
+        if (lDaughterId >= 0)
+          divisionHook(lId, lDaughterId, lParameter);
+        break;
+      case Remove:
+        removeParticle(lId);
+        break;
+      }
     }
+    mStructuralChangeQueue.clear();
+  }
 
-    return lNewParticleId;
+  /**
+   * This hook is called after a requested cell division has been applied, the
+   * daughter cell is a copy of the mother cell. Override to adjust mother and
+   * daughter cell properties.
+   * 
+   * @param pMotherId
+   *          mother cell id
+   * @param pDaughterId
+   *          daughter cell id
+   * @param pValue
+   *          value given when requesting the division
+   */
+  protected void divisionHook(int pMotherId,
+                              int pDaughterId,
+                              float pValue)
+  {
   }
 
   /**
@@ -160,7 +638,6 @@ public class TissueDynamics extends ParticleSystem
     VectorCellProperty lVectorCellProperty =
                                            new VectorCellProperty(this,
                                                                   pDimension);
-    mCellPropertyList.add(lVectorCellProperty);
     return lVectorCellProperty;
   }
 
@@ -173,16 +650,27 @@ public class TissueDynamics extends ParticleSystem
   @Override
   public void simulationSteps(int pNumberOfSteps)
   {
-    for (int i = 0; i < pNumberOfSteps; i++)
+    int i = 0;
+    while (i < pNumberOfSteps)
     {
-      addBrownianMotion(Fb);
-      smoothToTargetRadius(Ar);
-      applyForceField(mCollisionForceField);
-      intergrateEuler();
-      enforceBounds(Db);
-      updateNeighborhoodGrid();
-      mTimeStepIndex++;
-      // mSequence.step(pDeltaTime);
+      int lNumberOfFastForwardSteps =
+                                    mSteadyStateMonitor.getNumberOfFastForwardSteps(this,
+                                                                                    pNumberOfSteps
+                                                                                          - i);
+      if (lNumberOfFastForwardSteps > 0)
+      {
+        fastForward(lNumberOfFastForwardSteps);
+        i += lNumberOfFastForwardSteps;
+      }
+      else
+      {
+        mStatisticsCollector.begin(mTimeStepIndex,
+                                   getNumberOfParticles());
+        mPipeline.step(mTimeStepIndex);
+        mStatisticsCollector.end();
+        mTimeStepIndex++;
+        i++;
+      }
     }
 
     if (mParticleViewer3D != null)
@@ -190,6 +678,175 @@ public class TissueDynamics extends ParticleSystem
 
   }
 
+  /**
+   * Returns the kinetic energy of the tissue: half the sum of the squared
+   * velocities of all cells, cells having unit mass.
+   * 
+   * @return kinetic energy
+   */
+  public float getKineticEnergy()
+  {
+    final float[] lVelocities = mVelocities.getCurrentArray();
+    final int lLength = getNumberOfParticles() * getDimension();
+
+    double lKineticEnergy = 0;
+    for (int i = 0; i < lLength; i++)
+      lKineticEnergy += lVelocities[i] * lVelocities[i];
+
+    return (float) (0.5 * lKineticEnergy);
+  }
+
+  /**
+   * Returns the maximal overlap between two cells, relative to the sum of their
+   * radii. The overlap is computed from the neighborhood cache, which is
+   * updated if needed.
+   * 
+   * @return maximal relative overlap
+   */
+  public float getMaximalOverlap()
+  {
+    final NeighborhoodCache lNeighborhoodCache =
+                                               updateNeighborhoodCache(1);
+    final int[] lOffsets = lNeighborhoodCache.getOffsets();
+    final int[] lNeighbors = lNeighborhoodCache.getNeighbors();
+    final int lDimension = getDimension();
+    final float[] lPositions = mPositions.getCurrentArray();
+    final float[] lRadii = mRadii.getCurrentArray();
+    final int lNumberOfParticles = getNumberOfParticles();
+
+    float lMaximalOverlap = 0;
+    for (int idu = 0; idu < lNumberOfParticles; idu++)
+      for (int k = lOffsets[idu]; k < lOffsets[idu + 1]; k++)
+      {
+        final int idv = lNeighbors[k];
+        if (idv <= idu)
+          continue;
+        final float lSumOfRadii = lRadii[idu] + lRadii[idv];
+        final float lDistance =
+                              GeometryUtils.computeDistance(lDimension,
+                                                            lPositions,
+                                                            idu,
+                                                            idv);
+        lMaximalOverlap = Math.max(lMaximalOverlap,
+                                   (lSumOfRadii - lDistance)
+                                                    / lSumOfRadii);
+      }
+
+    return lMaximalOverlap;
+  }
+
+  /**
+   * Returns the maximal deviation of the cell radii from their target radii,
+   * relative to the target radii.
+   * 
+   * @return maximal relative radius deviation
+   */
+  public float getMaximalRadiusDeviation()
+  {
+    final float[] lRadii = mRadii.getCurrentArray();
+    final float[] lTargetRadii = mTargetRadii.getCurrentArray();
+    final int lNumberOfParticles = getNumberOfParticles();
+
+    float lMaximalDeviation = 0;
+    for (int id = 0; id < lNumberOfParticles; id++)
+      if (lTargetRadii[id] > 0)
+        lMaximalDeviation =
+                          Math.max(lMaximalDeviation,
+                                   Math.abs(lRadii[id] - lTargetRadii[id])
+                                                    / lTargetRadii[id]);
+
+    return lMaximalDeviation;
+  }
+
+  /**
+   * Fast-forwards a tissue at steady state by a given number of steps: the
+   * mechanical stages are skipped, and each operator stage is applied once
+   * with its time step multiplier scaled by the number of times it would have
+   * run.
+   * 
+   * @param pNumberOfSteps
+   *          number of steps
+   */
+  private void fastForward(int pNumberOfSteps)
+  {
+    final long lEndTimeStepIndex = mTimeStepIndex + pNumberOfSteps;
+    for (PipelineStage lStage : mPipeline.getStages())
+    {
+      CellPropertyOperatorInterface<?> lOperator =
+                                                 mOperatorStageMap.get(lStage);
+      if (lOperator == null)
+        continue;
+
+      long lNumberOfRuns = lStage.getNumberOfDueSteps(mTimeStepIndex,
+                                                      lEndTimeStepIndex);
+      if (lNumberOfRuns == 0)
+        continue;
+
+      int lTimeStepMultiplier = lOperator.getTimeStepMultiplier();
+      lOperator.setTimeStepMultiplier((int) (lTimeStepMultiplier
+                                             * lNumberOfRuns));
+      try
+      {
+        lStage.run(mTimeStepIndex);
+      }
+      finally
+      {
+        lOperator.setTimeStepMultiplier(lTimeStepMultiplier);
+      }
+    }
+    applyStructuralChanges();
+    mTimeStepIndex = lEndTimeStepIndex;
+    mSteadyStateMonitor.recordFastForward(pNumberOfSteps);
+  }
+
+  /**
+   * Applies collisions between cells, either explicitly or with the
+   * semi-implicit contact integrator if one is set.
+   */
+  private void applyCollisions()
+  {
+    if (mContactIntegrator == null)
+    {
+      applyForceField(mCollisionForceField);
+      if (mStatisticsCollector.isCollecting())
+        mStatisticsCollector.setContactStatistics(mCollisionForceField.getNumberOfContacts(),
+                                                  mCollisionForceField.getMaximalOverlap());
+    }
+    else
+    {
+      mContactIntegrator.updateVelocities(this, mCollisionForceField);
+      if (mStatisticsCollector.isCollecting())
+        mStatisticsCollector.setContactStatistics(mContactIntegrator.getNumberOfContacts(),
+                                                  mContactIntegrator.getMaximalOverlap());
+    }
+  }
+
+  /**
+   * Integrates cell positions, the kinetic energy is computed in the same pass
+   * if statistics are collected.
+   */
+  private void integrate()
+  {
+    final boolean lCollecting = mStatisticsCollector.isCollecting();
+    final float lKineticEnergy = intergrateEuler(lCollecting);
+    if (lCollecting)
+      mStatisticsCollector.setKineticEnergy(lKineticEnergy);
+  }
+
+  /**
+   * Resolves remaining overlaps if an overlap solver is set. The solver needs
+   * an up-to-date neighborhood grid, and the grid stage only runs at the end of
+   * the step, so the grid is first updated to the integrated positions.
+   */
+  private void solveOverlaps()
+  {
+    if (mOverlapSolver != null)
+    {
+      updateNeighborhoodGrid();
+      mOverlapSolver.solve(this);
+    }
+  }
+
   /**
    * Smoothly converges current particle radii to the target radii.
    * 
@@ -198,18 +855,50 @@ public class TissueDynamics extends ParticleSystem
    */
   private void smoothToTargetRadius(float pAlpha)
   {
-    final float[] lRadiiReadArray = mRadii.getReadArray();
-    final float[] lRadiiWriteArray = mRadii.getWriteArray();
+    final float[] lRadiiArray = mRadii.getInPlaceArray();
     final float[] lTargetRadiiArray = mTargetRadii.getCurrentArray();
     final int lNumberOfParticles = getNumberOfParticles();
 
+    if (!mStatisticsCollector.isCollecting())
+    {
+      for (int id = 0; id < lNumberOfParticles; id++)
+      {
+        lRadiiArray[id] = (1 - pAlpha) * lRadiiArray[id]
+                          + pAlpha * lTargetRadiiArray[id];
+      }
+      return;
+    }
+
+    // same pass, also accumulating the radius statistics:
+    final boolean l3D = getDimension() == 3;
+    double lSumOfRadii = 0;
+    double lSumOfVolumes = 0;
+    float lMaximalDeviation = 0;
     for (int id = 0; id < lNumberOfParticles; id++)
     {
-      lRadiiWriteArray[id] = (1 - pAlpha) * lRadiiReadArray[id]
-                             + pAlpha * lTargetRadiiArray[id];
+      final float lRadius = (1 - pAlpha) * lRadiiArray[id]
+                            + pAlpha * lTargetRadiiArray[id];
+      lRadiiArray[id] = lRadius;
+
+      lSumOfRadii += lRadius;
+      lSumOfVolumes += l3D ? lRadius * lRadius * lRadius
+                           : lRadius * lRadius;
+      if (lTargetRadiiArray[id] > 0)
+        lMaximalDeviation =
+                          Math.max(lMaximalDeviation,
+                                   Math.abs(lRadius - lTargetRadiiArray[id])
+                                                    / lTargetRadiiArray[id]);
     }
 
-    mRadii.swap();
+    mStatisticsCollector.setRadiusStatistics(lNumberOfParticles,
+                                             lNumberOfParticles == 0 ? 0
+                                                                     : (float) (lSumOfRadii
+                                                                                / lNumberOfParticles),
+                                             (float) ((l3D ? 4 * Math.PI
+                                                             / 3
+                                                           : Math.PI)
+                                                      * lSumOfVolumes),
+                                             lMaximalDeviation);
   }
 
   /**
@@ -238,6 +927,73 @@ public class TissueDynamics extends ParticleSystem
     return mParticleViewer3D;
   }
 
+  /**
+   * Inserts a pipeline stage that applies an operator to a set of cell
+   * properties every 'period' steps. The operator's time step multiplier is set
+   * to the period so that its dynamics keep the same pace: slow-changing
+   * properties can be updated less often than the mechanics.
+   * 
+   * @param pExistingStageName
+   *          name of the stage before which the new stage is inserted
+   * @param pName
+   *          new stage name
+   * @param pPeriod
+   *          period in steps
+   * @param pOperator
+   *          operator
+   * @param pCellProperties
+   *          a list of cell properties
+   * @return new stage
+   */
+  @SuppressWarnings("unchecked")
+  public <CP extends CellProperty> PipelineStage addOperatorStage(String pExistingStageName,
+                                                                  String pName,
+                                                                  int pPeriod,
+                                                                  CellPropertyOperatorInterface<CP> pOperator,
+                                                                  CP... pCellProperties)
+  {
+    PipelineStage lStage =
+                         mPipeline.addStageBefore(pExistingStageName,
+                                                  pName,
+                                                  s -> applyOperator(pOperator,
+                                                                     pCellProperties));
+    mOperatorStageMap.put(lStage, pOperator);
+    setOperatorStagePeriod(pName, pOperator, pPeriod);
+    return lStage;
+  }
+
+  /**
+   * Changes the period of a stage that applies an operator, and sets the
+   * operator's time step multiplier accordingly.
+   * 
+   * @param pStageName
+   *          stage name
+   * @param pOperator
+   *          operator applied by the stage
+   * @param pPeriod
+   *          period in steps
+   */
+  public void setOperatorStagePeriod(String pStageName,
+                                     CellPropertyOperatorInterface<?> pOperator,
+                                     int pPeriod)
+  {
+    mPipeline.getStage(pStageName).setPeriod(pPeriod);
+    pOperator.setTimeStepMultiplier(pPeriod);
+  }
+
+  /**
+   * Returns the operator applied by a given stage, or null if the stage does
+   * not apply an operator.
+   * 
+   * @param pStageName
+   *          stage name
+   * @return operator or null
+   */
+  public CellPropertyOperatorInterface<?> getStageOperator(String pStageName)
+  {
+    return mOperatorStageMap.get(mPipeline.getStage(pStageName));
+  }
+
   /**
    * Applies a single simulation step for an operator and a set of cell
    * properties.
@@ -273,7 +1029,11 @@ public class TissueDynamics extends ParticleSystem
                                               CellPropertyOperatorInterface<CP> pOperator,
                                               CP... pCellProperties)
   {
-    pOperator.apply(pBeginId, pEndId, this, pCellProperties);
+    pOperator.apply(pBeginId,
+                    pEndId,
+                    this,
+                    mParallelOperators,
+                    pCellProperties);
   }
 
 }
@@ -0,0 +1,461 @@
+package simbryo.dynamics.tissue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import simbryo.dynamics.tissue.cellprop.CellProperty;
+import simbryo.util.DoubleBufferingFloatArray;
+
+/**
+ * Compact binary snapshots of tissues. Contrary to Java serialization, only the
+ * live particles are written: positions, velocities, radii, target radii,
+ * species, the current values of all cell properties, and subclass specific
+ * state (see TissueDynamics.writeSnapshotState). Data is written as
+ * little-endian primitive blocks, to a file through a file channel or to a
+ * buffer in memory, optionally compressed with a fast deflater. Snapshots are
+ * restored into a tissue of the same class and configuration, freshly
+ * constructed, which rebuilds everything that is not state: force fields,
+ * operators and pipeline. The header stores a hash of the class name so that
+ * snapshots of another tissue class are rejected, and all header fields are
+ * checked before anything is restored, so that a corrupt snapshot leaves the
+ * tissue untouched. Previous buffers are restored to the current values.
+ *
+ * @author royer
+ */
+public class TissueSnapshot
+{
+  /**
+   * Magic number at the beginning of snapshot files: 'SBSN'
+   */
+  public static final int cMagic = 0x5342534E;
+
+  /**
+   * Current version of the snapshot format.
+   */
+  public static final int cVersion = 2;
+
+  private static final int cCompressedFlag = 1;
+
+  private static final int cHeaderLength = 5 * 4 + 8 + 4 * 4 + 2 * 4;
+
+  /**
+   * Saves a snapshot of a tissue to a file.
+   *
+   * @param pTissueDynamics
+   *          tissue dynamics
+   * @param pFile
+   *          file
+   * @param pCompress
+   *          true to compress the data
+   * @return number of bytes written
+   * @throws IOException
+   *           thrown if problem occurs while writing file
+   */
+  public static long save(TissueDynamics pTissueDynamics,
+                          File pFile,
+                          boolean pCompress) throws IOException
+  {
+    ByteBuffer[] lBuffers = encode(pTissueDynamics, pCompress);
+
+    File lParentFile = pFile.getAbsoluteFile().getParentFile();
+    if (lParentFile != null)
+      lParentFile.mkdirs();
+    try (FileChannel lFileChannel =
+                                  FileChannel.open(pFile.toPath(),
+                                                   StandardOpenOption.CREATE,
+                                                   StandardOpenOption.WRITE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      long lNumberOfBytes = lBuffers[0].remaining()
+                            + lBuffers[1].remaining();
+      while (lBuffers[0].hasRemaining() || lBuffers[1].hasRemaining())
+        lFileChannel.write(lBuffers);
+      return lNumberOfBytes;
+    }
+  }
+
+  /**
+   * Saves a snapshot of a tissue to a buffer in memory, for example to hand a
+   * state over to another tissue without going through the file system.
+   *
+   * @param pTissueDynamics
+   *          tissue dynamics
+   * @param pCompress
+   *          true to compress the data
+   * @return buffer containing the snapshot, ready to be read
+   */
+  public static ByteBuffer save(TissueDynamics pTissueDynamics,
+                                boolean pCompress)
+  {
+    ByteBuffer[] lBuffers = encode(pTissueDynamics, pCompress);
+    ByteBuffer lSnapshot = ByteBuffer.allocate(lBuffers[0].remaining()
+                                               + lBuffers[1].remaining())
+                                     .order(ByteOrder.LITTLE_ENDIAN);
+    lSnapshot.put(lBuffers[0]).put(lBuffers[1]);
+    lSnapshot.flip();
+    return lSnapshot;
+  }
+
+  /**
+   * Restores a tissue from a snapshot file. The tissue must be of the same
+   * class and configuration as the tissue saved, typically freshly
+   * constructed.
+   *
+   * @param pFile
+   *          file
+   * @param pTissueDynamics
+   *          tissue dynamics to restore into
+   * @throws IOException
+   *           thrown if problem occurs while reading file, or if the file is
+   *           not a valid snapshot
+   */
+  public static void load(File pFile,
+                          TissueDynamics pTissueDynamics) throws IOException
+  {
+    ByteBuffer lBuffer;
+    try (FileChannel lFileChannel = FileChannel.open(pFile.toPath(),
+                                                     StandardOpenOption.READ))
+    {
+      long lSize = lFileChannel.size();
+      if (lSize > Integer.MAX_VALUE)
+        throw new IOException("Snapshot file too large: " + pFile);
+      lBuffer = ByteBuffer.allocate((int) lSize);
+      while (lBuffer.hasRemaining())
+        if (lFileChannel.read(lBuffer) < 0)
+          throw new IOException("Truncated snapshot file: " + pFile);
+      lBuffer.flip();
+    }
+    load(lBuffer, pTissueDynamics);
+  }
+
+  /**
+   * Restores a tissue from a snapshot in a buffer, starting at the buffer's
+   * position, which is advanced past the snapshot. The tissue must be of the
+   * same class and configuration as the tissue saved, typically freshly
+   * constructed.
+   *
+   * @param pSnapshot
+   *          buffer containing the snapshot
+   * @param pTissueDynamics
+   *          tissue dynamics to restore into
+   * @throws IOException
+   *           thrown if the buffer does not contain a valid snapshot, in which
+   *           case the tissue is left untouched
+   */
+  public static void load(ByteBuffer pSnapshot,
+                          TissueDynamics pTissueDynamics) throws IOException
+  {
+    ByteBuffer lBuffer = pSnapshot.slice().order(ByteOrder.LITTLE_ENDIAN);
+    if (lBuffer.remaining() < cHeaderLength
+        || lBuffer.getInt() != cMagic)
+      throw new IOException("Not a tissue snapshot");
+    int lVersion = lBuffer.getInt();
+    if (lVersion != cVersion)
+      throw new IOException("Unsupported snapshot version: " + lVersion);
+    int lFlags = lBuffer.getInt();
+    int lClassHash = lBuffer.getInt();
+
+    final int lDimension = lBuffer.getInt();
+    final long lTimeStepIndex = lBuffer.getLong();
+    final int lNumberOfParticles = lBuffer.getInt();
+    final int lMaxNumberOfParticles = lBuffer.getInt();
+    final int lStateLength = lBuffer.getInt();
+    final int lNumberOfProperties = lBuffer.getInt();
+
+    final List<CellProperty> lPropertyList =
+                                           pTissueDynamics.getCellPropertyArena()
+                                                          .getProperties();
+    if (lClassHash != getClassHash(pTissueDynamics)
+        || lDimension != pTissueDynamics.getDimension()
+        || lMaxNumberOfParticles != pTissueDynamics.getMaxNumberOfParticles()
+        || lNumberOfProperties != lPropertyList.size()
+        || lStateLength != pTissueDynamics.getSnapshotStateLength())
+      throw new IllegalArgumentException("Snapshot does not match tissue: "
+                                         + pTissueDynamics.getClass()
+                                                          .getSimpleName());
+    if (lBuffer.remaining() < 4 * lNumberOfProperties + 2 * 4)
+      throw new IOException("Truncated snapshot header");
+    long lPropertyLength = 0;
+    for (CellProperty lCellProperty : lPropertyList)
+    {
+      if (lBuffer.getInt() != lCellProperty.getDimension())
+        throw new IllegalArgumentException("Snapshot cell property dimensions do not match tissue");
+      lPropertyLength += lCellProperty.getDimension();
+    }
+
+    final int lDataLength = lBuffer.getInt();
+    final int lStoredLength = lBuffer.getInt();
+    final boolean lCompressed = (lFlags & cCompressedFlag) != 0;
+    if (lNumberOfParticles < 0
+        || lNumberOfParticles > lMaxNumberOfParticles)
+      throw new IOException("Invalid number of particles in snapshot: "
+                            + lNumberOfParticles);
+    if (lDataLength != 4L * lNumberOfParticles
+                       * (2 * lDimension + 2 + lPropertyLength)
+                       + lNumberOfParticles
+                       + lStateLength)
+      throw new IOException("Invalid snapshot data length: " + lDataLength);
+    if (lStoredLength < 0
+        || (!lCompressed && lStoredLength != lDataLength))
+      throw new IOException("Invalid snapshot stored length: "
+                            + lStoredLength);
+    if (lBuffer.remaining() < lStoredLength)
+      throw new IOException("Truncated snapshot");
+    lBuffer.limit(lBuffer.position() + lStoredLength);
+
+    ByteBuffer lData = lBuffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    if (lCompressed)
+      lData = inflate(lData, lDataLength);
+
+    getFloats(lData,
+              pTissueDynamics.getPositions(),
+              lNumberOfParticles * lDimension);
+    getFloats(lData,
+              pTissueDynamics.getVelocities(),
+              lNumberOfParticles * lDimension);
+    getFloats(lData, pTissueDynamics.getRadii(), lNumberOfParticles);
+    getFloats(lData,
+              pTissueDynamics.getTargetRadii(),
+              lNumberOfParticles);
+    lData.get(pTissueDynamics.getSpeciesArray(), 0, lNumberOfParticles);
+    for (CellProperty lCellProperty : lPropertyList)
+      getProperty(lData, lCellProperty, lNumberOfParticles);
+
+    pTissueDynamics.restoreSnapshot(lNumberOfParticles, lTimeStepIndex);
+    pTissueDynamics.readSnapshotState(lData.slice()
+                                           .order(ByteOrder.LITTLE_ENDIAN));
+    pTissueDynamics.updateNeighborhoodGrid();
+    pSnapshot.position(pSnapshot.position() + lBuffer.limit());
+  }
+
+  /**
+   * Encodes a snapshot of a tissue as a header and a data buffer, both ready to
+   * be read.
+   *
+   * @param pTissueDynamics
+   *          tissue dynamics
+   * @param pCompress
+   *          true to compress the data
+   * @return header and data buffers
+   */
+  private static ByteBuffer[] encode(TissueDynamics pTissueDynamics,
+                                     boolean pCompress)
+  {
+    final int lDimension = pTissueDynamics.getDimension();
+    final int lNumberOfParticles =
+                                 pTissueDynamics.getNumberOfParticles();
+    final List<CellProperty> lPropertyList =
+                                           pTissueDynamics.getCellPropertyArena()
+                                                          .getProperties();
+    final int lStateLength = pTissueDynamics.getSnapshotStateLength();
+
+    int lPropertyLength = 0;
+    for (CellProperty lCellProperty : lPropertyList)
+      lPropertyLength += lCellProperty.getDimension();
+
+    final int lDataLength = 4 * lNumberOfParticles
+                            * (2 * lDimension + 2 + lPropertyLength)
+                            + lNumberOfParticles
+                            + lStateLength;
+    ByteBuffer lData = ByteBuffer.allocate(lDataLength)
+                                 .order(ByteOrder.LITTLE_ENDIAN);
+
+    putFloats(lData,
+              pTissueDynamics.getPositions().getCurrentArray(),
+              0,
+              lNumberOfParticles * lDimension);
+    putFloats(lData,
+              pTissueDynamics.getVelocities().getCurrentArray(),
+              0,
+              lNumberOfParticles * lDimension);
+    putFloats(lData,
+              pTissueDynamics.getRadii().getCurrentArray(),
+              0,
+              lNumberOfParticles);
+    putFloats(lData,
+              pTissueDynamics.getTargetRadii().getCurrentArray(),
+              0,
+              lNumberOfParticles);
+    lData.put(pTissueDynamics.getSpeciesArray(), 0, lNumberOfParticles);
+    for (CellProperty lCellProperty : lPropertyList)
+      putProperty(lData, lCellProperty, lNumberOfParticles);
+
+    ByteBuffer lState = lData.slice().order(ByteOrder.LITTLE_ENDIAN);
+    pTissueDynamics.writeSnapshotState(lState);
+    if (lState.position() != lStateLength)
+      throw new IllegalStateException("Snapshot state length mismatch: expected "
+                                      + lStateLength
+                                      + " bytes, written "
+                                      + lState.position());
+    lData.position(lDataLength);
+    lData.flip();
+
+    if (pCompress)
+      lData = deflate(lData);
+
+    ByteBuffer lHeader =
+                       ByteBuffer.allocate(cHeaderLength
+                                           + 4 * lPropertyList.size())
+                                 .order(ByteOrder.LITTLE_ENDIAN);
+    lHeader.putInt(cMagic);
+    lHeader.putInt(cVersion);
+    lHeader.putInt(pCompress ? cCompressedFlag : 0);
+    lHeader.putInt(getClassHash(pTissueDynamics));
+    lHeader.putInt(lDimension);
+    lHeader.putLong(pTissueDynamics.getTimeStepIndex());
+    lHeader.putInt(lNumberOfParticles);
+    lHeader.putInt(pTissueDynamics.getMaxNumberOfParticles());
+    lHeader.putInt(lStateLength);
+    lHeader.putInt(lPropertyList.size());
+    for (CellProperty lCellProperty : lPropertyList)
+      lHeader.putInt(lCellProperty.getDimension());
+    lHeader.putInt(lDataLength);
+    lHeader.putInt(lData.remaining());
+    lHeader.flip();
+
+    return new ByteBuffer[]
+    { lHeader, lData };
+  }
+
+  private static int getClassHash(TissueDynamics pTissueDynamics)
+  {
+    return pTissueDynamics.getClass().getName().hashCode();
+  }
+
+  private static void getFloats(ByteBuffer pBuffer,
+                                DoubleBufferingFloatArray pArray,
+                                int pLength)
+  {
+    pBuffer.asFloatBuffer().get(pArray.getCurrentArray(), 0, pLength);
+    pBuffer.position(pBuffer.position() + 4 * pLength);
+    pArray.copyDefault(0, pLength);
+  }
+
+  private static void putProperty(ByteBuffer pBuffer,
+                                  CellProperty pCellProperty,
+                                  int pNumberOfParticles)
+  {
+    final int lDimension = pCellProperty.getDimension();
+    final float[] lArray = pCellProperty.getCurrentArray();
+    if (pCellProperty.getStep() == lDimension)
+    {
+      putFloats(pBuffer,
+                lArray,
+                pCellProperty.getIndex(0),
+                pNumberOfParticles * lDimension);
+      return;
+    }
+    for (int id = 0; id < pNumberOfParticles; id++)
+      putFloats(pBuffer, lArray, pCellProperty.getIndex(id), lDimension);
+  }
+
+  private static void getProperty(ByteBuffer pBuffer,
+                                  CellProperty pCellProperty,
+                                  int pNumberOfParticles)
+  {
+    final int lDimension = pCellProperty.getDimension();
+    final float[] lArray = pCellProperty.getCurrentArray();
+    if (pCellProperty.getStep() == lDimension)
+      getFloats(pBuffer,
+                lArray,
+                pCellProperty.getIndex(0),
+                pNumberOfParticles * lDimension);
+    else
+      for (int id = 0; id < pNumberOfParticles; id++)
+        getFloats(pBuffer,
+                  lArray,
+                  pCellProperty.getIndex(id),
+                  lDimension);
+    pCellProperty.copyDefault(0, pNumberOfParticles);
+  }
+
+  private static void putFloats(ByteBuffer pBuffer,
+                                float[] pArray,
+                                int pOffset,
+                                int pLength)
+  {
+    pBuffer.asFloatBuffer().put(pArray, pOffset, pLength);
+    pBuffer.position(pBuffer.position() + 4 * pLength);
+  }
+
+  private static void getFloats(ByteBuffer pBuffer,
+                                float[] pArray,
+                                int pOffset,
+                                int pLength)
+  {
+    pBuffer.asFloatBuffer().get(pArray, pOffset, pLength);
+    pBuffer.position(pBuffer.position() + 4 * pLength);
+  }
+
+  private static ByteBuffer deflate(ByteBuffer pData)
+  {
+    Deflater lDeflater = new Deflater(Deflater.BEST_SPEED);
+    try
+    {
+      lDeflater.setInput(pData.array(),
+                         pData.arrayOffset() + pData.position(),
+                         pData.remaining());
+      lDeflater.finish();
+      byte[] lCompressed = new byte[pData.remaining() / 2 + 64];
+      int lLength = 0;
+      while (!lDeflater.finished())
+      {
+        if (lLength == lCompressed.length)
+          lCompressed = Arrays.copyOf(lCompressed,
+                                                2 * lCompressed.length);
+        lLength += lDeflater.deflate(lCompressed,
+                                     lLength,
+                                     lCompressed.length - lLength);
+      }
+      return ByteBuffer.wrap(lCompressed, 0, lLength);
+    }
+    finally
+    {
+      lDeflater.end();
+    }
+  }
+
+  private static ByteBuffer inflate(ByteBuffer pData,
+                                    int pLength) throws IOException
+  {
+    Inflater lInflater = new Inflater();
+    try
+    {
+      byte[] lCompressed = new byte[pData.remaining()];
+      pData.get(lCompressed);
+      lInflater.setInput(lCompressed);
+      byte[] lData = new byte[pLength];
+      int lLength = 0;
+      while (lLength < pLength && !lInflater.finished())
+      {
+        int lInflated = lInflater.inflate(lData,
+                                          lLength,
+                                          pLength - lLength);
+        if (lInflated == 0 && lInflater.needsInput())
+          break;
+        lLength += lInflated;
+      }
+      if (lLength != pLength)
+        throw new IOException("Corrupted snapshot data");
+      return ByteBuffer.wrap(lData).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    catch (DataFormatException e)
+    {
+      throw new IOException("Corrupted snapshot data", e);
+    }
+    finally
+    {
+      lInflater.end();
+    }
+  }
+
+}
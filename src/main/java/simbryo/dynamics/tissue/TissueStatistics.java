@@ -0,0 +1,164 @@
+package simbryo.dynamics.tissue;
+
+import java.io.Serializable;
+
+/**
+ * Immutable record of aggregate statistics of a tissue at a given time step.
+ * Records are published by a tissue statistics collector, the aggregates are
+ * computed during the simulation step itself, before structural changes (cell
+ * divisions and removals) of that step are applied.
+ *
+ * @author royer
+ */
+public final class TissueStatistics implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private final long mTimeStepIndex;
+  private final int mNumberOfCells;
+  private final float mMeanRadius;
+  private final float mDensity;
+  private final float mMeanNumberOfNeighbors;
+  private final float mKineticEnergy;
+  private final float mMaximalOverlap;
+  private final float mMaximalRadiusDeviation;
+
+  /**
+   * Instantiates a tissue statistics record.
+   *
+   * @param pTimeStepIndex
+   *          time step index
+   * @param pNumberOfCells
+   *          number of cells
+   * @param pMeanRadius
+   *          mean cell radius
+   * @param pDensity
+   *          fraction of the unit domain covered by cells
+   * @param pMeanNumberOfNeighbors
+   *          mean number of cells in contact with each cell
+   * @param pKineticEnergy
+   *          kinetic energy
+   * @param pMaximalOverlap
+   *          maximal relative overlap between two cells
+   * @param pMaximalRadiusDeviation
+   *          maximal relative deviation of radii from target radii
+   */
+  public TissueStatistics(long pTimeStepIndex,
+                          int pNumberOfCells,
+                          float pMeanRadius,
+                          float pDensity,
+                          float pMeanNumberOfNeighbors,
+                          float pKineticEnergy,
+                          float pMaximalOverlap,
+                          float pMaximalRadiusDeviation)
+  {
+    super();
+    mTimeStepIndex = pTimeStepIndex;
+    mNumberOfCells = pNumberOfCells;
+    mMeanRadius = pMeanRadius;
+    mDensity = pDensity;
+    mMeanNumberOfNeighbors = pMeanNumberOfNeighbors;
+    mKineticEnergy = pKineticEnergy;
+    mMaximalOverlap = pMaximalOverlap;
+    mMaximalRadiusDeviation = pMaximalRadiusDeviation;
+  }
+
+  /**
+   * Returns the time step index.
+   *
+   * @return time step index
+   */
+  public long getTimeStepIndex()
+  {
+    return mTimeStepIndex;
+  }
+
+  /**
+   * Returns the number of cells.
+   *
+   * @return number of cells
+   */
+  public int getNumberOfCells()
+  {
+    return mNumberOfCells;
+  }
+
+  /**
+   * Returns the mean cell radius.
+   *
+   * @return mean radius
+   */
+  public float getMeanRadius()
+  {
+    return mMeanRadius;
+  }
+
+  /**
+   * Returns the density: the sum of the cell volumes (areas in 2D) divided by
+   * the volume of the unit domain.
+   *
+   * @return density
+   */
+  public float getDensity()
+  {
+    return mDensity;
+  }
+
+  /**
+   * Returns the mean number of cells in contact with each cell.
+   *
+   * @return mean number of neighbors
+   */
+  public float getMeanNumberOfNeighbors()
+  {
+    return mMeanNumberOfNeighbors;
+  }
+
+  /**
+   * Returns the kinetic energy: half the sum of the squared velocities of all
+   * cells, cells having unit mass.
+   *
+   * @return kinetic energy
+   */
+  public float getKineticEnergy()
+  {
+    return mKineticEnergy;
+  }
+
+  /**
+   * Returns the maximal overlap between two cells, relative to the sum of their
+   * radii.
+   *
+   * @return maximal relative overlap
+   */
+  public float getMaximalOverlap()
+  {
+    return mMaximalOverlap;
+  }
+
+  /**
+   * Returns the maximal deviation of the cell radii from their target radii,
+   * relative to the target radii.
+   *
+   * @return maximal relative radius deviation
+   */
+  public float getMaximalRadiusDeviation()
+  {
+    return mMaximalRadiusDeviation;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("TissueStatistics [t=%d, n=%d, r=%g, density=%g, neighbors=%g, energy=%g, overlap=%g, radius deviation=%g]",
+                         mTimeStepIndex,
+                         mNumberOfCells,
+                         mMeanRadius,
+                         mDensity,
+                         mMeanNumberOfNeighbors,
+                         mKineticEnergy,
+                         mMaximalOverlap,
+                         mMaximalRadiusDeviation);
+  }
+
+}
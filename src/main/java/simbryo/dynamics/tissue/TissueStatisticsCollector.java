@@ -0,0 +1,218 @@
+package simbryo.dynamics.tissue;
+
+import java.io.Serializable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tissue statistics collector. Monitoring a simulation does not require copying
+ * the particle arrays: the aggregates (cell count, mean radius, density, number
+ * of neighbors, kinetic energy, overlap and radius deviation) are accumulated
+ * by the loops that the simulation step runs anyway, the radius smoothing, the
+ * collision and the integration stages, and published as an immutable record
+ * at the end of the step. Statistics are collected every given number of steps,
+ * on other steps the loops are left untouched. Collection is disabled by
+ * default. Fast-forwarded steps do not run these loops and are thus not
+ * reported.
+ *
+ * @author royer
+ */
+public class TissueStatisticsCollector implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private volatile int mPeriod = 0;
+
+  private final CopyOnWriteArrayList<TissueStatisticsListenerInterface> mListeners =
+                                                                                 new CopyOnWriteArrayList<>();
+
+  private volatile TissueStatistics mLastStatistics;
+
+  private volatile boolean mCollecting;
+  private long mTimeStepIndex;
+  private int mNumberOfCells;
+  private float mMeanRadius;
+  private float mDensity;
+  private int mNumberOfContacts;
+  private float mKineticEnergy;
+  private float mMaximalOverlap;
+  private float mMaximalRadiusDeviation;
+
+  /**
+   * Instantiates a disabled tissue statistics collector.
+   */
+  public TissueStatisticsCollector()
+  {
+    super();
+  }
+
+  /**
+   * Returns the collection period in steps, zero if collection is disabled.
+   *
+   * @return period
+   */
+  public int getPeriod()
+  {
+    return mPeriod;
+  }
+
+  /**
+   * Sets the collection period: statistics are collected at each step which
+   * index is a multiple of the period. Use 1 to collect at every step, and zero
+   * to disable collection.
+   *
+   * @param pPeriod
+   *          period in steps, zero to disable
+   */
+  public void setPeriod(int pPeriod)
+  {
+    if (pPeriod < 0)
+      throw new IllegalArgumentException("Period must be positive or zero");
+    mPeriod = pPeriod;
+  }
+
+  /**
+   * Adds a listener notified of each published statistics record.
+   *
+   * @param pListener
+   *          listener
+   */
+  public void addListener(TissueStatisticsListenerInterface pListener)
+  {
+    mListeners.add(pListener);
+  }
+
+  /**
+   * Removes a listener.
+   *
+   * @param pListener
+   *          listener
+   */
+  public void removeListener(TissueStatisticsListenerInterface pListener)
+  {
+    mListeners.remove(pListener);
+  }
+
+  /**
+   * Returns the last published statistics record, or null if none has been
+   * published yet.
+   *
+   * @return last statistics
+   */
+  public TissueStatistics getLastStatistics()
+  {
+    return mLastStatistics;
+  }
+
+  /**
+   * Returns true if statistics are being collected during the current step.
+   *
+   * @return true if collecting
+   */
+  public boolean isCollecting()
+  {
+    return mCollecting;
+  }
+
+  /**
+   * Begins a simulation step: statistics are collected during this step if its
+   * index is a multiple of the period.
+   *
+   * @param pTimeStepIndex
+   *          time step index
+   * @param pNumberOfCells
+   *          number of cells at the beginning of the step
+   * @return true if statistics are collected during this step
+   */
+  boolean begin(long pTimeStepIndex, int pNumberOfCells)
+  {
+    final int lPeriod = mPeriod;
+    mCollecting = lPeriod > 0 && pTimeStepIndex % lPeriod == 0;
+    if (mCollecting)
+    {
+      mTimeStepIndex = pTimeStepIndex;
+      mNumberOfCells = pNumberOfCells;
+      mMeanRadius = 0;
+      mDensity = 0;
+      mNumberOfContacts = 0;
+      mKineticEnergy = 0;
+      mMaximalOverlap = 0;
+      mMaximalRadiusDeviation = 0;
+    }
+    return mCollecting;
+  }
+
+  /**
+   * Records the radius statistics of the current step.
+   *
+   * @param pNumberOfCells
+   *          number of cells over which the statistics were accumulated
+   * @param pMeanRadius
+   *          mean radius
+   * @param pDensity
+   *          density
+   * @param pMaximalRadiusDeviation
+   *          maximal relative radius deviation
+   */
+  void setRadiusStatistics(int pNumberOfCells,
+                           float pMeanRadius,
+                           float pDensity,
+                           float pMaximalRadiusDeviation)
+  {
+    mNumberOfCells = pNumberOfCells;
+    mMeanRadius = pMeanRadius;
+    mDensity = pDensity;
+    mMaximalRadiusDeviation = pMaximalRadiusDeviation;
+  }
+
+  /**
+   * Records the contact statistics of the current step.
+   *
+   * @param pNumberOfContacts
+   *          number of pairs of cells in contact
+   * @param pMaximalOverlap
+   *          maximal relative overlap
+   */
+  void setContactStatistics(int pNumberOfContacts, float pMaximalOverlap)
+  {
+    mNumberOfContacts = pNumberOfContacts;
+    mMaximalOverlap = pMaximalOverlap;
+  }
+
+  /**
+   * Records the kinetic energy of the current step.
+   *
+   * @param pKineticEnergy
+   *          kinetic energy
+   */
+  void setKineticEnergy(float pKineticEnergy)
+  {
+    mKineticEnergy = pKineticEnergy;
+  }
+
+  /**
+   * Ends a simulation step: if statistics were collected during this step, a
+   * record is published to the listeners.
+   */
+  void end()
+  {
+    if (!mCollecting)
+      return;
+    mCollecting = false;
+
+    TissueStatistics lTissueStatistics =
+                                       new TissueStatistics(mTimeStepIndex,
+                                                            mNumberOfCells,
+                                                            mMeanRadius,
+                                                            mDensity,
+                                                            mNumberOfCells == 0 ? 0
+                                                                                : 2f * mNumberOfContacts
+                                                                                  / mNumberOfCells,
+                                                            mKineticEnergy,
+                                                            mMaximalOverlap,
+                                                            mMaximalRadiusDeviation);
+    mLastStatistics = lTissueStatistics;
+    for (TissueStatisticsListenerInterface lListener : mListeners)
+      lListener.notifyStatistics(lTissueStatistics);
+  }
+
+}
@@ -0,0 +1,23 @@
+package simbryo.dynamics.tissue;
+
+import java.io.Serializable;
+
+/**
+ * Listener notified of tissue statistics as they are published. Listeners are
+ * serializable so that they can be saved and forked together with the tissue
+ * that owns them.
+ *
+ * @author royer
+ */
+@FunctionalInterface
+public interface TissueStatisticsListenerInterface extends Serializable
+{
+  /**
+   * Called with each published statistics record, on the simulation thread
+   * and at the end of the corresponding simulation step.
+   * 
+   * @param pTissueStatistics
+   *          tissue statistics
+   */
+  void notifyStatistics(TissueStatistics pTissueStatistics);
+}
@@ -0,0 +1,396 @@
+package simbryo.dynamics.tissue.cellprop;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import simbryo.util.serialization.StructuralCopy;
+
+/**
+ * Cell property arena. All cell properties of a tissue are packed into one
+ * contiguous block of floats (two blocks, for double-buffering). Each property
+ * is a view on a set of columns of the arena. The arena can be laid out in
+ * columns, in which case the values of each property are contiguous, or
+ * interleaved, in which case the values of all properties of a cell are
+ * contiguous. Copying, cloning and snapshotting cells are block copies, a
+ * single one per block for the interleaved layout.
+ *
+ * @author royer
+ */
+public class CellPropertyArena implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Arena layouts.
+   */
+  public enum Layout
+  {
+   /**
+    * Values of each property are contiguous: property columns follow each
+    * other.
+    */
+   Columns,
+
+   /**
+    * Values of all properties of a cell are contiguous.
+    */
+   Interleaved
+  }
+
+  private final int mCapacity;
+  private final ArrayList<CellProperty> mPropertyList = new ArrayList<>();
+  private Layout mLayout;
+  private int mStride;
+
+  private transient float[][] mBlocks;
+
+  /**
+   * Instantiates an empty arena for a given maximal number of cells.
+   *
+   * @param pCapacity
+   *          maximal number of cells
+   * @param pLayout
+   *          layout
+   */
+  public CellPropertyArena(int pCapacity, Layout pLayout)
+  {
+    super();
+    mCapacity = pCapacity;
+    mLayout = pLayout;
+    mBlocks = new float[2][0];
+  }
+
+  /**
+   * Returns the maximal number of cells.
+   *
+   * @return capacity
+   */
+  public int getCapacity()
+  {
+    return mCapacity;
+  }
+
+  /**
+   * Returns the layout of this arena.
+   *
+   * @return layout
+   */
+  public Layout getLayout()
+  {
+    return mLayout;
+  }
+
+  /**
+   * Changes the layout of this arena, values are preserved.
+   *
+   * @param pLayout
+   *          new layout
+   */
+  public void setLayout(Layout pLayout)
+  {
+    if (pLayout == mLayout)
+      return;
+    float[][] lOldBlocks = mBlocks;
+    int[] lOldBase = getBases();
+    int[] lOldStep = getSteps();
+    mLayout = pLayout;
+    relayout(lOldBlocks, lOldBase, lOldStep);
+  }
+
+  /**
+   * Returns the number of floats per cell, summed over all properties.
+   *
+   * @return stride
+   */
+  public int getStride()
+  {
+    return mStride;
+  }
+
+  /**
+   * Returns the properties registered with this arena, in registration order.
+   *
+   * @return list of properties
+   */
+  public List<CellProperty> getProperties()
+  {
+    return Collections.unmodifiableList(mPropertyList);
+  }
+
+  /**
+   * Returns one of the two blocks of this arena.
+   *
+   * @param pBlockIndex
+   *          block index: 0 or 1
+   * @return block
+   */
+  public float[] getBlock(int pBlockIndex)
+  {
+    return mBlocks[pBlockIndex];
+  }
+
+  /**
+   * Registers a cell property, the arena grows to accommodate its columns.
+   *
+   * @param pCellProperty
+   *          cell property
+   */
+  void register(CellProperty pCellProperty)
+  {
+    float[][] lOldBlocks = mBlocks;
+    int[] lOldBase = getBases();
+    int[] lOldStep = getSteps();
+
+    pCellProperty.setColumn(mStride);
+    mPropertyList.add(pCellProperty);
+    mStride += pCellProperty.getDimension();
+
+    relayout(lOldBlocks, lOldBase, lOldStep);
+  }
+
+  private void relayout(float[][] pOldBlocks,
+                        int[] pOldBase,
+                        int[] pOldStep)
+  {
+    mBlocks = new float[2][mCapacity * mStride];
+    updateViews();
+
+    for (int p = 0; p < pOldBase.length; p++)
+    {
+      CellProperty lCellProperty = mPropertyList.get(p);
+      int lDimension = lCellProperty.getDimension();
+      for (int b = 0; b < 2; b++)
+        for (int id = 0; id < mCapacity; id++)
+          System.arraycopy(pOldBlocks[b],
+                           pOldBase[p] + id * pOldStep[p],
+                           mBlocks[b],
+                           lCellProperty.getIndex(id),
+                           lDimension);
+    }
+  }
+
+  private void updateViews()
+  {
+    for (CellProperty lCellProperty : mPropertyList)
+    {
+      int lColumn = lCellProperty.getColumn();
+      if (mLayout == Layout.Columns)
+        lCellProperty.setLayout(lColumn * mCapacity,
+                                lCellProperty.getDimension());
+      else
+        lCellProperty.setLayout(lColumn, mStride);
+    }
+  }
+
+  private int[] getBases()
+  {
+    int[] lBases = new int[mPropertyList.size()];
+    for (int p = 0; p < lBases.length; p++)
+      lBases[p] = mPropertyList.get(p).getIndex(0);
+    return lBases;
+  }
+
+  private int[] getSteps()
+  {
+    int[] lSteps = new int[mPropertyList.size()];
+    for (int p = 0; p < lSteps.length; p++)
+      lSteps[p] = mPropertyList.get(p).getStep();
+    return lSteps;
+  }
+
+  /**
+   * Copies all property values, in both blocks, from one cell to another.
+   *
+   * @param pSourceId
+   *          source cell id
+   * @param pDestinationId
+   *          destination cell id
+   */
+  public void copyParticle(int pSourceId, int pDestinationId)
+  {
+    copyParticles(pSourceId, pDestinationId, 1);
+  }
+
+  /**
+   * Copies all property values, in both blocks, from a range of cells to
+   * another range of cells.
+   *
+   * @param pSourceBeginId
+   *          first source cell id
+   * @param pDestinationBeginId
+   *          first destination cell id
+   * @param pNumberOfParticles
+   *          number of cells
+   */
+  public void copyParticles(int pSourceBeginId,
+                            int pDestinationBeginId,
+                            int pNumberOfParticles)
+  {
+    for (int b = 0; b < 2; b++)
+    {
+      final float[] lBlock = mBlocks[b];
+      if (mLayout == Layout.Interleaved)
+        System.arraycopy(lBlock,
+                         pSourceBeginId * mStride,
+                         lBlock,
+                         pDestinationBeginId * mStride,
+                         pNumberOfParticles * mStride);
+      else
+        for (CellProperty lCellProperty : mPropertyList)
+          System.arraycopy(lBlock,
+                           lCellProperty.getIndex(pSourceBeginId),
+                           lBlock,
+                           lCellProperty.getIndex(pDestinationBeginId),
+                           pNumberOfParticles * lCellProperty.getDimension());
+    }
+  }
+
+  /**
+   * Returns a compact copy of the values, in both blocks, of the first cells.
+   * The snapshot is in the layout of this arena and can only be restored into
+   * an arena with the same properties and layout.
+   *
+   * @param pNumberOfParticles
+   *          number of cells
+   * @return snapshot
+   */
+  public float[] snapshot(int pNumberOfParticles)
+  {
+    final int lLength = pNumberOfParticles * mStride;
+    final float[] lSnapshot = new float[2 * lLength];
+    for (int b = 0; b < 2; b++)
+    {
+      if (mLayout == Layout.Interleaved)
+        System.arraycopy(mBlocks[b], 0, lSnapshot, b * lLength, lLength);
+      else
+        for (CellProperty lCellProperty : mPropertyList)
+          System.arraycopy(mBlocks[b],
+                           lCellProperty.getIndex(0),
+                           lSnapshot,
+                           b * lLength + lCellProperty.getColumn()
+                                         * pNumberOfParticles,
+                           pNumberOfParticles * lCellProperty.getDimension());
+    }
+    return lSnapshot;
+  }
+
+  /**
+   * Copies the values, in both blocks, of the first cells to another arena with
+   * the same properties, capacity and layout, typically a structural copy of
+   * this arena.
+   *
+   * @param pTarget
+   *          arena to copy to
+   * @param pNumberOfParticles
+   *          number of cells
+   */
+  public void copyTo(CellPropertyArena pTarget, int pNumberOfParticles)
+  {
+    if (pTarget.mCapacity != mCapacity || pTarget.mStride != mStride
+        || pTarget.mLayout != mLayout)
+      throw new IllegalArgumentException("Arenas do not match");
+    for (int b = 0; b < 2; b++)
+    {
+      if (mLayout == Layout.Interleaved)
+        System.arraycopy(mBlocks[b],
+                         0,
+                         pTarget.mBlocks[b],
+                         0,
+                         pNumberOfParticles * mStride);
+      else
+        for (CellProperty lCellProperty : mPropertyList)
+          System.arraycopy(mBlocks[b],
+                           lCellProperty.getIndex(0),
+                           pTarget.mBlocks[b],
+                           lCellProperty.getIndex(0),
+                           pNumberOfParticles * lCellProperty.getDimension());
+    }
+  }
+
+  /**
+   * Restores the values of the first cells from a snapshot.
+   *
+   * @param pSnapshot
+   *          snapshot
+   * @param pNumberOfParticles
+   *          number of cells in snapshot
+   */
+  public void restore(float[] pSnapshot, int pNumberOfParticles)
+  {
+    final int lLength = pNumberOfParticles * mStride;
+    if (pSnapshot.length != 2 * lLength)
+      throw new IllegalArgumentException("Snapshot length does not match arena");
+    for (int b = 0; b < 2; b++)
+    {
+      if (mLayout == Layout.Interleaved)
+        System.arraycopy(pSnapshot, b * lLength, mBlocks[b], 0, lLength);
+      else
+        for (CellProperty lCellProperty : mPropertyList)
+          System.arraycopy(pSnapshot,
+                           b * lLength + lCellProperty.getColumn()
+                                         * pNumberOfParticles,
+                           mBlocks[b],
+                           lCellProperty.getIndex(0),
+                           pNumberOfParticles * lCellProperty.getDimension());
+    }
+  }
+
+  /**
+   * Returns the number of cells that have at least one non-zero value in either
+   * block. Cells beyond this number are all zero.
+   *
+   * @return used number of cells
+   */
+  public int getUsedNumberOfParticles()
+  {
+    int lUsed = 0;
+    for (CellProperty lCellProperty : mPropertyList)
+    {
+      final int lDimension = lCellProperty.getDimension();
+      for (int b = 0; b < 2; b++)
+      {
+        final float[] lBlock = mBlocks[b];
+        for (int id = mCapacity - 1; id >= lUsed; id--)
+        {
+          final int lIndex = lCellProperty.getIndex(id);
+          boolean lNonZero = false;
+          for (int d = 0; d < lDimension; d++)
+            lNonZero |= lBlock[lIndex + d] != 0;
+          if (lNonZero)
+          {
+            lUsed = id + 1;
+            break;
+          }
+        }
+      }
+    }
+    return lUsed;
+  }
+
+  private void writeObject(ObjectOutputStream pObjectOutputStream) throws IOException
+  {
+    pObjectOutputStream.defaultWriteObject();
+    int lUsedNumberOfParticles =
+                               StructuralCopy.isSkipped(pObjectOutputStream,
+                                                        this) ? 0
+                                                              : getUsedNumberOfParticles();
+    pObjectOutputStream.writeInt(lUsedNumberOfParticles);
+    pObjectOutputStream.writeObject(snapshot(lUsedNumberOfParticles));
+  }
+
+  private void readObject(ObjectInputStream pObjectInputStream) throws IOException,
+                                                                ClassNotFoundException
+  {
+    pObjectInputStream.defaultReadObject();
+    mBlocks = new float[2][mCapacity * mStride];
+    int lUsedNumberOfParticles = pObjectInputStream.readInt();
+    float[] lSnapshot = (float[]) pObjectInputStream.readObject();
+    restore(lSnapshot, lUsedNumberOfParticles);
+  }
+
+}
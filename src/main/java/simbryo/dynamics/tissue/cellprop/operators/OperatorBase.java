@@ -1,10 +1,17 @@
 package simbryo.dynamics.tissue.cellprop.operators;
 
+import simbryo.dynamics.tissue.TissueDynamics;
 import simbryo.dynamics.tissue.cellprop.CellProperty;
+import simbryo.util.parallel.ParallelRange;
 
 /**
  * This base class implements common fields and methods required by all cell
- * property operators.
+ * property operators. A simulation step is split into three phases:
+ * beginStep() and endStep() are called once on the calling thread (for
+ * example to swap buffers), and applyRange() is called for each partition of
+ * the id range, possibly in parallel. Implementations of applyRange() must only
+ * write values for ids within their range and must use per-chunk scratch
+ * state.
  *
  * @author royer
  * @param <CP>
@@ -14,5 +21,160 @@ public abstract class OperatorBase<CP extends CellProperty> implements
                                   CellPropertyOperatorInterface<CP>
 {
   private static final long serialVersionUID = 1L;
-  // nothing yet
+
+  private static final int cMinChunkSize = 256;
+
+  private volatile int mTimeStepMultiplier = 1;
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void apply(int pBeginId,
+                    int pEndId,
+                    TissueDynamics pTissueDynamics,
+                    CP... pCellProperties)
+  {
+    apply(pBeginId, pEndId, pTissueDynamics, false, pCellProperties);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void apply(int pBeginId,
+                    int pEndId,
+                    TissueDynamics pTissueDynamics,
+                    boolean pParallel,
+                    CP... pCellProperties)
+  {
+    final float lNeighborhoodRadiusFactor =
+                                          getNeighborhoodRadiusFactor();
+    if (lNeighborhoodRadiusFactor > 0)
+      pTissueDynamics.updateNeighborhoodCache(lNeighborhoodRadiusFactor);
+
+    beginStep(pBeginId, pEndId, pTissueDynamics, pCellProperties);
+
+    if (pParallel && isParallelizable())
+      ParallelRange.forEach(pBeginId,
+                            pEndId,
+                            cMinChunkSize,
+                            (c, b, e) -> applyRange(c,
+                                                    b,
+                                                    e,
+                                                    pTissueDynamics,
+                                                    pCellProperties));
+    else
+      applyRange(0, pBeginId, pEndId, pTissueDynamics, pCellProperties);
+
+    endStep(pBeginId, pEndId, pTissueDynamics, pCellProperties);
+  }
+
+  @Override
+  public boolean isParallelizable()
+  {
+    return true;
+  }
+
+  @Override
+  public int getTimeStepMultiplier()
+  {
+    return mTimeStepMultiplier;
+  }
+
+  @Override
+  public void setTimeStepMultiplier(int pTimeStepMultiplier)
+  {
+    if (pTimeStepMultiplier < 1)
+      throw new IllegalArgumentException("Time step multiplier must be strictly positive");
+    mTimeStepMultiplier = pTimeStepMultiplier;
+  }
+
+  /**
+   * Returns the number of chunks that the given range is partitioned into when
+   * applied in parallel.
+   * 
+   * @param pBeginId
+   *          begin id
+   * @param pEndId
+   *          end id
+   * @return number of chunks
+   */
+  protected int getNumberOfChunks(int pBeginId, int pEndId)
+  {
+    return ParallelRange.getNumberOfChunks(pBeginId,
+                                           pEndId,
+                                           cMinChunkSize);
+  }
+
+  /**
+   * Returns the radius factor, relative to the cell radius, within which this
+   * operator needs neighbors. If strictly positive, the tissue's neighborhood
+   * cache is brought up-to-date for this radius before the step begins, and
+   * can be read from applyRange(). Returns 0 by default: no neighbors needed.
+   * 
+   * @return neighborhood radius factor
+   */
+  protected float getNeighborhoodRadiusFactor()
+  {
+    return 0;
+  }
+
+  /**
+   * Called once on the calling thread before the id range is processed.
+   * 
+   * @param pBeginId
+   *          begin id
+   * @param pEndId
+   *          end id
+   * @param pTissueDynamics
+   *          tissue dynamics
+   * @param pCellProperties
+   *          cell properties
+   */
+  @SuppressWarnings("unchecked")
+  protected void beginStep(int pBeginId,
+                           int pEndId,
+                           TissueDynamics pTissueDynamics,
+                           CP... pCellProperties)
+  {
+  }
+
+  /**
+   * Applies the operator to a partition of the id range.
+   * 
+   * @param pChunkIndex
+   *          chunk index, use it to index per-chunk scratch state
+   * @param pBeginId
+   *          begin id
+   * @param pEndId
+   *          end id
+   * @param pTissueDynamics
+   *          tissue dynamics
+   * @param pCellProperties
+   *          cell properties
+   */
+  @SuppressWarnings("unchecked")
+  protected abstract void applyRange(int pChunkIndex,
+                                     int pBeginId,
+                                     int pEndId,
+                                     TissueDynamics pTissueDynamics,
+                                     CP... pCellProperties);
+
+  /**
+   * Called once on the calling thread after the id range is processed.
+   * 
+   * @param pBeginId
+   *          begin id
+   * @param pEndId
+   *          end id
+   * @param pTissueDynamics
+   *          tissue dynamics
+   * @param pCellProperties
+   *          cell properties
+   */
+  @SuppressWarnings("unchecked")
+  protected void endStep(int pBeginId,
+                         int pEndId,
+                         TissueDynamics pTissueDynamics,
+                         CP... pCellProperties)
+  {
+  }
+
 }
@@ -0,0 +1,107 @@
+package simbryo.dynamics.tissue.cellprop.operators.impl;
+
+import simbryo.dynamics.tissue.TissueDynamics;
+import simbryo.dynamics.tissue.cellprop.CellProperty;
+import simbryo.dynamics.tissue.cellprop.operators.OperatorBase;
+import simbryo.dynamics.tissue.morphogen.MorphogenField;
+
+/**
+ * Morphogen field operator.
+ *
+ * Couples a cell property to a grid-based morphogen field: at each application,
+ * cells deposit morphogen into the field, the field diffuses and decays over
+ * the number of steps covered by the application, and the first cell property
+ * is set to the concentration sampled at each cell position. If a second cell
+ * property is given, each cell deposits the deposition rate times its value of
+ * that property per step, otherwise each cell deposits the deposition rate per
+ * step. Long-range gradients are thus computed on the grid instead of through
+ * neighbor coupling between cells.
+ *
+ */
+public class MorphogenFieldOperator extends OperatorBase<CellProperty>
+{
+  private static final long serialVersionUID = 1L;
+
+  private final MorphogenField mMorphogenField;
+
+  private volatile float mDepositionRate;
+
+  /**
+   * Constructs a morphogen field operator for a given field and deposition
+   * rate.
+   *
+   * @param pMorphogenField
+   *          morphogen field
+   * @param pDepositionRate
+   *          deposition rate per cell and per step, 0 for no deposition
+   */
+  public MorphogenFieldOperator(MorphogenField pMorphogenField,
+                                float pDepositionRate)
+  {
+    super();
+    mMorphogenField = pMorphogenField;
+    mDepositionRate = pDepositionRate;
+  }
+
+  /**
+   * Returns the morphogen field.
+   *
+   * @return morphogen field
+   */
+  public MorphogenField getMorphogenField()
+  {
+    return mMorphogenField;
+  }
+
+  /**
+   * Returns the deposition rate.
+   *
+   * @return deposition rate per cell and per step
+   */
+  public float getDepositionRate()
+  {
+    return mDepositionRate;
+  }
+
+  /**
+   * Sets the deposition rate.
+   *
+   * @param pDepositionRate
+   *          deposition rate per cell and per step, 0 for no deposition
+   */
+  public void setDepositionRate(float pDepositionRate)
+  {
+    mDepositionRate = pDepositionRate;
+  }
+
+  @Override
+  protected void beginStep(int pBeginId,
+                           int pEndId,
+                           TissueDynamics pTissueDynamics,
+                           CellProperty... pCellProperties)
+  {
+    final int lTimeStepMultiplier = getTimeStepMultiplier();
+    if (mDepositionRate != 0)
+      mMorphogenField.deposit(pTissueDynamics,
+                              pCellProperties.length > 1 ? pCellProperties[1]
+                                                         : null,
+                              mDepositionRate * lTimeStepMultiplier,
+                              pBeginId,
+                              pEndId);
+    mMorphogenField.step(lTimeStepMultiplier);
+  }
+
+  @Override
+  protected void applyRange(int pChunkIndex,
+                            int pBeginId,
+                            int pEndId,
+                            TissueDynamics pTissueDynamics,
+                            CellProperty... pCellProperties)
+  {
+    mMorphogenField.sample(pTissueDynamics,
+                           pCellProperties[0],
+                           pBeginId,
+                           pEndId);
+  }
+
+}
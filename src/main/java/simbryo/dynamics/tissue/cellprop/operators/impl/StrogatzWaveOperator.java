@@ -3,7 +3,7 @@ package simbryo.dynamics.tissue.cellprop.operators.impl;
 import simbryo.dynamics.tissue.TissueDynamics;
 import simbryo.dynamics.tissue.cellprop.CellProperty;
 import simbryo.dynamics.tissue.cellprop.operators.OperatorBase;
-import simbryo.particles.neighborhood.NeighborhoodGrid;
+import simbryo.particles.neighborhood.NeighborhoodCache;
 import simbryo.util.geom.GeometryUtils;
 
 /**
@@ -26,8 +26,6 @@ public class StrogatzWaveOperator extends OperatorBase<CellProperty>
 
   private float mCouplingConstant;
 
-  private int[] mNeighboorsArray;
-
   private float mNeighborhoodRadiusDilationFactor;
 
   private float mIncrement;
@@ -56,22 +54,37 @@ public class StrogatzWaveOperator extends OperatorBase<CellProperty>
                                       pNeighboorhoodRadiusDilationFactor;
   }
 
+  /**
+   * Returns the increment applied to all cells at each time step.
+   * 
+   * @return increment per time step
+   */
+  public float getIncrement()
+  {
+    return mIncrement;
+  }
+
+  @Override
+  protected float getNeighborhoodRadiusFactor()
+  {
+    return 1 + mNeighborhoodRadiusDilationFactor;
+  }
+
   @Override
-  public void apply(int pBeginId,
-                    int pEndId,
-                    TissueDynamics pEmbryo,
-                    CellProperty... pCellProperty)
+  protected void applyRange(int pChunkIndex,
+                            int pBeginId,
+                            int pEndId,
+                            TissueDynamics pEmbryo,
+                            CellProperty... pCellProperty)
   {
     final int lDimension = pEmbryo.getDimension();
     final CellProperty lCellProperty = pCellProperty[0];
 
-    final NeighborhoodGrid lNeighborhood =
-                                         pEmbryo.getNeighborhoodGrid();
-    final int lMaxNumberOfParticlesPerGridCell =
-                                               lNeighborhood.getMaxParticlesPerGridCell();
-    final int lTotalNumberOfCells = lNeighborhood.getVolume();
-    final float lIncrement = mIncrement;
-    final float lCouplingConstant = mCouplingConstant;
+    // when sub-cycled, each application covers several steps:
+    final int lTimeStepMultiplier = getTimeStepMultiplier();
+    final float lIncrement = lTimeStepMultiplier * mIncrement;
+    final float lCouplingConstant = lTimeStepMultiplier
+                                    * mCouplingConstant;
     final float lNeighborhoodRadiusFactor =
                                           mNeighborhoodRadiusDilationFactor;
 
@@ -81,95 +94,82 @@ public class StrogatzWaveOperator extends OperatorBase<CellProperty>
                                        .getCurrentArray();
     final float[] lRadii = pEmbryo.getRadii().getCurrentArray();
 
-    int lNeighboorhoodListMaxLength = lMaxNumberOfParticlesPerGridCell
-                                      * lTotalNumberOfCells;
-    if (mNeighboorsArray == null
-        || mNeighboorsArray.length != lNeighboorhoodListMaxLength)
-    {
-      mNeighboorsArray = new int[lNeighboorhoodListMaxLength];
-    }
-
-    final int[] lNeighboors = mNeighboorsArray;
-    final int[] lNeighboorsTemp = mNeighboorsArray;
-    final float[] lCellCoord = new float[lDimension];
-    final int[] lCellCoordMin = new int[lDimension];
-    final int[] lCellCoordMax = new int[lDimension];
-    final int[] lCellCoordCurrent = new int[lDimension];
+    final NeighborhoodCache lNeighborhoodCache =
+                                               pEmbryo.getNeighborhoodCache();
+    final int[] lOffsets = lNeighborhoodCache.getOffsets();
+    final int[] lNeighboors = lNeighborhoodCache.getNeighbors();
 
     final float[] lCellPropertyArrayRead =
-                                         lCellProperty.getArray()
-                                                      .getReadArray();
+                                         lCellProperty.getReadArray();
     final float[] lCellPropertyArrayWrite =
-                                          lCellProperty.getArray()
-                                                       .getWriteArray();
+                                          lCellProperty.getWriteArray();
 
     for (int idu = pBeginId; idu < pEndId; idu++)
     {
-      final float ru = lRadii[idu];
-
-      float lOldValue = lCellPropertyArrayRead[idu];
-
-      int lNumberOfNeighboors =
-                              lNeighborhood.getAllNeighborsForParticle(lNeighboors,
-                                                                       lNeighboorsTemp,
-                                                                       lPositions,
-                                                                       idu,
-                                                                       ru,
-                                                                       lCellCoord,
-                                                                       lCellCoordMin,
-                                                                       lCellCoordMax,
-                                                                       lCellCoordCurrent);
+      float lOldValue =
+                      lCellPropertyArrayRead[lCellProperty.getIndex(idu)];
 
       float lNewValue = lOldValue + lIncrement
                         + detectNeighboringEvent(lDimension,
-                                                 lNeighborhood,
                                                  lCouplingConstant,
                                                  lNeighborhoodRadiusFactor,
                                                  lPositions,
                                                  lVelocities,
                                                  lRadii,
+                                                 lCellProperty,
                                                  lCellPropertyArrayRead,
                                                  lNeighboors,
-                                                 lNumberOfNeighboors,
+                                                 lOffsets[idu],
+                                                 lOffsets[idu + 1],
                                                  idu);
 
       boolean lEvent = (int) lNewValue > (int) lOldValue;
 
       lNewValue = (lEvent ? (int) lNewValue : lNewValue);
 
-      lCellPropertyArrayWrite[idu] = eventHook(lEvent,
-                                               idu,
-                                               lPositions,
-                                               lVelocities,
-                                               lRadii,
-                                               lNewValue);
+      lCellPropertyArrayWrite[lCellProperty.getIndex(idu)] =
+                                                           eventHook(lEvent,
+                                                                     idu,
+                                                                     lPositions,
+                                                                     lVelocities,
+                                                                     lRadii,
+                                                                     lNewValue);
 
     }
+  }
 
-    lCellProperty.getArray().swap();
-
+  @Override
+  protected void endStep(int pBeginId,
+                         int pEndId,
+                         TissueDynamics pEmbryo,
+                         CellProperty... pCellProperty)
+  {
+    pCellProperty[0].swap();
   }
 
   /*
    * 
    */
   private float detectNeighboringEvent(int pDimension,
-                                       NeighborhoodGrid pNeighborhood,
                                        final float pCouplingConstant,
                                        final float pNeighborhoodRadiusFactor,
                                        final float[] pPositions,
                                        final float[] pVelocities,
                                        final float[] pRadii,
+                                       final CellProperty pCellProperty,
                                        final float[] pMorphogenArrayRead,
                                        final int[] pNeighboors,
-                                       final int pNumberOfNeighboors,
+                                       final int pNeighboorsBegin,
+                                       final int pNeighboorsEnd,
                                        int idu)
   {
     final float ru = pRadii[idu];
+    final int lValueU =
+                      (int) pMorphogenArrayRead[pCellProperty.getIndex(idu)];
 
     boolean lAtLeastOneNeighboorDivided = false;
 
-    for (int k = 0; k < pNumberOfNeighboors; k++)
+    for (int k = pNeighboorsBegin; k < pNeighboorsEnd; k++)
     {
       final int idv = pNeighboors[k];
 
@@ -185,7 +185,7 @@ public class StrogatzWaveOperator extends OperatorBase<CellProperty>
                      - (1 + pNeighborhoodRadiusFactor) * rv;
 
         boolean lBoundaryPassed =
-                                ((int) pMorphogenArrayRead[idv]) > ((int) pMorphogenArrayRead[idu]);
+                                ((int) pMorphogenArrayRead[pCellProperty.getIndex(idv)]) > lValueU;
 
         lAtLeastOneNeighboorDivided |= (lGap < 0 && lBoundaryPassed);
       }
@@ -199,6 +199,26 @@ public class StrogatzWaveOperator extends OperatorBase<CellProperty>
       return 0;
   }
 
+  /**
+   * Hook called for each cell after its new value is computed. When this
+   * operator is applied in parallel, this hook is called concurrently for
+   * cells of different chunks, subclasses that modify shared state should
+   * override isParallelizable() to return false.
+   * 
+   * @param pEvent
+   *          true if the cell transitioned to a new cycle
+   * @param pId
+   *          cell id
+   * @param pPositions
+   *          positions
+   * @param pVelocities
+   *          velocities
+   * @param pRadii
+   *          radii
+   * @param pNewMorphogenValue
+   *          new value
+   * @return value to store
+   */
   protected float eventHook(boolean pEvent,
                             int pId,
                             float[] pPositions,
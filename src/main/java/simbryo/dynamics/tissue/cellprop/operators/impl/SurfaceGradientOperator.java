@@ -1,5 +1,9 @@
 package simbryo.dynamics.tissue.cellprop.operators.impl;
 
+import java.util.Arrays;
+
+import org.apache.commons.lang3.SerializationUtils;
+
 import simbryo.dynamics.tissue.TissueDynamics;
 import simbryo.dynamics.tissue.cellprop.VectorCellProperty;
 import simbryo.dynamics.tissue.cellprop.operators.OperatorBase;
@@ -19,6 +23,11 @@ public class SurfaceGradientOperator extends
 
   private static final long serialVersionUID = 1L;
 
+  // iso-surfaces are stateful, each chunk but the first uses a copy. Copies
+  // are kept until the surface or its parameters change:
+  private transient IsoSurfaceInterface[] mSurfaces;
+  private transient long mModificationCount;
+
   /**
    * Constructs a Surface gradient operator.
    * 
@@ -30,10 +39,10 @@ public class SurfaceGradientOperator extends
   }
 
   @Override
-  public void apply(int pBeginId,
-                    int pEndId,
-                    TissueDynamics pTissueDynamics,
-                    VectorCellProperty... pVectorCellProperty)
+  protected void beginStep(int pBeginId,
+                           int pEndId,
+                           TissueDynamics pTissueDynamics,
+                           VectorCellProperty... pVectorCellProperty)
   {
     if (!(pTissueDynamics instanceof HasSurface))
       throw new IllegalArgumentException("tissue dynamics should implement "
@@ -43,11 +52,36 @@ public class SurfaceGradientOperator extends
     HasSurface lHasSurface = (HasSurface) pTissueDynamics;
     IsoSurfaceInterface lSurface = lHasSurface.getSurface();
 
+    final int lNumberOfChunks = getNumberOfChunks(pBeginId, pEndId);
+    final long lModificationCount = lSurface.getModificationCount();
+    if (mSurfaces == null || mSurfaces[0] != lSurface
+        || mModificationCount != lModificationCount)
+    {
+      mSurfaces = new IsoSurfaceInterface[lNumberOfChunks];
+      mSurfaces[0] = lSurface;
+      mModificationCount = lModificationCount;
+    }
+    else if (mSurfaces.length < lNumberOfChunks)
+      mSurfaces = Arrays.copyOf(mSurfaces, lNumberOfChunks);
+
+    for (int c = 1; c < lNumberOfChunks; c++)
+      if (mSurfaces[c] == null)
+        mSurfaces[c] = SerializationUtils.clone(lSurface);
+  }
+
+  @Override
+  protected void applyRange(int pChunkIndex,
+                            int pBeginId,
+                            int pEndId,
+                            TissueDynamics pTissueDynamics,
+                            VectorCellProperty... pVectorCellProperty)
+  {
+    IsoSurfaceInterface lSurface = mSurfaces[pChunkIndex];
+
     final int lDimension = pTissueDynamics.getDimension();
     final VectorCellProperty lVectorCellProperty =
                                                  pVectorCellProperty[0];
-    float[] lPropertyArray = lVectorCellProperty.getArray()
-                                                .getCurrentArray();
+    float[] lPropertyArray = lVectorCellProperty.getCurrentArray();
 
     final float[] lPositions = pTissueDynamics.getPositions()
                                               .getCurrentArray();
@@ -62,10 +96,11 @@ public class SurfaceGradientOperator extends
         lSurface.addCoordinate(lValue);
       }
 
+      int lPropertyIndex = lVectorCellProperty.getIndex(idu);
       for (int d = 0; d < lDimension; d++)
       {
         float lValue = lSurface.getNormalizedGardient(d);
-        lPropertyArray[lIndex + d] = lValue;
+        lPropertyArray[lPropertyIndex + d] = lValue;
       }
     }
   }
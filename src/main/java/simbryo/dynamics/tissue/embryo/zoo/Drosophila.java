@@ -3,17 +3,21 @@ package simbryo.dynamics.tissue.embryo.zoo;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import simbryo.dynamics.tissue.TissueCheckpointLadder;
 import simbryo.dynamics.tissue.cellprop.CellProperty;
 import simbryo.dynamics.tissue.cellprop.HasPolarity;
 import simbryo.dynamics.tissue.cellprop.VectorCellProperty;
 import simbryo.dynamics.tissue.cellprop.operators.impl.StrogatzWaveOperator;
 import simbryo.dynamics.tissue.cellprop.operators.impl.SurfaceGradientOperator;
 import simbryo.dynamics.tissue.embryo.EmbryoDynamics;
-import simbryo.particles.forcefield.ForceFieldInterface;
+import simbryo.particles.forcefield.external.ExternalForceFieldInterface;
+import simbryo.particles.forcefield.external.impl.CompositeExternalForceField;
 import simbryo.particles.forcefield.external.impl.OneSidedIsoSurfaceForceField;
 import simbryo.particles.isosurf.impl.Ellipsoid;
-import simbryo.util.serialization.SerializationUtilities;
+import simbryo.util.serialization.CheckpointLadder;
 
 /**
  * Drosophila melanogster embryo (First 14 divisions).
@@ -36,8 +40,27 @@ public class Drosophila extends EmbryoDynamics
 
   private static final float Ri = 0.08f;
 
-  private ForceFieldInterface mOutsideEllipseForceField;
-  private ForceFieldInterface mInsideEllipseForceField;
+  private static final String cCheckpointDirectoryName =
+                                                       "simbryo-checkpoints";
+  private static final int cCheckpointInterval = 1000;
+  private static final int cMaxNumberOfCheckpoints = 32;
+
+  /**
+   * Names of the Drosophila specific pipeline stages.
+   */
+  public static final String cCellCycleStage = "cell cycle";
+  public static final String cPolarityStage = "polarity";
+  public static final String cEmbryoForceFieldStage =
+                                                    "embryo force field";
+
+  // mitotic waves travel one neighbor per application of the cell cycle
+  // operator, so it runs every step. Polarity follows the surface slowly:
+  private static final int cCellCyclePeriod = 1;
+  private static final int cPolarityPeriod = 10;
+
+  private ExternalForceFieldInterface mOutsideEllipseForceField;
+  private ExternalForceFieldInterface mInsideEllipseForceField;
+  private CompositeExternalForceField mEllipseForceField;
 
   private CellProperty mCellCycleProperty;
   private StrogatzWaveOperator mStrogatzOscillator;
@@ -45,7 +68,7 @@ public class Drosophila extends EmbryoDynamics
   private VectorCellProperty mPolarityProperty;
   private SurfaceGradientOperator mSurfaceGradientOperator;
 
-  private volatile int mCellDivCount;
+  private final AtomicInteger mCellDivCount = new AtomicInteger();
 
   private final float mEllipsoidA = 0.43f, mEllipsoidB = 1.00f,
       mEllipsoidC = 0.43f, mEllipsoidR = 0.47f;
@@ -95,6 +118,10 @@ public class Drosophila extends EmbryoDynamics
                                                               Fafc,
                                                               getSurface());
 
+    mEllipseForceField = new CompositeExternalForceField();
+    mEllipseForceField.addForceField(mOutsideEllipseForceField);
+    mEllipseForceField.addForceField(mInsideEllipseForceField);
+
     mCellCycleProperty = addCellProperty();
     mStrogatzOscillator =
                         new StrogatzWaveOperator(0.001f, 0.01f, 0.1f)
@@ -118,10 +145,26 @@ public class Drosophila extends EmbryoDynamics
                         };
 
     mPolarityProperty = addVectorCellProperty(3);
-    mPolarityProperty.initializeRandom();
-    mPolarityProperty.normalize();
+    mPolarityProperty.initializeRandom(0, getNumberOfParticles());
+    mPolarityProperty.normalize(0, getNumberOfParticles());
     mSurfaceGradientOperator = new SurfaceGradientOperator();
 
+    addOperatorStage(cBrownianMotionStage,
+                     cCellCycleStage,
+                     cCellCyclePeriod,
+                     mStrogatzOscillator,
+                     mCellCycleProperty);
+    addOperatorStage(cBrownianMotionStage,
+                     cPolarityStage,
+                     cPolarityPeriod,
+                     mSurfaceGradientOperator,
+                     mPolarityProperty);
+    mPipeline.addStageBefore(cBrownianMotionStage,
+                             cEmbryoForceFieldStage,
+                             s -> {
+                               adjustForceFieldInsideEmbryo();
+                               applyForceField(mEllipseForceField);
+                             });
   }
 
   /**
@@ -170,6 +213,72 @@ public class Drosophila extends EmbryoDynamics
     return mPolarityProperty;
   }
 
+  /**
+   * Returns the index of the latest division wave reached by any cell, zero
+   * before the first division.
+   * 
+   * @return division index
+   */
+  public int getDivisionIndex()
+  {
+    return mCellDivCount.get();
+  }
+
+  @Override
+  protected int getSnapshotStateLength()
+  {
+    return 4;
+  }
+
+  @Override
+  protected void writeSnapshotState(ByteBuffer pBuffer)
+  {
+    pBuffer.putInt(mCellDivCount.get());
+  }
+
+  @Override
+  protected void readSnapshotState(ByteBuffer pBuffer)
+  {
+    mCellDivCount.set(pBuffer.getInt());
+  }
+
+  /**
+   * Returns a lower bound for the number of steps before the next division.
+   * While a mitotic wave is under way, some cells are one cycle ahead of others
+   * and the coupling can trigger a division at any step. Otherwise, all cells
+   * that can still divide are in the same cycle, and the next division happens
+   * once the cell with the largest phase reaches the next cycle.
+   */
+  @Override
+  public long getStepsUntilNextStructuralEvent()
+  {
+    final float[] lCellCycleArray = mCellCycleProperty.getCurrentArray();
+    final int lNumberOfParticles = getNumberOfParticles();
+
+    int lMinCycle = Integer.MAX_VALUE;
+    int lMaxCycle = Integer.MIN_VALUE;
+    float lMaxPhase = 0;
+    for (int id = 0; id < lNumberOfParticles; id++)
+    {
+      float lValue = lCellCycleArray[mCellCycleProperty.getIndex(id)];
+      if (lValue >= 13)
+        continue;
+      int lCycle = (int) lValue;
+      lMinCycle = Math.min(lMinCycle, lCycle);
+      lMaxCycle = Math.max(lMaxCycle, lCycle);
+      lMaxPhase = Math.max(lMaxPhase, lValue - lCycle);
+    }
+
+    if (lMinCycle > lMaxCycle)
+      return Long.MAX_VALUE;
+    if (lMinCycle != lMaxCycle)
+      return 0;
+
+    return (long) ((1 - lMaxPhase)
+                   / (mStrogatzOscillator.getIncrement()
+                      * mStrogatzOscillator.getTimeStepMultiplier()));
+  }
+
   private float cellDivisionHook(boolean pEvent,
                                  int pId,
                                  float pNewMorphogenValue)
@@ -178,22 +287,7 @@ public class Drosophila extends EmbryoDynamics
 
     if (pEvent && pNewMorphogenValue < 14)
     {
-
-      int lNewParticleId = cloneParticle(pId, 0.001f);
-
-      mCellCycleProperty.getArray()
-                        .getWriteArray()[lNewParticleId] =
-                                                         pNewMorphogenValue;
-
-      if (pNewMorphogenValue >= 6)
-      {
-        setTargetRadius(pId,
-                        getRadius(pId)
-                             * cCellDivisionRadiusShrinkage);
-        setTargetRadius(lNewParticleId,
-                        getRadius(lNewParticleId)
-                                        * cCellDivisionRadiusShrinkage);
-      }
+      requestDivision(pId, pNewMorphogenValue);
 
       if (pNewMorphogenValue >= 5)
       {
@@ -205,28 +299,30 @@ public class Drosophila extends EmbryoDynamics
 
     }
 
-    if ((int) pNewMorphogenValue > mCellDivCount)
-      System.out.println("Division: " + mCellDivCount);
-
-    mCellDivCount = Math.max(mCellDivCount, (int) pNewMorphogenValue);
+    int lCellDivCount =
+                      mCellDivCount.getAndAccumulate((int) pNewMorphogenValue,
+                                                     Math::max);
+    if ((int) pNewMorphogenValue > lCellDivCount)
+      System.out.println("Division: " + lCellDivCount);
 
     return pNewMorphogenValue;
   }
 
   @Override
-  public void simulationSteps(int pNumberOfSteps)
+  protected void divisionHook(int pMotherId,
+                              int pDaughterId,
+                              float pValue)
   {
-    for (int i = 0; i < pNumberOfSteps; i++)
-    {
-      applyOperator(mStrogatzOscillator, mCellCycleProperty);
-      applyOperator(mSurfaceGradientOperator, mPolarityProperty);
+    mCellCycleProperty.set(pDaughterId, pValue);
 
-      adjustForceFieldInsideEmbryo();
-
-      applyForceField(mOutsideEllipseForceField);
-      applyForceField(mInsideEllipseForceField);
-
-      super.simulationSteps(1);
+    if (pValue >= 6)
+    {
+      setTargetRadius(pMotherId,
+                      getRadius(pMotherId)
+                                 * cCellDivisionRadiusShrinkage);
+      setTargetRadius(pDaughterId,
+                      getRadius(pDaughterId)
+                                   * cCellDivisionRadiusShrinkage);
     }
   }
 
@@ -234,7 +330,7 @@ public class Drosophila extends EmbryoDynamics
   {
     final float lForce;
 
-    switch (mCellDivCount)
+    switch (mCellDivCount.get())
     {
     case 0:
       lForce = -1f * Fafc;
@@ -264,8 +360,13 @@ public class Drosophila extends EmbryoDynamics
   }
 
   /**
-   * Returns a cached embryo dynamics state. Phantom width, height and depth are
-   * provided to optimize the grid size.
+   * Returns a cached embryo dynamics state. Developped embryos are cached in a
+   * checkpoint ladder of tissue snapshots: the nearest earlier checkpoint is
+   * restored and only the remaining steps are simulated. Drosophila embryos
+   * cannot be seeded (initial positions and Brownian motion use unseeded
+   * random numbers), so the cached states are not seed-determined: they come
+   * from whichever embryo first populated the cache, and all later calls
+   * continue from the same checkpoints.
    * 
    * @param pDivisionTime
    *          time in cell-division time
@@ -277,23 +378,23 @@ public class Drosophila extends EmbryoDynamics
   {
     File lTempDirectory =
                         new File(System.getProperty("java.io.tmpdir"));
-    File lCachedEmbryoDynamicsFile =
-                                   new File(lTempDirectory,
-                                            Drosophila.class.getSimpleName()
-                                                            + pDivisionTime);
-    Drosophila lDrosophila =
-                           SerializationUtilities.loadFromFile(Drosophila.class,
-                                                               lCachedEmbryoDynamicsFile);
-
-    if (lDrosophila == null)
-    {
-
-      lDrosophila = new Drosophila(64, 16, 16, 16);
-      lDrosophila.simulationSteps((int) (pDivisionTime * 1000));
-      SerializationUtilities.saveToFile(lDrosophila,
-                                        lCachedEmbryoDynamicsFile);
-    }
-    return lDrosophila;
+    File lCacheDirectory = new File(lTempDirectory,
+                                    cCheckpointDirectoryName);
+    TissueCheckpointLadder<Drosophila> lCheckpointLadder =
+                                                         new TissueCheckpointLadder<>(lCacheDirectory,
+                                                                                      CheckpointLadder.getUnseededKey(Drosophila.class,
+                                                                                                                      64,
+                                                                                                                      16,
+                                                                                                                      16,
+                                                                                                                      16),
+                                                                                      cCheckpointInterval,
+                                                                                      cMaxNumberOfCheckpoints);
+
+    return lCheckpointLadder.getState((long) (pDivisionTime * 1000),
+                                      () -> new Drosophila(64,
+                                                           16,
+                                                           16,
+                                                           16));
   }
 
 }
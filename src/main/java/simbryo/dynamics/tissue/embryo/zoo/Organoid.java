@@ -1,5 +1,7 @@
 package simbryo.dynamics.tissue.embryo.zoo;
 
+import java.nio.ByteBuffer;
+
 import simbryo.dynamics.tissue.embryo.EmbryoDynamics;
 import simbryo.particles.forcefield.external.impl.CentriForceField;
 
@@ -12,6 +14,13 @@ public class Organoid extends EmbryoDynamics
 {
   private static final long serialVersionUID = 1L;
 
+  /**
+   * Name of the Organoid specific pipeline stage.
+   */
+  public static final String cForceFieldStage = "organoid force field";
+
+  private static final int cCellDivisionPeriod = 500;
+
   protected static final float Fc = 0.0001f;
   protected static final float D = 0.9f;
 
@@ -51,19 +60,44 @@ public class Organoid extends EmbryoDynamics
 
     mCentriForceField =
                       new CentriForceField(Fpetal, 0.5f, 0.5f, 0.5f);
+
+    mEventScheduler.schedulePeriodic(cCellDivisionPeriod - 1,
+                                     cCellDivisionPeriod,
+                                     t -> {
+                                       if (mCellDivCount <= 14)
+                                         triggerCellDivision();
+                                     });
+    mPipeline.addStageBefore(cBrownianMotionStage,
+                             cForceFieldStage,
+                             s -> applyForceField(mCentriForceField));
   }
 
+  /**
+   * Cell divisions are scheduled on the event scheduler, there are no other
+   * structural events.
+   */
   @Override
-  public void simulationSteps(int pNumberOfSteps)
+  public long getStepsUntilNextStructuralEvent()
   {
-    for (int i = 0; i < pNumberOfSteps; i++)
-    {
-      if (mCellDivCount <= 14 && getTimeStepIndex() % 500 == 499)
-        triggerCellDivision();
+    return Long.MAX_VALUE;
+  }
 
-      applyForceField(mCentriForceField);
-      super.simulationSteps(1);
-    }
+  @Override
+  protected int getSnapshotStateLength()
+  {
+    return 4;
+  }
+
+  @Override
+  protected void writeSnapshotState(ByteBuffer pBuffer)
+  {
+    pBuffer.putInt(mCellDivCount);
+  }
+
+  @Override
+  protected void readSnapshotState(ByteBuffer pBuffer)
+  {
+    mCellDivCount = pBuffer.getInt();
   }
 
   private void triggerCellDivision()
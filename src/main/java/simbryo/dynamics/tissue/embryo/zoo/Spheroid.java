@@ -1,5 +1,7 @@
 package simbryo.dynamics.tissue.embryo.zoo;
 
+import java.nio.ByteBuffer;
+
 import simbryo.dynamics.tissue.embryo.EmbryoDynamics;
 import simbryo.particles.forcefield.external.impl.IsoSurfaceForceField;
 import simbryo.particles.isosurf.impl.Sphere;
@@ -13,6 +15,13 @@ public class Spheroid extends EmbryoDynamics
 {
   private static final long serialVersionUID = 1L;
 
+  /**
+   * Name of the Spheroid specific pipeline stage.
+   */
+  public static final String cForceFieldStage = "spheroid force field";
+
+  private static final int cCellDivisionPeriod = 500;
+
   protected static final float Fc = 0.0001f;
   protected static final float D = 0.9f;
 
@@ -54,19 +63,44 @@ public class Spheroid extends EmbryoDynamics
     updateNeighborhoodGrid();
 
     mForceField = new IsoSurfaceForceField(Fpetal, getSurface());
+
+    mEventScheduler.schedulePeriodic(cCellDivisionPeriod - 1,
+                                     cCellDivisionPeriod,
+                                     t -> {
+                                       if (mCellDivCount <= 14)
+                                         triggerCellDivision();
+                                     });
+    mPipeline.addStageBefore(cBrownianMotionStage,
+                             cForceFieldStage,
+                             s -> applyForceField(mForceField));
   }
 
+  /**
+   * Cell divisions are scheduled on the event scheduler, there are no other
+   * structural events.
+   */
   @Override
-  public void simulationSteps(int pNumberOfSteps)
+  public long getStepsUntilNextStructuralEvent()
   {
-    for (int i = 0; i < pNumberOfSteps; i++)
-    {
-      if (mCellDivCount <= 14 && getTimeStepIndex() % 500 == 499)
-        triggerCellDivision();
+    return Long.MAX_VALUE;
+  }
 
-      applyForceField(mForceField);
-      super.simulationSteps(1);
-    }
+  @Override
+  protected int getSnapshotStateLength()
+  {
+    return 4;
+  }
+
+  @Override
+  protected void writeSnapshotState(ByteBuffer pBuffer)
+  {
+    pBuffer.putInt(mCellDivCount);
+  }
+
+  @Override
+  protected void readSnapshotState(ByteBuffer pBuffer)
+  {
+    mCellDivCount = pBuffer.getInt();
   }
 
   private void triggerCellDivision()
@@ -10,6 +10,7 @@ import simbryo.dynamics.tissue.TissueDynamics;
 import simbryo.dynamics.tissue.TissueDynamicsInterface;
 import simbryo.dynamics.tissue.cellprop.CellProperty;
 import simbryo.particles.forcefield.ForceFieldInterface;
+import simbryo.particles.forcefield.external.impl.CompositeExternalForceField;
 import simbryo.particles.forcefield.external.impl.IsoSurfaceForceField;
 import simbryo.particles.forcefield.interaction.impl.CohesionForceField;
 import simbryo.particles.isosurf.IsoSurfaceInterface;
@@ -28,16 +29,21 @@ public class LayeredEpitheliumDynamics extends TissueDynamics
 {
   private static final long serialVersionUID = 1L;
 
+  /**
+   * Names of the epithelium specific pipeline stages.
+   */
+  public static final String cLayerForceFieldStage =
+                                                   "layer force field";
+  public static final String cCohesionStage = "cohesion";
+
   private ArrayList<IsoSurfaceInterface> mEpitheliumLayerIsoSurfaceList =
                                                                         new ArrayList<>();
-  private ArrayList<ForceFieldInterface> mEpitheliumLayerForceFieldList =
-                                                                        new ArrayList<>();
+  private CompositeExternalForceField mEpitheliumLayerForceField =
+                                                                new CompositeExternalForceField();
   private CellProperty mEpitheliumLayerCellForceProperty;
 
   private ForceFieldInterface mCohesionForceField;
 
-  private float[] mMask;
-
   /**
    * Instantiates epithelium dynamics given a collision force, drag coefficient,
    * max number of particles per grid cell, and grid dimensions.
@@ -73,8 +79,15 @@ public class LayeredEpitheliumDynamics extends TissueDynamics
                                           getMaxNumberOfParticles(),
                                           0f);
 
-    mMask = new float[getMaxNumberOfParticles()];
-
+    mPipeline.addStageBefore(cBrownianMotionStage,
+                             cLayerForceFieldStage,
+                             s -> {
+                               updateLayerMasks();
+                               applyForceField(mEpitheliumLayerForceField);
+                             });
+    mPipeline.addStageBefore(cBrownianMotionStage,
+                             cCohesionStage,
+                             s -> applyForceField(mCohesionForceField));
   }
 
   @Override
@@ -83,11 +96,13 @@ public class LayeredEpitheliumDynamics extends TissueDynamics
   {
     mEpitheliumLayerIsoSurfaceList.add(pLayerIsoSurface);
 
-    ForceFieldInterface lForceField =
-                                    new IsoSurfaceForceField(pLayerForceIntensity,
-                                                             pLayerIsoSurface);
+    IsoSurfaceForceField lForceField =
+                                     new IsoSurfaceForceField(pLayerForceIntensity,
+                                                              pLayerIsoSurface);
 
-    mEpitheliumLayerForceFieldList.add(lForceField);
+    // each layer has its own mask:
+    float[] lLayerMask = new float[getMaxNumberOfParticles()];
+    mEpitheliumLayerForceField.addForceField(lForceField, lLayerMask);
 
   }
 
@@ -113,10 +128,7 @@ public class LayeredEpitheliumDynamics extends TissueDynamics
    */
   public void assignCellToLayer(int pCellId, float pLayerId)
   {
-    float[] lCurrentArray =
-                          mEpitheliumLayerCellForceProperty.getArray()
-                                                           .getCurrentArray();
-    lCurrentArray[pCellId] = pLayerId;
+    mEpitheliumLayerCellForceProperty.set(pCellId, pLayerId);
   }
 
   /**
@@ -128,37 +140,26 @@ public class LayeredEpitheliumDynamics extends TissueDynamics
    */
   public float getCellLayer(int pCellId)
   {
-    float[] lCurrentArray =
-                          mEpitheliumLayerCellForceProperty.getArray()
-                                                           .getCurrentArray();
-
-    return lCurrentArray[pCellId];
+    return mEpitheliumLayerCellForceProperty.getValue(pCellId);
   }
 
-  @Override
-  public void simulationSteps(int pNumberOfSteps)
+  /**
+   * Updates the per-layer force factors from the cell layer assignments.
+   */
+  private void updateLayerMasks()
   {
-    for (int i = 0; i < pNumberOfSteps; i++)
+    final int lNumberOfParticles = getNumberOfParticles();
+    for (int layer = 0; layer < getNumberOfLayers(); layer++)
     {
-      for (int layer = 0; layer < getNumberOfLayers(); layer++)
+      float[] lLayerMask =
+                         mEpitheliumLayerForceField.getForceFactor(layer);
+      for (int id = 0; id < lNumberOfParticles; id++)
       {
-        for (int id = 0; id < getNumberOfParticles(); id++)
-        {
-          float lLayer = getCellLayer(id);
-          float lMask = layer == round(lLayer) ? 1 : 0;
-          float lStrength = 1f - 2 * abs(lLayer - round(lLayer));
-          mMask[id] = lMask * lStrength;
-        }
-
-        applyForceField(mEpitheliumLayerForceFieldList.get(layer),
-                        0,
-                        getNumberOfParticles(),
-                        mMask);
+        float lLayer = getCellLayer(id);
+        float lMask = layer == round(lLayer) ? 1 : 0;
+        float lStrength = 1f - 2 * abs(lLayer - round(lLayer));
+        lLayerMask[id] = lMask * lStrength;
       }
-
-      applyForceField(mCohesionForceField);
-
-      super.simulationSteps(1);
     }
   }
 
@@ -7,6 +7,7 @@ import static java.lang.Math.sin;
 import simbryo.dynamics.tissue.cellprop.CellProperty;
 import simbryo.dynamics.tissue.epithelium.LayeredEpitheliumDynamics;
 import simbryo.particles.isosurf.impl.Plane;
+import simbryo.particles.solver.OverlapSolver;
 
 /**
  * Layered epithelium dynamics extend from a tissue dynamics and add the notion
@@ -23,6 +24,14 @@ public class TwoLayeredEpithelium extends LayeredEpitheliumDynamics
 
   private static final float cDefaultLayerForce = 0.0001f;
 
+  private static final int cOverlapSolverIterations = 8;
+  private static final float cOverlapTolerance = 0.01f;
+
+  /**
+   * Name of the cell state pipeline stage.
+   */
+  public static final String cCellStateStage = "cell state";
+
   private static final float cMasterIncrement = 0.00001f;
 
   private static final float cCellCycleIncrement = cMasterIncrement;
@@ -53,7 +62,8 @@ public class TwoLayeredEpithelium extends LayeredEpitheliumDynamics
     super(Fc, Fc * 0.1f, D, 64, 32, 32, 32);
     mExclusionRadius = pExclusionRadius;
 
-    mCollisionForceField.setForbidOverlap(true);
+    setOverlapSolver(new OverlapSolver(cOverlapSolverIterations,
+                                       cOverlapTolerance));
 
     Plane lTopLayer = new Plane(0f, 0f, 1f);
     lTopLayer.setPoint(0.5f, 0.5f, 0.5f + 0.5f * pLayerSpacing);
@@ -89,14 +99,15 @@ public class TwoLayeredEpithelium extends LayeredEpitheliumDynamics
 
     for (int j = 0; j < 3; j++)
     {
-      mCellLabelProperty.getArray()
-                        .getCurrentArray()[(int) (random()
-                                                  * pInitialNumberOfCells)] =
-                                                                            1;
+      mCellLabelProperty.set((int) (random() * pInitialNumberOfCells),
+                             1);
     }
 
     updateNeighborhoodGrid();
 
+    mPipeline.addStageAfter(cNeighborhoodGridStage,
+                            cCellStateStage,
+                            s -> updateCellStates());
   }
 
   private float getRandomRadius(int i)
@@ -120,64 +131,60 @@ public class TwoLayeredEpithelium extends LayeredEpitheliumDynamics
     return mCellLabelProperty;
   }
 
-  @Override
-  public void simulationSteps(int pNumberOfSteps)
+  /**
+   * Advances the state of each cell: waiting, pull down, division, pull up.
+   */
+  private void updateCellStates()
   {
-    for (int s = 0; s < pNumberOfSteps; s++)
+    final int lNumberOfParticles = getNumberOfParticles();
+    for (int i = 0; i < lNumberOfParticles; i++)
     {
-      super.simulationSteps(1);
-
-      final int lNumberOfParticles = getNumberOfParticles();
-      for (int i = 0; i < lNumberOfParticles; i++)
-      {
 
-        float lCurrentState = mCellStateProperty.getArray()
-                                                .getCurrentArray()[i];
-
-        if (lCurrentState < 1)
-        {
-          waitingForPullDown(i);
-        }
-        else if (1 <= lCurrentState && lCurrentState < 2)
-        {
-          pulldown(i);
-        }
-        else if (2 <= lCurrentState && lCurrentState < 3)
-        {
-          divide(i);
-        }
-        else if (3 <= lCurrentState && lCurrentState < 4)
-        {
-          waitingForPullUp(i);
-        }
-        else if (4 <= lCurrentState && lCurrentState < 5)
-        {
-          pullup(i);
-        }
-        else if (5 <= lCurrentState && lCurrentState < 6)
-        {
-          done(i);
-        }
+      float lCurrentState = mCellStateProperty.getValue(i);
 
+      if (lCurrentState < 1)
+      {
+        waitingForPullDown(i);
+      }
+      else if (1 <= lCurrentState && lCurrentState < 2)
+      {
+        pulldown(i);
+      }
+      else if (2 <= lCurrentState && lCurrentState < 3)
+      {
+        divide(i);
+      }
+      else if (3 <= lCurrentState && lCurrentState < 4)
+      {
+        waitingForPullUp(i);
       }
+      else if (4 <= lCurrentState && lCurrentState < 5)
+      {
+        pullup(i);
+      }
+      else if (5 <= lCurrentState && lCurrentState < 6)
+      {
+        done(i);
+      }
+
     }
   }
 
   private void waitingForPullDown(int pCellId)
   {
     // counting until we start cell division = {pull down, divide, pull up}
-    mCellStateProperty.getArray()
-                      .getCurrentArray()[pCellId] +=
-                                                  cCellCycleIncrement;
+    mCellStateProperty.set(pCellId,
+                           mCellStateProperty.getValue(pCellId)
+                                    + cCellCycleIncrement);
   }
 
   private void pulldown(int pCellId)
   {
     // assignCellToLayer(pCellId, 0);
 
-    mCellStateProperty.getArray()
-                      .getCurrentArray()[pCellId] +=
-                                                  cCellDivisionIncrement;
+    mCellStateProperty.set(pCellId,
+                           mCellStateProperty.getValue(pCellId)
+                                    + cCellDivisionIncrement);
   }
 
   private void divide(int pCellId)
@@ -185,21 +192,14 @@ public class TwoLayeredEpithelium extends LayeredEpitheliumDynamics
     int lDaughterId1 = pCellId;
     int lDaughterId2 = cloneParticle(pCellId, 0.0001f);
 
-    mCellLabelProperty.getArray()
-                      .getCurrentArray()[lDaughterId1] =
-                                                       mCellLabelProperty.getArray()
-                                                                         .getCurrentArray()[lDaughterId1];
-    mCellLabelProperty.getArray()
-                      .getCurrentArray()[lDaughterId2] =
-                                                       mCellLabelProperty.getArray()
-                                                                         .getCurrentArray()[lDaughterId1];
+    mCellLabelProperty.copyValue(lDaughterId1, lDaughterId2);
     float lRadius =
                   (float) (getRadius(lDaughterId1) * pow(0.5f, 1.0f));
     setTargetRadius(lDaughterId1, lRadius);
     setTargetRadius(lDaughterId2, lRadius);
 
-    mCellStateProperty.getArray().getCurrentArray()[lDaughterId1] = 3;
-    mCellStateProperty.getArray().getCurrentArray()[lDaughterId2] = 3;
+    mCellStateProperty.set(lDaughterId1, 3);
+    mCellStateProperty.set(lDaughterId2, 3);
   }
 
   private void waitingForPullUp(int pCellId)
@@ -208,9 +208,9 @@ public class TwoLayeredEpithelium extends LayeredEpitheliumDynamics
                     getTargetRadius(pCellId) * 0.999f
                              + getRandomRadius(pCellId) * 0.001f);/**/
 
-    mCellStateProperty.getArray()
-                      .getCurrentArray()[pCellId] +=
-                                                  cCellDivisionIncrement;
+    mCellStateProperty.set(pCellId,
+                           mCellStateProperty.getValue(pCellId)
+                                    + cCellDivisionIncrement);
   }
 
   private void pullup(int pCellId)
@@ -221,18 +221,15 @@ public class TwoLayeredEpithelium extends LayeredEpitheliumDynamics
 
     // assignCellToLayer(pCellId, 1);
 
-    mCellStateProperty.getArray()
-                      .getCurrentArray()[pCellId] +=
-                                                  cCellDivisionIncrement;
+    mCellStateProperty.set(pCellId,
+                           mCellStateProperty.getValue(pCellId)
+                                    + cCellDivisionIncrement);
   }
 
   private void done(int pCellId)
   {
     setTargetRadius(pCellId, getRandomRadius(pCellId));/**/
-    mCellStateProperty.getArray()
-                      .getCurrentArray()[pCellId] =
-                                                  (float) (0.1f
-                                                           * random());
+    mCellStateProperty.set(pCellId, (float) (0.1f * random()));
   }
 
 }
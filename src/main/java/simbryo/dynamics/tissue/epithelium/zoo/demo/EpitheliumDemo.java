@@ -38,8 +38,7 @@ public class EpitheliumDemo
     lOpen3dViewer.setColorClosure((id) -> {
       int lCellLabel =
                      (int) lTwoLayeredEpithelium.getCellLabelProperty()
-                                                .getArray()
-                                                .getCurrentArray()[id];
+                                                .getValue(id);
       return lCellLabel == 0 ? Color.BLUE : Color.RED;
     });/**/
 
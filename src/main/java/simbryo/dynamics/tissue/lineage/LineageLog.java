@@ -0,0 +1,396 @@
+package simbryo.dynamics.tissue.lineage;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Lineage log. Every cell of a tissue has a lineage id, unique over the whole
+ * simulation, that follows the cell when particle ids change, for example when
+ * another cell is removed. Cells added directly to the tissue are founders.
+ * When a cell divides, both daughter cells get new lineage ids, and two
+ * division events (time step index, parent lineage id, daughter lineage id) are
+ * appended to the log. Events are stored in primitive arrays that grow by
+ * doubling, so that recording a division costs a few array writes.
+ *
+ * @author royer
+ */
+public class LineageLog implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Magic number at the beginning of binary lineage files: 'SBLN'
+   */
+  public static final int cMagic = 0x53424C4E;
+
+  private final int mCapacity;
+  private transient int[] mLineageIds;
+  private int mUsedNumberOfParticles;
+
+  private int mNumberOfCells;
+  private transient int[] mBirthEvents = new int[16];
+
+  private int mNumberOfEvents;
+  private transient long[] mEventTimeStepIndices = new long[16];
+  private transient int[] mEventParents = new int[16];
+  private transient int[] mEventDaughters = new int[16];
+
+  /**
+   * Instantiates an empty lineage log for a given maximal number of particles.
+   *
+   * @param pCapacity
+   *          maximal number of particles
+   */
+  public LineageLog(int pCapacity)
+  {
+    super();
+    mCapacity = pCapacity;
+    mLineageIds = new int[pCapacity];
+    Arrays.fill(mLineageIds, -1);
+  }
+
+  /**
+   * Clears the log and makes the first particles founders.
+   *
+   * @param pNumberOfParticles
+   *          number of particles
+   */
+  public void clear(int pNumberOfParticles)
+  {
+    mNumberOfCells = 0;
+    mNumberOfEvents = 0;
+    mUsedNumberOfParticles = 0;
+    Arrays.fill(mLineageIds, -1);
+    for (int id = 0; id < pNumberOfParticles; id++)
+      addFounder(id);
+  }
+
+  /**
+   * Gives a new lineage id to a particle, without parent.
+   *
+   * @param pParticleId
+   *          particle id
+   * @return lineage id
+   */
+  public int addFounder(int pParticleId)
+  {
+    return newCell(pParticleId, -1);
+  }
+
+  /**
+   * Copies the lineage id of a particle to another particle, typically when a
+   * particle is moved to another id.
+   *
+   * @param pSourceParticleId
+   *          source particle id
+   * @param pDestinationParticleId
+   *          destination particle id
+   */
+  public void copy(int pSourceParticleId, int pDestinationParticleId)
+  {
+    mLineageIds[pDestinationParticleId] = mLineageIds[pSourceParticleId];
+    mUsedNumberOfParticles = Math.max(mUsedNumberOfParticles,
+                                      pDestinationParticleId + 1);
+  }
+
+  /**
+   * Records the division of a particle into itself and another particle: both
+   * get new lineage ids, and two events are appended to the log.
+   *
+   * @param pTimeStepIndex
+   *          time step index of division
+   * @param pMotherParticleId
+   *          particle id of dividing cell, and of first daughter
+   * @param pDaughterParticleId
+   *          particle id of second daughter
+   */
+  public void addDivision(long pTimeStepIndex,
+                          int pMotherParticleId,
+                          int pDaughterParticleId)
+  {
+    final int lParentId = mLineageIds[pMotherParticleId];
+    addEvent(pTimeStepIndex, lParentId, pMotherParticleId);
+    addEvent(pTimeStepIndex, lParentId, pDaughterParticleId);
+  }
+
+  private void addEvent(long pTimeStepIndex,
+                        int pParentId,
+                        int pParticleId)
+  {
+    if (mNumberOfEvents == mEventParents.length)
+    {
+      final int lLength = 2 * mNumberOfEvents;
+      mEventTimeStepIndices = Arrays.copyOf(mEventTimeStepIndices,
+                                            lLength);
+      mEventParents = Arrays.copyOf(mEventParents, lLength);
+      mEventDaughters = Arrays.copyOf(mEventDaughters, lLength);
+    }
+    final int lEvent = mNumberOfEvents++;
+    mEventTimeStepIndices[lEvent] = pTimeStepIndex;
+    mEventParents[lEvent] = pParentId;
+    mEventDaughters[lEvent] = newCell(pParticleId, lEvent);
+  }
+
+  private int newCell(int pParticleId, int pBirthEvent)
+  {
+    if (mNumberOfCells == mBirthEvents.length)
+      mBirthEvents = Arrays.copyOf(mBirthEvents, 2 * mNumberOfCells);
+    final int lLineageId = mNumberOfCells++;
+    mBirthEvents[lLineageId] = pBirthEvent;
+    mLineageIds[pParticleId] = lLineageId;
+    mUsedNumberOfParticles = Math.max(mUsedNumberOfParticles,
+                                      pParticleId + 1);
+    return lLineageId;
+  }
+
+  /**
+   * Returns the lineage id of a particle.
+   *
+   * @param pParticleId
+   *          particle id
+   * @return lineage id
+   */
+  public int getLineageId(int pParticleId)
+  {
+    return mLineageIds[pParticleId];
+  }
+
+  /**
+   * Returns the number of lineage ids given so far, lineage ids range from 0
+   * to this number (exclusive).
+   *
+   * @return number of cells
+   */
+  public int getNumberOfCells()
+  {
+    return mNumberOfCells;
+  }
+
+  /**
+   * Returns the number of division events, two per division.
+   *
+   * @return number of events
+   */
+  public int getNumberOfEvents()
+  {
+    return mNumberOfEvents;
+  }
+
+  /**
+   * Returns the time step index of an event.
+   *
+   * @param pEventIndex
+   *          event index
+   * @return time step index
+   */
+  public long getEventTimeStepIndex(int pEventIndex)
+  {
+    return mEventTimeStepIndices[pEventIndex];
+  }
+
+  /**
+   * Returns the parent lineage id of an event.
+   *
+   * @param pEventIndex
+   *          event index
+   * @return parent lineage id
+   */
+  public int getEventParent(int pEventIndex)
+  {
+    return mEventParents[pEventIndex];
+  }
+
+  /**
+   * Returns the daughter lineage id of an event.
+   *
+   * @param pEventIndex
+   *          event index
+   * @return daughter lineage id
+   */
+  public int getEventDaughter(int pEventIndex)
+  {
+    return mEventDaughters[pEventIndex];
+  }
+
+  /**
+   * Returns the parent of a cell, or -1 for founders.
+   *
+   * @param pLineageId
+   *          lineage id
+   * @return parent lineage id or -1
+   */
+  public int getParent(int pLineageId)
+  {
+    final int lBirthEvent = mBirthEvents[pLineageId];
+    return lBirthEvent < 0 ? -1 : mEventParents[lBirthEvent];
+  }
+
+  /**
+   * Returns the time step index at which a cell was born by division, or -1
+   * for founders.
+   *
+   * @param pLineageId
+   *          lineage id
+   * @return time step index or -1
+   */
+  public long getBirthTimeStepIndex(int pLineageId)
+  {
+    final int lBirthEvent = mBirthEvents[pLineageId];
+    return lBirthEvent < 0 ? -1 : mEventTimeStepIndices[lBirthEvent];
+  }
+
+  /**
+   * Returns the ancestors of a cell, from its parent to its founder.
+   *
+   * @param pLineageId
+   *          lineage id
+   * @return ancestor lineage ids
+   */
+  public int[] getAncestors(int pLineageId)
+  {
+    int lNumberOfAncestors = 0;
+    for (int c = getParent(pLineageId); c >= 0; c = getParent(c))
+      lNumberOfAncestors++;
+    final int[] lAncestors = new int[lNumberOfAncestors];
+    int i = 0;
+    for (int c = getParent(pLineageId); c >= 0; c = getParent(c))
+      lAncestors[i++] = c;
+    return lAncestors;
+  }
+
+  /**
+   * Returns the most recent common ancestor of two cells, which can be one of
+   * the two cells, or -1 if they descend from different founders.
+   *
+   * @param pLineageId1
+   *          first lineage id
+   * @param pLineageId2
+   *          second lineage id
+   * @return lineage id of common ancestor or -1
+   */
+  public int getCommonAncestor(int pLineageId1, int pLineageId2)
+  {
+    int c1 = pLineageId1, c2 = pLineageId2;
+    // parents always have lower lineage ids than their daughters:
+    while (c1 != c2 && c1 >= 0 && c2 >= 0)
+      if (c1 > c2)
+        c1 = getParent(c1);
+      else
+        c2 = getParent(c2);
+    return c1 == c2 ? c1 : -1;
+  }
+
+  /**
+   * Writes the division events as CSV: one 'time,parent,daughter' line per
+   * event, after a header line.
+   *
+   * @param pFile
+   *          file
+   * @throws IOException
+   *           thrown if problem occurs while writing
+   */
+  public void writeCSV(File pFile) throws IOException
+  {
+    try (BufferedWriter lWriter =
+                                new BufferedWriter(new FileWriter(pFile)))
+    {
+      lWriter.write("time,parent,daughter\n");
+      final StringBuilder lLine = new StringBuilder();
+      for (int e = 0; e < mNumberOfEvents; e++)
+      {
+        lLine.setLength(0);
+        lLine.append(mEventTimeStepIndices[e])
+             .append(',')
+             .append(mEventParents[e])
+             .append(',')
+             .append(mEventDaughters[e])
+             .append('\n');
+        lWriter.append(lLine);
+      }
+    }
+  }
+
+  /**
+   * Writes the division events in binary form: magic number and number of
+   * events, followed by the time step indices (longs), the parent lineage ids
+   * (ints) and the daughter lineage ids (ints) of all events. All values are
+   * little-endian.
+   *
+   * @param pFile
+   *          file
+   * @throws IOException
+   *           thrown if problem occurs while writing
+   */
+  public void writeBinary(File pFile) throws IOException
+  {
+    final int n = mNumberOfEvents;
+    ByteBuffer lBuffer = ByteBuffer.allocate(8 + 16 * n)
+                                   .order(ByteOrder.LITTLE_ENDIAN);
+    lBuffer.putInt(cMagic);
+    lBuffer.putInt(n);
+    lBuffer.asLongBuffer().put(mEventTimeStepIndices, 0, n);
+    lBuffer.position(lBuffer.position() + 8 * n);
+    lBuffer.asIntBuffer().put(mEventParents, 0, n);
+    lBuffer.position(lBuffer.position() + 4 * n);
+    lBuffer.asIntBuffer().put(mEventDaughters, 0, n);
+    lBuffer.position(lBuffer.position() + 4 * n);
+    lBuffer.flip();
+    try (FileChannel lFileChannel =
+                                  FileChannel.open(pFile.toPath(),
+                                                   StandardOpenOption.CREATE,
+                                                   StandardOpenOption.WRITE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      while (lBuffer.hasRemaining())
+        lFileChannel.write(lBuffer);
+    }
+  }
+
+  private void writeObject(ObjectOutputStream pObjectOutputStream) throws IOException
+  {
+    pObjectOutputStream.defaultWriteObject();
+    pObjectOutputStream.writeObject(Arrays.copyOf(mLineageIds,
+                                                  mUsedNumberOfParticles));
+    pObjectOutputStream.writeObject(Arrays.copyOf(mBirthEvents,
+                                                  mNumberOfCells));
+    pObjectOutputStream.writeObject(Arrays.copyOf(mEventTimeStepIndices,
+                                                  mNumberOfEvents));
+    pObjectOutputStream.writeObject(Arrays.copyOf(mEventParents,
+                                                  mNumberOfEvents));
+    pObjectOutputStream.writeObject(Arrays.copyOf(mEventDaughters,
+                                                  mNumberOfEvents));
+  }
+
+  private void readObject(ObjectInputStream pObjectInputStream) throws IOException,
+                                                                ClassNotFoundException
+  {
+    pObjectInputStream.defaultReadObject();
+    mLineageIds = new int[mCapacity];
+    Arrays.fill(mLineageIds, -1);
+    final int[] lLineageIds = (int[]) pObjectInputStream.readObject();
+    System.arraycopy(lLineageIds, 0, mLineageIds, 0, lLineageIds.length);
+    mBirthEvents = grow((int[]) pObjectInputStream.readObject());
+    final long[] lTimeStepIndices = (long[]) pObjectInputStream.readObject();
+    mEventTimeStepIndices = Arrays.copyOf(lTimeStepIndices,
+                                          Math.max(16,
+                                                   2 * lTimeStepIndices.length));
+    mEventParents = grow((int[]) pObjectInputStream.readObject());
+    mEventDaughters = grow((int[]) pObjectInputStream.readObject());
+  }
+
+  private static int[] grow(int[] pArray)
+  {
+    return Arrays.copyOf(pArray, Math.max(16, 2 * pArray.length));
+  }
+
+}
@@ -0,0 +1,551 @@
+package simbryo.dynamics.tissue.morphogen;
+
+import java.io.Serializable;
+
+import simbryo.dynamics.tissue.cellprop.CellProperty;
+import simbryo.particles.ParticleSystemInterface;
+import simbryo.util.DoubleBufferingFloatArray;
+import simbryo.util.parallel.ParallelRange;
+
+/**
+ * Morphogen field. Concentrations of a morphogen on a regular 3D grid covering
+ * the unit cube, in which particles live. The field diffuses with zero-flux
+ * boundaries and decays linearly, it is coupled to particles by depositing
+ * amounts at particle positions and by sampling concentrations back at particle
+ * positions, both with trilinear interpolation between voxel centers. 2D
+ * tissues use a grid of depth 1.
+ *
+ * Steps are either explicit, with a 7-point stencil, and split into as many
+ * sub-steps as needed for stability, or implicit, in which case each axis is
+ * solved in turn with a backward Euler step (alternating direction splitting,
+ * one tridiagonal system per grid line), which is stable for any time step.
+ * Both are computed in parallel over grid lines.
+ *
+ * Units: positions are in the unit cube, time is in simulation steps, the
+ * diffusion coefficient is in squared units per step and the decay rate is per
+ * step.
+ *
+ * @author royer
+ */
+public class MorphogenField implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private static final float cStabilityFactor = 0.9f;
+  private static final int cMinChunkSize = 16;
+
+  private final int mWidth, mHeight, mDepth;
+  private final DoubleBufferingFloatArray mConcentrations;
+
+  private volatile float mDiffusionCoefficient;
+  private volatile float mDecayRate;
+  private volatile boolean mImplicit;
+
+  private transient float[][] mScratch;
+
+  /**
+   * Instantiates a morphogen field of given grid dimensions, with all
+   * concentrations zero.
+   *
+   * @param pWidth
+   *          number of voxels along x
+   * @param pHeight
+   *          number of voxels along y
+   * @param pDepth
+   *          number of voxels along z, 1 for 2D tissues
+   * @param pDiffusionCoefficient
+   *          diffusion coefficient
+   * @param pDecayRate
+   *          decay rate
+   */
+  public MorphogenField(int pWidth,
+                        int pHeight,
+                        int pDepth,
+                        float pDiffusionCoefficient,
+                        float pDecayRate)
+  {
+    super();
+    if (pWidth < 1 || pHeight < 1 || pDepth < 1)
+      throw new IllegalArgumentException("Invalid grid dimensions: "
+                                         + pWidth
+                                         + "x"
+                                         + pHeight
+                                         + "x"
+                                         + pDepth);
+    mWidth = pWidth;
+    mHeight = pHeight;
+    mDepth = pDepth;
+    mConcentrations = new DoubleBufferingFloatArray(pWidth * pHeight
+                                                    * pDepth);
+    setDiffusionCoefficient(pDiffusionCoefficient);
+    setDecayRate(pDecayRate);
+  }
+
+  /**
+   * Returns the number of voxels along x.
+   *
+   * @return width
+   */
+  public int getWidth()
+  {
+    return mWidth;
+  }
+
+  /**
+   * Returns the number of voxels along y.
+   *
+   * @return height
+   */
+  public int getHeight()
+  {
+    return mHeight;
+  }
+
+  /**
+   * Returns the number of voxels along z.
+   *
+   * @return depth
+   */
+  public int getDepth()
+  {
+    return mDepth;
+  }
+
+  /**
+   * Returns the index of a voxel in the concentration array.
+   *
+   * @param x
+   *          x voxel coordinate
+   * @param y
+   *          y voxel coordinate
+   * @param z
+   *          z voxel coordinate
+   * @return index
+   */
+  public int getIndex(int x, int y, int z)
+  {
+    return (z * mHeight + y) * mWidth + x;
+  }
+
+  /**
+   * Returns the current concentrations, x varying fastest.
+   *
+   * @return concentration array
+   */
+  public float[] getConcentrations()
+  {
+    return mConcentrations.getCurrentArray();
+  }
+
+  /**
+   * Returns the diffusion coefficient.
+   *
+   * @return diffusion coefficient
+   */
+  public float getDiffusionCoefficient()
+  {
+    return mDiffusionCoefficient;
+  }
+
+  /**
+   * Sets the diffusion coefficient.
+   *
+   * @param pDiffusionCoefficient
+   *          diffusion coefficient, must be positive or zero
+   */
+  public void setDiffusionCoefficient(float pDiffusionCoefficient)
+  {
+    if (!(pDiffusionCoefficient >= 0))
+      throw new IllegalArgumentException("Diffusion coefficient must be positive or zero");
+    mDiffusionCoefficient = pDiffusionCoefficient;
+  }
+
+  /**
+   * Returns the decay rate.
+   *
+   * @return decay rate
+   */
+  public float getDecayRate()
+  {
+    return mDecayRate;
+  }
+
+  /**
+   * Sets the decay rate.
+   *
+   * @param pDecayRate
+   *          decay rate, must be positive or zero
+   */
+  public void setDecayRate(float pDecayRate)
+  {
+    if (!(pDecayRate >= 0))
+      throw new IllegalArgumentException("Decay rate must be positive or zero");
+    mDecayRate = pDecayRate;
+  }
+
+  /**
+   * Returns true if steps are implicit.
+   *
+   * @return true if implicit
+   */
+  public boolean isImplicit()
+  {
+    return mImplicit;
+  }
+
+  /**
+   * Sets whether steps are implicit (alternating direction splitting) or
+   * explicit with sub-steps.
+   *
+   * @param pImplicit
+   *          true for implicit steps
+   */
+  public void setImplicit(boolean pImplicit)
+  {
+    mImplicit = pImplicit;
+  }
+
+  /**
+   * Sets all concentrations to a given value.
+   *
+   * @param pValue
+   *          value
+   */
+  public void fill(float pValue)
+  {
+    mConcentrations.set(0, mWidth * mHeight * mDepth, pValue);
+    mConcentrations.swap();
+  }
+
+  /**
+   * Returns the number of explicit sub-steps needed for a stable step of a
+   * given duration.
+   *
+   * @param pTimeStep
+   *          time step
+   * @return number of sub-steps
+   */
+  public int getNumberOfSubSteps(float pTimeStep)
+  {
+    final float lRate = 2 * mDiffusionCoefficient
+                        * (getSquaredInverseSpacing(mWidth)
+                           + getSquaredInverseSpacing(mHeight)
+                           + getSquaredInverseSpacing(mDepth))
+                        + mDecayRate;
+    return Math.max(1,
+                    (int) Math.ceil(pTimeStep * lRate / cStabilityFactor));
+  }
+
+  private static float getSquaredInverseSpacing(int pLength)
+  {
+    // there is no diffusion along axes of length 1:
+    return pLength > 1 ? (float) pLength * pLength : 0;
+  }
+
+  /**
+   * Advances the field by a given time step.
+   *
+   * @param pTimeStep
+   *          time step
+   */
+  public void step(float pTimeStep)
+  {
+    if (mImplicit)
+    {
+      final float lDiffusion = mDiffusionCoefficient * pTimeStep;
+      solveLines(0,
+                 mHeight * mDepth,
+                 mWidth,
+                 1,
+                 lDiffusion * mWidth * mWidth);
+      solveLines(1,
+                 mWidth * mDepth,
+                 mHeight,
+                 mWidth,
+                 lDiffusion * mHeight * mHeight);
+      solveLines(2,
+                 mWidth * mHeight,
+                 mDepth,
+                 mWidth * mHeight,
+                 lDiffusion * mDepth * mDepth);
+      if (mDecayRate > 0)
+      {
+        mConcentrations.copyAndMult(1 / (1 + mDecayRate * pTimeStep));
+        mConcentrations.swap();
+      }
+    }
+    else
+    {
+      final int lNumberOfSubSteps = getNumberOfSubSteps(pTimeStep);
+      final float lSubStep = pTimeStep / lNumberOfSubSteps;
+      for (int s = 0; s < lNumberOfSubSteps; s++)
+        explicitStep(lSubStep);
+    }
+  }
+
+  private void explicitStep(float pTimeStep)
+  {
+    final int lWidth = mWidth, lHeight = mHeight, lDepth = mDepth;
+    final float lDiffusion = mDiffusionCoefficient * pTimeStep;
+    final float ax = lDiffusion * lWidth * lWidth;
+    final float ay = lDiffusion * lHeight * lHeight;
+    final float az = lDiffusion * lDepth * lDepth;
+    final float lDecay = 1 - mDecayRate * pTimeStep;
+    final float[] lRead = mConcentrations.getReadArray();
+    final float[] lWrite = mConcentrations.getWriteArray();
+    final int lPlane = lWidth * lHeight;
+
+    ParallelRange.forEach(0, lHeight * lDepth, cMinChunkSize, (c, b, e) -> {
+      for (int l = b; l < e; l++)
+      {
+        final int y = l % lHeight;
+        final int z = l / lHeight;
+        final int lBase = l * lWidth;
+        // neighbors across boundaries are the voxel itself: zero flux.
+        final int ym = y > 0 ? -lWidth : 0;
+        final int yp = y < lHeight - 1 ? lWidth : 0;
+        final int zm = z > 0 ? -lPlane : 0;
+        final int zp = z < lDepth - 1 ? lPlane : 0;
+        for (int x = 0; x < lWidth; x++)
+        {
+          final int i = lBase + x;
+          final int xm = x > 0 ? -1 : 0;
+          final int xp = x < lWidth - 1 ? 1 : 0;
+          final float lValue = lRead[i];
+          final float lLaplacian =
+                                 ax * (lRead[i + xm] + lRead[i + xp]
+                                       - 2 * lValue)
+                                   + ay * (lRead[i + ym] + lRead[i + yp]
+                                           - 2 * lValue)
+                                   + az * (lRead[i + zm] + lRead[i + zp]
+                                           - 2 * lValue);
+          lWrite[i] = lDecay * lValue + lLaplacian;
+        }
+      }
+    });
+    mConcentrations.swap();
+  }
+
+  /**
+   * Solves, in place, a backward Euler diffusion step along one axis for all
+   * grid lines parallel to that axis, with the Thomas algorithm.
+   */
+  private void solveLines(int pAxis,
+                          int pNumberOfLines,
+                          int pLength,
+                          int pStride,
+                          float pCoefficient)
+  {
+    if (pLength < 2 || pCoefficient == 0)
+      return;
+
+    final int lMaxNumberOfChunks = ParallelRange.getMaxNumberOfChunks();
+    final int lMaxLength = Math.max(mWidth, Math.max(mHeight, mDepth));
+    if (mScratch == null || mScratch.length < lMaxNumberOfChunks
+        || mScratch[0].length < 2 * lMaxLength)
+      mScratch = new float[lMaxNumberOfChunks][2 * lMaxLength];
+
+    final float[] lArray = mConcentrations.getInPlaceArray();
+    final float r = pCoefficient;
+    final int lWidth = mWidth;
+    final int lPlane = mWidth * mHeight;
+
+    ParallelRange.forEach(0, pNumberOfLines, cMinChunkSize, (c, b, e) -> {
+      final float[] lScratch = mScratch[c];
+      for (int l = b; l < e; l++)
+      {
+        final int lStart;
+        if (pAxis == 0)
+          lStart = l * lWidth;
+        else if (pAxis == 1)
+          lStart = (l / lWidth) * lPlane + l % lWidth;
+        else
+          lStart = l;
+
+        // forward sweep, modified upper diagonal in [0,n[, right-hand side in
+        // [n,2n[:
+        float lDiagonal = 1 + r;
+        lScratch[0] = -r / lDiagonal;
+        lScratch[pLength] = lArray[lStart] / lDiagonal;
+        for (int i = 1; i < pLength; i++)
+        {
+          final float lB = i < pLength - 1 ? 1 + 2 * r : 1 + r;
+          final float m = lB + r * lScratch[i - 1];
+          lScratch[i] = -r / m;
+          lScratch[pLength + i] = (lArray[lStart + i * pStride]
+                                   + r * lScratch[pLength + i - 1])
+                                  / m;
+        }
+
+        // back substitution:
+        float lValue = lScratch[2 * pLength - 1];
+        lArray[lStart + (pLength - 1) * pStride] = lValue;
+        for (int i = pLength - 2; i >= 0; i--)
+        {
+          lValue = lScratch[pLength + i] - lScratch[i] * lValue;
+          lArray[lStart + i * pStride] = lValue;
+        }
+      }
+    });
+  }
+
+  /**
+   * Adds an amount of morphogen at a given position, spread over the 8 nearest
+   * voxels with trilinear weights. The sum of all concentrations grows by the
+   * given amount.
+   *
+   * @param x
+   *          x coordinate
+   * @param y
+   *          y coordinate
+   * @param z
+   *          z coordinate
+   * @param pAmount
+   *          amount
+   */
+  public void deposit(float x, float y, float z, float pAmount)
+  {
+    final float[] lArray = mConcentrations.getCurrentArray();
+    final float gx = x * mWidth - 0.5f;
+    final float gy = y * mHeight - 0.5f;
+    final float gz = z * mDepth - 0.5f;
+    final int x0 = (int) Math.floor(gx);
+    final int y0 = (int) Math.floor(gy);
+    final int z0 = (int) Math.floor(gz);
+    final float fx = gx - x0, fy = gy - y0, fz = gz - z0;
+    for (int k = 0; k < 2; k++)
+    {
+      final int lZ = clamp(z0 + k, mDepth);
+      final float wz = k == 0 ? 1 - fz : fz;
+      for (int j = 0; j < 2; j++)
+      {
+        final int lY = clamp(y0 + j, mHeight);
+        final float wyz = wz * (j == 0 ? 1 - fy : fy);
+        final int lBase = (lZ * mHeight + lY) * mWidth;
+        lArray[lBase + clamp(x0, mWidth)] += pAmount * wyz * (1 - fx);
+        lArray[lBase + clamp(x0 + 1, mWidth)] += pAmount * wyz * fx;
+      }
+    }
+  }
+
+  /**
+   * Returns the concentration at a given position, interpolated trilinearly
+   * between voxel centers.
+   *
+   * @param x
+   *          x coordinate
+   * @param y
+   *          y coordinate
+   * @param z
+   *          z coordinate
+   * @return concentration
+   */
+  public float sample(float x, float y, float z)
+  {
+    final float[] lArray = mConcentrations.getCurrentArray();
+    final float gx = x * mWidth - 0.5f;
+    final float gy = y * mHeight - 0.5f;
+    final float gz = z * mDepth - 0.5f;
+    final int x0 = (int) Math.floor(gx);
+    final int y0 = (int) Math.floor(gy);
+    final int z0 = (int) Math.floor(gz);
+    final float fx = gx - x0, fy = gy - y0, fz = gz - z0;
+    float lValue = 0;
+    for (int k = 0; k < 2; k++)
+    {
+      final int lZ = clamp(z0 + k, mDepth);
+      final float wz = k == 0 ? 1 - fz : fz;
+      for (int j = 0; j < 2; j++)
+      {
+        final int lY = clamp(y0 + j, mHeight);
+        final float wyz = wz * (j == 0 ? 1 - fy : fy);
+        final int lBase = (lZ * mHeight + lY) * mWidth;
+        lValue += wyz * ((1 - fx) * lArray[lBase + clamp(x0, mWidth)]
+                         + fx * lArray[lBase + clamp(x0 + 1, mWidth)]);
+      }
+    }
+    return lValue;
+  }
+
+  private static int clamp(int pIndex, int pLength)
+  {
+    return pIndex < 0 ? 0 : (pIndex >= pLength ? pLength - 1 : pIndex);
+  }
+
+  /**
+   * Deposits, for each particle in a range, an amount equal to the value of a
+   * cell property times a factor, at the particle position. Deposition is done
+   * on the calling thread.
+   *
+   * @param pParticleSystem
+   *          particle system
+   * @param pAmountProperty
+   *          cell property holding amounts, or null for a unit amount per
+   *          particle
+   * @param pFactor
+   *          factor applied to amounts
+   * @param pBeginId
+   *          begin id
+   * @param pEndId
+   *          end id
+   */
+  public void deposit(ParticleSystemInterface pParticleSystem,
+                      CellProperty pAmountProperty,
+                      float pFactor,
+                      int pBeginId,
+                      int pEndId)
+  {
+    final int lDimension = pParticleSystem.getDimension();
+    final float[] lPositions = pParticleSystem.getPositions()
+                                              .getCurrentArray();
+    final float[] lAmounts = pAmountProperty == null ? null
+                                                     : pAmountProperty.getCurrentArray();
+    for (int id = pBeginId; id < pEndId; id++)
+    {
+      final int i = id * lDimension;
+      final float lAmount =
+                          lAmounts == null ? pFactor
+                                           : pFactor
+                                             * lAmounts[pAmountProperty.getIndex(id)];
+      if (lAmount != 0)
+        deposit(lPositions[i],
+                lPositions[i + 1],
+                lDimension > 2 ? lPositions[i + 2] : 0.5f,
+                lAmount);
+    }
+  }
+
+  /**
+   * Samples the field at the positions of a range of particles, and sets the
+   * values of a cell property (first dimension) to the sampled concentrations.
+   *
+   * @param pParticleSystem
+   *          particle system
+   * @param pCellProperty
+   *          cell property to set
+   * @param pBeginId
+   *          begin id
+   * @param pEndId
+   *          end id
+   */
+  public void sample(ParticleSystemInterface pParticleSystem,
+                     CellProperty pCellProperty,
+                     int pBeginId,
+                     int pEndId)
+  {
+    final int lDimension = pParticleSystem.getDimension();
+    final float[] lPositions = pParticleSystem.getPositions()
+                                              .getCurrentArray();
+    final float[] lValues = pCellProperty.getCurrentArray();
+    for (int id = pBeginId; id < pEndId; id++)
+    {
+      final int i = id * lDimension;
+      lValues[pCellProperty.getIndex(id)] =
+                                          sample(lPositions[i],
+                                                 lPositions[i + 1],
+                                                 lDimension > 2 ? lPositions[i + 2]
+                                                                : 0.5f);
+    }
+  }
+
+}
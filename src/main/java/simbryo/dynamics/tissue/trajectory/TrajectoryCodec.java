@@ -0,0 +1,286 @@
+package simbryo.dynamics.tissue.trajectory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Trajectory frame codec. Values are quantized to a fixed precision, then
+ * either stored as is (key frames) or as differences to the same values of the
+ * same cells in the previous frame (delta frames). Successive frames of a
+ * tissue differ by small displacements, so that deltas are small integers:
+ * these are zigzag-encoded as variable-length integers, and the resulting bytes
+ * are compressed with a fast deflater.
+ *
+ * A frame of n cells is made of blocks of n x width values, one block per
+ * column group (positions, radii, properties). Deltas are taken cell by cell
+ * within each block, so that frames can have different numbers of cells: cells
+ * that were not present in the previous frame are stored as is. Quantization
+ * is done against the previously coded quantized values, so that errors do not
+ * accumulate along delta frames: decoded values are within half the precision
+ * of the original values.
+ *
+ * Codecs are stateful: delta frames must be encoded and decoded in order,
+ * starting at a key frame.
+ *
+ * @author royer
+ */
+public class TrajectoryCodec implements Closeable
+{
+  /**
+   * Frame flags: raw frame, values stored as little-endian floats.
+   */
+  public static final int cRawFrame = 0;
+
+  /**
+   * Frame flags: key frame, quantized values stored as is.
+   */
+  public static final int cKeyFrame = 1;
+
+  /**
+   * Frame flags: delta frame, quantized values stored as differences to the
+   * previous frame.
+   */
+  public static final int cDeltaFrame = 2;
+
+  private final float mPrecision;
+  private final float mInversePrecision;
+  private final int[] mWidths;
+  private final int mValuesPerParticle;
+
+  private int[] mQuantized = new int[0];
+  private int mNumberOfParticles = -1;
+
+  private byte[] mBytes = new byte[0];
+  private byte[] mCompressed = new byte[0];
+  private final Deflater mDeflater = new Deflater(Deflater.BEST_SPEED);
+  private final Inflater mInflater = new Inflater();
+
+  /**
+   * Instantiates a codec for frames made of blocks of given widths.
+   *
+   * @param pPrecision
+   *          quantization precision, must be positive
+   * @param pWidths
+   *          number of values per cell of each block, in frame order
+   */
+  public TrajectoryCodec(float pPrecision, int... pWidths)
+  {
+    super();
+    if (!(pPrecision > 0))
+      throw new IllegalArgumentException("Precision must be positive, was: "
+                                         + pPrecision);
+    mPrecision = pPrecision;
+    mInversePrecision = 1 / pPrecision;
+    mWidths = pWidths.clone();
+    int lValuesPerParticle = 0;
+    for (int lWidth : pWidths)
+      lValuesPerParticle += lWidth;
+    mValuesPerParticle = lValuesPerParticle;
+  }
+
+  /**
+   * Returns the quantization precision.
+   *
+   * @return precision
+   */
+  public float getPrecision()
+  {
+    return mPrecision;
+  }
+
+  /**
+   * Encodes a frame. Delta frames are encoded against the last encoded frame,
+   * and can only be encoded after a key frame.
+   *
+   * @param pValues
+   *          frame values
+   * @param pNumberOfParticles
+   *          number of cells in frame
+   * @param pKeyFrame
+   *          true for a key frame, false for a delta frame
+   * @return buffer holding the encoded frame, valid until the next call
+   */
+  public ByteBuffer encode(float[] pValues,
+                           int pNumberOfParticles,
+                           boolean pKeyFrame)
+  {
+    checkDelta(pKeyFrame);
+    final int lLength = pNumberOfParticles * mValuesPerParticle;
+    final int[] lQuantized = new int[lLength];
+    for (int i = 0; i < lLength; i++)
+      lQuantized[i] = Math.round(pValues[i] * mInversePrecision);
+
+    if (mBytes.length < 5 * lLength)
+      mBytes = new byte[5 * lLength];
+    int lByteLength = 0;
+    int lOffset = 0, lPreviousOffset = 0;
+    for (int lWidth : mWidths)
+    {
+      final int lDeltaLength = pKeyFrame ? 0
+                                         : Math.min(pNumberOfParticles,
+                                                    mNumberOfParticles)
+                                           * lWidth;
+      for (int i = 0; i < lDeltaLength; i++)
+        lByteLength =
+                    putVarInt(mBytes,
+                              lByteLength,
+                              lQuantized[lOffset + i]
+                                           - mQuantized[lPreviousOffset + i]);
+      for (int i = lDeltaLength; i < pNumberOfParticles * lWidth; i++)
+        lByteLength = putVarInt(mBytes,
+                                lByteLength,
+                                lQuantized[lOffset + i]);
+      lOffset += pNumberOfParticles * lWidth;
+      lPreviousOffset += mNumberOfParticles * lWidth;
+    }
+
+    mDeflater.reset();
+    mDeflater.setInput(mBytes, 0, lByteLength);
+    mDeflater.finish();
+    int lCompressedLength = 0;
+    while (!mDeflater.finished())
+    {
+      if (lCompressedLength == mCompressed.length)
+        mCompressed = Arrays.copyOf(mCompressed,
+                                    Math.max(64,
+                                             2 * mCompressed.length));
+      lCompressedLength += mDeflater.deflate(mCompressed,
+                                             lCompressedLength,
+                                             mCompressed.length
+                                                - lCompressedLength);
+    }
+
+    mQuantized = lQuantized;
+    mNumberOfParticles = pNumberOfParticles;
+    return ByteBuffer.wrap(mCompressed, 0, lCompressedLength);
+  }
+
+  /**
+   * Decodes a frame. Delta frames are decoded against the last decoded frame,
+   * which must be the frame that preceded it when encoding.
+   *
+   * @param pEncoded
+   *          encoded frame, from its position to its limit
+   * @param pNumberOfParticles
+   *          number of cells in frame
+   * @param pKeyFrame
+   *          true for a key frame, false for a delta frame
+   * @param pValues
+   *          array to decode values into
+   * @throws IOException
+   *           thrown if the encoded frame is corrupted
+   */
+  public void decode(ByteBuffer pEncoded,
+                     int pNumberOfParticles,
+                     boolean pKeyFrame,
+                     float[] pValues) throws IOException
+  {
+    checkDelta(pKeyFrame);
+    final int lLength = pNumberOfParticles * mValuesPerParticle;
+
+    if (mCompressed.length < pEncoded.remaining())
+      mCompressed = new byte[pEncoded.remaining()];
+    final int lCompressedLength = pEncoded.remaining();
+    pEncoded.get(mCompressed, 0, lCompressedLength);
+    if (mBytes.length < 5 * lLength)
+      mBytes = new byte[5 * lLength];
+    int lByteLength = 0;
+    mInflater.reset();
+    mInflater.setInput(mCompressed, 0, lCompressedLength);
+    try
+    {
+      while (!mInflater.finished())
+      {
+        int lInflated = mInflater.inflate(mBytes,
+                                          lByteLength,
+                                          mBytes.length - lByteLength);
+        if (lInflated == 0
+            && (mInflater.needsInput() || lByteLength == mBytes.length))
+          break;
+        lByteLength += lInflated;
+      }
+    }
+    catch (DataFormatException e)
+    {
+      throw new IOException("Corrupted trajectory frame", e);
+    }
+    if (!mInflater.finished())
+      throw new IOException("Corrupted trajectory frame");
+
+    final int[] lQuantized = new int[lLength];
+    int lPosition = 0;
+    int lOffset = 0, lPreviousOffset = 0;
+    for (int lWidth : mWidths)
+    {
+      final int lDeltaLength = pKeyFrame ? 0
+                                         : Math.min(pNumberOfParticles,
+                                                    mNumberOfParticles)
+                                           * lWidth;
+      for (int i = 0; i < pNumberOfParticles * lWidth; i++)
+      {
+        int lValue = 0;
+        int lShift = 0;
+        int lByte;
+        do
+        {
+          if (lPosition >= lByteLength)
+            throw new IOException("Corrupted trajectory frame");
+          lByte = mBytes[lPosition++];
+          lValue |= (lByte & 0x7F) << lShift;
+          lShift += 7;
+        }
+        while ((lByte & 0x80) != 0);
+        lValue = (lValue >>> 1) ^ -(lValue & 1);
+        if (i < lDeltaLength)
+          lValue += mQuantized[lPreviousOffset + i];
+        lQuantized[lOffset + i] = lValue;
+      }
+      lOffset += pNumberOfParticles * lWidth;
+      lPreviousOffset += mNumberOfParticles * lWidth;
+    }
+
+    for (int i = 0; i < lLength; i++)
+      pValues[i] = lQuantized[i] * mPrecision;
+
+    mQuantized = lQuantized;
+    mNumberOfParticles = pNumberOfParticles;
+  }
+
+  private void checkDelta(boolean pKeyFrame)
+  {
+    if (!pKeyFrame && mNumberOfParticles < 0)
+      throw new IllegalStateException("Delta frames must follow a key frame");
+  }
+
+  /**
+   * Writes a zigzag-encoded variable-length integer, and returns the position
+   * after it.
+   */
+  private static int putVarInt(byte[] pBytes, int pPosition, int pValue)
+  {
+    int lValue = (pValue << 1) ^ (pValue >> 31);
+    while ((lValue & ~0x7F) != 0)
+    {
+      pBytes[pPosition++] = (byte) ((lValue & 0x7F) | 0x80);
+      lValue >>>= 7;
+    }
+    pBytes[pPosition++] = (byte) lValue;
+    return pPosition;
+  }
+
+  /**
+   * Releases the deflater and inflater.
+   */
+  @Override
+  public void close()
+  {
+    mDeflater.end();
+    mInflater.end();
+  }
+
+}
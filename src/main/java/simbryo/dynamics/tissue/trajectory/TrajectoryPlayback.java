@@ -0,0 +1,328 @@
+package simbryo.dynamics.tissue.trajectory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import simbryo.dynamics.tissue.TissueDynamicsInterface;
+import simbryo.dynamics.tissue.cellprop.CellPropertyArena;
+import simbryo.dynamics.tissue.cellprop.CellPropertyArena.Layout;
+import simbryo.dynamics.tissue.cellprop.HasPolarity;
+import simbryo.dynamics.tissue.cellprop.VectorCellProperty;
+import simbryo.particles.ParticleSystem;
+
+/**
+ * Trajectory playback. Serves the frames of a recorded trajectory through the
+ * tissue dynamics interface, so that phantom renderers and viewers can run on
+ * a recorded tissue without recomputing the mechanics. Running simulation steps
+ * only advances the time step index and loads the corresponding state.
+ *
+ * Between two recorded frames, positions, radii and polarities are linearly
+ * interpolated, cells present in only one of the two frames keep the values of
+ * the earlier frame. Interpolation assumes that cell ids are stable from frame
+ * to frame, which holds for tissues in which cells divide but are never
+ * removed. Before the first frame, the first frame is shown, and after the last
+ * frame, the last frame is shown.
+ *
+ * @author royer
+ */
+public class TrajectoryPlayback extends ParticleSystem implements
+                                TissueDynamicsInterface,
+                                HasPolarity
+{
+  private static final long serialVersionUID = 1L;
+
+  private final transient TrajectoryReader mTrajectoryReader;
+  private final int mPolarityPropertyIndex;
+  private final CellPropertyArena mCellPropertyArena;
+  private final VectorCellProperty mPolarityProperty;
+
+  private long mTimeStepIndex;
+  private boolean mInterpolation = true;
+
+  private final transient int[] mCachedFrameIndices = new int[]
+  { -1, -1 };
+  private final transient float[][] mCachedPositions;
+  private final transient float[][] mCachedRadii;
+  private final transient float[][] mCachedPolarities;
+
+  /**
+   * Instantiates a playback for a recorded trajectory, and loads the state at
+   * the time step index of the first frame.
+   *
+   * @param pTrajectoryReader
+   *          trajectory reader
+   * @param pPolarityPropertyIndex
+   *          index of the recorded property holding cell polarities, or -1 if
+   *          none was recorded, in which case polarities are zero.
+   * @param pMaxNumberOfParticlesPerGridCell
+   *          max number of particles per grid cell
+   * @param pGridDimensions
+   *          grid dimensions
+   */
+  public TrajectoryPlayback(TrajectoryReader pTrajectoryReader,
+                            int pPolarityPropertyIndex,
+                            int pMaxNumberOfParticlesPerGridCell,
+                            int... pGridDimensions)
+  {
+    super(pMaxNumberOfParticlesPerGridCell,
+          getMaxNumberOfParticles(pTrajectoryReader),
+          pGridDimensions);
+    final int lDimension = getDimension();
+    if (pTrajectoryReader.getDimension() != lDimension)
+      throw new IllegalArgumentException("Trajectory dimension "
+                                         + pTrajectoryReader.getDimension()
+                                         + " does not match grid dimension "
+                                         + lDimension);
+    if (pTrajectoryReader.getNumberOfFrames() == 0)
+      throw new IllegalArgumentException("Trajectory has no frames");
+    if (pPolarityPropertyIndex >= 0
+        && pTrajectoryReader.getPropertyDimension(pPolarityPropertyIndex) != lDimension)
+      throw new IllegalArgumentException("Polarity property must have dimension "
+                                         + lDimension);
+
+    mTrajectoryReader = pTrajectoryReader;
+    mPolarityPropertyIndex = pPolarityPropertyIndex;
+    mCellPropertyArena = new CellPropertyArena(getMaxNumberOfParticles(),
+                                               Layout.Columns);
+    mPolarityProperty = new VectorCellProperty(mCellPropertyArena,
+                                               lDimension);
+
+    final int lMaxNumberOfParticles = getMaxNumberOfParticles();
+    mCachedPositions = new float[2][lMaxNumberOfParticles * lDimension];
+    mCachedRadii = new float[2][lMaxNumberOfParticles];
+    mCachedPolarities = new float[2][lMaxNumberOfParticles * lDimension];
+
+    setTimeStepIndex(pTrajectoryReader.getTimeStepIndex(0));
+  }
+
+  private static int getMaxNumberOfParticles(TrajectoryReader pTrajectoryReader)
+  {
+    int lMaxNumberOfParticles = 1;
+    for (int f = 0; f < pTrajectoryReader.getNumberOfFrames(); f++)
+      lMaxNumberOfParticles =
+                            Math.max(lMaxNumberOfParticles,
+                                     pTrajectoryReader.getNumberOfParticles(f));
+    return lMaxNumberOfParticles;
+  }
+
+  /**
+   * Returns the trajectory reader.
+   *
+   * @return trajectory reader
+   */
+  public TrajectoryReader getTrajectoryReader()
+  {
+    return mTrajectoryReader;
+  }
+
+  @Override
+  public VectorCellProperty getPolarityProperty()
+  {
+    return mPolarityProperty;
+  }
+
+  /**
+   * Returns true if states between recorded frames are interpolated.
+   *
+   * @return true if interpolation is on
+   */
+  public boolean isInterpolation()
+  {
+    return mInterpolation;
+  }
+
+  /**
+   * Sets whether states between recorded frames are interpolated, otherwise
+   * the last frame recorded at or before the current time step index is shown.
+   * The current state is reloaded.
+   *
+   * @param pInterpolation
+   *          true to interpolate
+   */
+  public void setInterpolation(boolean pInterpolation)
+  {
+    mInterpolation = pInterpolation;
+    setTimeStepIndex(mTimeStepIndex);
+  }
+
+  @Override
+  public long getTimeStepIndex()
+  {
+    return mTimeStepIndex;
+  }
+
+  /**
+   * Seeks to a given time step index and loads the corresponding state.
+   *
+   * @param pTimeStepIndex
+   *          time step index
+   */
+  public void setTimeStepIndex(long pTimeStepIndex)
+  {
+    mTimeStepIndex = pTimeStepIndex;
+    try
+    {
+      loadState();
+    }
+    catch (IOException e)
+    {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void simulationSteps(int pNumberOfSteps)
+  {
+    setTimeStepIndex(mTimeStepIndex + pNumberOfSteps);
+  }
+
+  private void loadState() throws IOException
+  {
+    final TrajectoryReader lReader = mTrajectoryReader;
+    final int lDimension = getDimension();
+    final int lFrameIndex = Math.max(0,
+                                     lReader.getFrameIndex(mTimeStepIndex));
+    final int lNumberOfParticles = lReader.getNumberOfParticles(lFrameIndex);
+    final int lSlot = getSlot(lFrameIndex, -1);
+
+    int lNextSlot = -1;
+    float lAlpha = 0;
+    int lNumberOfInterpolatedParticles = 0;
+    if (mInterpolation && lFrameIndex + 1 < lReader.getNumberOfFrames()
+        && mTimeStepIndex > lReader.getTimeStepIndex(lFrameIndex))
+    {
+      final long lTimeStepIndex = lReader.getTimeStepIndex(lFrameIndex);
+      final long lNextTimeStepIndex =
+                                    lReader.getTimeStepIndex(lFrameIndex
+                                                             + 1);
+      lAlpha = (float) (mTimeStepIndex - lTimeStepIndex)
+               / (lNextTimeStepIndex - lTimeStepIndex);
+      lNextSlot = getSlot(lFrameIndex + 1, lSlot);
+      lNumberOfInterpolatedParticles =
+                                     Math.min(lNumberOfParticles,
+                                              lReader.getNumberOfParticles(lFrameIndex
+                                                                           + 1));
+    }
+
+    final float[] lPositions = mPositions.getCurrentArray();
+    final float[] lRadii = mRadii.getCurrentArray();
+    final float[] lPolarities = mPolarityProperty.getCurrentArray();
+    final int lPolarityBase = mPolarityProperty.getIndex(0);
+
+    System.arraycopy(mCachedPositions[lSlot],
+                     0,
+                     lPositions,
+                     0,
+                     lNumberOfParticles * lDimension);
+    System.arraycopy(mCachedRadii[lSlot], 0, lRadii, 0, lNumberOfParticles);
+    System.arraycopy(mCachedPolarities[lSlot],
+                     0,
+                     lPolarities,
+                     lPolarityBase,
+                     lNumberOfParticles * lDimension);
+
+    if (lNextSlot >= 0)
+    {
+      interpolate(lPositions,
+                  0,
+                  mCachedPositions[lNextSlot],
+                  lAlpha,
+                  lNumberOfInterpolatedParticles * lDimension);
+      interpolate(lRadii,
+                  0,
+                  mCachedRadii[lNextSlot],
+                  lAlpha,
+                  lNumberOfInterpolatedParticles);
+      interpolate(lPolarities,
+                  lPolarityBase,
+                  mCachedPolarities[lNextSlot],
+                  lAlpha,
+                  lNumberOfInterpolatedParticles * lDimension);
+      if (mPolarityPropertyIndex >= 0)
+        normalize(lPolarities,
+                  lPolarityBase,
+                  lDimension,
+                  lNumberOfInterpolatedParticles);
+    }
+
+    // cells beyond the current number of cells are cleared:
+    final int lMaxNumberOfParticles = getMaxNumberOfParticles();
+    Arrays.fill(lPositions,
+                lNumberOfParticles * lDimension,
+                lMaxNumberOfParticles * lDimension,
+                0);
+    Arrays.fill(lRadii, lNumberOfParticles, lMaxNumberOfParticles, 0);
+    Arrays.fill(lPolarities,
+                lPolarityBase + lNumberOfParticles * lDimension,
+                lPolarityBase + lMaxNumberOfParticles * lDimension,
+                0);
+
+    setNumberOfParticles(lNumberOfParticles);
+    updateNeighborhoodGrid();
+  }
+
+  private static void interpolate(float[] pArray,
+                                  int pOffset,
+                                  float[] pNextArray,
+                                  float pAlpha,
+                                  int pLength)
+  {
+    for (int i = 0; i < pLength; i++)
+    {
+      final float lValue = pArray[pOffset + i];
+      pArray[pOffset + i] = lValue + pAlpha * (pNextArray[i] - lValue);
+    }
+  }
+
+  private static void normalize(float[] pArray,
+                                int pOffset,
+                                int pDimension,
+                                int pNumberOfVectors)
+  {
+    for (int id = 0; id < pNumberOfVectors; id++)
+    {
+      final int j = pOffset + id * pDimension;
+      float lNorm = 0;
+      for (int d = 0; d < pDimension; d++)
+        lNorm += pArray[j + d] * pArray[j + d];
+      if (lNorm > 0)
+      {
+        final float lInvNorm = (float) (1 / Math.sqrt(lNorm));
+        for (int d = 0; d < pDimension; d++)
+          pArray[j + d] *= lInvNorm;
+      }
+    }
+  }
+
+  /**
+   * Returns the cache slot holding a given frame, loading it in the slot that
+   * is not to be kept if needed.
+   */
+  private int getSlot(int pFrameIndex, int pKeptSlot) throws IOException
+  {
+    for (int s = 0; s < 2; s++)
+      if (mCachedFrameIndices[s] == pFrameIndex)
+        return s;
+    final int lSlot = pKeptSlot == 0 ? 1 : 0;
+    final int lNumberOfParticles =
+                                 mTrajectoryReader.getNumberOfParticles(pFrameIndex);
+    mTrajectoryReader.readPositions(pFrameIndex,
+                                    0,
+                                    lNumberOfParticles,
+                                    mCachedPositions[lSlot]);
+    mTrajectoryReader.readRadii(pFrameIndex,
+                                0,
+                                lNumberOfParticles,
+                                mCachedRadii[lSlot]);
+    if (mPolarityPropertyIndex >= 0)
+      mTrajectoryReader.readProperty(pFrameIndex,
+                                     mPolarityPropertyIndex,
+                                     0,
+                                     lNumberOfParticles,
+                                     mCachedPolarities[lSlot]);
+    mCachedFrameIndices[lSlot] = pFrameIndex;
+    return lSlot;
+  }
+
+}
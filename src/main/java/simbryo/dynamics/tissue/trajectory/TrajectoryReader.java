@@ -0,0 +1,490 @@
+package simbryo.dynamics.tissue.trajectory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * Trajectory reader. Gives random access to the frames recorded by a
+ * TrajectoryRecorder: the index is read once, and the used range of chunks, as
+ * given by the index entries, is memory-mapped on demand, so that seeking to a time point or reading a range of cells does not
+ * load the whole trajectory. Encoded frames are decoded from the closest key
+ * frame at or before them, and the last decoded frame is kept so that reading
+ * frames in order decodes each frame once.
+ *
+ * @author royer
+ */
+public class TrajectoryReader implements Closeable
+{
+  private final File mDirectory;
+  private final int mDimension;
+  private final int[] mPropertyDimensions;
+  private final float mPrecision;
+  private final int mKeyFrameInterval;
+
+  private final long[] mTimeStepIndices;
+  private final int[] mChunkIndices;
+  private final int[] mOffsets;
+  private final int[] mLengths;
+  private final int[] mNumberOfParticles;
+  private final int[] mFlags;
+
+  private final HashMap<Integer, MappedByteBuffer> mChunkMap =
+                                                             new HashMap<>();
+
+  private TrajectoryCodec mTrajectoryCodec;
+  private int mDecodedFrameIndex = -1;
+  private float[] mDecodedValues = new float[0];
+  private ByteBuffer mDecodedFrame;
+
+  /**
+   * Opens the trajectory recorded in a given directory.
+   *
+   * @param pDirectory
+   *          trajectory directory
+   * @throws IOException
+   *           thrown if the index cannot be read or is invalid
+   */
+  public TrajectoryReader(File pDirectory) throws IOException
+  {
+    super();
+    mDirectory = pDirectory;
+
+    ByteBuffer lIndex;
+    try (FileChannel lIndexChannel =
+                                   FileChannel.open(new File(pDirectory,
+                                                             TrajectoryRecorder.cIndexFileName).toPath(),
+                                                    StandardOpenOption.READ))
+    {
+      lIndex = ByteBuffer.allocate((int) lIndexChannel.size())
+                         .order(ByteOrder.LITTLE_ENDIAN);
+      while (lIndex.hasRemaining())
+        if (lIndexChannel.read(lIndex) < 0)
+          break;
+      lIndex.flip();
+    }
+
+    if (lIndex.remaining() < 5 * 4
+        || lIndex.getInt() != TrajectoryRecorder.cMagic)
+      throw new IOException("Not a trajectory index: " + pDirectory);
+    int lVersion = lIndex.getInt();
+    if (lVersion < 1 || lVersion > TrajectoryRecorder.cVersion)
+      throw new IOException("Unsupported trajectory version: "
+                            + lVersion);
+    mDimension = lIndex.getInt();
+    lIndex.getInt(); // chunk size
+    mPropertyDimensions = new int[lIndex.getInt()];
+    for (int p = 0; p < mPropertyDimensions.length; p++)
+      mPropertyDimensions[p] = lIndex.getInt();
+    if (lVersion >= 2)
+    {
+      mPrecision = lIndex.getFloat();
+      mKeyFrameInterval = lIndex.getInt();
+    }
+    else
+    {
+      mPrecision = 0;
+      mKeyFrameInterval = 1;
+    }
+
+    // an entry being written while the index is read is ignored:
+    int lNumberOfFrames = lIndex.remaining()
+                          / TrajectoryRecorder.cIndexEntryLength;
+    mTimeStepIndices = new long[lNumberOfFrames];
+    mChunkIndices = new int[lNumberOfFrames];
+    mOffsets = new int[lNumberOfFrames];
+    mLengths = new int[lNumberOfFrames];
+    mNumberOfParticles = new int[lNumberOfFrames];
+    mFlags = new int[lNumberOfFrames];
+    for (int f = 0; f < lNumberOfFrames; f++)
+    {
+      mTimeStepIndices[f] = lIndex.getLong();
+      mChunkIndices[f] = lIndex.getInt();
+      mOffsets[f] = lIndex.getInt();
+      mLengths[f] = lIndex.getInt();
+      mNumberOfParticles[f] = lIndex.getInt();
+      mFlags[f] = lIndex.getInt();
+    }
+  }
+
+  /**
+   * Returns the trajectory directory.
+   *
+   * @return directory
+   */
+  public File getDirectory()
+  {
+    return mDirectory;
+  }
+
+  /**
+   * Returns the dimension (2D or 3D) of the recorded tissue.
+   *
+   * @return dimension
+   */
+  public int getDimension()
+  {
+    return mDimension;
+  }
+
+  /**
+   * Returns the number of recorded cell properties.
+   *
+   * @return number of cell properties
+   */
+  public int getNumberOfProperties()
+  {
+    return mPropertyDimensions.length;
+  }
+
+  /**
+   * Returns the dimension of a recorded cell property.
+   *
+   * @param pPropertyIndex
+   *          property index, in recording order
+   * @return property dimension
+   */
+  public int getPropertyDimension(int pPropertyIndex)
+  {
+    return mPropertyDimensions[pPropertyIndex];
+  }
+
+  /**
+   * Returns the quantization precision of encoded frames, or 0 if frames are
+   * stored raw.
+   *
+   * @return precision
+   */
+  public float getPrecision()
+  {
+    return mPrecision;
+  }
+
+  /**
+   * Returns the number of frames between key frames.
+   *
+   * @return key frame interval
+   */
+  public int getKeyFrameInterval()
+  {
+    return mKeyFrameInterval;
+  }
+
+  /**
+   * Returns the number of frames.
+   *
+   * @return number of frames
+   */
+  public int getNumberOfFrames()
+  {
+    return mTimeStepIndices.length;
+  }
+
+  /**
+   * Returns the time step index of a frame.
+   *
+   * @param pFrameIndex
+   *          frame index
+   * @return time step index
+   */
+  public long getTimeStepIndex(int pFrameIndex)
+  {
+    return mTimeStepIndices[pFrameIndex];
+  }
+
+  /**
+   * Returns the number of bytes stored for a frame.
+   *
+   * @param pFrameIndex
+   *          frame index
+   * @return frame length in bytes
+   */
+  public int getFrameLength(int pFrameIndex)
+  {
+    return mLengths[pFrameIndex];
+  }
+
+  /**
+   * Returns the number of cells of a frame.
+   *
+   * @param pFrameIndex
+   *          frame index
+   * @return number of cells
+   */
+  public int getNumberOfParticles(int pFrameIndex)
+  {
+    return mNumberOfParticles[pFrameIndex];
+  }
+
+  /**
+   * Returns the index of the last frame recorded at or before a given time
+   * step, or -1 if all frames were recorded after it.
+   *
+   * @param pTimeStepIndex
+   *          time step index
+   * @return frame index or -1
+   */
+  public int getFrameIndex(long pTimeStepIndex)
+  {
+    int lLow = 0;
+    int lHigh = mTimeStepIndices.length - 1;
+    while (lLow <= lHigh)
+    {
+      int lMiddle = (lLow + lHigh) >>> 1;
+      if (mTimeStepIndices[lMiddle] <= pTimeStepIndex)
+        lLow = lMiddle + 1;
+      else
+        lHigh = lMiddle - 1;
+    }
+    return lHigh;
+  }
+
+  /**
+   * Reads the positions of a range of cells of a frame.
+   *
+   * @param pFrameIndex
+   *          frame index
+   * @param pBeginId
+   *          begin cell id (inclusive)
+   * @param pEndId
+   *          end cell id (exclusive)
+   * @param pPositions
+   *          array to read positions into, from index 0
+   * @throws IOException
+   *           thrown if problem occurs while reading
+   */
+  public void readPositions(int pFrameIndex,
+                            int pBeginId,
+                            int pEndId,
+                            float[] pPositions) throws IOException
+  {
+    readColumn(pFrameIndex, 0, mDimension, pBeginId, pEndId, pPositions);
+  }
+
+  /**
+   * Reads the radii of a range of cells of a frame.
+   *
+   * @param pFrameIndex
+   *          frame index
+   * @param pBeginId
+   *          begin cell id (inclusive)
+   * @param pEndId
+   *          end cell id (exclusive)
+   * @param pRadii
+   *          array to read radii into, from index 0
+   * @throws IOException
+   *           thrown if problem occurs while reading
+   */
+  public void readRadii(int pFrameIndex,
+                        int pBeginId,
+                        int pEndId,
+                        float[] pRadii) throws IOException
+  {
+    readColumn(pFrameIndex, mDimension, 1, pBeginId, pEndId, pRadii);
+  }
+
+  /**
+   * Reads the values of a recorded cell property for a range of cells of a
+   * frame.
+   *
+   * @param pFrameIndex
+   *          frame index
+   * @param pPropertyIndex
+   *          property index, in recording order
+   * @param pBeginId
+   *          begin cell id (inclusive)
+   * @param pEndId
+   *          end cell id (exclusive)
+   * @param pValues
+   *          array to read values into, from index 0
+   * @throws IOException
+   *           thrown if problem occurs while reading
+   */
+  public void readProperty(int pFrameIndex,
+                           int pPropertyIndex,
+                           int pBeginId,
+                           int pEndId,
+                           float[] pValues) throws IOException
+  {
+    int lColumn = mDimension + 1;
+    for (int p = 0; p < pPropertyIndex; p++)
+      lColumn += mPropertyDimensions[p];
+    readColumn(pFrameIndex,
+               lColumn,
+               mPropertyDimensions[pPropertyIndex],
+               pBeginId,
+               pEndId,
+               pValues);
+  }
+
+  /**
+   * Reads a range of cells of a block of values of a frame. The block starts
+   * after 'column' floats per cell, and holds 'width' floats per cell.
+   */
+  private void readColumn(int pFrameIndex,
+                          int pColumn,
+                          int pWidth,
+                          int pBeginId,
+                          int pEndId,
+                          float[] pValues) throws IOException
+  {
+    final int lNumberOfParticles = mNumberOfParticles[pFrameIndex];
+    if (pBeginId < 0 || pEndId > lNumberOfParticles || pBeginId > pEndId)
+      throw new IllegalArgumentException("Invalid cell range ["
+                                         + pBeginId
+                                         + ","
+                                         + pEndId
+                                         + "[ for frame with "
+                                         + lNumberOfParticles
+                                         + " cells");
+    ByteBuffer lFrame = getFrameBuffer(pFrameIndex);
+    lFrame.position(4 * (lNumberOfParticles * pColumn
+                         + pBeginId * pWidth));
+    lFrame.asFloatBuffer().get(pValues, 0, (pEndId - pBeginId) * pWidth);
+  }
+
+  /**
+   * Returns a little-endian buffer holding the raw frame of a given index,
+   * starting at position 0. Encoded frames are decoded.
+   *
+   * @param pFrameIndex
+   *          frame index
+   * @return raw frame
+   * @throws IOException
+   *           thrown if problem occurs while reading
+   */
+  private ByteBuffer getFrameBuffer(int pFrameIndex) throws IOException
+  {
+    switch (mFlags[pFrameIndex])
+    {
+    case TrajectoryCodec.cRawFrame:
+      return getStoredFrame(pFrameIndex);
+    case TrajectoryCodec.cKeyFrame:
+    case TrajectoryCodec.cDeltaFrame:
+      decode(pFrameIndex);
+      mDecodedFrame.position(0);
+      return mDecodedFrame;
+    default:
+      throw new IOException("Unsupported frame encoding: "
+                            + mFlags[pFrameIndex]);
+    }
+  }
+
+  private ByteBuffer getStoredFrame(int pFrameIndex) throws IOException
+  {
+    ByteBuffer lChunk = getChunk(mChunkIndices[pFrameIndex]).duplicate();
+    lChunk.position(mOffsets[pFrameIndex]);
+    lChunk.limit(mOffsets[pFrameIndex] + mLengths[pFrameIndex]);
+    return lChunk.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Decodes an encoded frame into the decoded frame buffer, starting from the
+   * last decoded frame if it precedes it, or else from the closest key frame.
+   */
+  private void decode(int pFrameIndex) throws IOException
+  {
+    if (pFrameIndex == mDecodedFrameIndex)
+      return;
+
+    if (mTrajectoryCodec == null)
+    {
+      int[] lWidths = new int[2 + mPropertyDimensions.length];
+      lWidths[0] = mDimension;
+      lWidths[1] = 1;
+      System.arraycopy(mPropertyDimensions,
+                       0,
+                       lWidths,
+                       2,
+                       mPropertyDimensions.length);
+      mTrajectoryCodec = new TrajectoryCodec(mPrecision, lWidths);
+    }
+
+    int lKeyFrameIndex = pFrameIndex;
+    while (mFlags[lKeyFrameIndex] == TrajectoryCodec.cDeltaFrame)
+      if (--lKeyFrameIndex < 0)
+        throw new IOException("No key frame before frame " + pFrameIndex);
+    int lStartFrameIndex = lKeyFrameIndex;
+    if (mDecodedFrameIndex >= lKeyFrameIndex
+        && mDecodedFrameIndex < pFrameIndex)
+      lStartFrameIndex = mDecodedFrameIndex + 1;
+
+    final int lValuesPerParticle = mDimension + 1 + sum(mPropertyDimensions);
+    for (int f = lStartFrameIndex; f <= pFrameIndex; f++)
+    {
+      final int lLength = mNumberOfParticles[f] * lValuesPerParticle;
+      if (mDecodedValues.length < lLength)
+        mDecodedValues = new float[lLength];
+      // an interrupted decoding invalidates the last decoded frame:
+      mDecodedFrameIndex = -1;
+      mTrajectoryCodec.decode(getStoredFrame(f),
+                              mNumberOfParticles[f],
+                              mFlags[f] == TrajectoryCodec.cKeyFrame,
+                              mDecodedValues);
+      mDecodedFrameIndex = f;
+    }
+
+    final int lLength = mNumberOfParticles[pFrameIndex]
+                        * lValuesPerParticle;
+    if (mDecodedFrame == null || mDecodedFrame.capacity() < 4 * lLength)
+      mDecodedFrame = ByteBuffer.allocate(4 * mDecodedValues.length)
+                                .order(ByteOrder.LITTLE_ENDIAN);
+    mDecodedFrame.clear();
+    mDecodedFrame.asFloatBuffer().put(mDecodedValues, 0, lLength);
+  }
+
+  private static int sum(int[] pArray)
+  {
+    int lSum = 0;
+    for (int lValue : pArray)
+      lSum += lValue;
+    return lSum;
+  }
+
+  private MappedByteBuffer getChunk(int pChunkIndex) throws IOException
+  {
+    MappedByteBuffer lChunk = mChunkMap.get(pChunkIndex);
+    if (lChunk != null)
+      return lChunk;
+
+    // the end of a chunk may be unused, only the frames are mapped:
+    long lUsedLength = 0;
+    for (int f = 0; f < mChunkIndices.length; f++)
+      if (mChunkIndices[f] == pChunkIndex)
+        lUsedLength = Math.max(lUsedLength,
+                               (long) mOffsets[f] + mLengths[f]);
+    try (FileChannel lChunkChannel =
+                                   FileChannel.open(new File(mDirectory,
+                                                             TrajectoryRecorder.getChunkFileName(pChunkIndex)).toPath(),
+                                                    StandardOpenOption.READ))
+    {
+      if (lChunkChannel.size() < lUsedLength)
+        throw new IOException("Truncated trajectory chunk: "
+                              + TrajectoryRecorder.getChunkFileName(pChunkIndex));
+      lChunk = lChunkChannel.map(MapMode.READ_ONLY, 0, lUsedLength);
+    }
+    mChunkMap.put(pChunkIndex, lChunk);
+    return lChunk;
+  }
+
+  /**
+   * Releases the mapped chunks.
+   */
+  @Override
+  public void close()
+  {
+    mChunkMap.clear();
+    if (mTrajectoryCodec != null)
+      mTrajectoryCodec.close();
+    mTrajectoryCodec = null;
+    mDecodedFrameIndex = -1;
+  }
+
+}
@@ -0,0 +1,464 @@
+package simbryo.dynamics.tissue.trajectory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+import simbryo.dynamics.tissue.TissueDynamics;
+import simbryo.dynamics.tissue.cellprop.CellProperty;
+import simbryo.util.pipeline.PipelineStage;
+
+/**
+ * Trajectory recorder. Appends, for each recorded time point, the positions,
+ * radii and values of selected cell properties of the live cells of a tissue
+ * to chunked memory-mapped files, and the location of each frame to an index
+ * file. Frames are written straight into the mapped chunks, and a new chunk is
+ * started when a frame does not fit in the current one. Mapped chunk files are
+ * never truncated, since a file cannot be truncated while mapped on some
+ * platforms and mappings cannot be released explicitly: the unused end of a
+ * chunk is left as is, and readers only use the ranges given by the index
+ * entries. Recorded trajectories are read with a TrajectoryReader.
+ *
+ * Frames are either stored raw, or encoded with a TrajectoryCodec: values are
+ * quantized to a given precision and delta-encoded against the previous frame,
+ * with a key frame every given number of frames for random access.
+ *
+ * Files in the trajectory directory: 'index' holds a header (magic, version,
+ * dimension, chunk size, number and dimensions of properties, precision and key
+ * frame interval) followed by one entry per frame (time step index, chunk,
+ * offset, length, number of cells, flags), 'chunkNNNNN' hold the frames. All
+ * values are little-endian. A raw frame of n cells holds: positions (n x
+ * dimension floats), radii (n floats), then the values of each property (n x
+ * property dimension floats). Encoded frames hold the same values, in the same
+ * order, encoded as described in TrajectoryCodec.
+ *
+ * @author royer
+ */
+public class TrajectoryRecorder implements Closeable
+{
+  /**
+   * Magic number at the beginning of trajectory index files: 'SBTR'
+   */
+  public static final int cMagic = 0x53425452;
+
+  /**
+   * Current version of the trajectory format.
+   */
+  public static final int cVersion = 2;
+
+  /**
+   * Name of the index file.
+   */
+  public static final String cIndexFileName = "index";
+
+  /**
+   * Length in bytes of each index entry.
+   */
+  public static final int cIndexEntryLength = 8 + 5 * 4;
+
+  /**
+   * Default chunk size in bytes.
+   */
+  public static final int cDefaultChunkSize = 64 * 1024 * 1024;
+
+  /**
+   * Name of the default pipeline stage that records trajectories.
+   */
+  public static final String cTrajectoryStage = "trajectory";
+
+  private final File mDirectory;
+  private final TissueDynamics mTissueDynamics;
+  private final CellProperty[] mCellProperties;
+  private final int mChunkSize;
+  private final int mKeyFrameInterval;
+  private final TrajectoryCodec mTrajectoryCodec;
+  private float[] mFrameValues = new float[0];
+
+  private final FileChannel mIndexChannel;
+  private final ByteBuffer mIndexEntry =
+                                       ByteBuffer.allocate(cIndexEntryLength)
+                                                 .order(ByteOrder.LITTLE_ENDIAN);
+
+  private FileChannel mChunkChannel;
+  private MappedByteBuffer mChunkBuffer;
+  private int mChunkIndex = -1;
+
+  private int mNumberOfFrames;
+  private long mLastTimeStepIndex = Long.MIN_VALUE;
+
+  /**
+   * Returns the name of the chunk file of a given index.
+   *
+   * @param pChunkIndex
+   *          chunk index
+   * @return file name
+   */
+  public static String getChunkFileName(int pChunkIndex)
+  {
+    return String.format("chunk%05d", pChunkIndex);
+  }
+
+  /**
+   * Instantiates a recorder that records a tissue in a given directory, with
+   * the default chunk size. Existing trajectory files in the directory are
+   * overwritten.
+   *
+   * @param pDirectory
+   *          trajectory directory
+   * @param pTissueDynamics
+   *          tissue dynamics to record
+   * @param pCellProperties
+   *          cell properties to record
+   * @throws IOException
+   *           thrown if the index file cannot be created
+   */
+  public TrajectoryRecorder(File pDirectory,
+                            TissueDynamics pTissueDynamics,
+                            CellProperty... pCellProperties) throws IOException
+  {
+    this(pDirectory,
+         cDefaultChunkSize,
+         pTissueDynamics,
+         pCellProperties);
+  }
+
+  /**
+   * Instantiates a recorder that records a tissue in a given directory.
+   * Existing trajectory files in the directory are overwritten.
+   *
+   * @param pDirectory
+   *          trajectory directory
+   * @param pChunkSize
+   *          chunk size in bytes
+   * @param pTissueDynamics
+   *          tissue dynamics to record
+   * @param pCellProperties
+   *          cell properties to record
+   * @throws IOException
+   *           thrown if the index file cannot be created
+   */
+  public TrajectoryRecorder(File pDirectory,
+                            int pChunkSize,
+                            TissueDynamics pTissueDynamics,
+                            CellProperty... pCellProperties) throws IOException
+  {
+    this(pDirectory, pChunkSize, 0, 1, pTissueDynamics, pCellProperties);
+  }
+
+  /**
+   * Instantiates a recorder that records a tissue in a given directory, with
+   * frames quantized and delta-encoded. Existing trajectory files in the
+   * directory are overwritten.
+   *
+   * @param pDirectory
+   *          trajectory directory
+   * @param pChunkSize
+   *          chunk size in bytes
+   * @param pPrecision
+   *          quantization precision of recorded values, or 0 to store raw
+   *          frames
+   * @param pKeyFrameInterval
+   *          number of frames between key frames, 1 to only store key frames
+   * @param pTissueDynamics
+   *          tissue dynamics to record
+   * @param pCellProperties
+   *          cell properties to record
+   * @throws IOException
+   *           thrown if the index file cannot be created
+   */
+  public TrajectoryRecorder(File pDirectory,
+                            int pChunkSize,
+                            float pPrecision,
+                            int pKeyFrameInterval,
+                            TissueDynamics pTissueDynamics,
+                            CellProperty... pCellProperties) throws IOException
+  {
+    super();
+    if (pChunkSize < 1)
+      throw new IllegalArgumentException("Chunk size must be positive, was: "
+                                         + pChunkSize);
+    if (pKeyFrameInterval < 1)
+      throw new IllegalArgumentException("Key frame interval must be positive, was: "
+                                         + pKeyFrameInterval);
+    mDirectory = pDirectory;
+    mChunkSize = pChunkSize;
+    mKeyFrameInterval = pKeyFrameInterval;
+    mTissueDynamics = pTissueDynamics;
+    mCellProperties = pCellProperties;
+    mTrajectoryCodec =
+                     pPrecision == 0 ? null
+                                     : new TrajectoryCodec(pPrecision,
+                                                           getWidths(pTissueDynamics,
+                                                                     pCellProperties));
+
+    pDirectory.mkdirs();
+    for (int c = 0; new File(pDirectory, getChunkFileName(c)).delete(); c++)
+      ;
+
+    mIndexChannel =
+                  FileChannel.open(new File(pDirectory,
+                                            cIndexFileName).toPath(),
+                                   StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+
+    ByteBuffer lHeader =
+                       ByteBuffer.allocate(4 * (7 + pCellProperties.length))
+                                 .order(ByteOrder.LITTLE_ENDIAN);
+    lHeader.putInt(cMagic);
+    lHeader.putInt(cVersion);
+    lHeader.putInt(pTissueDynamics.getDimension());
+    lHeader.putInt(pChunkSize);
+    lHeader.putInt(pCellProperties.length);
+    for (CellProperty lCellProperty : pCellProperties)
+      lHeader.putInt(lCellProperty.getDimension());
+    lHeader.putFloat(pPrecision);
+    lHeader.putInt(pKeyFrameInterval);
+    lHeader.flip();
+    write(mIndexChannel, lHeader);
+  }
+
+  /**
+   * Returns the number of values per cell of each block of a frame: positions,
+   * radii, then each property.
+   */
+  private static int[] getWidths(TissueDynamics pTissueDynamics,
+                                  CellProperty... pCellProperties)
+  {
+    int[] lWidths = new int[2 + pCellProperties.length];
+    lWidths[0] = pTissueDynamics.getDimension();
+    lWidths[1] = 1;
+    for (int p = 0; p < pCellProperties.length; p++)
+      lWidths[2 + p] = pCellProperties[p].getDimension();
+    return lWidths;
+  }
+
+  /**
+   * Returns the trajectory directory.
+   *
+   * @return directory
+   */
+  public File getDirectory()
+  {
+    return mDirectory;
+  }
+
+  /**
+   * Returns the number of frames recorded so far.
+   *
+   * @return number of frames
+   */
+  public int getNumberOfFrames()
+  {
+    return mNumberOfFrames;
+  }
+
+  /**
+   * Adds a pipeline stage to the recorded tissue that records a frame every
+   * 'period' steps, after all other stages.
+   *
+   * @param pPeriod
+   *          recording period in steps
+   * @return pipeline stage
+   */
+  public PipelineStage addToPipeline(int pPeriod)
+  {
+    PipelineStage lStage =
+                         mTissueDynamics.getPipeline()
+                                        .addStage(cTrajectoryStage, s -> {
+                                          try
+                                          {
+                                            record(s + 1);
+                                          }
+                                          catch (IOException e)
+                                          {
+                                            throw new RuntimeException(e);
+                                          }
+                                        });
+    lStage.setPeriod(pPeriod, pPeriod - 1);
+    return lStage;
+  }
+
+  /**
+   * Records the current state of the tissue at its current time step index.
+   *
+   * @throws IOException
+   *           thrown if problem occurs while writing
+   */
+  public void record() throws IOException
+  {
+    record(mTissueDynamics.getTimeStepIndex());
+  }
+
+  /**
+   * Records the current state of the tissue for a given time step index. Time
+   * step indices must increase from frame to frame.
+   *
+   * @param pTimeStepIndex
+   *          time step index
+   * @throws IOException
+   *           thrown if problem occurs while writing
+   */
+  public void record(long pTimeStepIndex) throws IOException
+  {
+    if (pTimeStepIndex <= mLastTimeStepIndex)
+      throw new IllegalArgumentException("Time step indices must increase, "
+                                         + pTimeStepIndex
+                                         + " after "
+                                         + mLastTimeStepIndex);
+
+    final int lNumberOfParticles = mTissueDynamics.getNumberOfParticles();
+    final int lFrameLength;
+    final int lOffset;
+    final int lFlags;
+    if (mTrajectoryCodec == null)
+    {
+      lFrameLength = getRawFrameLength(lNumberOfParticles);
+      ByteBuffer lFrame = allocate(lFrameLength);
+      lOffset = lFrame.position();
+      writeRawFrame(lFrame.asFloatBuffer(), lNumberOfParticles);
+      lFrame.position(lOffset + lFrameLength);
+      lFlags = TrajectoryCodec.cRawFrame;
+    }
+    else
+    {
+      final int lRawFrameLength = getRawFrameLength(lNumberOfParticles) / 4;
+      if (mFrameValues.length < lRawFrameLength)
+        mFrameValues = new float[lRawFrameLength];
+      writeRawFrame(FloatBuffer.wrap(mFrameValues), lNumberOfParticles);
+      final boolean lKeyFrame = mNumberOfFrames % mKeyFrameInterval == 0;
+      ByteBuffer lEncoded = mTrajectoryCodec.encode(mFrameValues,
+                                                    lNumberOfParticles,
+                                                    lKeyFrame);
+      lFrameLength = lEncoded.remaining();
+      ByteBuffer lFrame = allocate(lFrameLength);
+      lOffset = lFrame.position();
+      lFrame.put(lEncoded);
+      lFlags = lKeyFrame ? TrajectoryCodec.cKeyFrame
+                         : TrajectoryCodec.cDeltaFrame;
+    }
+
+    mIndexEntry.clear();
+    mIndexEntry.putLong(pTimeStepIndex);
+    mIndexEntry.putInt(mChunkIndex);
+    mIndexEntry.putInt(lOffset);
+    mIndexEntry.putInt(lFrameLength);
+    mIndexEntry.putInt(lNumberOfParticles);
+    mIndexEntry.putInt(lFlags);
+    mIndexEntry.flip();
+    write(mIndexChannel, mIndexEntry);
+
+    mLastTimeStepIndex = pTimeStepIndex;
+    mNumberOfFrames++;
+  }
+
+  private int getRawFrameLength(int pNumberOfParticles)
+  {
+    int lFloatsPerParticle = mTissueDynamics.getDimension() + 1;
+    for (CellProperty lCellProperty : mCellProperties)
+      lFloatsPerParticle += lCellProperty.getDimension();
+    return 4 * pNumberOfParticles * lFloatsPerParticle;
+  }
+
+  private void writeRawFrame(FloatBuffer pFrame, int pNumberOfParticles)
+  {
+    final int lDimension = mTissueDynamics.getDimension();
+    put(pFrame,
+        mTissueDynamics.getPositions().getCurrentArray(),
+        0,
+        pNumberOfParticles * lDimension);
+    put(pFrame,
+        mTissueDynamics.getRadii().getCurrentArray(),
+        0,
+        pNumberOfParticles);
+    for (CellProperty lCellProperty : mCellProperties)
+    {
+      final int lPropertyDimension = lCellProperty.getDimension();
+      final float[] lArray = lCellProperty.getCurrentArray();
+      if (lCellProperty.getStep() == lPropertyDimension)
+        put(pFrame,
+            lArray,
+            lCellProperty.getIndex(0),
+            pNumberOfParticles * lPropertyDimension);
+      else
+        for (int id = 0; id < pNumberOfParticles; id++)
+          put(pFrame,
+              lArray,
+              lCellProperty.getIndex(id),
+              lPropertyDimension);
+    }
+  }
+
+  private static void put(FloatBuffer pBuffer,
+                          float[] pArray,
+                          int pOffset,
+                          int pLength)
+  {
+    pBuffer.put(pArray, pOffset, pLength);
+  }
+
+  /**
+   * Returns the current chunk buffer positioned at the start of a free region
+   * of the given length, starting a new chunk if needed.
+   */
+  private ByteBuffer allocate(int pLength) throws IOException
+  {
+    if (mChunkBuffer == null || mChunkBuffer.remaining() < pLength)
+    {
+      finishChunk();
+      mChunkIndex++;
+      mChunkChannel =
+                    FileChannel.open(new File(mDirectory,
+                                              getChunkFileName(mChunkIndex)).toPath(),
+                                     StandardOpenOption.CREATE,
+                                     StandardOpenOption.READ,
+                                     StandardOpenOption.WRITE,
+                                     StandardOpenOption.TRUNCATE_EXISTING);
+      mChunkBuffer = mChunkChannel.map(MapMode.READ_WRITE,
+                                       0,
+                                       Math.max(mChunkSize, pLength));
+      mChunkBuffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    return mChunkBuffer;
+  }
+
+  private void finishChunk() throws IOException
+  {
+    if (mChunkChannel == null)
+      return;
+    mChunkBuffer.force();
+    mChunkChannel.close();
+    mChunkChannel = null;
+    mChunkBuffer = null;
+  }
+
+  private static void write(FileChannel pFileChannel,
+                            ByteBuffer pBuffer) throws IOException
+  {
+    while (pBuffer.hasRemaining())
+      pFileChannel.write(pBuffer);
+  }
+
+  /**
+   * Flushes the recorded frames to disk and closes all files.
+   *
+   * @throws IOException
+   *           thrown if problem occurs while closing files
+   */
+  @Override
+  public void close() throws IOException
+  {
+    finishChunk();
+    mIndexChannel.close();
+    if (mTrajectoryCodec != null)
+      mTrajectoryCodec.close();
+  }
+
+}
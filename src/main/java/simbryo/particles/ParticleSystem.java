@@ -1,10 +1,16 @@
 package simbryo.particles;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import java.util.concurrent.ThreadLocalRandom;
 
 import simbryo.particles.forcefield.ForceFieldInterface;
+import simbryo.particles.neighborhood.NeighborhoodCache;
 import simbryo.particles.neighborhood.NeighborhoodGrid;
 import simbryo.util.DoubleBufferingFloatArray;
+import simbryo.util.serialization.StructuralCopy;
 
 /**
  * N-dimensional Particle system implementation. Particles have a position and
@@ -22,12 +28,16 @@ public class ParticleSystem implements ParticleSystemInterface
   private final int mMaxNumberOfParticles;
   private final int mMaxNumberOfParticlesPerGridCell;
   private int mNumberOfParticles;
+  private int mNumberOfSpecies = 1;
 
   protected final DoubleBufferingFloatArray mPositions;
   protected final DoubleBufferingFloatArray mVelocities;
   protected final DoubleBufferingFloatArray mRadii;
+  protected transient byte[] mSpecies;
 
   private final NeighborhoodGrid mNeighborhood;
+  private final NeighborhoodCache mNeighborhoodCache =
+                                                     new NeighborhoodCache();
 
   /**
    * Creates a particle system with a give number of dimensions, number of
@@ -124,12 +134,33 @@ public class ParticleSystem implements ParticleSystemInterface
                                                * mDimension);
     mVelocities = new DoubleBufferingFloatArray(pMaxNumberOfParticles
                                                 * mDimension);
-    mRadii = new DoubleBufferingFloatArray(pMaxNumberOfParticles);
+    mRadii = new DoubleBufferingFloatArray(pMaxNumberOfParticles, true);
+    mSpecies = new byte[pMaxNumberOfParticles];
     mNeighborhood =
                   new NeighborhoodGrid(pMaxNumberOfParticlesPerGridCell,
                                        pGridDimensions);
   }
 
+  private void writeObject(ObjectOutputStream pObjectOutputStream) throws IOException
+  {
+    pObjectOutputStream.defaultWriteObject();
+    pObjectOutputStream.writeInt(mSpecies.length);
+    pObjectOutputStream.writeObject(Arrays.copyOf(mSpecies,
+                                                  StructuralCopy.isSkipped(pObjectOutputStream,
+                                                                           mSpecies) ? 0
+                                                                                     : mNumberOfParticles));
+  }
+
+  private void readObject(ObjectInputStream pObjectInputStream) throws IOException,
+                                                                ClassNotFoundException
+  {
+    pObjectInputStream.defaultReadObject();
+    mSpecies = new byte[pObjectInputStream.readInt()];
+    byte[] lSpecies = (byte[]) pObjectInputStream.readObject();
+    System.arraycopy(lSpecies, 0, mSpecies, 0, lSpecies.length);
+    updateNeighborhoodGrid();
+  }
+
   @Override
   public DoubleBufferingFloatArray getPositions()
   {
@@ -154,12 +185,41 @@ public class ParticleSystem implements ParticleSystemInterface
     return mNeighborhood;
   }
 
+  @Override
+  public NeighborhoodCache getNeighborhoodCache()
+  {
+    return mNeighborhoodCache;
+  }
+
+  @Override
+  public NeighborhoodCache updateNeighborhoodCache(float pRadiusFactor)
+  {
+    return mNeighborhoodCache.update(this, pRadiusFactor);
+  }
+
   @Override
   public int getNumberOfParticles()
   {
     return mNumberOfParticles;
   }
 
+  /**
+   * Sets the number of particles. Particles are expected to already be present
+   * in the arrays, this is used when restoring a particle system from a
+   * snapshot.
+   * 
+   * @param pNumberOfParticles
+   *          number of particles
+   */
+  protected void setNumberOfParticles(int pNumberOfParticles)
+  {
+    if (pNumberOfParticles < 0
+        || pNumberOfParticles > mMaxNumberOfParticles)
+      throw new IllegalArgumentException("Invalid number of particles: "
+                                         + pNumberOfParticles);
+    mNumberOfParticles = pNumberOfParticles;
+  }
+
   @Override
   public int getMaxNumberOfParticles()
   {
@@ -207,6 +267,7 @@ public class ParticleSystem implements ParticleSystemInterface
       lPositionsRead[i + d] = pPosition[d];
       lPositionsWrite[i + d] = pPosition[d];
     }
+    mSpecies[lParticleId] = 0;
 
     mNumberOfParticles++;
 
@@ -260,6 +321,8 @@ public class ParticleSystem implements ParticleSystemInterface
                                        lRadiiRead[pSourceParticleId];
     lRadiiWrite[pDestinationParticleId] =
                                         lRadiiWrite[pSourceParticleId];
+
+    mSpecies[pDestinationParticleId] = mSpecies[pSourceParticleId];
   }
 
   @Override
@@ -333,6 +396,35 @@ public class ParticleSystem implements ParticleSystemInterface
     lRadii[pParticleId] = pRadius;
   }
 
+  @Override
+  public int getSpecies(int pParticleId)
+  {
+    return mSpecies[pParticleId];
+  }
+
+  @Override
+  public void setSpecies(int pParticleId, int pSpecies)
+  {
+    if (pSpecies < 0 || pSpecies > Byte.MAX_VALUE)
+      throw new IllegalArgumentException("Species index must be within [0, "
+                                         + Byte.MAX_VALUE
+                                         + "]");
+    mSpecies[pParticleId] = (byte) pSpecies;
+    mNumberOfSpecies = Math.max(mNumberOfSpecies, pSpecies + 1);
+  }
+
+  @Override
+  public int getNumberOfSpecies()
+  {
+    return mNumberOfSpecies;
+  }
+
+  @Override
+  public byte[] getSpeciesArray()
+  {
+    return mSpecies;
+  }
+
   @Override
   public void updateNeighborhoodGrid()
   {
@@ -346,6 +438,8 @@ public class ParticleSystem implements ParticleSystemInterface
     float[] lPositions = mPositions.getCurrentArray();
     float[] lRadii = mRadii.getCurrentArray();
     pNeighborhoodGrid.update(lPositions, lRadii, mNumberOfParticles);
+    if (pNeighborhoodGrid == mNeighborhood)
+      mNeighborhoodCache.invalidate();
   }
 
   @Override
@@ -355,8 +449,7 @@ public class ParticleSystem implements ParticleSystemInterface
   {
     final int lDimension = mDimension;
     final float[] lPositionsRead = mPositions.getReadArray();
-    final float[] lVelocitiesRead = mVelocities.getReadArray();
-    final float[] lVelocitiesWrite = mVelocities.getWriteArray();
+    final float[] lVelocities = mVelocities.getInPlaceArray();
     final int lLength = mNumberOfParticles * lDimension;
 
     for (int i = 0; i < lLength; i += lDimension)
@@ -371,12 +464,10 @@ public class ParticleSystem implements ParticleSystemInterface
       float fx = n * ux;
       float fy = n * uy;
 
-      lVelocitiesWrite[i + 0] = 0.99f * lVelocitiesRead[i + 0] + fx;
-      lVelocitiesWrite[i + 1] = 0.99f * lVelocitiesRead[i + 1] + fy;
+      lVelocities[i + 0] = 0.99f * lVelocities[i + 0] + fx;
+      lVelocities[i + 1] = 0.99f * lVelocities[i + 1] + fy;
     }
 
-    mVelocities.swap();
-
   }
 
   @Override
@@ -434,8 +525,7 @@ public class ParticleSystem implements ParticleSystemInterface
   public void addBrownianMotion(float pAmount)
   {
     final int lDimension = mDimension;
-    final float[] lVelocitiesRead = mVelocities.getReadArray();
-    final float[] lVelocitiesWrite = mVelocities.getWriteArray();
+    final float[] lVelocities = mVelocities.getInPlaceArray();
 
     ThreadLocalRandom lRandom = ThreadLocalRandom.current();
 
@@ -445,13 +535,10 @@ public class ParticleSystem implements ParticleSystemInterface
       {
         int i = id * lDimension + d;
 
-        lVelocitiesWrite[i] = (float) (lVelocitiesRead[i]
-                                       + pAmount
-                                         * lRandom.nextDouble(-1, 1));
+        lVelocities[i] = (float) (lVelocities[i]
+                                  + pAmount * lRandom.nextDouble(-1, 1));
       }
     }
-
-    mVelocities.swap();
   }
 
   @Override
@@ -464,17 +551,14 @@ public class ParticleSystem implements ParticleSystemInterface
   public void applyForce(int pBeginId, int pEndId, float... pForce)
   {
     final int lDimension = mDimension;
-    final float[] lVelocitiesRead = mVelocities.getReadArray();
-    final float[] lVelocitiesWrite = mVelocities.getWriteArray();
+    final float[] lVelocities = mVelocities.getInPlaceArray();
 
     final int lIndexStart = pBeginId * lDimension;
     final int lIndexEnd = pEndId * lDimension;
 
     for (int i = lIndexStart; i < lIndexEnd; i += lDimension)
       for (int d = 0; d < lDimension; d++)
-        lVelocitiesWrite[i + d] = lVelocitiesRead[i + d] + pForce[d];
-
-    mVelocities.swap();
+        lVelocities[i + d] += pForce[d];
   }
 
   @Override
@@ -494,6 +578,20 @@ public class ParticleSystem implements ParticleSystemInterface
 
   @Override
   public void intergrateEuler()
+  {
+    intergrateEuler(false);
+  }
+
+  /**
+   * Integrates the particle positions (Euler scheme) and optionally computes,
+   * in the same pass, the kinetic energy of the particles: half the sum of the
+   * squared velocities, particles having unit mass.
+   * 
+   * @param pComputeKineticEnergy
+   *          true to compute the kinetic energy
+   * @return kinetic energy, or zero if not computed
+   */
+  public float intergrateEuler(boolean pComputeKineticEnergy)
   {
     final int lDimension = mDimension;
     final float[] lPositionsRead = mPositions.getReadArray();
@@ -501,15 +599,21 @@ public class ParticleSystem implements ParticleSystemInterface
     final float[] lVelocities = mVelocities.getCurrentArray();
     final int lLength = mNumberOfParticles * lDimension;
 
+    double lKineticEnergy = 0;
     for (int i = 0; i < lLength; i += lDimension)
     {
       for (int d = 0; d < lDimension; d++)
-        lPositionsWrite[i + d] = lPositionsRead[i + d]
-                                 + lVelocities[i + d];
+      {
+        final float lVelocity = lVelocities[i + d];
+        lPositionsWrite[i + d] = lPositionsRead[i + d] + lVelocity;
+        if (pComputeKineticEnergy)
+          lKineticEnergy += lVelocity * lVelocity;
+      }
     }
 
     mPositions.swap();
 
+    return (float) (0.5 * lKineticEnergy);
   }
 
   @Override
@@ -3,6 +3,7 @@ package simbryo.particles;
 import java.io.Serializable;
 
 import simbryo.particles.forcefield.ForceFieldInterface;
+import simbryo.particles.neighborhood.NeighborhoodCache;
 import simbryo.particles.neighborhood.NeighborhoodGrid;
 import simbryo.util.DoubleBufferingFloatArray;
 
@@ -42,6 +43,27 @@ public interface ParticleSystemInterface extends Serializable
    */
   NeighborhoodGrid getNeighborhoodGrid();
 
+  /**
+   * Returns the neighborhood cache shared by operators and force fields. Use
+   * updateNeighborhoodCache to make sure it is up-to-date before reading it.
+   * 
+   * @return neighborhood cache
+   */
+  NeighborhoodCache getNeighborhoodCache();
+
+  /**
+   * Makes sure that the neighborhood cache is up-to-date and covers at least a
+   * given radius factor. The cache is invalidated each time the neighborhood
+   * grid is updated, and is rebuilt at most once per step. This method must
+   * not be called concurrently.
+   * 
+   * @param pRadiusFactor
+   *          radius factor, neighbors are queried within this factor times the
+   *          particle radius
+   * @return neighborhood cache
+   */
+  NeighborhoodCache updateNeighborhoodCache(float pRadiusFactor);
+
   /**
    * Returns current number of particles.
    * 
@@ -171,6 +193,40 @@ public interface ParticleSystemInterface extends Serializable
    */
   void setRadius(int pParticleId, float pRadius);
 
+  /**
+   * Returns the species of a particle
+   * 
+   * @param pParticleId
+   *          particle id
+   * @return species index
+   */
+  int getSpecies(int pParticleId);
+
+  /**
+   * Sets the species of a particle. Species indices are within [0, 127].
+   * 
+   * @param pParticleId
+   *          particle id
+   * @param pSpecies
+   *          species index
+   */
+  void setSpecies(int pParticleId, int pSpecies);
+
+  /**
+   * Returns the number of species: one more than the largest species index ever
+   * set.
+   * 
+   * @return number of species
+   */
+  int getNumberOfSpecies();
+
+  /**
+   * Returns the array holding the species index of each particle.
+   * 
+   * @return species array
+   */
+  byte[] getSpeciesArray();
+
   /**
    * Updates builtin default neighborhood grid. Important: make sure that the
    * particles are entirely contained within [0,1]^d.
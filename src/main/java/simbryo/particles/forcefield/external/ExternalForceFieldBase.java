@@ -1,6 +1,8 @@
 package simbryo.particles.forcefield.external;
 
+import simbryo.particles.ParticleSystem;
 import simbryo.particles.forcefield.ForceFieldBase;
+import simbryo.util.DoubleBufferingFloatArray;
 
 /**
  * Base class implementing common fields and methods for all external force
@@ -26,4 +28,29 @@ public abstract class ExternalForceFieldBase extends ForceFieldBase
     super(pForceIntensity);
   }
 
+  @Override
+  public void applyForceField(int pBeginId,
+                              int pEndId,
+                              float[] pForceFactor,
+                              ParticleSystem pParticleSystem)
+  {
+    final int lDimension = pParticleSystem.getDimension();
+    final DoubleBufferingFloatArray lVelocities =
+                                                pParticleSystem.getVelocities();
+
+    lVelocities.copyDefault(0,
+                            pParticleSystem.getNumberOfParticles()
+                               * lDimension);
+
+    addForces(pBeginId,
+              pEndId,
+              pForceFactor,
+              lDimension,
+              pParticleSystem.getPositions().getReadArray(),
+              pParticleSystem.getRadii().getCurrentArray(),
+              lVelocities.getWriteArray());
+
+    lVelocities.swap();
+  }
+
 }
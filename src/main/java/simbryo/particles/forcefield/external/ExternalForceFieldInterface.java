@@ -13,4 +13,35 @@ public interface ExternalForceFieldInterface extends
                                              ForceFieldInterface
 {
 
+  /**
+   * Adds the forces of this force field to the velocities of particles within a
+   * given range of ids (begin inclusive, end exclusive). Contrary to
+   * applyForceField, velocities are accumulated in place: no buffer is copied
+   * or swapped. This makes it possible to accumulate several external force
+   * fields in a single pass. A float array can be provided to adjust the force
+   * per particle. If the float array is null then it is ignored.
+   * 
+   * @param pBeginId
+   *          particle id range beginning inclusive
+   * @param pEndId
+   *          particle id range end exclusive
+   * @param pFactor
+   *          applies a force factor per particle, ignored if null.
+   * @param pDimension
+   *          dimension
+   * @param pPositions
+   *          positions array
+   * @param pRadii
+   *          radii array
+   * @param pVelocities
+   *          velocities array to which the forces are added
+   */
+  void addForces(int pBeginId,
+                 int pEndId,
+                 float[] pFactor,
+                 int pDimension,
+                 float[] pPositions,
+                 float[] pRadii,
+                 float[] pVelocities);
+
 }
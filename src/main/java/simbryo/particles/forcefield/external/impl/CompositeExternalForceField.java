@@ -0,0 +1,168 @@
+package simbryo.particles.forcefield.external.impl;
+
+import java.util.ArrayList;
+
+import simbryo.particles.forcefield.external.ExternalForceFieldBase;
+import simbryo.particles.forcefield.external.ExternalForceFieldInterface;
+
+/**
+ * This force field combines several external force fields, each with an
+ * optional per-particle force factor (mask). All forces are accumulated into
+ * the velocities with a single read-to-write copy and a single swap. Particles
+ * are processed in blocks, and for each block all force fields are applied in
+ * turn, so that the velocities of a block stay in cache. The force intensity
+ * of this composite force field acts as a global gain.
+ *
+ * @author royer
+ */
+public class CompositeExternalForceField extends
+                                         ExternalForceFieldBase
+                                         implements
+                                         ExternalForceFieldInterface
+{
+  private static final long serialVersionUID = 1L;
+
+  private static final int cBlockSize = 1024;
+
+  private final ArrayList<ExternalForceFieldInterface> mForceFieldList =
+                                                                       new ArrayList<>();
+  private final ArrayList<float[]> mForceFactorList =
+                                                    new ArrayList<>();
+
+  private transient float[] mCombinedFactor;
+
+  /**
+   * Constructs an empty composite external force field with unit gain.
+   */
+  public CompositeExternalForceField()
+  {
+    super(1);
+  }
+
+  /**
+   * Adds an external force field.
+   * 
+   * @param pForceField
+   *          external force field
+   */
+  public void addForceField(ExternalForceFieldInterface pForceField)
+  {
+    addForceField(pForceField, null);
+  }
+
+  /**
+   * Adds an external force field with a per-particle force factor array. The
+   * array is not copied, it can be updated in between simulation steps.
+   * 
+   * @param pForceField
+   *          external force field
+   * @param pForceFactor
+   *          force factor per particle, ignored if null.
+   */
+  public void addForceField(ExternalForceFieldInterface pForceField,
+                            float[] pForceFactor)
+  {
+    mForceFieldList.add(pForceField);
+    mForceFactorList.add(pForceFactor);
+  }
+
+  /**
+   * Returns the number of force fields.
+   * 
+   * @return number of force fields
+   */
+  public int getNumberOfForceFields()
+  {
+    return mForceFieldList.size();
+  }
+
+  /**
+   * Returns the force field of given index.
+   * 
+   * @param pIndex
+   *          index
+   * @return force field
+   */
+  public ExternalForceFieldInterface getForceField(int pIndex)
+  {
+    return mForceFieldList.get(pIndex);
+  }
+
+  /**
+   * Returns the force factor array of the force field of given index.
+   * 
+   * @param pIndex
+   *          index
+   * @return force factor array, or null
+   */
+  public float[] getForceFactor(int pIndex)
+  {
+    return mForceFactorList.get(pIndex);
+  }
+
+  @Override
+  public void addForces(int pBeginId,
+                        int pEndId,
+                        float[] pFactor,
+                        int pDimension,
+                        float[] pPositions,
+                        float[] pRadii,
+                        float[] pVelocities)
+  {
+    final float lGain = mForceIntensity;
+    final int lNumberOfForceFields = mForceFieldList.size();
+
+    for (int b = pBeginId; b < pEndId; b += cBlockSize)
+    {
+      final int e = Math.min(pEndId, b + cBlockSize);
+      for (int f = 0; f < lNumberOfForceFields; f++)
+      {
+        float[] lFactor = combineFactors(b,
+                                         e,
+                                         lGain,
+                                         pFactor,
+                                         mForceFactorList.get(f));
+
+        mForceFieldList.get(f).addForces(b,
+                                         e,
+                                         lFactor,
+                                         pDimension,
+                                         pPositions,
+                                         pRadii,
+                                         pVelocities);
+      }
+    }
+  }
+
+  private float[] combineFactors(int pBeginId,
+                                 int pEndId,
+                                 float pGain,
+                                 float[] pFactor,
+                                 float[] pFieldFactor)
+  {
+    if (pGain == 1 && pFactor == null)
+      return pFieldFactor;
+    if (pGain == 1 && pFieldFactor == null)
+      return pFactor;
+
+    if (mCombinedFactor == null || mCombinedFactor.length < pEndId)
+      mCombinedFactor = new float[pEndId];
+    final float[] lCombined = mCombinedFactor;
+
+    if (pFactor == null && pFieldFactor == null)
+      for (int id = pBeginId; id < pEndId; id++)
+        lCombined[id] = pGain;
+    else if (pFieldFactor == null)
+      for (int id = pBeginId; id < pEndId; id++)
+        lCombined[id] = pGain * pFactor[id];
+    else if (pFactor == null)
+      for (int id = pBeginId; id < pEndId; id++)
+        lCombined[id] = pGain * pFieldFactor[id];
+    else
+      for (int id = pBeginId; id < pEndId; id++)
+        lCombined[id] = pGain * pFactor[id] * pFieldFactor[id];
+
+    return lCombined;
+  }
+
+}
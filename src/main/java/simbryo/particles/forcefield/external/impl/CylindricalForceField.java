@@ -1,6 +1,5 @@
 package simbryo.particles.forcefield.external.impl;
 
-import simbryo.particles.ParticleSystem;
 import simbryo.particles.forcefield.external.ExternalForceFieldBase;
 import simbryo.particles.forcefield.external.ExternalForceFieldInterface;
 
@@ -19,6 +18,9 @@ public class CylindricalForceField extends ExternalForceFieldBase
   private int mAxis;
   private float[] mCenter;
 
+  // 0 along the cylinder axis, 1 otherwise:
+  private float[] mAxisMask;
+
   /**
    * Constructs a centri(petal+/fugal-) cylindrical force field given a force
    * intensity and center. if the the force intensity is positive then it is a
@@ -39,63 +41,72 @@ public class CylindricalForceField extends ExternalForceFieldBase
     super(pForceIntensity);
     mAxis = pAxis;
     mCenter = pCenter;
+
+    mAxisMask = new float[pCenter.length];
+    for (int d = 0; d < pCenter.length; d++)
+      mAxisMask[d] = d == mAxis ? 0 : 1;
   }
 
-  @SuppressWarnings("unused")
   @Override
-  public void applyForceField(int pBeginId,
-                              int pEndId,
-                              float[] pForceFactor,
-                              ParticleSystem pParticleSystem)
+  public void addForces(int pBeginId,
+                        int pEndId,
+                        float[] pFactor,
+                        int pDimension,
+                        float[] pPositions,
+                        float[] pRadii,
+                        float[] pVelocities)
   {
-    final int lDimension = pParticleSystem.getDimension();
-
-    final float[] lPositionsRead = pParticleSystem.getPositions()
-                                                  .getReadArray();
-    final float[] lPositionsWrite = pParticleSystem.getPositions()
-                                                   .getWriteArray();
-    final float[] lVelocitiesRead = pParticleSystem.getVelocities()
-                                                   .getReadArray();
-    final float[] lVelocitiesWrite = pParticleSystem.getVelocities()
-                                                    .getWriteArray();
+    final float lForceIntensity = mForceIntensity;
+    final float[] lCenter = mCenter;
+    final float[] lAxisMask = mAxisMask;
 
-    final int lIndexStart = pBeginId * lDimension;
-    final int lIndexEnd = pEndId * lDimension;
-
-    final float[] lVector = new float[lDimension];
+    if (pFactor == null)
+      for (int id = pBeginId, i =
+                                pBeginId * pDimension; id < pEndId; id++, i +=
+                                                                            pDimension)
+        addForce(pDimension,
+                 pPositions,
+                 pVelocities,
+                 lCenter,
+                 lAxisMask,
+                 i,
+                 lForceIntensity);
+    else
+      for (int id = pBeginId, i =
+                                pBeginId * pDimension; id < pEndId; id++, i +=
+                                                                            pDimension)
+        addForce(pDimension,
+                 pPositions,
+                 pVelocities,
+                 lCenter,
+                 lAxisMask,
+                 i,
+                 lForceIntensity * pFactor[id]);
+  }
 
-    for (int i =
-               lIndexStart, id =
-                               pBeginId; i < lIndexEnd; i +=
-                                                          lDimension, id++)
+  private static void addForce(final int pDimension,
+                               final float[] pPositions,
+                               final float[] pVelocities,
+                               final float[] pCenter,
+                               final float[] pAxisMask,
+                               final int pIndex,
+                               final float pForce)
+  {
+    float lSquaredLength = 0;
+    for (int d = 0; d < pDimension; d++)
     {
-      float lSquaredLength = 0;
-      for (int d = 0; d < lDimension; d++)
-      {
-        float px = lPositionsRead[i + d];
-        float cx = mCenter[d];
-        float dx = d == mAxis ? 0 : cx - px;
-        lVector[d] = dx;
-
-        lSquaredLength += dx * dx;
-      }
-
-      float lInverseLengthTimesForce =
-                                     (float) (mForceIntensity
-                                              * (pForceFactor != null ? pForceFactor[id]
-                                                                      : 1)
-                                              / Math.sqrt(lSquaredLength));
-
-      for (int d = 0; d < lDimension; d++)
-      {
-        lVelocitiesWrite[i + d] = lVelocitiesRead[i + d]
-                                  + lVector[d]
-                                    * lInverseLengthTimesForce;
-      }
-
+      float dx = pAxisMask[d] * (pCenter[d] - pPositions[pIndex + d]);
+      lSquaredLength += dx * dx;
     }
 
-    pParticleSystem.getVelocities().swap();
+    final float lInverseLengthTimesForce =
+                                         (float) (pForce
+                                                  / Math.sqrt(lSquaredLength));
+
+    for (int d = 0; d < pDimension; d++)
+      pVelocities[pIndex + d] += pAxisMask[d]
+                                 * (pCenter[d] - pPositions[pIndex + d])
+                                 * lInverseLengthTimesForce;
   }
 
 }
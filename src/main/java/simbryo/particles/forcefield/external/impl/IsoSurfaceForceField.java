@@ -1,6 +1,5 @@
 package simbryo.particles.forcefield.external.impl;
 
-import simbryo.particles.ParticleSystem;
 import simbryo.particles.forcefield.external.ExternalForceFieldBase;
 import simbryo.particles.forcefield.external.ExternalForceFieldInterface;
 import simbryo.particles.isosurf.IsoSurfaceInterface;
@@ -34,60 +33,58 @@ public class IsoSurfaceForceField extends ExternalForceFieldBase
     mIsoSurfaceInterface = pIsoSurfaceInterface;
   }
 
-  @SuppressWarnings("unused")
   @Override
-  public void applyForceField(int pBeginId,
-                              int pEndId,
-                              float[] pForceFactor,
-                              ParticleSystem pParticleSystem)
+  public void addForces(int pBeginId,
+                        int pEndId,
+                        float[] pFactor,
+                        int pDimension,
+                        float[] pPositions,
+                        float[] pRadii,
+                        float[] pVelocities)
   {
     final float lForceIntensity = mForceIntensity;
+    final IsoSurfaceInterface lIsoSurface = mIsoSurfaceInterface;
+
+    if (pFactor == null)
+      for (int id = pBeginId, i =
+                                pBeginId * pDimension; id < pEndId; id++, i +=
+                                                                            pDimension)
+        addForce(pDimension,
+                 pPositions,
+                 pVelocities,
+                 lIsoSurface,
+                 i,
+                 lForceIntensity);
+    else
+      for (int id = pBeginId, i =
+                                pBeginId * pDimension; id < pEndId; id++, i +=
+                                                                            pDimension)
+        addForce(pDimension,
+                 pPositions,
+                 pVelocities,
+                 lIsoSurface,
+                 i,
+                 lForceIntensity * pFactor[id]);
+  }
 
-    final int lDimension = pParticleSystem.getDimension();
-
-    final float[] lPositionsRead = pParticleSystem.getPositions()
-                                                  .getReadArray();
-    final float[] lPositionsWrite = pParticleSystem.getPositions()
-                                                   .getWriteArray();
-    final float[] lVelocitiesRead = pParticleSystem.getVelocities()
-                                                   .getReadArray();
-    final float[] lVelocitiesWrite = pParticleSystem.getVelocities()
-                                                    .getWriteArray();
-
-    final int lIndexStart = pBeginId * lDimension;
-    final int lIndexEnd = pEndId * lDimension;
-
-    for (int i =
-               lIndexStart, id =
-                               pBeginId; id < pEndId; i +=
-                                                        lDimension, id++)
-    {
-      mIsoSurfaceInterface.clear();
-
-      for (int d = 0; d < lDimension; d++)
-      {
-        float px = lPositionsRead[i + d];
-        mIsoSurfaceInterface.addCoordinate(px);
-      }
-
-      final float lDistance = mIsoSurfaceInterface.getDistance();
-
-      final float lForceSign = Math.signum(lDistance);
-
-      final float lForceIntensityFinal = lForceSign * lForceIntensity
-                                         * (pForceFactor != null ? pForceFactor[id]
-                                                                 : 1);
+  private static void addForce(final int pDimension,
+                               final float[] pPositions,
+                               final float[] pVelocities,
+                               final IsoSurfaceInterface pIsoSurface,
+                               final int pIndex,
+                               final float pForce)
+  {
+    pIsoSurface.clear();
 
-      for (int d = 0; d < lDimension; d++)
-      {
-        float dx = mIsoSurfaceInterface.getNormalizedGardient(d);
-        lVelocitiesWrite[i + d] = lVelocitiesRead[i + d]
-                                  + dx * lForceIntensityFinal;
-      }
+    for (int d = 0; d < pDimension; d++)
+      pIsoSurface.addCoordinate(pPositions[pIndex + d]);
 
-    }
+    final float lForceIntensityFinal = Math.signum(pIsoSurface.getDistance())
+                                       * pForce;
 
-    pParticleSystem.getVelocities().swap();
+    for (int d = 0; d < pDimension; d++)
+      pVelocities[pIndex + d] += pIsoSurface.getNormalizedGardient(d)
+                                 * lForceIntensityFinal;
   }
 
 }
@@ -15,6 +15,9 @@ public abstract class InteractionForceFieldBase extends ForceFieldBase
 
   private static final long serialVersionUID = 1L;
 
+  protected volatile SpeciesInteractionMatrix mSpeciesInteractionMatrix =
+                                                                       new SpeciesInteractionMatrix(1);
+
   /**
    * Constructs an interaction force field of given force intensity.
    * 
@@ -26,4 +29,26 @@ public abstract class InteractionForceFieldBase extends ForceFieldBase
     super(pForceIntensity);
   }
 
+  /**
+   * Returns the species interaction matrix.
+   * 
+   * @return species interaction matrix
+   */
+  public SpeciesInteractionMatrix getSpeciesInteractionMatrix()
+  {
+    return mSpeciesInteractionMatrix;
+  }
+
+  /**
+   * Sets the species interaction matrix. The force between two particles is
+   * multiplied by the matrix entry for their species.
+   * 
+   * @param pSpeciesInteractionMatrix
+   *          species interaction matrix
+   */
+  public void setSpeciesInteractionMatrix(SpeciesInteractionMatrix pSpeciesInteractionMatrix)
+  {
+    mSpeciesInteractionMatrix = pSpeciesInteractionMatrix;
+  }
+
 }
@@ -0,0 +1,108 @@
+package simbryo.particles.forcefield.interaction;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import simbryo.particles.ParticleSystem;
+
+/**
+ * Symmetric matrix of interaction factors between particle species. Entry
+ * (a,b) multiplies the force between a particle of species a and a particle of
+ * species b. The matrix is stored as a flat row-major array so that
+ * interaction force fields can look up factors with a single index
+ * computation inside their neighbor loops.
+ *
+ * @author royer
+ */
+public class SpeciesInteractionMatrix implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private final int mNumberOfSpecies;
+  private final float[] mMatrix;
+
+  /**
+   * Instantiates an interaction matrix for a given number of species, all
+   * factors are initialized to one.
+   * 
+   * @param pNumberOfSpecies
+   *          number of species
+   */
+  public SpeciesInteractionMatrix(int pNumberOfSpecies)
+  {
+    if (pNumberOfSpecies < 1 || pNumberOfSpecies > Byte.MAX_VALUE + 1)
+      throw new IllegalArgumentException("Number of species must be within [1, "
+                                         + (Byte.MAX_VALUE + 1)
+                                         + "]");
+    mNumberOfSpecies = pNumberOfSpecies;
+    mMatrix = new float[pNumberOfSpecies * pNumberOfSpecies];
+    Arrays.fill(mMatrix, 1f);
+  }
+
+  /**
+   * Returns the number of species.
+   * 
+   * @return number of species
+   */
+  public int getNumberOfSpecies()
+  {
+    return mNumberOfSpecies;
+  }
+
+  /**
+   * Returns the interaction factor between two species.
+   * 
+   * @param pSpeciesA
+   *          first species
+   * @param pSpeciesB
+   *          second species
+   * @return interaction factor
+   */
+  public float get(int pSpeciesA, int pSpeciesB)
+  {
+    return mMatrix[pSpeciesA * mNumberOfSpecies + pSpeciesB];
+  }
+
+  /**
+   * Sets the interaction factor between two species. The matrix is kept
+   * symmetric.
+   * 
+   * @param pSpeciesA
+   *          first species
+   * @param pSpeciesB
+   *          second species
+   * @param pFactor
+   *          interaction factor
+   */
+  public void set(int pSpeciesA, int pSpeciesB, float pFactor)
+  {
+    mMatrix[pSpeciesA * mNumberOfSpecies + pSpeciesB] = pFactor;
+    mMatrix[pSpeciesB * mNumberOfSpecies + pSpeciesA] = pFactor;
+  }
+
+  /**
+   * Returns the flat row-major array backing this matrix.
+   * 
+   * @return matrix array
+   */
+  public float[] getArray()
+  {
+    return mMatrix;
+  }
+
+  /**
+   * Checks that this matrix covers all species of a given particle system.
+   * 
+   * @param pParticleSystem
+   *          particle system
+   */
+  public void checkCompatible(ParticleSystem pParticleSystem)
+  {
+    if (pParticleSystem.getNumberOfSpecies() > mNumberOfSpecies)
+      throw new IllegalArgumentException("Interaction matrix has "
+                                         + mNumberOfSpecies
+                                         + " species but particle system has "
+                                         + pParticleSystem.getNumberOfSpecies());
+  }
+
+}
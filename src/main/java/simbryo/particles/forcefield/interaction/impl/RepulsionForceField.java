@@ -5,6 +5,7 @@ import java.util.SplittableRandom;
 import simbryo.particles.ParticleSystem;
 import simbryo.particles.forcefield.interaction.InteractionForceFieldBase;
 import simbryo.particles.forcefield.interaction.InteractionForceFieldInterface;
+import simbryo.particles.forcefield.interaction.SpeciesInteractionMatrix;
 import simbryo.util.geom.GeometryUtils;
 
 /**
@@ -61,6 +62,14 @@ public class RepulsionForceField extends InteractionForceFieldBase
     final float[] lVelocitiesWrite = pParticleSystem.getVelocities()
                                                     .getWriteArray();
 
+    final SpeciesInteractionMatrix lSpeciesInteractionMatrix =
+                                                             mSpeciesInteractionMatrix;
+    lSpeciesInteractionMatrix.checkCompatible(pParticleSystem);
+    final float[] lSpeciesFactors = lSpeciesInteractionMatrix.getArray();
+    final int lNumberOfSpecies =
+                               lSpeciesInteractionMatrix.getNumberOfSpecies();
+    final byte[] lSpecies = pParticleSystem.getSpeciesArray();
+
     pParticleSystem.getVelocities().copyDefault(pBeginId * lDimension,
                                                 pEndId * lDimension);
 
@@ -74,6 +83,7 @@ public class RepulsionForceField extends InteractionForceFieldBase
                                * lDimension; idu < pEndId; idu++, i +=
                                                                     lDimension)
     {
+      final int lSpeciesRow = lSpecies[idu] * lNumberOfSpecies;
 
       for (int k = 0; k < lNumberOfInteractionPartners; k++)
       {
@@ -92,6 +102,7 @@ public class RepulsionForceField extends InteractionForceFieldBase
                                       * (pForceFactor != null ? pForceFactor[idu]
                                                                 * pForceFactor[idv]
                                                               : 1)
+                                      * lSpeciesFactors[lSpeciesRow + lSpecies[idv]]
                                       / lDistance;
 
         for (int d = 0; d < lDimension; d++)
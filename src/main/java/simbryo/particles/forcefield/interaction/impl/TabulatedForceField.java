@@ -0,0 +1,189 @@
+package simbryo.particles.forcefield.interaction.impl;
+
+import simbryo.particles.ParticleSystem;
+import simbryo.particles.forcefield.interaction.InteractionForceFieldBase;
+import simbryo.particles.forcefield.interaction.InteractionForceFieldInterface;
+import simbryo.particles.forcefield.interaction.SpeciesInteractionMatrix;
+import simbryo.particles.forcefield.interaction.law.PairForceLawInterface;
+import simbryo.particles.forcefield.interaction.law.PairForceTable;
+import simbryo.particles.neighborhood.NeighborhoodCache;
+
+/**
+ * This interaction force field applies a user-defined pair force law between
+ * neighboring particles. The law is tabulated once at construction as a
+ * function of the squared normalized distance, so that evaluating the force
+ * for a pair of particles costs a table lookup and no square root. New adhesion
+ * or repulsion models can be implemented by simply providing a new pair force
+ * law.
+ * 
+ * @author royer
+ */
+public class TabulatedForceField extends InteractionForceFieldBase
+                                 implements
+                                 InteractionForceFieldInterface
+{
+  private static final long serialVersionUID = 1L;
+
+  private static final int cDefaultNumberOfEntries = 1024;
+
+  private final PairForceTable mPairForceTable;
+  private float mDrag;
+
+  /**
+   * Constructs a tabulated force field given a force intensity, drag
+   * coefficient, pair force law and cut-off normalized gap. A default table
+   * resolution is used.
+   * 
+   * @param pForceIntensity
+   *          force intensity (multiplies the law)
+   * @param pDrag
+   *          drag applied to slow down particles.
+   * @param pPairForceLaw
+   *          pair force law
+   * @param pMaxNormalizedGap
+   *          cut-off normalized gap beyond which the force is zero.
+   */
+  public TabulatedForceField(float pForceIntensity,
+                             float pDrag,
+                             PairForceLawInterface pPairForceLaw,
+                             float pMaxNormalizedGap)
+  {
+    this(pForceIntensity,
+         pDrag,
+         new PairForceTable(pPairForceLaw,
+                            pMaxNormalizedGap,
+                            cDefaultNumberOfEntries));
+  }
+
+  /**
+   * Constructs a tabulated force field given a force intensity, drag
+   * coefficient, and a pair force table.
+   * 
+   * @param pForceIntensity
+   *          force intensity (multiplies the law)
+   * @param pDrag
+   *          drag applied to slow down particles.
+   * @param pPairForceTable
+   *          pair force table
+   */
+  public TabulatedForceField(float pForceIntensity,
+                             float pDrag,
+                             PairForceTable pPairForceTable)
+  {
+    super(pForceIntensity);
+    mDrag = pDrag;
+    mPairForceTable = pPairForceTable;
+  }
+
+  /**
+   * Returns the pair force table used by this force field.
+   * 
+   * @return pair force table
+   */
+  public PairForceTable getPairForceTable()
+  {
+    return mPairForceTable;
+  }
+
+  @Override
+  public void applyForceField(int pBeginId,
+                              int pEndId,
+                              float[] pForceFactor,
+                              ParticleSystem pParticleSystem)
+  {
+    final int lDimension = pParticleSystem.getDimension();
+
+    final float[] lPositionsRead = pParticleSystem.getPositions()
+                                                  .getReadArray();
+    final float[] lVelocitiesWrite = pParticleSystem.getVelocities()
+                                                    .getWriteArray();
+    final float[] lRadii =
+                         pParticleSystem.getRadii().getCurrentArray();
+
+    final PairForceTable lPairForceTable = mPairForceTable;
+    final float lForceIntensity = mForceIntensity;
+    final float lRadiusDilation = 1
+                                  + lPairForceTable.getMaxNormalizedGap();
+
+    final SpeciesInteractionMatrix lSpeciesInteractionMatrix =
+                                                             mSpeciesInteractionMatrix;
+    lSpeciesInteractionMatrix.checkCompatible(pParticleSystem);
+    final float[] lSpeciesFactors = lSpeciesInteractionMatrix.getArray();
+    final int lNumberOfSpecies =
+                               lSpeciesInteractionMatrix.getNumberOfSpecies();
+    final byte[] lSpecies = pParticleSystem.getSpeciesArray();
+
+    pParticleSystem.getVelocities().copyAndMult(pBeginId * lDimension,
+                                                pEndId * lDimension,
+                                                mDrag);
+
+    final NeighborhoodCache lNeighborhoodCache =
+                                               pParticleSystem.updateNeighborhoodCache(lRadiusDilation);
+    final int[] lOffsets = lNeighborhoodCache.getOffsets();
+    final int[] lNeighboors = lNeighborhoodCache.getNeighbors();
+
+    for (int idu =
+                 pBeginId, i = idu
+                               * lDimension; idu < pEndId; idu++, i +=
+                                                                    lDimension)
+    {
+
+      final float ru = lRadii[idu];
+      final int lSpeciesRow = lSpecies[idu] * lNumberOfSpecies;
+
+      for (int k = lOffsets[idu]; k < lOffsets[idu + 1]; k++)
+      {
+        final int idv = lNeighboors[k];
+
+        if (idu < idv)
+        {
+          final int j = idv * lDimension;
+          final float lInvSumOfRadii = 1.0f / (ru + lRadii[idv]);
+
+          float lSquaredDistance = 0;
+          for (int d = 0; d < lDimension; d++)
+          {
+            float lDelta = lPositionsRead[i + d]
+                           - lPositionsRead[j + d];
+            lSquaredDistance += lDelta * lDelta;
+          }
+
+          final float lSquaredNormalizedDistance = lSquaredDistance
+                                                   * lInvSumOfRadii
+                                                   * lInvSumOfRadii;
+
+          final float lTableValue =
+                                  lPairForceTable.lookup(lSquaredNormalizedDistance);
+
+          if (lTableValue != 0)
+          {
+            float lForceOverDistance = lForceIntensity
+                                       * (pForceFactor != null ? pForceFactor[idu]
+                                                                 * pForceFactor[idv]
+                                                               : 1)
+                                       * lSpeciesFactors[lSpeciesRow + lSpecies[idv]]
+                                       * lTableValue
+                                       * lInvSumOfRadii;
+
+            for (int d = 0; d < lDimension; d++)
+            {
+              float lDelta = lPositionsRead[i + d]
+                             - lPositionsRead[j + d];
+
+              float lAxisVector = lForceOverDistance * lDelta;
+
+              lVelocitiesWrite[i + d] += lAxisVector;
+              lVelocitiesWrite[j + d] += -lAxisVector;
+            }
+          }
+        }
+
+      }
+
+    }
+
+    pParticleSystem.getVelocities().swap();
+
+  }
+
+}
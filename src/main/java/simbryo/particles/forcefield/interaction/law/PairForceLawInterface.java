@@ -0,0 +1,25 @@
+package simbryo.particles.forcefield.interaction.law;
+
+/**
+ * Pair force laws define the magnitude of the force between two interacting
+ * particles as a function of their normalized gap: (d - ru - rv) / (ru + rv)
+ * where d is the distance between the particle centers and ru, rv are the
+ * particle radii. Positive values push the particles apart (repulsion),
+ * negative values pull them together (adhesion).
+ *
+ * @author royer
+ */
+public interface PairForceLawInterface
+{
+
+  /**
+   * Returns the force magnitude for a given normalized gap.
+   * 
+   * @param pNormalizedGap
+   *          normalized gap, -1 when the two centers coincide, 0 when the two
+   *          spheres touch.
+   * @return force magnitude (positive: repulsive, negative: attractive)
+   */
+  float getForce(float pNormalizedGap);
+
+}
@@ -0,0 +1,80 @@
+package simbryo.particles.forcefield.interaction.law;
+
+/**
+ * Collection of standard pair force laws. These laws reproduce the force laws
+ * hard-coded in the interaction force fields and can be combined or used as
+ * templates for new interaction models.
+ *
+ * @author royer
+ */
+public class PairForceLaws
+{
+
+  /**
+   * Collision law: constant unit repulsion as soon as two spheres overlap. This
+   * is the law used by the collision force field.
+   * 
+   * @return collision law
+   */
+  public static PairForceLawInterface collision()
+  {
+    return (g) -> g < 0 ? 1 : 0;
+  }
+
+  /**
+   * Cohesion law: constant unit attraction when two spheres are close but not
+   * overlapping (gap smaller than half of the sum of radii). This is the law
+   * used by the cohesion force field.
+   * 
+   * @return cohesion law
+   */
+  public static PairForceLawInterface cohesion()
+  {
+    return (g) -> (g > 0 && g < 0.5f) ? -1 : 0;
+  }
+
+  /**
+   * Harmonic law: linear spring with a given rest gap. The force is repulsive
+   * when the gap is smaller than the rest gap and attractive otherwise.
+   * 
+   * @param pRestGap
+   *          normalized rest gap
+   * @return harmonic law
+   */
+  public static PairForceLawInterface harmonic(float pRestGap)
+  {
+    return (g) -> pRestGap - g;
+  }
+
+  /**
+   * Adhesion law: linear repulsion when overlapping and constant attraction of
+   * given strength up to a given normalized range.
+   * 
+   * @param pAdhesion
+   *          adhesion strength relative to the unit repulsion
+   * @param pRange
+   *          normalized range of adhesion
+   * @return adhesion law
+   */
+  public static PairForceLawInterface adhesion(float pAdhesion,
+                                               float pRange)
+  {
+    return (g) -> g < 0 ? -g : (g < pRange ? -pAdhesion : 0);
+  }
+
+  /**
+   * Returns the sum of two laws.
+   * 
+   * @param pLawA
+   *          first law
+   * @param pLawB
+   *          second law
+   * @return sum of laws
+   */
+  public static PairForceLawInterface sum(PairForceLawInterface pLawA,
+                                          PairForceLawInterface pLawB)
+  {
+    return (g) -> pLawA.getForce(g) + pLawB.getForce(g);
+  }
+
+}
@@ -0,0 +1,132 @@
+package simbryo.particles.forcefield.interaction.law;
+
+import java.io.Serializable;
+
+/**
+ * Lookup table for pair force laws. The table is indexed by the squared
+ * normalized distance s = d^2 / (ru + rv)^2 so that no square root is needed
+ * when evaluating the force. Each entry stores the force magnitude divided by
+ * the normalized distance, so that the force vector acting on particle u is
+ * simply: table(s) / (ru + rv) * (xu - xv). Values are linearly interpolated
+ * between entries, and the force is zero beyond the cut-off.
+ *
+ * @author royer
+ */
+public class PairForceTable implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private final float[] mTable;
+  private final float mMaxNormalizedGap;
+  private final float mMaxSquaredNormalizedDistance;
+  private final float mInverseSpacing;
+
+  /**
+   * Tabulates a given pair force law up to a given maximal normalized gap
+   * (cut-off) with a given number of entries.
+   * 
+   * @param pPairForceLaw
+   *          pair force law
+   * @param pMaxNormalizedGap
+   *          maximal normalized gap (cut-off), must be positive
+   * @param pNumberOfEntries
+   *          number of entries in table, at least 2
+   */
+  public PairForceTable(PairForceLawInterface pPairForceLaw,
+                        float pMaxNormalizedGap,
+                        int pNumberOfEntries)
+  {
+    super();
+    if (pMaxNormalizedGap <= 0)
+      throw new IllegalArgumentException("Cut-off gap must be positive");
+    if (pNumberOfEntries < 2)
+      throw new IllegalArgumentException("At least two table entries required");
+
+    mMaxNormalizedGap = pMaxNormalizedGap;
+    mMaxSquaredNormalizedDistance = (1 + pMaxNormalizedGap)
+                                    * (1 + pMaxNormalizedGap);
+
+    final float lSpacing = mMaxSquaredNormalizedDistance
+                           / (pNumberOfEntries - 1);
+    mInverseSpacing = 1 / lSpacing;
+
+    // One extra entry set to zero beyond the cut-off simplifies interpolation:
+    mTable = new float[pNumberOfEntries + 1];
+    for (int k = 1; k < pNumberOfEntries; k++)
+    {
+      float lNormalizedDistance = (float) Math.sqrt(k * lSpacing);
+      float lNormalizedGap = lNormalizedDistance - 1;
+      mTable[k] = pPairForceLaw.getForce(lNormalizedGap)
+                  / lNormalizedDistance;
+    }
+    // coinciding centers: no defined direction, we extrapolate flat:
+    mTable[0] = mTable[1];
+    mTable[pNumberOfEntries - 1] = 0;
+  }
+
+  /**
+   * Returns the maximal normalized gap (cut-off)
+   * 
+   * @return max normalized gap
+   */
+  public float getMaxNormalizedGap()
+  {
+    return mMaxNormalizedGap;
+  }
+
+  /**
+   * Returns the maximal squared normalized distance (cut-off)
+   * 
+   * @return max squared normalized distance
+   */
+  public float getMaxSquaredNormalizedDistance()
+  {
+    return mMaxSquaredNormalizedDistance;
+  }
+
+  /**
+   * Returns the number of entries in the table.
+   * 
+   * @return number of entries
+   */
+  public int getNumberOfEntries()
+  {
+    return mTable.length - 1;
+  }
+
+  /**
+   * Returns the interpolated table value for a given squared normalized
+   * distance: force magnitude divided by the normalized distance.
+   * 
+   * @param pSquaredNormalizedDistance
+   *          squared normalized distance
+   * @return force magnitude divided by normalized distance.
+   */
+  public final float lookup(float pSquaredNormalizedDistance)
+  {
+    if (!(pSquaredNormalizedDistance < mMaxSquaredNormalizedDistance))
+      return 0;
+
+    final float x = pSquaredNormalizedDistance * mInverseSpacing;
+    final int k = (int) x;
+    final float a = mTable[k];
+    return a + (x - k) * (mTable[k + 1] - a);
+  }
+
+  /**
+   * Returns the interpolated force magnitude for a given normalized gap. This
+   * is mostly useful for testing and plotting, the force fields use
+   * {@link #lookup(float)}.
+   * 
+   * @param pNormalizedGap
+   *          normalized gap
+   * @return force magnitude
+   */
+  public float getForce(float pNormalizedGap)
+  {
+    float lNormalizedDistance = 1 + pNormalizedGap;
+    return lookup(lNormalizedDistance * lNormalizedDistance)
+           * lNormalizedDistance;
+  }
+
+}
@@ -0,0 +1,448 @@
+package simbryo.particles.integration;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import simbryo.particles.ParticleSystem;
+import simbryo.particles.forcefield.interaction.SpeciesInteractionMatrix;
+import simbryo.particles.forcefield.interaction.impl.CollisionForceField;
+import simbryo.particles.neighborhood.NeighborhoodCache;
+import simbryo.util.parallel.ParallelRange;
+
+/**
+ * Semi-implicit velocity update for the collision and drag terms. This is a
+ * drop-in replacement for applying a {@link CollisionForceField}: velocities
+ * are first dragged and pushed apart by the collision force exactly as in the
+ * explicit case, then each contact is linearized as a stiff damper along the
+ * contact normal and the resulting linear system is relaxed with a few Jacobi
+ * sweeps over contact impulses. The stiffness of a contact is the collision
+ * force divided by a fraction (softness) of the sum of radii, so that with high
+ * collision forces the relative normal velocity of two overlapping particles
+ * stays bounded instead of overshooting. An isolated contact is solved exactly
+ * by a single sweep, impulse updates of particles with several contacts are
+ * averaged. Each contact is stored for both of its particles, and each particle
+ * only writes its own impulses and velocity, so contacts are gathered and
+ * sweeps are done in parallel over particle id ranges.
+ * 
+ * Overlaps are not corrected positionally, the forbid-overlap flag of the
+ * collision force field is ignored.
+ *
+ * @author royer
+ */
+public class SemiImplicitContactIntegrator implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private static final int cMinChunkSize = 256;
+
+  private volatile int mNumberOfSweeps;
+  private volatile float mSoftness;
+
+  private transient ContactList[] mContactLists;
+  private transient float[] mRightHandSide;
+  private transient int[] mNumberOfContacts;
+
+  private volatile int mNumberOfContactPairs;
+  private volatile float mMaximalOverlap;
+
+  /**
+   * Contacts gathered for a chunk of particles, in compressed row format.
+   */
+  private static class ContactList
+  {
+    int[] mStart = new int[1];
+    int[] mIds = new int[64];
+    float[] mStiffness = new float[64];
+    float[] mImpulses = new float[64];
+    float[] mNormals = new float[64 * 3];
+    int mLength;
+    float mMaximalOverlap;
+
+    void clear(int pNumberOfParticles)
+    {
+      if (mStart.length < pNumberOfParticles + 1)
+        mStart = new int[pNumberOfParticles + 1];
+      mLength = 0;
+      mMaximalOverlap = 0;
+    }
+
+    void ensureCapacity(int pLength, int pDimension)
+    {
+      if (mIds.length < pLength)
+      {
+        int lCapacity = Math.max(pLength, 2 * mIds.length);
+        mIds = Arrays.copyOf(mIds, lCapacity);
+        mStiffness = Arrays.copyOf(mStiffness, lCapacity);
+        mImpulses = Arrays.copyOf(mImpulses, lCapacity);
+      }
+      if (mNormals.length < pLength * pDimension)
+        mNormals = Arrays.copyOf(mNormals,
+                                           mIds.length * pDimension);
+    }
+  }
+
+  /**
+   * Instantiates a semi-implicit contact integrator for a given number of
+   * Jacobi sweeps and softness.
+   * 
+   * @param pNumberOfSweeps
+   *          number of Jacobi sweeps
+   * @param pSoftness
+   *          fraction of the sum of radii over which the collision force is
+   *          linearized, lower is stiffer.
+   */
+  public SemiImplicitContactIntegrator(int pNumberOfSweeps,
+                                       float pSoftness)
+  {
+    super();
+    mNumberOfSweeps = pNumberOfSweeps;
+    mSoftness = pSoftness;
+  }
+
+  /**
+   * Returns the number of Jacobi sweeps.
+   * 
+   * @return number of sweeps
+   */
+  public int getNumberOfSweeps()
+  {
+    return mNumberOfSweeps;
+  }
+
+  /**
+   * Sets the number of Jacobi sweeps.
+   * 
+   * @param pNumberOfSweeps
+   *          number of sweeps
+   */
+  public void setNumberOfSweeps(int pNumberOfSweeps)
+  {
+    mNumberOfSweeps = pNumberOfSweeps;
+  }
+
+  /**
+   * Returns the softness.
+   * 
+   * @return softness
+   */
+  public float getSoftness()
+  {
+    return mSoftness;
+  }
+
+  /**
+   * Sets the softness.
+   * 
+   * @param pSoftness
+   *          softness
+   */
+  public void setSoftness(float pSoftness)
+  {
+    mSoftness = pSoftness;
+  }
+
+  /**
+   * Returns the number of pairs of overlapping particles found during the last
+   * velocity update. Contacts are counted as they are gathered, at no extra
+   * cost.
+   * 
+   * @return number of contacts
+   */
+  public int getNumberOfContacts()
+  {
+    return mNumberOfContactPairs;
+  }
+
+  /**
+   * Returns the maximal overlap between two particles found during the last
+   * velocity update, relative to the sum of their radii.
+   * 
+   * @return maximal relative overlap
+   */
+  public float getMaximalOverlap()
+  {
+    return mMaximalOverlap;
+  }
+
+  /**
+   * Updates the velocities of all particles for the drag and collision terms of
+   * a given collision force field. The neighborhood grid of the particle
+   * system must be up-to-date.
+   * 
+   * @param pParticleSystem
+   *          particle system
+   * @param pCollisionForceField
+   *          collision force field providing force intensity, drag and species
+   *          interaction matrix.
+   */
+  public void updateVelocities(ParticleSystem pParticleSystem,
+                               CollisionForceField pCollisionForceField)
+  {
+    final int lDimension = pParticleSystem.getDimension();
+    final int lNumberOfParticles = pParticleSystem.getNumberOfParticles();
+
+    final SpeciesInteractionMatrix lSpeciesInteractionMatrix =
+                                                             pCollisionForceField.getSpeciesInteractionMatrix();
+    lSpeciesInteractionMatrix.checkCompatible(pParticleSystem);
+
+    final float lForceIntensity =
+                                pCollisionForceField.getForceIntensity();
+    final float lDrag = pCollisionForceField.getDrag();
+    final float lStiffnessFactor = lForceIntensity / mSoftness;
+
+    ensureScratch(lNumberOfParticles, lDimension);
+
+    final NeighborhoodCache lNeighborhoodCache =
+                                               pParticleSystem.updateNeighborhoodCache(1);
+
+    final float[] lPositions = pParticleSystem.getPositions()
+                                              .getCurrentArray();
+    final float[] lRadii = pParticleSystem.getRadii().getCurrentArray();
+    final byte[] lSpecies = pParticleSystem.getSpeciesArray();
+    final float[] lSpeciesFactors = lSpeciesInteractionMatrix.getArray();
+    final int lNumberOfSpecies =
+                               lSpeciesInteractionMatrix.getNumberOfSpecies();
+
+    // Gathering contacts and computing the explicit velocities:
+    {
+      for (ContactList lContactList : mContactLists)
+        lContactList.clear(0);
+
+      final float[] lVelocitiesRead = pParticleSystem.getVelocities()
+                                                     .getReadArray();
+      final float[] lVelocitiesWrite = pParticleSystem.getVelocities()
+                                                      .getWriteArray();
+
+      ParallelRange.forEach(0, lNumberOfParticles, cMinChunkSize, (c,
+                                                                   b,
+                                                                   e) -> {
+        gatherContacts(lDimension,
+                       lNeighborhoodCache,
+                       mContactLists[c],
+                       lPositions,
+                       lRadii,
+                       lSpecies,
+                       lSpeciesFactors,
+                       lNumberOfSpecies,
+                       lForceIntensity,
+                       lStiffnessFactor,
+                       lDrag,
+                       lVelocitiesRead,
+                       lVelocitiesWrite,
+                       b,
+                       e);
+      });
+
+      pParticleSystem.getVelocities().swap();
+
+      int lNumberOfContacts = 0;
+      float lMaximalOverlap = 0;
+      for (ContactList lContactList : mContactLists)
+      {
+        lNumberOfContacts += lContactList.mLength;
+        lMaximalOverlap = Math.max(lMaximalOverlap,
+                                   lContactList.mMaximalOverlap);
+      }
+      mNumberOfContactPairs = lNumberOfContacts / 2;
+      mMaximalOverlap = lMaximalOverlap;
+    }
+
+    // Jacobi sweeps:
+    for (int s = 0; s < mNumberOfSweeps; s++)
+    {
+      final float[] lVelocitiesRead = pParticleSystem.getVelocities()
+                                                     .getReadArray();
+      final float[] lVelocitiesWrite = pParticleSystem.getVelocities()
+                                                      .getWriteArray();
+
+      ParallelRange.forEach(0, lNumberOfParticles, cMinChunkSize, (c,
+                                                                   b,
+                                                                   e) -> {
+        sweep(lDimension,
+              mContactLists[c],
+              lVelocitiesRead,
+              lVelocitiesWrite,
+              b,
+              e);
+      });
+
+      pParticleSystem.getVelocities().swap();
+    }
+  }
+
+  private void ensureScratch(int pNumberOfParticles, int pDimension)
+  {
+    final int lMaxNumberOfChunks = ParallelRange.getMaxNumberOfChunks();
+    if (mContactLists == null
+        || mContactLists.length != lMaxNumberOfChunks)
+    {
+      mContactLists = new ContactList[lMaxNumberOfChunks];
+      for (int c = 0; c < lMaxNumberOfChunks; c++)
+        mContactLists[c] = new ContactList();
+    }
+
+    if (mNumberOfContacts == null
+        || mNumberOfContacts.length < pNumberOfParticles)
+    {
+      mRightHandSide = new float[pNumberOfParticles * pDimension];
+      mNumberOfContacts = new int[pNumberOfParticles];
+    }
+  }
+
+  private void gatherContacts(final int pDimension,
+                              final NeighborhoodCache pNeighborhoodCache,
+                              final ContactList pContactList,
+                              final float[] pPositions,
+                              final float[] pRadii,
+                              final byte[] pSpecies,
+                              final float[] pSpeciesFactors,
+                              final int pNumberOfSpecies,
+                              final float pForceIntensity,
+                              final float pStiffnessFactor,
+                              final float pDrag,
+                              final float[] pVelocitiesRead,
+                              final float[] pVelocitiesWrite,
+                              final int pBeginId,
+                              final int pEndId)
+  {
+    final float[] lRightHandSide = mRightHandSide;
+    final int[] lNumberOfContacts = mNumberOfContacts;
+    final int[] lOffsets = pNeighborhoodCache.getOffsets();
+    final int[] lNeighboors = pNeighborhoodCache.getNeighbors();
+
+    pContactList.clear(pEndId - pBeginId);
+
+    for (int idu = pBeginId, i =
+                               idu * pDimension; idu < pEndId; idu++, i +=
+                                                                        pDimension)
+    {
+      pContactList.mStart[idu - pBeginId] = pContactList.mLength;
+
+      final float ru = pRadii[idu];
+      final int lSpeciesRow = pSpecies[idu] * pNumberOfSpecies;
+
+      for (int d = 0; d < pDimension; d++)
+        lRightHandSide[i + d] = pDrag * pVelocitiesRead[i + d];
+
+      pContactList.ensureCapacity(pContactList.mLength
+                                  + lOffsets[idu + 1]
+                                  - lOffsets[idu],
+                                  pDimension);
+
+      for (int k = lOffsets[idu]; k < lOffsets[idu + 1]; k++)
+      {
+        final int idv = lNeighboors[k];
+        if (idv == idu)
+          continue;
+
+        final int j = idv * pDimension;
+        final float lSumOfRadii = ru + pRadii[idv];
+
+        float lSquaredDistance = 0;
+        for (int d = 0; d < pDimension; d++)
+        {
+          float lDelta = pPositions[i + d] - pPositions[j + d];
+          lSquaredDistance += lDelta * lDelta;
+        }
+
+        if (lSquaredDistance >= lSumOfRadii * lSumOfRadii
+            || lSquaredDistance == 0)
+          continue;
+
+        final float lSpeciesFactor =
+                                   pSpeciesFactors[lSpeciesRow + pSpecies[idv]];
+        final float lInvDistance =
+                                 (float) (1 / Math.sqrt(lSquaredDistance));
+        final float lStiffness = lSpeciesFactor * pStiffnessFactor
+                                 / lSumOfRadii;
+
+        pContactList.mMaximalOverlap =
+                                     Math.max(pContactList.mMaximalOverlap,
+                                              1 - lSquaredDistance
+                                                  * lInvDistance
+                                                  / lSumOfRadii);
+
+        final int c = pContactList.mLength++;
+        pContactList.mIds[c] = idv;
+        pContactList.mStiffness[c] = lStiffness;
+        pContactList.mImpulses[c] = 0;
+
+        for (int d = 0; d < pDimension; d++)
+        {
+          float lNormal = (pPositions[i + d] - pPositions[j + d])
+                          * lInvDistance;
+          pContactList.mNormals[c * pDimension + d] = lNormal;
+          lRightHandSide[i + d] += lSpeciesFactor * pForceIntensity
+                                   * lNormal;
+        }
+      }
+
+      lNumberOfContacts[idu] = pContactList.mLength
+                               - pContactList.mStart[idu - pBeginId];
+
+      // initial guess is the explicit update:
+      for (int d = 0; d < pDimension; d++)
+        pVelocitiesWrite[i + d] = lRightHandSide[i + d];
+    }
+
+    pContactList.mStart[pEndId - pBeginId] = pContactList.mLength;
+  }
+
+  private void sweep(final int pDimension,
+                     final ContactList pContactList,
+                     final float[] pVelocitiesRead,
+                     final float[] pVelocitiesWrite,
+                     final int pBeginId,
+                     final int pEndId)
+  {
+    final float[] lRightHandSide = mRightHandSide;
+    final int[] lNumberOfContacts = mNumberOfContacts;
+    final int[] lStart = pContactList.mStart;
+    final int[] lIds = pContactList.mIds;
+    final float[] lStiffness = pContactList.mStiffness;
+    final float[] lImpulses = pContactList.mImpulses;
+    final float[] lNormals = pContactList.mNormals;
+
+    for (int idu = pBeginId, i =
+                               idu * pDimension; idu < pEndId; idu++, i +=
+                                                                        pDimension)
+    {
+      for (int d = 0; d < pDimension; d++)
+        pVelocitiesWrite[i + d] = lRightHandSide[i + d];
+
+      final int lNumberOfContactsU = lNumberOfContacts[idu];
+      final int lEnd = lStart[idu - pBeginId + 1];
+      for (int c = lStart[idu - pBeginId]; c < lEnd; c++)
+      {
+        final int idv = lIds[c];
+        final int j = idv * pDimension;
+        final int n = c * pDimension;
+
+        float lNormalVelocity = 0;
+        for (int d = 0; d < pDimension; d++)
+          lNormalVelocity += lNormals[n + d]
+                             * (pVelocitiesRead[i + d]
+                                - pVelocitiesRead[j + d]);
+
+        // exact impulse for this contact alone, other impulses fixed:
+        final float k = lStiffness[c];
+        final float lImpulse = lImpulses[c];
+        final float lTargetImpulse = k * (lNormalVelocity + 2 * lImpulse)
+                                     / (1 + 2 * k);
+
+        // averaging for particles with several contacts:
+        final float lRelaxation =
+                                1f / Math.max(lNumberOfContactsU,
+                                              lNumberOfContacts[idv]);
+        final float lNewImpulse = lImpulse
+                                  + lRelaxation
+                                    * (lTargetImpulse - lImpulse);
+        lImpulses[c] = lNewImpulse;
+
+        for (int d = 0; d < pDimension; d++)
+          pVelocitiesWrite[i + d] -= lNewImpulse * lNormals[n + d];
+      }
+    }
+  }
+
+}
@@ -16,6 +16,8 @@ public abstract class IsoSurfaceBase implements IsoSurfaceInterface
   protected float mDistance;
   protected final float[] mGradient;
 
+  private volatile long mModificationCount;
+
   /**
    * Prepares internal data structures given the dimension.
    * 
@@ -53,4 +55,19 @@ public abstract class IsoSurfaceBase implements IsoSurfaceInterface
     return mGradient[pIndex];
   }
 
+  @Override
+  public long getModificationCount()
+  {
+    return mModificationCount;
+  }
+
+  /**
+   * Records a change of the parameters of this iso-surface. Implementations
+   * must call this method from their setters.
+   */
+  protected void modified()
+  {
+    mModificationCount++;
+  }
+
 }
@@ -49,4 +49,16 @@ public interface IsoSurfaceInterface extends Serializable
    */
   float getNormalizedGardient(int pIndex);
 
+  /**
+   * Returns a counter that is incremented each time the parameters of this
+   * iso-surface change, so that copies made for concurrent evaluation can be
+   * kept until then. Returns zero by default: parameters never change.
+   * 
+   * @return modification count
+   */
+  default long getModificationCount()
+  {
+    return 0;
+  }
+
 }
@@ -47,6 +47,7 @@ public class Plane extends IsoSurfaceBase
   public void setPoint(float... pPoint)
   {
     mPoint = pPoint;
+    modified();
   }
 
   @Override
@@ -0,0 +1,264 @@
+package simbryo.particles.neighborhood;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import simbryo.particles.ParticleSystemInterface;
+import simbryo.util.parallel.ParallelRange;
+
+/**
+ * Per-step cache of the neighbors of all particles, stored as a compact
+ * adjacency list (CSR): the neighbors of particle id are found in the neighbors
+ * array between offsets id and id+1, the particle itself included. The cache is
+ * built once, after the neighborhood grid is updated, with a query radius that
+ * is the largest radius factor requested so far times the particle radius, so
+ * that operators and force fields share a single grid traversal and filter the
+ * neighbors with their own cutoff. Like the neighborhood grid, the cache
+ * reflects the particle positions at the time it was built.
+ *
+ * @author royer
+ */
+public class NeighborhoodCache implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private static final int cMinChunkSize = 256;
+
+  private volatile float mRadiusFactor = 1;
+
+  private transient volatile boolean mValid;
+  private transient int mNumberOfParticles;
+  private transient float mBuiltRadiusFactor;
+
+  private transient int[] mOffsets;
+  private transient int[] mNeighbors;
+
+  private transient NeighborhoodScratch[] mScratchs;
+  private transient int[][] mChunkNeighbors;
+  private transient int[] mChunkBegin;
+  private transient int[] mChunkLength;
+
+  /**
+   * Instantiates an empty neighborhood cache.
+   */
+  public NeighborhoodCache()
+  {
+    super();
+  }
+
+  /**
+   * Invalidates this cache, it will be rebuilt on next update.
+   */
+  public void invalidate()
+  {
+    mValid = false;
+  }
+
+  /**
+   * Returns true if this cache is up-to-date for a given particle system and
+   * radius factor.
+   * 
+   * @param pParticleSystem
+   *          particle system
+   * @param pRadiusFactor
+   *          radius factor
+   * @return true if valid
+   */
+  public boolean isValid(ParticleSystemInterface pParticleSystem,
+                         float pRadiusFactor)
+  {
+    return mValid
+           && mNumberOfParticles == pParticleSystem.getNumberOfParticles()
+           && mBuiltRadiusFactor >= pRadiusFactor;
+  }
+
+  /**
+   * Returns the radius factor used to build this cache. This factor only
+   * increases: once a consumer requests a larger radius all subsequent builds
+   * use it, so that each step requires a single build.
+   * 
+   * @return radius factor
+   */
+  public float getRadiusFactor()
+  {
+    return mRadiusFactor;
+  }
+
+  /**
+   * Makes sure that this cache is up-to-date for a given particle system and
+   * radius factor, rebuilding it if needed. This method must not be called
+   * concurrently.
+   * 
+   * @param pParticleSystem
+   *          particle system
+   * @param pRadiusFactor
+   *          radius factor, the query radius is this factor times the particle
+   *          radius
+   * @return this cache
+   */
+  public NeighborhoodCache update(ParticleSystemInterface pParticleSystem,
+                                  float pRadiusFactor)
+  {
+    if (pRadiusFactor > mRadiusFactor)
+      mRadiusFactor = pRadiusFactor;
+
+    if (!isValid(pParticleSystem, pRadiusFactor))
+      build(pParticleSystem, mRadiusFactor);
+
+    return this;
+  }
+
+  private void build(ParticleSystemInterface pParticleSystem,
+                     float pRadiusFactor)
+  {
+    final NeighborhoodGrid lNeighborhoodGrid =
+                                             pParticleSystem.getNeighborhoodGrid();
+    final float[] lPositions = pParticleSystem.getPositions()
+                                              .getCurrentArray();
+    final float[] lRadii = pParticleSystem.getRadii().getCurrentArray();
+    final int lNumberOfParticles = pParticleSystem.getNumberOfParticles();
+
+    ensureArrays(lNeighborhoodGrid, lNumberOfParticles);
+
+    final int[] lOffsets = mOffsets;
+
+    ParallelRange.forEach(0,
+                          lNumberOfParticles,
+                          cMinChunkSize,
+                          (c, b, e) -> collect(c,
+                                               b,
+                                               e,
+                                               lNeighborhoodGrid,
+                                               lPositions,
+                                               lRadii,
+                                               pRadiusFactor,
+                                               lOffsets));
+
+    // prefix sum of neighbor counts:
+    lOffsets[0] = 0;
+    for (int id = 0; id < lNumberOfParticles; id++)
+      lOffsets[id + 1] += lOffsets[id];
+
+    if (mNeighbors == null
+        || mNeighbors.length < lOffsets[lNumberOfParticles])
+      mNeighbors = new int[lOffsets[lNumberOfParticles]
+                           + lOffsets[lNumberOfParticles] / 4];
+
+    final int lNumberOfChunks =
+                              ParallelRange.getNumberOfChunks(0,
+                                                              lNumberOfParticles,
+                                                              cMinChunkSize);
+    for (int c = 0; c < lNumberOfChunks; c++)
+      System.arraycopy(mChunkNeighbors[c],
+                       0,
+                       mNeighbors,
+                       lOffsets[mChunkBegin[c]],
+                       mChunkLength[c]);
+
+    mNumberOfParticles = lNumberOfParticles;
+    mBuiltRadiusFactor = pRadiusFactor;
+    mValid = true;
+  }
+
+  private void collect(int pChunkIndex,
+                       int pBeginId,
+                       int pEndId,
+                       NeighborhoodGrid pNeighborhoodGrid,
+                       float[] pPositions,
+                       float[] pRadii,
+                       float pRadiusFactor,
+                       int[] pCounts)
+  {
+    final NeighborhoodScratch lScratch = mScratchs[pChunkIndex];
+    final int[] lFound = lScratch.getNeighbors();
+    int[] lChunkNeighbors = mChunkNeighbors[pChunkIndex];
+    int lLength = 0;
+
+    for (int id = pBeginId; id < pEndId; id++)
+    {
+      final int lNumberOfNeighbors =
+                                   lScratch.getAllNeighborsForParticle(pNeighborhoodGrid,
+                                                                       pPositions,
+                                                                       id,
+                                                                       pRadiusFactor
+                                                                           * pRadii[id]);
+
+      if (lLength + lNumberOfNeighbors > lChunkNeighbors.length)
+        lChunkNeighbors = Arrays.copyOf(lChunkNeighbors,
+                                        Math.max(2 * lChunkNeighbors.length,
+                                                 lLength + lNumberOfNeighbors));
+
+      System.arraycopy(lFound,
+                       0,
+                       lChunkNeighbors,
+                       lLength,
+                       lNumberOfNeighbors);
+      lLength += lNumberOfNeighbors;
+
+      // counts are stored shifted by one and turned into offsets later:
+      pCounts[id + 1] = lNumberOfNeighbors;
+    }
+
+    mChunkNeighbors[pChunkIndex] = lChunkNeighbors;
+    mChunkBegin[pChunkIndex] = pBeginId;
+    mChunkLength[pChunkIndex] = lLength;
+  }
+
+  private void ensureArrays(NeighborhoodGrid pNeighborhoodGrid,
+                            int pNumberOfParticles)
+  {
+    final int lMaxNumberOfChunks = ParallelRange.getMaxNumberOfChunks();
+    if (mScratchs == null || mScratchs.length != lMaxNumberOfChunks
+        || !mScratchs[0].isCompatible(pNeighborhoodGrid))
+    {
+      mScratchs = new NeighborhoodScratch[lMaxNumberOfChunks];
+      mChunkNeighbors = new int[lMaxNumberOfChunks][];
+      for (int c = 0; c < lMaxNumberOfChunks; c++)
+      {
+        mScratchs[c] = new NeighborhoodScratch(pNeighborhoodGrid);
+        mChunkNeighbors[c] = new int[cMinChunkSize];
+      }
+      mChunkBegin = new int[lMaxNumberOfChunks];
+      mChunkLength = new int[lMaxNumberOfChunks];
+    }
+
+    if (mOffsets == null || mOffsets.length < pNumberOfParticles + 1)
+      mOffsets = new int[pNumberOfParticles + 1
+                         + pNumberOfParticles / 4];
+  }
+
+  /**
+   * Returns the offsets array: the neighbors of particle id are stored in the
+   * neighbors array from index offsets[id] (inclusive) to offsets[id+1]
+   * (exclusive).
+   * 
+   * @return offsets array
+   */
+  public int[] getOffsets()
+  {
+    return mOffsets;
+  }
+
+  /**
+   * Returns the neighbors array.
+   * 
+   * @return neighbors array
+   */
+  public int[] getNeighbors()
+  {
+    return mNeighbors;
+  }
+
+  /**
+   * Returns the number of neighbors of a given particle, itself included.
+   * 
+   * @param pParticleId
+   *          particle id
+   * @return number of neighbors
+   */
+  public int getNumberOfNeighbors(int pParticleId)
+  {
+    return mOffsets[pParticleId + 1] - mOffsets[pParticleId];
+  }
+
+}
@@ -1,5 +1,7 @@
 package simbryo.particles.neighborhood;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 
@@ -8,7 +10,8 @@ import simbryo.util.vectorinc.VectorInc;
 /**
  * This data structure is an extremely fast way to keep track of the
  * neighborhood of particles in a particle system. The maximal number of
- * neighboors is fixed at construction time.
+ * neighboors is fixed at construction time. The contents of the grid are not
+ * serialized, a deserialized grid is empty until it is updated again.
  *
  * @author royer
  */
@@ -24,7 +27,7 @@ public class NeighborhoodGrid implements Serializable
 
   private final int[] mStride;
 
-  private final int[] mNeighboorhoodArray;
+  private transient int[] mNeighboorhoodArray;
 
   /**
    * Constructs an instance given the maximal number of particles per cell and
@@ -56,6 +59,15 @@ public class NeighborhoodGrid implements Serializable
     }
   }
 
+  private void readObject(ObjectInputStream pObjectInputStream) throws IOException,
+                                                                ClassNotFoundException
+  {
+    pObjectInputStream.defaultReadObject();
+    mNeighboorhoodArray =
+                        new int[getVolume() * mMaxParticlesPerGridCell];
+    clear();
+  }
+
   /**
    * Returns maximal cell occupancy.
    * 
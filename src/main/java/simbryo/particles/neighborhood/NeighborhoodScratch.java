@@ -0,0 +1,93 @@
+package simbryo.particles.neighborhood;
+
+/**
+ * Working arrays needed for neighborhood queries on a neighborhood grid.
+ * Instances of this class are not thread-safe: each thread doing neighborhood
+ * queries should use its own instance.
+ *
+ * @author royer
+ */
+public class NeighborhoodScratch
+{
+  private int[] mNeighboors;
+  private final float[] mCellCoord;
+  private final int[] mCellCoordMin;
+  private final int[] mCellCoordMax;
+  private final int[] mCellCoordCurrent;
+
+  /**
+   * Instantiates working arrays for a given neighborhood grid.
+   * 
+   * @param pNeighborhoodGrid
+   *          neighborhood grid
+   */
+  public NeighborhoodScratch(NeighborhoodGrid pNeighborhoodGrid)
+  {
+    final int lDimension = pNeighborhoodGrid.getDimension();
+    mNeighboors = new int[getMaxNumberOfNeighbors(pNeighborhoodGrid)];
+    mCellCoord = new float[lDimension];
+    mCellCoordMin = new int[lDimension];
+    mCellCoordMax = new int[lDimension];
+    mCellCoordCurrent = new int[lDimension];
+  }
+
+  private static int getMaxNumberOfNeighbors(NeighborhoodGrid pNeighborhoodGrid)
+  {
+    return pNeighborhoodGrid.getMaxParticlesPerGridCell()
+           * pNeighborhoodGrid.getVolume();
+  }
+
+  /**
+   * Returns true if this scratch can be used with a given grid.
+   * 
+   * @param pNeighborhoodGrid
+   *          neighborhood grid
+   * @return true if compatible
+   */
+  public boolean isCompatible(NeighborhoodGrid pNeighborhoodGrid)
+  {
+    return mCellCoord.length == pNeighborhoodGrid.getDimension()
+           && mNeighboors.length == getMaxNumberOfNeighbors(pNeighborhoodGrid);
+  }
+
+  /**
+   * Returns the array holding the ids found by the last query.
+   * 
+   * @return neighbors array
+   */
+  public int[] getNeighbors()
+  {
+    return mNeighboors;
+  }
+
+  /**
+   * Collects all neighbors of a particle for a given radius. The ids are
+   * available from {@link #getNeighbors()}.
+   * 
+   * @param pNeighborhoodGrid
+   *          neighborhood grid
+   * @param pPositions
+   *          positions array
+   * @param pParticleId
+   *          particle id
+   * @param pRadius
+   *          radius
+   * @return number of neighbors found
+   */
+  public int getAllNeighborsForParticle(NeighborhoodGrid pNeighborhoodGrid,
+                                        float[] pPositions,
+                                        int pParticleId,
+                                        float pRadius)
+  {
+    return pNeighborhoodGrid.getAllNeighborsForParticle(mNeighboors,
+                                                        mNeighboors,
+                                                        pPositions,
+                                                        pParticleId,
+                                                        pRadius,
+                                                        mCellCoord,
+                                                        mCellCoordMin,
+                                                        mCellCoordMax,
+                                                        mCellCoordCurrent);
+  }
+
+}
@@ -0,0 +1,326 @@
+package simbryo.particles.solver;
+
+import java.io.Serializable;
+
+import simbryo.particles.ParticleSystem;
+import simbryo.particles.neighborhood.NeighborhoodGrid;
+import simbryo.particles.neighborhood.NeighborhoodScratch;
+import simbryo.util.parallel.ParallelRange;
+
+/**
+ * Position-based overlap solver. This solver treats each pair of overlapping
+ * particles as a non-penetration constraint and projects positions with a
+ * number of Jacobi iterations: for each particle, the corrections required by
+ * all of its contacts are computed from the positions of the previous
+ * iteration, averaged, and applied at once. Because each particle only writes
+ * its own position, iterations run in parallel over particle id ranges.
+ * Iterations stop as soon as the largest normalized overlap is below the
+ * tolerance.
+ *
+ * @author royer
+ */
+public class OverlapSolver implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private static final int cMinChunkSize = 256;
+
+  private volatile int mMaxNumberOfIterations;
+  private volatile float mTolerance;
+  private volatile float mRelaxation = 1f;
+
+  private volatile float mLastMaxOverlap;
+  private volatile int mLastNumberOfIterations;
+
+  private transient NeighborhoodScratch[] mScratchs;
+  private transient float[] mChunkMaxOverlap;
+
+  /**
+   * Instantiates an overlap solver with a given maximal number of iterations
+   * and tolerance. The tolerance is expressed as a normalized overlap:
+   * overlap divided by the sum of both radii.
+   * 
+   * @param pMaxNumberOfIterations
+   *          max number of Jacobi iterations per call
+   * @param pTolerance
+   *          normalized overlap tolerance
+   */
+  public OverlapSolver(int pMaxNumberOfIterations, float pTolerance)
+  {
+    super();
+    mMaxNumberOfIterations = pMaxNumberOfIterations;
+    mTolerance = pTolerance;
+  }
+
+  /**
+   * Returns the max number of iterations.
+   * 
+   * @return max number of iterations
+   */
+  public int getMaxNumberOfIterations()
+  {
+    return mMaxNumberOfIterations;
+  }
+
+  /**
+   * Sets the max number of iterations
+   * 
+   * @param pMaxNumberOfIterations
+   *          max number of iterations
+   */
+  public void setMaxNumberOfIterations(int pMaxNumberOfIterations)
+  {
+    mMaxNumberOfIterations = pMaxNumberOfIterations;
+  }
+
+  /**
+   * Returns the normalized overlap tolerance.
+   * 
+   * @return tolerance
+   */
+  public float getTolerance()
+  {
+    return mTolerance;
+  }
+
+  /**
+   * Sets the normalized overlap tolerance.
+   * 
+   * @param pTolerance
+   *          tolerance
+   */
+  public void setTolerance(float pTolerance)
+  {
+    mTolerance = pTolerance;
+  }
+
+  /**
+   * Returns the relaxation factor applied to the averaged corrections.
+   * 
+   * @return relaxation factor
+   */
+  public float getRelaxation()
+  {
+    return mRelaxation;
+  }
+
+  /**
+   * Sets the relaxation factor applied to the averaged corrections. Values
+   * between 1 and 2 over-relax and converge faster on dense tissues, values
+   * below 1 under-relax.
+   * 
+   * @param pRelaxation
+   *          relaxation factor
+   */
+  public void setRelaxation(float pRelaxation)
+  {
+    mRelaxation = pRelaxation;
+  }
+
+  /**
+   * Returns the max normalized overlap measured during the last call to
+   * solve().
+   * 
+   * @return last max normalized overlap
+   */
+  public float getLastMaxOverlap()
+  {
+    return mLastMaxOverlap;
+  }
+
+  /**
+   * Returns the number of iterations done during the last call to solve().
+   * 
+   * @return last number of iterations
+   */
+  public int getLastNumberOfIterations()
+  {
+    return mLastNumberOfIterations;
+  }
+
+  /**
+   * Resolves overlaps between all particles of a particle system. The
+   * neighborhood grid of the particle system must be up-to-date.
+   * 
+   * @param pParticleSystem
+   *          particle system
+   * @return max normalized overlap before the last iteration.
+   */
+  public float solve(ParticleSystem pParticleSystem)
+  {
+    return solve(pParticleSystem,
+                 0,
+                 pParticleSystem.getNumberOfParticles());
+  }
+
+  /**
+   * Resolves overlaps for particles within a given range of ids. Particles
+   * outside of the range are not moved but still constrain the particles
+   * within the range. The neighborhood grid of the particle system must be
+   * up-to-date.
+   * 
+   * @param pParticleSystem
+   *          particle system
+   * @param pBeginId
+   *          begin id (inclusive)
+   * @param pEndId
+   *          end id (exclusive)
+   * @return max normalized overlap before the last iteration.
+   */
+  public float solve(ParticleSystem pParticleSystem,
+                     int pBeginId,
+                     int pEndId)
+  {
+    final int lDimension = pParticleSystem.getDimension();
+    final NeighborhoodGrid lNeighborhoodGrid =
+                                             pParticleSystem.getNeighborhoodGrid();
+    final float[] lRadii =
+                         pParticleSystem.getRadii().getCurrentArray();
+    final float lRelaxation = mRelaxation;
+    final float lTolerance = mTolerance;
+
+    ensureScratchs(lNeighborhoodGrid);
+
+    float lMaxOverlap = 0;
+    int lIteration = 0;
+    for (; lIteration < mMaxNumberOfIterations; lIteration++)
+    {
+      final float[] lPositionsRead = pParticleSystem.getPositions()
+                                                    .getReadArray();
+      final float[] lPositionsWrite = pParticleSystem.getPositions()
+                                                     .getWriteArray();
+
+      pParticleSystem.getPositions()
+                     .copyDefault(0,
+                                  pParticleSystem.getNumberOfParticles()
+                                     * lDimension);
+
+      ParallelRange.forEach(pBeginId,
+                            pEndId,
+                            cMinChunkSize,
+                            (c, b, e) -> {
+                              mChunkMaxOverlap[c] =
+                                                  project(lDimension,
+                                                          lNeighborhoodGrid,
+                                                          mScratchs[c],
+                                                          lPositionsRead,
+                                                          lPositionsWrite,
+                                                          lRadii,
+                                                          lRelaxation,
+                                                          b,
+                                                          e);
+                            });
+
+      pParticleSystem.getPositions().swap();
+
+      lMaxOverlap = 0;
+      final int lNumberOfChunks =
+                                ParallelRange.getNumberOfChunks(pBeginId,
+                                                                pEndId,
+                                                                cMinChunkSize);
+      for (int c = 0; c < lNumberOfChunks; c++)
+        lMaxOverlap = Math.max(lMaxOverlap, mChunkMaxOverlap[c]);
+
+      if (lMaxOverlap <= lTolerance)
+      {
+        lIteration++;
+        break;
+      }
+    }
+
+    mLastMaxOverlap = lMaxOverlap;
+    mLastNumberOfIterations = lIteration;
+    return lMaxOverlap;
+  }
+
+  private void ensureScratchs(NeighborhoodGrid pNeighborhoodGrid)
+  {
+    final int lMaxNumberOfChunks = ParallelRange.getMaxNumberOfChunks();
+    if (mScratchs == null || mScratchs.length != lMaxNumberOfChunks
+        || !mScratchs[0].isCompatible(pNeighborhoodGrid))
+    {
+      mScratchs = new NeighborhoodScratch[lMaxNumberOfChunks];
+      for (int c = 0; c < lMaxNumberOfChunks; c++)
+        mScratchs[c] = new NeighborhoodScratch(pNeighborhoodGrid);
+      mChunkMaxOverlap = new float[lMaxNumberOfChunks];
+    }
+  }
+
+  private static float project(final int pDimension,
+                               final NeighborhoodGrid pNeighborhoodGrid,
+                               final NeighborhoodScratch pScratch,
+                               final float[] pPositionsRead,
+                               final float[] pPositionsWrite,
+                               final float[] pRadii,
+                               final float pRelaxation,
+                               final int pBeginId,
+                               final int pEndId)
+  {
+    final int[] lNeighboors = pScratch.getNeighbors();
+    float lMaxOverlap = 0;
+
+    for (int idu = pBeginId, i =
+                               idu * pDimension; idu < pEndId; idu++, i +=
+                                                                        pDimension)
+    {
+      final float ru = pRadii[idu];
+
+      int lNumberOfNeighboors =
+                              pScratch.getAllNeighborsForParticle(pNeighborhoodGrid,
+                                                                  pPositionsRead,
+                                                                  idu,
+                                                                  ru);
+
+      int lNumberOfContacts = 0;
+      for (int k = 0; k < lNumberOfNeighboors; k++)
+      {
+        final int idv = lNeighboors[k];
+        if (idu == idv)
+          continue;
+
+        final int j = idv * pDimension;
+        final float lSumOfRadii = ru + pRadii[idv];
+
+        float lSquaredDistance = 0;
+        for (int d = 0; d < pDimension; d++)
+        {
+          float lDelta = pPositionsRead[i + d] - pPositionsRead[j + d];
+          lSquaredDistance += lDelta * lDelta;
+        }
+
+        if (lSquaredDistance >= lSumOfRadii * lSumOfRadii
+            || lSquaredDistance == 0)
+          continue;
+
+        final float lDistance = (float) Math.sqrt(lSquaredDistance);
+        final float lOverlap = lSumOfRadii - lDistance;
+        lMaxOverlap = Math.max(lMaxOverlap, lOverlap / lSumOfRadii);
+
+        // each particle of the pair moves by half of the overlap:
+        final float lCorrectionOverDistance = 0.5f * lOverlap
+                                              / lDistance;
+
+        // corrections are accumulated in the write array:
+        for (int d = 0; d < pDimension; d++)
+          pPositionsWrite[i + d] += lCorrectionOverDistance
+                                    * (pPositionsRead[i + d]
+                                       - pPositionsRead[j + d]);
+
+        lNumberOfContacts++;
+      }
+
+      if (lNumberOfContacts > 0)
+      {
+        // averaging of the accumulated corrections:
+        final float lFactor = pRelaxation / lNumberOfContacts;
+        for (int d = 0; d < pDimension; d++)
+          pPositionsWrite[i + d] = pPositionsRead[i + d]
+                                   + lFactor * (pPositionsWrite[i + d]
+                                                - pPositionsRead[i + d]);
+      }
+    }
+
+    return lMaxOverlap;
+  }
+
+}
@@ -224,8 +224,7 @@ public class ParticleViewerGroup extends Group
     pParticleSystem.copyVelocities(mVelocities);
     pParticleSystem.copyRadii(mRadiis);
     if (lHasPolarity)
-      lPolarityProperty.getArray()
-                       .copyCurrentArrayTo(mPolarities,
+      lPolarityProperty.copyCurrentArrayTo(mPolarities,
                                            mPolarities.length);
 
     Platform.runLater(() -> {
@@ -35,6 +35,7 @@ public abstract class HistoneFluorescence extends PhantomRendererBase
       mPolaritiesBuffer, mRadiiBuffer;
   private OffHeapMemory mNeighboorsMemory, mPositionsMemory,
       mPolaritiesMemory, mRadiiMemory;
+  private float[] mPolarityArray;
   private ClearCLImage mPerlinNoiseImage;
 
   private float mNucleiRadius, mNucleiSharpness, mNucleiRoughness,
@@ -265,9 +266,13 @@ public abstract class HistoneFluorescence extends PhantomRendererBase
       if (mHasPolarity)
       {
         HasPolarity lHasPolarity = (HasPolarity) getTissue();
-        float[] lPolarityArray = lHasPolarity.getPolarityProperty()
-                                             .getArray()
-                                             .getCurrentArray();
+        if (mPolarityArray == null
+            || mPolarityArray.length != lDimension * lNumberOfCells)
+          mPolarityArray = new float[lDimension * lNumberOfCells];
+        float[] lPolarityArray = mPolarityArray;
+        lHasPolarity.getPolarityProperty()
+                    .copyCurrentArrayTo(lPolarityArray,
+                                        lPolarityArray.length);
 
         mPolaritiesMemory.copyFrom(lPolarityArray,
                                    0,
@@ -1,12 +1,25 @@
 package simbryo.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Arrays;
+
+import simbryo.util.serialization.StructuralCopy;
 
 /**
  * Instances of this class implement a double-buffering scheme for float arrays.
  * Two arrays are maintained: a read and write array, a method is provided to
  * swap the two arrays, as well as other methods for performing other typical
- * operations.
+ * operations. Arrays that never need their previous state can be allocated
+ * single-buffered, in which case read and write arrays are the same array and
+ * swapping has no effect. Kernels that compute each element only from the same
+ * element (and from other arrays) can update the in-place array directly
+ * instead of writing the write array and swapping. When serialized, only the
+ * used prefix of the arrays is written, that is, up to the last non-zero entry
+ * of either array, and nothing at all for structural copies that skip this
+ * array (see StructuralCopy).
  *
  * @author royer
  */
@@ -14,7 +27,9 @@ public class DoubleBufferingFloatArray implements Serializable
 {
   private static final long serialVersionUID = 1L;
 
-  private float[] mReadArray, mWriteArray;
+  private final boolean mSingleBuffered;
+
+  private transient float[] mReadArray, mWriteArray;
 
   /**
    * Initialize the two arrays with a given fixed size.
@@ -23,8 +38,23 @@ public class DoubleBufferingFloatArray implements Serializable
    *          length of array
    */
   public DoubleBufferingFloatArray(int pLength)
+  {
+    this(pLength, false);
+  }
+
+  /**
+   * Initialize the arrays with a given fixed size. If single-buffered, only one
+   * array is allocated and used as both read and write array.
+   * 
+   * @param pLength
+   *          length of array
+   * @param pSingleBuffered
+   *          true for a single-buffered array
+   */
+  public DoubleBufferingFloatArray(int pLength, boolean pSingleBuffered)
   {
     super();
+    mSingleBuffered = pSingleBuffered;
     allocateArrays(pLength);
   }
 
@@ -37,7 +67,18 @@ public class DoubleBufferingFloatArray implements Serializable
   public void allocateArrays(int pLength)
   {
     mReadArray = new float[pLength];
-    mWriteArray = new float[pLength];
+    mWriteArray = mSingleBuffered ? mReadArray : new float[pLength];
+  }
+
+  /**
+   * Returns true if this array is single-buffered: read and write arrays are
+   * the same array.
+   * 
+   * @return true if single-buffered
+   */
+  public boolean isSingleBuffered()
+  {
+    return mSingleBuffered;
   }
 
   /**
@@ -71,7 +112,8 @@ public class DoubleBufferingFloatArray implements Serializable
   }
 
   /**
-   * Returns the previous array.
+   * Returns the previous array. For single-buffered arrays, this is the current
+   * array.
    * 
    * @return previous array
    */
@@ -80,6 +122,19 @@ public class DoubleBufferingFloatArray implements Serializable
     return mWriteArray;
   }
 
+  /**
+   * Returns the array to update in place: the current array. Kernels that
+   * compute element i only from element i of this array (and from other
+   * arrays) can read and write this array directly, and must not call swap()
+   * afterwards. The previous array is left untouched.
+   * 
+   * @return in-place array
+   */
+  public float[] getInPlaceArray()
+  {
+    return mReadArray;
+  }
+
   /**
    * Clears array with zeros.
    * 
@@ -129,6 +184,8 @@ public class DoubleBufferingFloatArray implements Serializable
    */
   public void copyDefault(int pBeginIndex, int pEndIndex)
   {
+    if (mSingleBuffered)
+      return;
     System.arraycopy(mReadArray,
                      pBeginIndex,
                      mWriteArray,
@@ -177,6 +234,73 @@ public class DoubleBufferingFloatArray implements Serializable
     mReadArray = lTempRef;
   }
 
+  /**
+   * Returns the used length of this double-buffered array: one plus the index
+   * of the last non-zero entry of either array, or zero if both arrays are
+   * filled with zeros.
+   * 
+   * @return used length
+   */
+  public int getUsedLength()
+  {
+    return Math.max(getUsedLength(mReadArray),
+                    getUsedLength(mWriteArray));
+  }
+
+  private static int getUsedLength(float[] pArray)
+  {
+    int lLength = pArray.length;
+    while (lLength > 0 && pArray[lLength - 1] == 0)
+      lLength--;
+    return lLength;
+  }
+
+  private void writeObject(ObjectOutputStream pObjectOutputStream) throws IOException
+  {
+    pObjectOutputStream.defaultWriteObject();
+    int lUsedLength = StructuralCopy.isSkipped(pObjectOutputStream, this) ? 0
+                                                                        : getUsedLength();
+    pObjectOutputStream.writeInt(mReadArray.length);
+    pObjectOutputStream.writeObject(Arrays.copyOf(mReadArray,
+                                                  lUsedLength));
+    if (!mSingleBuffered)
+      pObjectOutputStream.writeObject(Arrays.copyOf(mWriteArray,
+                                                    lUsedLength));
+  }
+
+  private void readObject(ObjectInputStream pObjectInputStream) throws IOException,
+                                                                ClassNotFoundException
+  {
+    pObjectInputStream.defaultReadObject();
+    allocateArrays(pObjectInputStream.readInt());
+    float[] lReadArray = (float[]) pObjectInputStream.readObject();
+    System.arraycopy(lReadArray, 0, mReadArray, 0, lReadArray.length);
+    if (mSingleBuffered)
+      return;
+    float[] lWriteArray = (float[]) pObjectInputStream.readObject();
+    System.arraycopy(lWriteArray,
+                     0,
+                     mWriteArray,
+                     0,
+                     lWriteArray.length);
+  }
+
+  /**
+   * Copies the first entries of both arrays to the corresponding arrays of
+   * another double-buffered array of same buffering.
+   * 
+   * @param pTarget
+   *          double-buffered array to copy to
+   * @param pLength
+   *          number of entries to copy
+   */
+  public void copyTo(DoubleBufferingFloatArray pTarget, int pLength)
+  {
+    System.arraycopy(mReadArray, 0, pTarget.mReadArray, 0, pLength);
+    if (!mSingleBuffered)
+      System.arraycopy(mWriteArray, 0, pTarget.mWriteArray, 0, pLength);
+  }
+
   /**
    * Copies the contents of the read array to another provided array.
    * 
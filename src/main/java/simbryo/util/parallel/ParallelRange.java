@@ -0,0 +1,142 @@
+package simbryo.util.parallel;
+
+import java.util.stream.IntStream;
+
+/**
+ * Utility class to partition a range of ids [begin, end[ into contiguous chunks
+ * that are processed in parallel. Each chunk receives its index so that callers
+ * can keep per-chunk scratch state and avoid sharing working arrays between
+ * threads.
+ *
+ * @author royer
+ */
+public class ParallelRange
+{
+
+  private static final ThreadLocal<Boolean> cSerial =
+                                                    ThreadLocal.withInitial(() -> false);
+
+  /**
+   * Sets whether ranges processed from the current thread are processed
+   * serially. Chunks are then processed one after the other on the calling
+   * thread, with the same boundaries and chunk indices as in parallel. This is
+   * useful when many independent simulations already run concurrently, one per
+   * thread.
+   * 
+   * @param pSerial
+   *          true to process ranges serially on the current thread
+   */
+  public static void setSerialForCurrentThread(boolean pSerial)
+  {
+    cSerial.set(pSerial);
+  }
+
+  /**
+   * Returns true if ranges processed from the current thread are processed
+   * serially.
+   * 
+   * @return true if serial
+   */
+  public static boolean isSerialForCurrentThread()
+  {
+    return cSerial.get();
+  }
+
+  /**
+   * Tasks applied to a chunk of a range.
+   */
+  public interface RangeTaskInterface
+  {
+    /**
+     * Processes a chunk of the range.
+     * 
+     * @param pChunkIndex
+     *          chunk index within [0, number of chunks[
+     * @param pBegin
+     *          chunk begin (inclusive)
+     * @param pEnd
+     *          chunk end (exclusive)
+     */
+    void apply(int pChunkIndex, int pBegin, int pEnd);
+  }
+
+  /**
+   * Returns the maximal number of chunks that any range will be split into.
+   * This can be used to preallocate per-chunk scratch state.
+   * 
+   * @return max number of chunks
+   */
+  public static int getMaxNumberOfChunks()
+  {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Returns the number of chunks a given range will be split into given a
+   * minimal chunk size.
+   * 
+   * @param pBegin
+   *          range begin (inclusive)
+   * @param pEnd
+   *          range end (exclusive)
+   * @param pMinChunkSize
+   *          minimal chunk size
+   * @return number of chunks
+   */
+  public static int getNumberOfChunks(int pBegin,
+                                      int pEnd,
+                                      int pMinChunkSize)
+  {
+    final int lLength = Math.max(0, pEnd - pBegin);
+    final int lMaxNumberOfChunks =
+                                 (lLength + pMinChunkSize - 1)
+                                   / Math.max(1, pMinChunkSize);
+    return Math.max(1,
+                    Math.min(getMaxNumberOfChunks(),
+                             lMaxNumberOfChunks));
+  }
+
+  /**
+   * Applies a task to all chunks of a range, in parallel if the range is large
+   * enough and the current thread is not set to serial. This call returns once
+   * all chunks have been processed.
+   * 
+   * @param pBegin
+   *          range begin (inclusive)
+   * @param pEnd
+   *          range end (exclusive)
+   * @param pMinChunkSize
+   *          minimal chunk size, ranges smaller than this are processed on the
+   *          calling thread.
+   * @param pTask
+   *          task to apply to each chunk
+   */
+  public static void forEach(int pBegin,
+                             int pEnd,
+                             int pMinChunkSize,
+                             RangeTaskInterface pTask)
+  {
+    final int lNumberOfChunks = getNumberOfChunks(pBegin,
+                                                  pEnd,
+                                                  pMinChunkSize);
+
+    if (lNumberOfChunks == 1)
+    {
+      pTask.apply(0, pBegin, pEnd);
+      return;
+    }
+
+    final int lLength = pEnd - pBegin;
+    IntStream lChunks = IntStream.range(0, lNumberOfChunks);
+    if (!isSerialForCurrentThread())
+      lChunks = lChunks.parallel();
+    lChunks.forEach(c -> {
+      int lChunkBegin = pBegin
+                        + (int) (((long) lLength * c) / lNumberOfChunks);
+      int lChunkEnd = pBegin + (int) (((long) lLength * (c + 1))
+                                      / lNumberOfChunks);
+      pTask.apply(c, lChunkBegin, lChunkEnd);
+    });
+  }
+
+}
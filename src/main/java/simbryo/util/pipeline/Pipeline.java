@@ -0,0 +1,264 @@
+package simbryo.util.pipeline;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ordered list of named stages executed at each simulation step. Each stage
+ * has its own period, can be disabled, and accounts for the wall-time it
+ * takes, so that slow-changing stages can run less often than others and the
+ * cost of each stage can be monitored.
+ *
+ * @author royer
+ */
+public class Pipeline implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private final ArrayList<PipelineStage> mStageList = new ArrayList<>();
+
+  /**
+   * Instantiates an empty pipeline.
+   */
+  public Pipeline()
+  {
+    super();
+  }
+
+  /**
+   * Appends a stage that runs every step at the end of this pipeline.
+   * 
+   * @param pName
+   *          stage name
+   * @param pTask
+   *          stage task
+   * @return new stage
+   */
+  public PipelineStage addStage(String pName, StageTaskInterface pTask)
+  {
+    return addStage(new PipelineStage(pName, pTask));
+  }
+
+  /**
+   * Appends a stage at the end of this pipeline.
+   * 
+   * @param pStage
+   *          stage
+   * @return stage
+   */
+  public PipelineStage addStage(PipelineStage pStage)
+  {
+    checkNameIsFree(pStage.getName());
+    mStageList.add(pStage);
+    return pStage;
+  }
+
+  /**
+   * Inserts a stage that runs every step before an existing stage.
+   * 
+   * @param pExistingStageName
+   *          name of the existing stage
+   * @param pName
+   *          new stage name
+   * @param pTask
+   *          stage task
+   * @return new stage
+   */
+  public PipelineStage addStageBefore(String pExistingStageName,
+                                      String pName,
+                                      StageTaskInterface pTask)
+  {
+    return addStageBefore(pExistingStageName,
+                          new PipelineStage(pName, pTask));
+  }
+
+  /**
+   * Inserts a stage before an existing stage.
+   * 
+   * @param pExistingStageName
+   *          name of the existing stage
+   * @param pStage
+   *          new stage
+   * @return new stage
+   */
+  public PipelineStage addStageBefore(String pExistingStageName,
+                                      PipelineStage pStage)
+  {
+    checkNameIsFree(pStage.getName());
+    mStageList.add(getIndexOf(pExistingStageName), pStage);
+    return pStage;
+  }
+
+  /**
+   * Inserts a stage that runs every step after an existing stage.
+   * 
+   * @param pExistingStageName
+   *          name of the existing stage
+   * @param pName
+   *          new stage name
+   * @param pTask
+   *          stage task
+   * @return new stage
+   */
+  public PipelineStage addStageAfter(String pExistingStageName,
+                                     String pName,
+                                     StageTaskInterface pTask)
+  {
+    return addStageAfter(pExistingStageName,
+                         new PipelineStage(pName, pTask));
+  }
+
+  /**
+   * Inserts a stage after an existing stage.
+   * 
+   * @param pExistingStageName
+   *          name of the existing stage
+   * @param pStage
+   *          new stage
+   * @return new stage
+   */
+  public PipelineStage addStageAfter(String pExistingStageName,
+                                     PipelineStage pStage)
+  {
+    checkNameIsFree(pStage.getName());
+    mStageList.add(getIndexOf(pExistingStageName) + 1, pStage);
+    return pStage;
+  }
+
+  /**
+   * Removes a stage.
+   * 
+   * @param pName
+   *          stage name
+   * @return removed stage
+   */
+  public PipelineStage removeStage(String pName)
+  {
+    return mStageList.remove(getIndexOf(pName));
+  }
+
+  /**
+   * Returns the stage of a given name.
+   * 
+   * @param pName
+   *          stage name
+   * @return stage
+   */
+  public PipelineStage getStage(String pName)
+  {
+    return mStageList.get(getIndexOf(pName));
+  }
+
+  /**
+   * Returns true if this pipeline has a stage of a given name.
+   * 
+   * @param pName
+   *          stage name
+   * @return true if present
+   */
+  public boolean hasStage(String pName)
+  {
+    return findIndexOf(pName) >= 0;
+  }
+
+  /**
+   * Returns the stages of this pipeline in execution order.
+   * 
+   * @return unmodifiable list of stages
+   */
+  public List<PipelineStage> getStages()
+  {
+    return Collections.unmodifiableList(mStageList);
+  }
+
+  /**
+   * Runs all stages that are due at a given time step, in order.
+   * 
+   * @param pTimeStepIndex
+   *          time step index
+   */
+  public void step(long pTimeStepIndex)
+  {
+    for (int i = 0; i < mStageList.size(); i++)
+    {
+      final PipelineStage lStage = mStageList.get(i);
+      if (lStage.isDue(pTimeStepIndex))
+        lStage.run(pTimeStepIndex);
+    }
+  }
+
+  /**
+   * Resets the timing of all stages.
+   */
+  public void resetTimings()
+  {
+    for (PipelineStage lStage : mStageList)
+      lStage.resetTiming();
+  }
+
+  /**
+   * Returns the total wall-time spent in all stages since the last reset.
+   * 
+   * @return elapsed time in nanoseconds
+   */
+  public long getElapsedTimeInNanoseconds()
+  {
+    long lElapsedTime = 0;
+    for (PipelineStage lStage : mStageList)
+      lElapsedTime += lStage.getElapsedTimeInNanoseconds();
+    return lElapsedTime;
+  }
+
+  /**
+   * Returns a report listing, for each stage, its schedule and its share of
+   * the total wall-time.
+   * 
+   * @return timing report
+   */
+  public String getTimingReport()
+  {
+    final double lTotal = Math.max(1, getElapsedTimeInNanoseconds());
+    StringBuilder lStringBuilder = new StringBuilder();
+    for (PipelineStage lStage : mStageList)
+    {
+      lStringBuilder.append(String.format("%5.1f%% %s%n",
+                                          100
+                                                * lStage.getElapsedTimeInNanoseconds()
+                                                / lTotal,
+                                          lStage));
+    }
+    return lStringBuilder.toString();
+  }
+
+  private int findIndexOf(String pName)
+  {
+    for (int i = 0; i < mStageList.size(); i++)
+      if (mStageList.get(i).getName().equals(pName))
+        return i;
+    return -1;
+  }
+
+  private int getIndexOf(String pName)
+  {
+    final int lIndex = findIndexOf(pName);
+    if (lIndex < 0)
+      throw new IllegalArgumentException("No stage named: " + pName);
+    return lIndex;
+  }
+
+  private void checkNameIsFree(String pName)
+  {
+    if (findIndexOf(pName) >= 0)
+      throw new IllegalArgumentException("Stage already exists: "
+                                         + pName);
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("Pipeline %s", mStageList);
+  }
+
+}
@@ -0,0 +1,249 @@
+package simbryo.util.pipeline;
+
+import java.io.Serializable;
+
+/**
+ * A named pipeline stage: a task executed every 'period' steps, at steps
+ * congruent to 'phase' modulo 'period'. Stages can be disabled, and keep track
+ * of the wall-time spent running their task.
+ *
+ * @author royer
+ */
+public class PipelineStage implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private final String mName;
+  private final StageTaskInterface mTask;
+
+  private volatile int mPeriod;
+  private volatile int mPhase;
+  private volatile boolean mEnabled = true;
+
+  private volatile long mNumberOfRuns;
+  private volatile long mElapsedTimeInNanoseconds;
+
+  /**
+   * Instantiates a stage that runs every step.
+   * 
+   * @param pName
+   *          stage name
+   * @param pTask
+   *          stage task
+   */
+  public PipelineStage(String pName, StageTaskInterface pTask)
+  {
+    this(pName, 1, 0, pTask);
+  }
+
+  /**
+   * Instantiates a stage that runs every 'period' steps, at steps congruent to
+   * 'phase' modulo 'period'.
+   * 
+   * @param pName
+   *          stage name
+   * @param pPeriod
+   *          period in steps
+   * @param pPhase
+   *          phase in steps
+   * @param pTask
+   *          stage task
+   */
+  public PipelineStage(String pName,
+                       int pPeriod,
+                       int pPhase,
+                       StageTaskInterface pTask)
+  {
+    super();
+    mName = pName;
+    mTask = pTask;
+    setPeriod(pPeriod, pPhase);
+  }
+
+  /**
+   * Returns this stage's name.
+   * 
+   * @return name
+   */
+  public String getName()
+  {
+    return mName;
+  }
+
+  /**
+   * Returns this stage's task.
+   * 
+   * @return task
+   */
+  public StageTaskInterface getTask()
+  {
+    return mTask;
+  }
+
+  /**
+   * Returns the period in steps.
+   * 
+   * @return period
+   */
+  public int getPeriod()
+  {
+    return mPeriod;
+  }
+
+  /**
+   * Returns the phase in steps.
+   * 
+   * @return phase
+   */
+  public int getPhase()
+  {
+    return mPhase;
+  }
+
+  /**
+   * Sets the period, the phase is reset to 0.
+   * 
+   * @param pPeriod
+   *          period in steps
+   */
+  public void setPeriod(int pPeriod)
+  {
+    setPeriod(pPeriod, 0);
+  }
+
+  /**
+   * Sets the period and phase.
+   * 
+   * @param pPeriod
+   *          period in steps, must be strictly positive
+   * @param pPhase
+   *          phase in steps, must be within [0, period[
+   */
+  public void setPeriod(int pPeriod, int pPhase)
+  {
+    if (pPeriod < 1)
+      throw new IllegalArgumentException("Stage period must be strictly positive");
+    if (pPhase < 0 || pPhase >= pPeriod)
+      throw new IllegalArgumentException("Stage phase must be within [0, period[");
+    mPeriod = pPeriod;
+    mPhase = pPhase;
+  }
+
+  /**
+   * Returns true if this stage is enabled.
+   * 
+   * @return true if enabled
+   */
+  public boolean isEnabled()
+  {
+    return mEnabled;
+  }
+
+  /**
+   * Enables or disables this stage.
+   * 
+   * @param pEnabled
+   *          true to enable
+   */
+  public void setEnabled(boolean pEnabled)
+  {
+    mEnabled = pEnabled;
+  }
+
+  /**
+   * Returns true if this stage is enabled and scheduled to run at a given time
+   * step.
+   * 
+   * @param pTimeStepIndex
+   *          time step index
+   * @return true if due
+   */
+  public boolean isDue(long pTimeStepIndex)
+  {
+    return mEnabled && pTimeStepIndex % mPeriod == mPhase;
+  }
+
+  /**
+   * Returns the number of time steps within a given range at which this stage
+   * is due.
+   * 
+   * @param pBeginTimeStepIndex
+   *          begin time step index (inclusive)
+   * @param pEndTimeStepIndex
+   *          end time step index (exclusive)
+   * @return number of due time steps
+   */
+  public long getNumberOfDueSteps(long pBeginTimeStepIndex,
+                                  long pEndTimeStepIndex)
+  {
+    if (!mEnabled || pEndTimeStepIndex <= pBeginTimeStepIndex)
+      return 0;
+    return countDueSteps(pEndTimeStepIndex)
+           - countDueSteps(pBeginTimeStepIndex);
+  }
+
+  private long countDueSteps(long pTimeStepIndex)
+  {
+    return (pTimeStepIndex + mPeriod - 1 - mPhase) / mPeriod;
+  }
+
+  /**
+   * Runs this stage's task and accounts for the time spent.
+   * 
+   * @param pTimeStepIndex
+   *          time step index
+   */
+  public void run(long pTimeStepIndex)
+  {
+    final long lStart = System.nanoTime();
+    mTask.run(pTimeStepIndex);
+    mElapsedTimeInNanoseconds += System.nanoTime() - lStart;
+    mNumberOfRuns++;
+  }
+
+  /**
+   * Returns the number of times this stage has run since the last reset.
+   * 
+   * @return number of runs
+   */
+  public long getNumberOfRuns()
+  {
+    return mNumberOfRuns;
+  }
+
+  /**
+   * Returns the wall-time spent running this stage since the last reset.
+   * 
+   * @return elapsed time in nanoseconds
+   */
+  public long getElapsedTimeInNanoseconds()
+  {
+    return mElapsedTimeInNanoseconds;
+  }
+
+  /**
+   * Resets the run count and elapsed time.
+   */
+  public void resetTiming()
+  {
+    mNumberOfRuns = 0;
+    mElapsedTimeInNanoseconds = 0;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s [period=%d, phase=%d, enabled=%s, runs=%d, total=%.3f ms, average=%.3f us]",
+                         mName,
+                         mPeriod,
+                         mPhase,
+                         mEnabled,
+                         mNumberOfRuns,
+                         mElapsedTimeInNanoseconds * 1e-6,
+                         mNumberOfRuns == 0 ? 0
+                                            : mElapsedTimeInNanoseconds
+                                              * 1e-3
+                                              / mNumberOfRuns);
+  }
+
+}
@@ -0,0 +1,21 @@
+package simbryo.util.pipeline;
+
+import java.io.Serializable;
+
+/**
+ * Task executed by a pipeline stage. Tasks are serializable so that pipelines
+ * can be saved together with the simulation that owns them.
+ *
+ * @author royer
+ */
+@FunctionalInterface
+public interface StageTaskInterface extends Serializable
+{
+  /**
+   * Runs this task for a given time step.
+   * 
+   * @param pTimeStepIndex
+   *          time step index
+   */
+  void run(long pTimeStepIndex);
+}
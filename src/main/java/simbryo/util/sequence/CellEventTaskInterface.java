@@ -0,0 +1,22 @@
+package simbryo.util.sequence;
+
+import java.io.Serializable;
+
+/**
+ * Task executed when a scheduled per-cell event fires.
+ *
+ * @author royer
+ */
+@FunctionalInterface
+public interface CellEventTaskInterface extends Serializable
+{
+  /**
+   * Fires this event for a given cell at a given time step.
+   * 
+   * @param pTimeStepIndex
+   *          time step index
+   * @param pCellId
+   *          cell id
+   */
+  void fire(long pTimeStepIndex, int pCellId);
+}
@@ -0,0 +1,342 @@
+package simbryo.util.sequence;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Event scheduler on simulated time (time step indices). Events are kept in a
+ * priority queue ordered by time step, so that finding due events does not
+ * require scanning all events: firing an event costs O(log n). One-shot,
+ * periodic and per-cell events are supported. Per-cell events follow their
+ * cell when cell ids change. A time scale can be set for simulations that run
+ * with coarser steps: events are always scheduled in event time steps, while
+ * fireUntil, skipUntil and getNextEventTimeStepIndex take and return time steps
+ * of the simulation, each standing for 'time scale' event time steps.
+ *
+ * @author royer
+ */
+public class EventScheduler implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private final PriorityQueue<ScheduledEvent> mQueue =
+                                                     new PriorityQueue<>();
+  private final HashMap<Integer, ArrayList<ScheduledEvent>> mCellEventMap =
+                                                                          new HashMap<>();
+  private long mSequenceNumber;
+  private int mNumberOfEvents;
+  private int mTimeScale = 1;
+
+  /**
+   * Instantiates an empty event scheduler.
+   */
+  public EventScheduler()
+  {
+    super();
+  }
+
+  /**
+   * Returns the time scale: number of event time steps per simulation time
+   * step.
+   *
+   * @return time scale
+   */
+  public int getTimeScale()
+  {
+    return mTimeScale;
+  }
+
+  /**
+   * Sets the time scale: number of event time steps per simulation time step.
+   * With a time scale of k, an event scheduled at event time step t fires at
+   * simulation time step ceil(t/k).
+   *
+   * @param pTimeScale
+   *          time scale, at least one
+   */
+  public void setTimeScale(int pTimeScale)
+  {
+    if (pTimeScale < 1)
+      throw new IllegalArgumentException("Time scale must be at least one, was: "
+                                         + pTimeScale);
+    mTimeScale = pTimeScale;
+  }
+
+  /**
+   * Schedules an event that fires once at a given time step.
+   *
+   * @param pTimeStepIndex
+   *          time step index
+   * @param pTask
+   *          task
+   * @return scheduled event
+   */
+  public ScheduledEvent scheduleAt(long pTimeStepIndex,
+                                   EventTaskInterface pTask)
+  {
+    return schedule(new ScheduledEvent(pTimeStepIndex,
+                                       0,
+                                       -1,
+                                       pTask,
+                                       null));
+  }
+
+  /**
+   * Schedules an event that fires every 'period' steps, starting at a given
+   * time step.
+   *
+   * @param pFirstTimeStepIndex
+   *          first time step index
+   * @param pPeriod
+   *          period in steps
+   * @param pTask
+   *          task
+   * @return scheduled event
+   */
+  public ScheduledEvent schedulePeriodic(long pFirstTimeStepIndex,
+                                         long pPeriod,
+                                         EventTaskInterface pTask)
+  {
+    if (pPeriod < 1)
+      throw new IllegalArgumentException("Period must be at least one, was: "
+                                         + pPeriod);
+    return schedule(new ScheduledEvent(pFirstTimeStepIndex,
+                                       pPeriod,
+                                       -1,
+                                       pTask,
+                                       null));
+  }
+
+  /**
+   * Schedules an event that fires once for a given cell at a given time step.
+   *
+   * @param pTimeStepIndex
+   *          time step index
+   * @param pCellId
+   *          cell id
+   * @param pTask
+   *          task
+   * @return scheduled event
+   */
+  public ScheduledEvent scheduleForCell(long pTimeStepIndex,
+                                        int pCellId,
+                                        CellEventTaskInterface pTask)
+  {
+    if (pCellId < 0)
+      throw new IllegalArgumentException("Invalid cell id: " + pCellId);
+    ScheduledEvent lEvent = schedule(new ScheduledEvent(pTimeStepIndex,
+                                                        0,
+                                                        pCellId,
+                                                        null,
+                                                        pTask));
+    mCellEventMap.computeIfAbsent(pCellId, k -> new ArrayList<>())
+                 .add(lEvent);
+    return lEvent;
+  }
+
+  private ScheduledEvent schedule(ScheduledEvent pEvent)
+  {
+    pEvent.reschedule(pEvent.getTimeStepIndex(), mSequenceNumber++);
+    mQueue.add(pEvent);
+    mNumberOfEvents++;
+    return pEvent;
+  }
+
+  /**
+   * Cancels a scheduled event, events that already fired are ignored.
+   * Cancelled events are discarded lazily when they reach the head of the
+   * queue.
+   *
+   * @param pEvent
+   *          event
+   */
+  public void cancel(ScheduledEvent pEvent)
+  {
+    if (pEvent.isCancelled() || pEvent.hasFired())
+      return;
+    pEvent.cancel();
+    forget(pEvent);
+  }
+
+  /**
+   * Cancels all events of a given cell.
+   *
+   * @param pCellId
+   *          cell id
+   */
+  public void cancelCellEvents(int pCellId)
+  {
+    ArrayList<ScheduledEvent> lEventList = mCellEventMap.remove(pCellId);
+    if (lEventList == null)
+      return;
+    for (ScheduledEvent lEvent : lEventList)
+    {
+      lEvent.cancel();
+      mNumberOfEvents--;
+    }
+  }
+
+  /**
+   * Moves all events of a cell to another cell id. This is used when a cell is
+   * moved to a new id, for example to fill the slot of a removed cell. Events
+   * already scheduled for the destination id are kept.
+   *
+   * @param pSourceCellId
+   *          source cell id
+   * @param pDestinationCellId
+   *          destination cell id
+   */
+  public void moveCellEvents(int pSourceCellId, int pDestinationCellId)
+  {
+    if (pSourceCellId == pDestinationCellId)
+      return;
+    ArrayList<ScheduledEvent> lEventList =
+                                         mCellEventMap.remove(pSourceCellId);
+    if (lEventList == null)
+      return;
+    for (ScheduledEvent lEvent : lEventList)
+      lEvent.setCellId(pDestinationCellId);
+    mCellEventMap.computeIfAbsent(pDestinationCellId,
+                                  k -> new ArrayList<>())
+                 .addAll(lEventList);
+  }
+
+  /**
+   * Returns the number of scheduled events that have not fired or been
+   * cancelled yet. Periodic events count once.
+   *
+   * @return number of events
+   */
+  public int getNumberOfEvents()
+  {
+    return mNumberOfEvents;
+  }
+
+  /**
+   * Returns the simulation time step at which the next event fires, or
+   * Long.MAX_VALUE if no event is scheduled.
+   *
+   * @return next event time step index
+   */
+  public long getNextEventTimeStepIndex()
+  {
+    ScheduledEvent lEvent = peek();
+    if (lEvent == null)
+      return Long.MAX_VALUE;
+    return Math.floorDiv(lEvent.getTimeStepIndex() + mTimeScale - 1,
+                         mTimeScale);
+  }
+
+  /**
+   * Fires, in order, all events that are due at a given simulation time step,
+   * that is, scheduled at or before the corresponding event time step. Events
+   * are given the event time step at which they were scheduled, periodic
+   * events that missed several periods fire once per period. Tasks can
+   * schedule new events, these fire within the same call if they are due.
+   *
+   * @param pTimeStepIndex
+   *          time step index
+   * @return number of events fired
+   */
+  public int fireUntil(long pTimeStepIndex)
+  {
+    final long lEventTimeStepIndex = pTimeStepIndex * mTimeScale;
+    int lNumberOfFiredEvents = 0;
+    ScheduledEvent lEvent;
+    while ((lEvent = peek()) != null
+           && lEvent.getTimeStepIndex() <= lEventTimeStepIndex)
+    {
+      mQueue.poll();
+      final long lTimeStepIndex = lEvent.getTimeStepIndex();
+      if (lEvent.isPeriodic())
+      {
+        lEvent.reschedule(lTimeStepIndex + lEvent.getPeriod(),
+                          mSequenceNumber++);
+        mQueue.add(lEvent);
+      }
+      else
+        forget(lEvent);
+
+      lEvent.fire(lTimeStepIndex);
+      lNumberOfFiredEvents++;
+    }
+    return lNumberOfFiredEvents;
+  }
+
+  /**
+   * Skips, without firing them, all events scheduled before the event time step
+   * corresponding to a given simulation time step: one-shot events are
+   * discarded and periodic events are rescheduled to their first period at or
+   * after that time step. This is used when a simulation jumps to a later time
+   * step, for example when restored from a snapshot.
+   * 
+   * @param pTimeStepIndex
+   *          time step index
+   * @return number of one-shot events discarded
+   */
+  public int skipUntil(long pTimeStepIndex)
+  {
+    final long lEventTimeStepIndex = pTimeStepIndex * mTimeScale;
+    int lNumberOfSkippedEvents = 0;
+    ScheduledEvent lEvent;
+    while ((lEvent = peek()) != null
+           && lEvent.getTimeStepIndex() < lEventTimeStepIndex)
+    {
+      mQueue.poll();
+      if (lEvent.isPeriodic())
+      {
+        final long lPeriod = lEvent.getPeriod();
+        final long lNumberOfPeriods =
+                                    (lEventTimeStepIndex
+                                     - lEvent.getTimeStepIndex()
+                                     + lPeriod - 1) / lPeriod;
+        lEvent.reschedule(lEvent.getTimeStepIndex()
+                          + lNumberOfPeriods * lPeriod,
+                          mSequenceNumber++);
+        mQueue.add(lEvent);
+      }
+      else
+      {
+        lEvent.cancel();
+        forget(lEvent);
+        lNumberOfSkippedEvents++;
+      }
+    }
+    return lNumberOfSkippedEvents;
+  }
+
+  /**
+   * Removes all events.
+   */
+  public void clear()
+  {
+    mQueue.clear();
+    mCellEventMap.clear();
+    mNumberOfEvents = 0;
+  }
+
+  private ScheduledEvent peek()
+  {
+    ScheduledEvent lEvent;
+    while ((lEvent = mQueue.peek()) != null && lEvent.isCancelled())
+      mQueue.poll();
+    return lEvent;
+  }
+
+  private void forget(ScheduledEvent pEvent)
+  {
+    mNumberOfEvents--;
+    int lCellId = pEvent.getCellId();
+    if (lCellId < 0)
+      return;
+    ArrayList<ScheduledEvent> lEventList = mCellEventMap.get(lCellId);
+    if (lEventList == null)
+      return;
+    lEventList.remove(pEvent);
+    if (lEventList.isEmpty())
+      mCellEventMap.remove(lCellId);
+  }
+
+}
@@ -0,0 +1,21 @@
+package simbryo.util.sequence;
+
+import java.io.Serializable;
+
+/**
+ * Task executed when a scheduled event fires. Tasks are serializable so that
+ * schedulers can be saved together with the simulation that owns them.
+ *
+ * @author royer
+ */
+@FunctionalInterface
+public interface EventTaskInterface extends Serializable
+{
+  /**
+   * Fires this event at a given time step.
+   * 
+   * @param pTimeStepIndex
+   *          time step index
+   */
+  void fire(long pTimeStepIndex);
+}
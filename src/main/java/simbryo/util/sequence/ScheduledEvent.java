@@ -0,0 +1,150 @@
+package simbryo.util.sequence;
+
+import java.io.Serializable;
+
+/**
+ * Event scheduled on an event scheduler: a one-shot, periodic or per-cell
+ * event. Events scheduled for the same time step fire in the order in which
+ * they were scheduled.
+ *
+ * @author royer
+ */
+public class ScheduledEvent implements
+                            Comparable<ScheduledEvent>,
+                            Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private final long mPeriod;
+  private final EventTaskInterface mTask;
+  private final CellEventTaskInterface mCellTask;
+
+  private long mTimeStepIndex;
+  private long mSequenceNumber;
+  private int mCellId;
+  private volatile boolean mCancelled;
+  private volatile boolean mFired;
+
+  ScheduledEvent(long pTimeStepIndex,
+                 long pPeriod,
+                 int pCellId,
+                 EventTaskInterface pTask,
+                 CellEventTaskInterface pCellTask)
+  {
+    super();
+    mTimeStepIndex = pTimeStepIndex;
+    mPeriod = pPeriod;
+    mCellId = pCellId;
+    mTask = pTask;
+    mCellTask = pCellTask;
+  }
+
+  /**
+   * Returns the time step at which this event fires next.
+   *
+   * @return time step index
+   */
+  public long getTimeStepIndex()
+  {
+    return mTimeStepIndex;
+  }
+
+  /**
+   * Returns the period of this event in steps, or zero for events that fire
+   * once.
+   *
+   * @return period
+   */
+  public long getPeriod()
+  {
+    return mPeriod;
+  }
+
+  /**
+   * Returns true if this event fires periodically.
+   *
+   * @return true if periodic
+   */
+  public boolean isPeriodic()
+  {
+    return mPeriod > 0;
+  }
+
+  /**
+   * Returns the cell id of this event, or -1 if it is not a per-cell event.
+   * Cell ids are kept up-to-date when cells are removed.
+   *
+   * @return cell id
+   */
+  public int getCellId()
+  {
+    return mCellId;
+  }
+
+  /**
+   * Returns true if this event has been cancelled.
+   *
+   * @return true if cancelled
+   */
+  public boolean isCancelled()
+  {
+    return mCancelled;
+  }
+
+  /**
+   * Returns true if this event fires once and has already fired.
+   *
+   * @return true if fired
+   */
+  public boolean hasFired()
+  {
+    return mFired;
+  }
+
+  void cancel()
+  {
+    mCancelled = true;
+  }
+
+  void setCellId(int pCellId)
+  {
+    mCellId = pCellId;
+  }
+
+  void reschedule(long pTimeStepIndex, long pSequenceNumber)
+  {
+    mTimeStepIndex = pTimeStepIndex;
+    mSequenceNumber = pSequenceNumber;
+  }
+
+  void fire(long pTimeStepIndex)
+  {
+    if (!isPeriodic())
+      mFired = true;
+    if (mCellTask != null)
+      mCellTask.fire(pTimeStepIndex, mCellId);
+    else
+      mTask.fire(pTimeStepIndex);
+  }
+
+  @Override
+  public int compareTo(ScheduledEvent pOther)
+  {
+    int lComparison = Long.compare(mTimeStepIndex,
+                                   pOther.mTimeStepIndex);
+    if (lComparison != 0)
+      return lComparison;
+    return Long.compare(mSequenceNumber, pOther.mSequenceNumber);
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("ScheduledEvent [time step=%d, period=%d, cell=%d%s]",
+                         mTimeStepIndex,
+                         mPeriod,
+                         mCellId,
+                         mCancelled ? ", cancelled" : "");
+  }
+
+}
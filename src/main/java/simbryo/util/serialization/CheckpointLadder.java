@@ -0,0 +1,372 @@
+package simbryo.util.serialization;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang3.SerializationUtils;
+
+import simbryo.SimulationInterface;
+
+/**
+ * A checkpoint ladder caches compressed snapshots of a simulation at regularly
+ * spaced time steps in a cache directory. Snapshots are keyed by model class,
+ * parameters, seed and checkpoint format version. A request for the state at a
+ * given time step restores the nearest earlier checkpoint and only simulates
+ * the remaining steps, saving new checkpoints along the way. When the number of
+ * checkpoints for a key exceeds a maximum, the least recently used checkpoints
+ * are evicted. Checkpoints that cannot be restored, for whatever reason, are
+ * deleted. By default checkpoints are written with Java serialization,
+ * subclasses can override writeCheckpoint and readCheckpoint to use a more
+ * compact format, for example restoring into a simulation obtained from the
+ * factory.
+ *
+ * @param <S>
+ *          simulation type
+ * @author royer
+ */
+public class CheckpointLadder<S extends SimulationInterface & Serializable>
+{
+  /**
+   * Version of the checkpoint format, part of the keys. It must be incremented
+   * whenever checkpoints written before can no longer be restored correctly,
+   * for example when fields are added to serialized simulation classes.
+   */
+  public static final int cFormatVersion = 2;
+
+  private static final String cExtension = ".ckpt";
+
+  private final File mCacheDirectory;
+  private final String mKey;
+  private final int mCheckpointInterval;
+  private final int mMaxNumberOfCheckpoints;
+
+  /**
+   * Returns a key for a given model class, seed and parameters, suitable as a
+   * file name prefix. The key includes the checkpoint format version.
+   *
+   * @param pClass
+   *          model class
+   * @param pSeed
+   *          seed
+   * @param pParameters
+   *          model parameters
+   * @return key
+   */
+  public static String getKey(Class<?> pClass,
+                              long pSeed,
+                              Object... pParameters)
+  {
+    return buildKey(pClass, "seed" + pSeed, pParameters);
+  }
+
+  /**
+   * Returns a key for a given model class and parameters, for models that
+   * cannot be seeded. The cached states are then not determined by the key:
+   * they come from whichever run first populated the cache, and are shared by
+   * all later requests until evicted.
+   *
+   * @param pClass
+   *          model class
+   * @param pParameters
+   *          model parameters
+   * @return key
+   */
+  public static String getUnseededKey(Class<?> pClass,
+                                      Object... pParameters)
+  {
+    return buildKey(pClass, "unseeded", pParameters);
+  }
+
+  private static String buildKey(Class<?> pClass,
+                                 String pSeedTag,
+                                 Object[] pParameters)
+  {
+    StringBuilder lStringBuilder = new StringBuilder();
+    lStringBuilder.append(pClass.getSimpleName());
+    for (Object lParameter : pParameters)
+      lStringBuilder.append('_').append(lParameter);
+    lStringBuilder.append('_').append(pSeedTag);
+    lStringBuilder.append("_v").append(cFormatVersion);
+    return lStringBuilder.toString().replaceAll("[^A-Za-z0-9._-]",
+                                                "-");
+  }
+
+  /**
+   * Instantiates a checkpoint ladder.
+   *
+   * @param pCacheDirectory
+   *          cache directory
+   * @param pKey
+   *          key identifying model class, parameters and seed
+   * @param pCheckpointInterval
+   *          number of time steps between checkpoints
+   * @param pMaxNumberOfCheckpoints
+   *          maximal number of checkpoints kept for this key
+   */
+  public CheckpointLadder(File pCacheDirectory,
+                          String pKey,
+                          int pCheckpointInterval,
+                          int pMaxNumberOfCheckpoints)
+  {
+    super();
+    if (pCheckpointInterval < 1)
+      throw new IllegalArgumentException("Checkpoint interval must be at least one, was: "
+                                         + pCheckpointInterval);
+    if (pMaxNumberOfCheckpoints < 1)
+      throw new IllegalArgumentException("Maximal number of checkpoints must be at least one, was: "
+                                         + pMaxNumberOfCheckpoints);
+    mCacheDirectory = pCacheDirectory;
+    mKey = pKey;
+    mCheckpointInterval = pCheckpointInterval;
+    mMaxNumberOfCheckpoints = pMaxNumberOfCheckpoints;
+  }
+
+  /**
+   * Returns the key of this ladder.
+   *
+   * @return key
+   */
+  public String getKey()
+  {
+    return mKey;
+  }
+
+  /**
+   * Returns the number of time steps between checkpoints.
+   *
+   * @return checkpoint interval
+   */
+  public int getCheckpointInterval()
+  {
+    return mCheckpointInterval;
+  }
+
+  /**
+   * Returns the time steps of the checkpoints currently cached for this key,
+   * in increasing order.
+   *
+   * @return checkpoint time steps
+   */
+  public List<Long> getCheckpointTimeSteps()
+  {
+    ArrayList<Long> lTimeSteps = new ArrayList<>();
+    File[] lFiles = mCacheDirectory.listFiles();
+    if (lFiles == null)
+      return lTimeSteps;
+
+    String lPrefix = mKey + ".";
+    for (File lFile : lFiles)
+    {
+      String lName = lFile.getName();
+      if (lName.startsWith(lPrefix) && lName.endsWith(cExtension))
+      {
+        int lEnd = lName.length() - cExtension.length();
+        String lTimeStep = lName.substring(lPrefix.length(), lEnd);
+        try
+        {
+          lTimeSteps.add(Long.parseLong(lTimeStep));
+        }
+        catch (NumberFormatException e)
+        {
+          // not a checkpoint of this ladder.
+        }
+      }
+    }
+    Collections.sort(lTimeSteps);
+    return lTimeSteps;
+  }
+
+  /**
+   * Returns the simulation state at a given time step. The nearest earlier
+   * checkpoint is restored if there is one, otherwise a new simulation is
+   * obtained from the factory. The remaining steps are then simulated, and a
+   * checkpoint is saved at each multiple of the checkpoint interval.
+   *
+   * @param pTimeStepIndex
+   *          requested time step
+   * @param pFactory
+   *          factory for new simulations, at their initial time step
+   * @return simulation at the requested time step
+   * @throws IOException
+   *           thrown if a checkpoint cannot be written
+   */
+  public S getState(long pTimeStepIndex,
+                    Supplier<S> pFactory) throws IOException
+  {
+    S lSimulation = restore(pTimeStepIndex, pFactory);
+    if (lSimulation == null)
+      lSimulation = pFactory.get();
+
+    long lTimeStepIndex = lSimulation.getTimeStepIndex();
+    while (lTimeStepIndex < pTimeStepIndex)
+    {
+      long lNextTimeStepIndex =
+                              Math.min(pTimeStepIndex,
+                                       (lTimeStepIndex
+                                        / mCheckpointInterval + 1)
+                                                        * mCheckpointInterval);
+      lSimulation.simulationSteps((int) (lNextTimeStepIndex
+                                         - lTimeStepIndex));
+      lTimeStepIndex = lSimulation.getTimeStepIndex();
+      if (lTimeStepIndex % mCheckpointInterval == 0)
+        save(lSimulation);
+    }
+    return lSimulation;
+  }
+
+  /**
+   * Restores the latest checkpoint at or before a given time step. Checkpoints
+   * that cannot be restored are deleted, whatever the exception thrown while
+   * restoring them.
+   *
+   * @param pTimeStepIndex
+   *          time step
+   * @param pFactory
+   *          factory for new simulations, at their initial time step
+   * @return restored simulation, or null if there is no such checkpoint
+   */
+  public S restore(long pTimeStepIndex, Supplier<S> pFactory)
+  {
+    List<Long> lTimeSteps = getCheckpointTimeSteps();
+    for (int i = lTimeSteps.size() - 1; i >= 0; i--)
+    {
+      long lTimeStep = lTimeSteps.get(i);
+      if (lTimeStep > pTimeStepIndex)
+        continue;
+
+      File lFile = getFile(lTimeStep);
+      try
+      {
+        S lSimulation = readCheckpoint(lFile, pFactory);
+        if (lSimulation == null
+            || lSimulation.getTimeStepIndex() != lTimeStep)
+          throw new IOException("Invalid checkpoint: " + lFile);
+        lFile.setLastModified(System.currentTimeMillis());
+        return lSimulation;
+      }
+      catch (Exception e)
+      {
+        lFile.delete();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Saves a checkpoint for the current time step of a given simulation, and
+   * evicts the least recently used checkpoints beyond the maximum.
+   *
+   * @param pSimulation
+   *          simulation
+   * @throws IOException
+   *           thrown if the checkpoint cannot be written
+   */
+  public void save(S pSimulation) throws IOException
+  {
+    mCacheDirectory.mkdirs();
+    File lFile = getFile(pSimulation.getTimeStepIndex());
+    File lTempFile = File.createTempFile(mKey, ".tmp", mCacheDirectory);
+    try
+    {
+      writeCheckpoint(pSimulation, lTempFile);
+      Files.move(lTempFile.toPath(),
+                 lFile.toPath(),
+                 StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally
+    {
+      lTempFile.delete();
+    }
+    evict();
+  }
+
+  /**
+   * Writes a checkpoint of a simulation to a file. The default implementation
+   * uses compressed Java serialization.
+   *
+   * @param pSimulation
+   *          simulation
+   * @param pFile
+   *          file
+   * @throws IOException
+   *           thrown if the checkpoint cannot be written
+   */
+  protected void writeCheckpoint(S pSimulation,
+                                 File pFile) throws IOException
+  {
+    try (OutputStream lOutputStream =
+                                    new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(pFile))))
+    {
+      SerializationUtils.serialize(pSimulation, lOutputStream);
+    }
+  }
+
+  /**
+   * Reads a checkpoint from a file. The default implementation uses compressed
+   * Java serialization and does not use the factory. Any exception thrown
+   * marks the checkpoint as invalid.
+   *
+   * @param pFile
+   *          file
+   * @param pFactory
+   *          factory for new simulations, at their initial time step
+   * @return restored simulation
+   * @throws Exception
+   *           thrown if the checkpoint cannot be restored
+   */
+  protected S readCheckpoint(File pFile,
+                             Supplier<S> pFactory) throws Exception
+  {
+    try (InputStream lInputStream =
+                                  new GZIPInputStream(new BufferedInputStream(new FileInputStream(pFile))))
+    {
+      return SerializationUtils.deserialize(lInputStream);
+    }
+  }
+
+  /**
+   * Deletes all checkpoints of this ladder.
+   */
+  public void clear()
+  {
+    for (long lTimeStep : getCheckpointTimeSteps())
+      getFile(lTimeStep).delete();
+  }
+
+  private void evict()
+  {
+    ArrayList<File> lFiles = new ArrayList<>();
+    for (long lTimeStep : getCheckpointTimeSteps())
+      lFiles.add(getFile(lTimeStep));
+
+    if (lFiles.size() <= mMaxNumberOfCheckpoints)
+      return;
+
+    lFiles.sort((f1, f2) -> Long.compare(f1.lastModified(),
+                                         f2.lastModified()));
+    for (int i = 0; i < lFiles.size() - mMaxNumberOfCheckpoints; i++)
+      lFiles.get(i).delete();
+  }
+
+  private File getFile(long pTimeStep)
+  {
+    return new File(mCacheDirectory, mKey + "." + pTimeStep + cExtension);
+  }
+
+}
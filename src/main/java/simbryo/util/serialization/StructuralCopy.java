@@ -0,0 +1,121 @@
+package simbryo.util.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.apache.commons.lang3.SerializationException;
+
+/**
+ * Structural copies of object graphs. The graph is cloned through Java
+ * serialization, except for the contents of a given set of bulk objects, for
+ * example large particle arrays: classes holding such data check isSkipped in
+ * their writeObject method and write their contents empty, so that the copy
+ * gets zeroed arrays of the same capacity. The caller then copies directly the
+ * range of these arrays that is actually in use.
+ *
+ * @author royer
+ */
+public class StructuralCopy
+{
+
+  private static class SkippingObjectOutputStream extends
+                                                  ObjectOutputStream
+  {
+    private final Set<Object> mSkippedObjects;
+
+    public SkippingObjectOutputStream(OutputStream pOutputStream,
+                                      Set<Object> pSkippedObjects) throws IOException
+    {
+      super(pOutputStream);
+      mSkippedObjects = pSkippedObjects;
+    }
+  }
+
+  /**
+   * Returns a structural copy of an object: the whole object graph is copied
+   * except for the contents of the given objects.
+   *
+   * @param pObject
+   *          object to copy
+   * @param pSkippedObjects
+   *          objects whose contents are not copied
+   * @return structural copy
+   */
+  @SuppressWarnings("unchecked")
+  public static <O extends Serializable> O copy(O pObject,
+                                                Object... pSkippedObjects)
+  {
+    Set<Object> lSkippedObjects =
+                                Collections.newSetFromMap(new IdentityHashMap<>());
+    Collections.addAll(lSkippedObjects, pSkippedObjects);
+
+    ByteArrayOutputStream lByteArrayOutputStream =
+                                                 new ByteArrayOutputStream(4096);
+    try (ObjectOutputStream lObjectOutputStream =
+                                                new SkippingObjectOutputStream(lByteArrayOutputStream,
+                                                                               lSkippedObjects))
+    {
+      lObjectOutputStream.writeObject(pObject);
+    }
+    catch (IOException e)
+    {
+      throw new SerializationException(e);
+    }
+
+    final ClassLoader lClassLoader = pObject.getClass().getClassLoader();
+    try (ObjectInputStream lObjectInputStream =
+                                              new ObjectInputStream(new ByteArrayInputStream(lByteArrayOutputStream.toByteArray()))
+                                              {
+                                                @Override
+                                                protected Class<?> resolveClass(ObjectStreamClass pDescriptor) throws IOException,
+                                                                                                              ClassNotFoundException
+                                                {
+                                                  try
+                                                  {
+                                                    return Class.forName(pDescriptor.getName(),
+                                                                         false,
+                                                                         lClassLoader);
+                                                  }
+                                                  catch (ClassNotFoundException e)
+                                                  {
+                                                    return super.resolveClass(pDescriptor);
+                                                  }
+                                                }
+                                              })
+    {
+      return (O) lObjectInputStream.readObject();
+    }
+    catch (IOException | ClassNotFoundException e)
+    {
+      throw new SerializationException(e);
+    }
+  }
+
+  /**
+   * Returns true if the contents of the given object should not be written to
+   * the given stream, because it is used for a structural copy that skips
+   * them.
+   *
+   * @param pObjectOutputStream
+   *          object output stream
+   * @param pObject
+   *          object
+   * @return true if the contents of the object are skipped
+   */
+  public static boolean isSkipped(ObjectOutputStream pObjectOutputStream,
+                                  Object pObject)
+  {
+    return pObjectOutputStream instanceof SkippingObjectOutputStream
+           && ((SkippingObjectOutputStream) pObjectOutputStream).mSkippedObjects.contains(pObject);
+  }
+
+}
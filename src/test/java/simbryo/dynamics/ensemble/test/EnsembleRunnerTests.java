@@ -0,0 +1,211 @@
+package simbryo.dynamics.ensemble.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import simbryo.SimulationInterface;
+import simbryo.dynamics.ensemble.EnsembleFactoryInterface;
+import simbryo.dynamics.ensemble.EnsembleJob;
+import simbryo.dynamics.ensemble.EnsembleJob.State;
+import simbryo.dynamics.ensemble.EnsembleRunner;
+import simbryo.dynamics.ensemble.EnsembleSinkInterface;
+import simbryo.dynamics.tissue.embryo.zoo.Organoid;
+
+/**
+ * Ensemble runner tests
+ *
+ * @author royer
+ */
+public class EnsembleRunnerTests
+{
+
+  private static class CountingSimulation implements SimulationInterface
+  {
+    private final long mSeed;
+    private final int mFailAt;
+    private long mTimeStepIndex;
+
+    CountingSimulation(long pSeed, int pFailAt)
+    {
+      mSeed = pSeed;
+      mFailAt = pFailAt;
+    }
+
+    @Override
+    public long getTimeStepIndex()
+    {
+      return mTimeStepIndex;
+    }
+
+    @Override
+    public void simulationSteps(int pNumberOfSteps)
+    {
+      mTimeStepIndex += pNumberOfSteps;
+      if (mFailAt > 0 && mTimeStepIndex >= mFailAt)
+        throw new IllegalStateException("failure at " + mTimeStepIndex);
+    }
+  }
+
+  /**
+   * Tests that all combinations of seeds and parameter sets run to completion
+   * and that the sink receives each simulation every report period.
+   */
+  @Test
+  public void testRunAll() throws InterruptedException
+  {
+    ConcurrentHashMap<Long, Long> lFinalStepIndex =
+                                                  new ConcurrentHashMap<>();
+    AtomicInteger lNumberOfReports = new AtomicInteger();
+
+    EnsembleFactoryInterface<CountingSimulation, Integer> lFactory =
+                                                                  (s,
+                                                                   p) -> new CountingSimulation(s + 1000
+                                                                                                    * p,
+                                                                                                0);
+    EnsembleSinkInterface<CountingSimulation, Integer> lSink = (j,
+                                                                s,
+                                                                f) -> {
+      if (f)
+        lFinalStepIndex.put(s.mSeed, s.getTimeStepIndex());
+      else
+        lNumberOfReports.incrementAndGet();
+    };
+
+    EnsembleRunner<CountingSimulation, Integer> lEnsembleRunner =
+                                                                new EnsembleRunner<>(lFactory,
+                                                                                     lSink,
+                                                                                     1000,
+                                                                                     250,
+                                                                                     3);
+
+    List<EnsembleJob<CountingSimulation, Integer>> lJobs =
+                                                         lEnsembleRunner.submitAll(new long[]
+                                                         { 1, 2, 3 }, Arrays.asList(0, 1));
+
+    assertTrue(lEnsembleRunner.awaitCompletion(10, TimeUnit.SECONDS));
+    lEnsembleRunner.shutdown();
+
+    assertEquals(6, lJobs.size());
+    assertEquals(6, lEnsembleRunner.getNumberOfFinishedJobs());
+    assertEquals(1, lEnsembleRunner.getProgress(), 0);
+    assertTrue(lEnsembleRunner.getStepsPerSecond() > 0);
+
+    for (EnsembleJob<CountingSimulation, Integer> lJob : lJobs)
+    {
+      assertEquals(State.Done, lJob.getState());
+      assertEquals(1, lJob.getProgress(), 0);
+      assertEquals(1000L,
+                   (long) lFinalStepIndex.get(lJob.getSeed()
+                                              + 1000
+                                                * lJob.getParameters()));
+    }
+    // 3 intermediate reports per job, at 250, 500 and 750 steps:
+    assertEquals(18, lNumberOfReports.get());
+  }
+
+  /**
+   * Tests cancellation and failures.
+   */
+  @Test
+  public void testCancellationAndFailure() throws InterruptedException
+  {
+    EnsembleFactoryInterface<CountingSimulation, Integer> lFactory =
+                                                                  (s,
+                                                                   p) -> new CountingSimulation(s,
+                                                                                                p);
+
+    EnsembleRunner<CountingSimulation, Integer> lEnsembleRunner =
+                                                                new EnsembleRunner<>(lFactory,
+                                                                                     null,
+                                                                                     1000,
+                                                                                     1000,
+                                                                                     1);
+
+    EnsembleJob<CountingSimulation, Integer> lFailing =
+                                                      lEnsembleRunner.submit(1,
+                                                                             500);
+    EnsembleJob<CountingSimulation, Integer> lCancelled =
+                                                        lEnsembleRunner.submit(2,
+                                                                               0);
+    lCancelled.cancel();
+
+    assertTrue(lEnsembleRunner.awaitCompletion(10, TimeUnit.SECONDS));
+    lEnsembleRunner.shutdown();
+
+    assertEquals(State.Failed, lFailing.getState());
+    assertTrue(lFailing.getFailure() instanceof IllegalStateException);
+    // the failure happens within the steps 400 to 500:
+    assertEquals(400, lFailing.getNumberOfStepsDone());
+    assertEquals(State.Cancelled, lCancelled.getState());
+    assertEquals(0, lCancelled.getNumberOfStepsDone());
+  }
+
+  /**
+   * Tests that jobs cannot be submitted once the runner is shut down, and that
+   * rejected jobs are not registered.
+   */
+  @Test
+  public void testSubmitAfterShutdown() throws InterruptedException
+  {
+    EnsembleFactoryInterface<CountingSimulation, Integer> lFactory =
+                                                                  (s,
+                                                                   p) -> new CountingSimulation(s,
+                                                                                                p);
+
+    EnsembleRunner<CountingSimulation, Integer> lEnsembleRunner =
+                                                                new EnsembleRunner<>(lFactory,
+                                                                                     null,
+                                                                                     100,
+                                                                                     100,
+                                                                                     1);
+    lEnsembleRunner.submit(1, 0);
+    lEnsembleRunner.shutdown();
+    try
+    {
+      lEnsembleRunner.submit(2, 0);
+      fail();
+    }
+    catch (IllegalStateException e)
+    {
+    }
+
+    assertEquals(1, lEnsembleRunner.getNumberOfJobs());
+    assertTrue(lEnsembleRunner.awaitCompletion(10, TimeUnit.SECONDS));
+    assertEquals(State.Done, lEnsembleRunner.getJobs().get(0).getState());
+  }
+
+  /**
+   * Tests running a small ensemble of organoids.
+   */
+  @Test
+  public void testOrganoids() throws InterruptedException
+  {
+    EnsembleFactoryInterface<Organoid, Void> lFactory =
+                                                      (s, p) -> new Organoid(16,
+                                                                             16,
+                                                                             16);
+    EnsembleRunner<Organoid, Void> lEnsembleRunner =
+                                                   new EnsembleRunner<>(lFactory,
+                                                                        null,
+                                                                        600,
+                                                                        600,
+                                                                        2);
+    lEnsembleRunner.submitAll(new long[]
+    { 1, 2 }, Arrays.asList((Void) null));
+
+    assertTrue(lEnsembleRunner.awaitCompletion(60, TimeUnit.SECONDS));
+    lEnsembleRunner.shutdown();
+
+    for (EnsembleJob<Organoid, Void> lJob : lEnsembleRunner.getJobs())
+      assertEquals(State.Done, lJob.getState());
+  }
+
+}
@@ -3,11 +3,12 @@ package simbryo.dynamics.tissue.cellprop;
 import java.io.Serializable;
 
 import simbryo.dynamics.tissue.TissueDynamics;
-import simbryo.util.DoubleBufferingFloatArray;
 
 /**
  * Cell properties are quantities attached to each cell. Operators can be used
- * to modify these values over time.
+ * to modify these values over time. Values are stored in the cell property
+ * arena of the tissue, the value of dimension d of cell id is found in the
+ * read and write arrays at index: getIndex(id) + d.
  *
  * @author royer
  */
@@ -15,10 +16,13 @@ public class CellProperty implements Serializable
 {
   private static final long serialVersionUID = 1L;
 
-  private final TissueDynamics mEmbryo;
   private final int mDimension;
 
-  protected final DoubleBufferingFloatArray mPropertyArray;
+  private final CellPropertyArena mArena;
+  private int mColumn;
+  private int mBase;
+  private int mStep;
+  private int mReadBlockIndex;
 
   /**
    * Constructs a 1D cell property for a given embryo.
@@ -40,13 +44,25 @@ public class CellProperty implements Serializable
    *          dimension of cell property
    */
   public CellProperty(TissueDynamics pTissueDynamics, int pDimension)
+  {
+    this(pTissueDynamics.getCellPropertyArena(), pDimension);
+  }
+
+  /**
+   * Constructs a nD cell property stored in a given arena. This is used for
+   * cell properties of particle systems that are not tissue dynamics.
+   * 
+   * @param pArena
+   *          cell property arena
+   * @param pDimension
+   *          dimension of cell property
+   */
+  public CellProperty(CellPropertyArena pArena, int pDimension)
   {
     super();
-    mEmbryo = pTissueDynamics;
     mDimension = pDimension;
-    mPropertyArray =
-                   new DoubleBufferingFloatArray(getDimension()
-                                                 * mEmbryo.getMaxNumberOfParticles());
+    mArena = pArena;
+    mArena.register(this);
   }
 
   /**
@@ -56,7 +72,7 @@ public class CellProperty implements Serializable
    */
   public int getMaxNumberOfParticles()
   {
-    return mEmbryo.getMaxNumberOfParticles();
+    return mArena.getCapacity();
   }
 
   /**
@@ -69,6 +85,103 @@ public class CellProperty implements Serializable
     return mDimension;
   }
 
+  /**
+   * Returns the arena in which the values of this property are stored.
+   * 
+   * @return cell property arena
+   */
+  public CellPropertyArena getArena()
+  {
+    return mArena;
+  }
+
+  int getColumn()
+  {
+    return mColumn;
+  }
+
+  void setColumn(int pColumn)
+  {
+    mColumn = pColumn;
+  }
+
+  void setLayout(int pBase, int pStep)
+  {
+    mBase = pBase;
+    mStep = pStep;
+  }
+
+  /**
+   * Returns the number of floats between the values of two consecutive cells.
+   * 
+   * @return step
+   */
+  public int getStep()
+  {
+    return mStep;
+  }
+
+  /**
+   * Returns the index in the read and write arrays of the first value of a
+   * given cell.
+   * 
+   * @param pId
+   *          cell id
+   * @return index
+   */
+  public int getIndex(int pId)
+  {
+    return mBase + pId * mStep;
+  }
+
+  /**
+   * Returns the read array.
+   * 
+   * @return read array.
+   */
+  public float[] getReadArray()
+  {
+    return mArena.getBlock(mReadBlockIndex);
+  }
+
+  /**
+   * Returns the write array.
+   * 
+   * @return write array.
+   */
+  public float[] getWriteArray()
+  {
+    return mArena.getBlock(1 - mReadBlockIndex);
+  }
+
+  /**
+   * Returns the current array, same as the read array.
+   * 
+   * @return current array.
+   */
+  public float[] getCurrentArray()
+  {
+    return getReadArray();
+  }
+
+  /**
+   * Returns the previous array, same as the write array.
+   * 
+   * @return previous array
+   */
+  public float[] getPreviousArray()
+  {
+    return getWriteArray();
+  }
+
+  /**
+   * Swaps read and write arrays.
+   */
+  public void swap()
+  {
+    mReadBlockIndex = 1 - mReadBlockIndex;
+  }
+
   /**
    * Copies values from read to write arrays within a given range.
    * 
@@ -79,8 +192,23 @@ public class CellProperty implements Serializable
    */
   public void copyDefault(int pBeginId, int pEndId)
   {
-    mPropertyArray.copyDefault(pBeginId * mDimension,
-                               pEndId * mDimension);
+    final float[] lReadArray = getReadArray();
+    final float[] lWriteArray = getWriteArray();
+    if (mStep == mDimension)
+    {
+      System.arraycopy(lReadArray,
+                       getIndex(pBeginId),
+                       lWriteArray,
+                       getIndex(pBeginId),
+                       (pEndId - pBeginId) * mDimension);
+      return;
+    }
+    for (int id = pBeginId; id < pEndId; id++)
+      System.arraycopy(lReadArray,
+                       getIndex(id),
+                       lWriteArray,
+                       getIndex(id),
+                       mDimension);
   }
 
   /**
@@ -93,7 +221,8 @@ public class CellProperty implements Serializable
    */
   public void clear(int pBeginId, int pEndId)
   {
-    mPropertyArray.clear(pBeginId * mDimension, pEndId * mDimension);
+    fill(getReadArray(), pBeginId, pEndId, 0);
+    fill(getWriteArray(), pBeginId, pEndId, 0);
   }
 
   /**
@@ -108,12 +237,22 @@ public class CellProperty implements Serializable
    */
   public void set(int pBeginId, int pEndId, float pValue)
   {
-    mPropertyArray.set(pBeginId, pEndId, pValue);
-    mPropertyArray.swap();
+    fill(getWriteArray(), pBeginId, pEndId, pValue);
+    swap();
+  }
+
+  private void fill(float[] pArray, int pBeginId, int pEndId, float pValue)
+  {
+    for (int id = pBeginId; id < pEndId; id++)
+    {
+      final int lIndex = getIndex(id);
+      for (int d = 0; d < mDimension; d++)
+        pArray[lIndex + d] = pValue;
+    }
   }
 
   /**
-   * Sets value at given index in the current array.
+   * Sets the value of a given cell in the current array.
    * 
    * @param pId
    *          cell id
@@ -122,34 +261,96 @@ public class CellProperty implements Serializable
    */
   public void set(int pId, float pValue)
   {
-    mPropertyArray.getCurrentArray()[pId] = pValue;
+    setValue(pId, 0, pValue);
   }
 
   /**
-   * Copies a cell property value from one cell id to another cell id.
+   * Sets the value of a given cell and dimension in the current array.
    * 
-   * @param pSourceParticleId
-   *          source id
-   * @param pDestParticleId
-   *          destination id
+   * @param pId
+   *          cell id
+   * @param pDimensionIndex
+   *          dimension index
+   * @param pValue
+   *          value of property
    */
-  public void copyValue(int pSourceParticleId, int pDestParticleId)
+  public void setValue(int pId, int pDimensionIndex, float pValue)
   {
-    float[] lMorphogenArray = mPropertyArray.getCurrentArray();
-    lMorphogenArray[getDimension()
-                    * pDestParticleId] =
-                                       lMorphogenArray[getDimension()
-                                                       * pSourceParticleId];
+    getCurrentArray()[getIndex(pId) + pDimensionIndex] = pValue;
   }
 
   /**
-   * Returns the buffered array used by this cell property
+   * Returns the value of a given cell from the current array.
    * 
-   * @return buffered array
+   * @param pId
+   *          cell id
+   * @return value of property
    */
-  public DoubleBufferingFloatArray getArray()
+  public float getValue(int pId)
+  {
+    return getValue(pId, 0);
+  }
+
+  /**
+   * Returns the value of a given cell and dimension from the current array.
+   * 
+   * @param pId
+   *          cell id
+   * @param pDimensionIndex
+   *          dimension index
+   * @return value of property
+   */
+  public float getValue(int pId, int pDimensionIndex)
+  {
+    return getCurrentArray()[getIndex(pId) + pDimensionIndex];
+  }
+
+  /**
+   * Copies the values of the current array to a given array, cell after cell,
+   * regardless of the layout of the arena.
+   * 
+   * @param pArrayCopy
+   *          array to copy to
+   * @param pLength
+   *          number of values to copy, a multiple of the dimension
+   */
+  public void copyCurrentArrayTo(float[] pArrayCopy, int pLength)
+  {
+    final float[] lCurrentArray = getCurrentArray();
+    final int lNumberOfParticles = pLength / mDimension;
+    if (mStep == mDimension)
+    {
+      System.arraycopy(lCurrentArray,
+                       getIndex(0),
+                       pArrayCopy,
+                       0,
+                       lNumberOfParticles * mDimension);
+      return;
+    }
+    for (int id = 0; id < lNumberOfParticles; id++)
+      System.arraycopy(lCurrentArray,
+                       getIndex(id),
+                       pArrayCopy,
+                       id * mDimension,
+                       mDimension);
+  }
+
+  /**
+   * Copies a cell property value from one cell id to another cell id.
+   * 
+   * @param pSourceParticleId
+   *          source id
+   * @param pDestParticleId
+   *          destination id
+   */
+  public void copyValue(int pSourceParticleId, int pDestParticleId)
   {
-    return mPropertyArray;
+    final float[] lMorphogenArray = getCurrentArray();
+    System.arraycopy(lMorphogenArray,
+                     getIndex(pSourceParticleId),
+                     lMorphogenArray,
+                     getIndex(pDestParticleId),
+                     mDimension);
   }
 
 }
@@ -28,18 +28,49 @@ public class VectorCellProperty extends CellProperty
     super(pTissueDynamics, pDimension);
   }
 
+  /**
+   * Instantiates a vector cell property stored in a given arena.
+   * 
+   * @param pArena
+   *          cell property arena
+   * @param pDimension
+   *          dimension
+   */
+  public VectorCellProperty(CellPropertyArena pArena, int pDimension)
+  {
+    super(pArena, pDimension);
+  }
+
   /**
    * Initializes with random vectors.
    */
   public void initializeRandom()
   {
-    float[] lMorphogenArrayRead = mPropertyArray.getReadArray();
-    float[] lMorphogenArrayWrite = mPropertyArray.getWriteArray();
+    initializeRandom(0, getMaxNumberOfParticles());
+  }
 
-    for (int i = 0; i < lMorphogenArrayRead.length; i++)
+  /**
+   * Initializes with random vectors for particles within a given range.
+   * 
+   * @param pBeginId
+   *          begin id
+   * @param pEndId
+   *          end id
+   */
+  public void initializeRandom(int pBeginId, int pEndId)
+  {
+    int lDimension = getDimension();
+    float[] lMorphogenArrayRead = getReadArray();
+    float[] lMorphogenArrayWrite = getWriteArray();
+
+    for (int id = pBeginId; id < pEndId; id++)
     {
-      lMorphogenArrayRead[i] = (float) (Math.random() * 2 - 1);
-      lMorphogenArrayWrite[i] = (float) (Math.random() * 2 - 1);
+      int j = getIndex(id);
+      for (int i = 0; i < lDimension; i++)
+      {
+        lMorphogenArrayRead[j + i] = (float) (Math.random() * 2 - 1);
+        lMorphogenArrayWrite[j + i] = (float) (Math.random() * 2 - 1);
+      }
     }
   }
 
@@ -58,16 +89,15 @@ public class VectorCellProperty extends CellProperty
   {
     int lDimension = getDimension();
 
-    float[] lMorphogenArrayRead = mPropertyArray.getReadArray();
-    float[] lMorphogenArrayWrite = mPropertyArray.getWriteArray();
+    float[] lMorphogenArrayRead = getReadArray();
+    float[] lMorphogenArrayWrite = getWriteArray();
 
+    int lDestIndex = getIndex(pDestId);
+    int lSourceIndex = getIndex(pSourceId);
     for (int i = 0; i < lDimension; i++)
-      lMorphogenArrayWrite[pDestId * lDimension
-                           + i] =
-                                pFactor
-                                  * lMorphogenArrayRead[pSourceId
-                                                        * lDimension
-                                                        + i];
+      lMorphogenArrayWrite[lDestIndex + i] =
+                                           pFactor * lMorphogenArrayRead[lSourceIndex
+                                                                         + i];
 
   }
 
@@ -90,11 +120,11 @@ public class VectorCellProperty extends CellProperty
   public void normalize(int pBeginId, int pEndId)
   {
     int lDimension = getDimension();
-    float[] lMorphogenArrayWrite = mPropertyArray.getWriteArray();
+    float[] lMorphogenArrayWrite = getWriteArray();
 
     for (int id = pBeginId; id < pEndId; id++)
     {
-      int j = id * lDimension;
+      int j = getIndex(id);
       float lNorm = 0;
       for (int i = 0; i < lDimension; i++)
       {
@@ -30,4 +30,49 @@ public interface CellPropertyOperatorInterface<CP extends CellProperty>
              TissueDynamics pTissueDynamics,
              @SuppressWarnings("unchecked") CP... pCellProperty);
 
+  /**
+   * Apply a simulation step to the provided cell properties, possibly in
+   * parallel over partitions of the id range. Operators that cannot run in
+   * parallel apply the step on the calling thread.
+   * 
+   * @param pBeginId
+   * @param pEndId
+   * @param pTissueDynamics
+   * @param pParallel
+   *          true to allow parallel execution
+   * @param pCellProperty
+   */
+  void apply(int pBeginId,
+             int pEndId,
+             TissueDynamics pTissueDynamics,
+             boolean pParallel,
+             @SuppressWarnings("unchecked") CP... pCellProperty);
+
+  /**
+   * Returns true if this operator can be applied in parallel over partitions of
+   * the id range.
+   * 
+   * @return true if parallelizable
+   */
+  boolean isParallelizable();
+
+  /**
+   * Returns the number of simulation steps covered by each application of this
+   * operator. Operators that model rates scale their per-application change by
+   * this multiplier, operators that compute instantaneous values ignore it.
+   * 
+   * @return time step multiplier
+   */
+  int getTimeStepMultiplier();
+
+  /**
+   * Sets the number of simulation steps covered by each application of this
+   * operator. Use it when the operator is applied only every k steps, so that
+   * its dynamics keep the same pace.
+   * 
+   * @param pTimeStepMultiplier
+   *          time step multiplier, must be strictly positive
+   */
+  void setTimeStepMultiplier(int pTimeStepMultiplier);
+
 }
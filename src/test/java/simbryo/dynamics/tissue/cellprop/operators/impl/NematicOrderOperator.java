@@ -3,7 +3,7 @@ package simbryo.dynamics.tissue.cellprop.operators.impl;
 import simbryo.dynamics.tissue.TissueDynamics;
 import simbryo.dynamics.tissue.cellprop.VectorCellProperty;
 import simbryo.dynamics.tissue.cellprop.operators.OperatorBase;
-import simbryo.particles.neighborhood.NeighborhoodGrid;
+import simbryo.particles.neighborhood.NeighborhoodCache;
 import simbryo.util.geom.GeometryUtils;
 
 /**
@@ -19,7 +19,6 @@ public class NematicOrderOperator extends
   private static final long serialVersionUID = 1L;
 
   private float mCouplingConstant;
-  private int[] mNeighboorsArray;
   private float mNeighborhoodRadiusDilationFactor;
 
   /**
@@ -44,20 +43,22 @@ public class NematicOrderOperator extends
   }
 
   @Override
-  public void apply(int pBeginId,
-                    int pEndId,
-                    TissueDynamics pEmbryo,
-                    VectorCellProperty... pVectorCellProperty)
+  protected float getNeighborhoodRadiusFactor()
+  {
+    return 1 + mNeighborhoodRadiusDilationFactor;
+  }
+
+  @Override
+  protected void applyRange(int pChunkIndex,
+                            int pBeginId,
+                            int pEndId,
+                            TissueDynamics pEmbryo,
+                            VectorCellProperty... pVectorCellProperty)
   {
     final int lDimension = pEmbryo.getDimension();
     final VectorCellProperty lVectorCellProperty =
                                                  pVectorCellProperty[0];
 
-    final NeighborhoodGrid lNeighborhood =
-                                         pEmbryo.getNeighborhoodGrid();
-    final int lMaxNumberOfParticlesPerGridCell =
-                                               lNeighborhood.getMaxParticlesPerGridCell();
-    final int lTotalNumberOfCells = lNeighborhood.getVolume();
     final float lCouplingConstant = mCouplingConstant;
     final float lNeighborhoodRadiusFactor =
                                           mNeighborhoodRadiusDilationFactor;
@@ -66,20 +67,10 @@ public class NematicOrderOperator extends
                              pEmbryo.getPositions().getCurrentArray();
     final float[] lRadii = pEmbryo.getRadii().getCurrentArray();
 
-    int lNeighboorhoodListMaxLength = lMaxNumberOfParticlesPerGridCell
-                                      * lTotalNumberOfCells;
-    if (mNeighboorsArray == null
-        || mNeighboorsArray.length != lNeighboorhoodListMaxLength)
-    {
-      mNeighboorsArray = new int[lNeighboorhoodListMaxLength];
-    }
-
-    final int[] lNeighboors = mNeighboorsArray;
-    final int[] lNeighboorsTemp = mNeighboorsArray;
-    final float[] lCellCoord = new float[lDimension];
-    final int[] lCellCoordMin = new int[lDimension];
-    final int[] lCellCoordMax = new int[lDimension];
-    final int[] lCellCoordCurrent = new int[lDimension];
+    final NeighborhoodCache lNeighborhoodCache =
+                                               pEmbryo.getNeighborhoodCache();
+    final int[] lOffsets = lNeighborhoodCache.getOffsets();
+    final int[] lNeighboors = lNeighborhoodCache.getNeighbors();
 
     lVectorCellProperty.copyDefault(pBeginId, pEndId);
 
@@ -87,18 +78,7 @@ public class NematicOrderOperator extends
     {
       final float ru = lRadii[idu];
 
-      int lNumberOfNeighboors =
-                              lNeighborhood.getAllNeighborsForParticle(lNeighboors,
-                                                                       lNeighboorsTemp,
-                                                                       lPositions,
-                                                                       idu,
-                                                                       ru,
-                                                                       lCellCoord,
-                                                                       lCellCoordMin,
-                                                                       lCellCoordMax,
-                                                                       lCellCoordCurrent);
-
-      for (int k = 0; k < lNumberOfNeighboors; k++)
+      for (int k = lOffsets[idu]; k < lOffsets[idu + 1]; k++)
       {
         final int idv = lNeighboors[k];
 
@@ -119,8 +99,15 @@ public class NematicOrderOperator extends
     }
 
     lVectorCellProperty.normalize(pBeginId, pEndId);
-    lVectorCellProperty.getArray().swap();
+  }
 
+  @Override
+  protected void endStep(int pBeginId,
+                         int pEndId,
+                         TissueDynamics pEmbryo,
+                         VectorCellProperty... pVectorCellProperty)
+  {
+    pVectorCellProperty[0].swap();
   }
 
 }
@@ -0,0 +1,76 @@
+package simbryo.dynamics.tissue.cellprop.operators.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import simbryo.dynamics.tissue.TissueDynamics;
+import simbryo.dynamics.tissue.cellprop.CellProperty;
+import simbryo.dynamics.tissue.cellprop.operators.impl.StrogatzWaveOperator;
+
+/**
+ * Operator sub-cycling tests
+ *
+ * @author royer
+ */
+public class OperatorSubCyclingTests
+{
+
+  /**
+   * Tests that an operator applied every k steps keeps the same pace as when
+   * applied every step.
+   */
+  @Test
+  public void testSamePace()
+  {
+    float lEveryStep = run(1);
+    float lEveryTenSteps = run(10);
+
+    assertEquals(0.1f, lEveryStep, 1e-4f);
+    assertEquals(lEveryStep, lEveryTenSteps, 1e-4f);
+  }
+
+  private float run(int pPeriod)
+  {
+    TissueDynamics lTissueDynamics = new TissueDynamics(0.0001f,
+                                                        0.9f,
+                                                        16,
+                                                        new int[]
+                                                        { 4, 4 });
+
+    // isolated cells, no coupling between them:
+    for (int i = 0; i < 3; i++)
+    {
+      int lId = lTissueDynamics.addParticle(0.2f + 0.3f * i, 0.5f);
+      lTissueDynamics.setRadius(lId, 0.01f);
+      lTissueDynamics.setTargetRadius(lId, 0.01f);
+    }
+    lTissueDynamics.updateNeighborhoodGrid();
+
+    CellProperty lCycle = new CellProperty(lTissueDynamics);
+    StrogatzWaveOperator lStrogatzWaveOperator =
+                                               new StrogatzWaveOperator(0.001f,
+                                                                        0.1f,
+                                                                        0.1f);
+
+    lTissueDynamics.addOperatorStage(TissueDynamics.cBrownianMotionStage,
+                                     "cycle",
+                                     pPeriod,
+                                     lStrogatzWaveOperator,
+                                     lCycle);
+    assertEquals(pPeriod, lStrogatzWaveOperator.getTimeStepMultiplier());
+    assertEquals(pPeriod,
+                 lTissueDynamics.getPipeline()
+                                .getStage("cycle")
+                                .getPeriod());
+
+    lTissueDynamics.simulationSteps(100);
+
+    assertEquals(100 / pPeriod,
+                 lTissueDynamics.getPipeline()
+                                .getStage("cycle")
+                                .getNumberOfRuns());
+
+    return lCycle.getValue(1);
+  }
+
+}
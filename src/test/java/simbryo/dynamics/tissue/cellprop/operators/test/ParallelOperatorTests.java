@@ -0,0 +1,136 @@
+package simbryo.dynamics.tissue.cellprop.operators.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import simbryo.dynamics.tissue.TissueDynamics;
+import simbryo.dynamics.tissue.cellprop.CellProperty;
+import simbryo.dynamics.tissue.cellprop.VectorCellProperty;
+import simbryo.dynamics.tissue.cellprop.operators.impl.NematicOrderOperator;
+import simbryo.dynamics.tissue.cellprop.operators.impl.StrogatzWaveOperator;
+import simbryo.dynamics.tissue.cellprop.operators.impl.SurfaceGradientOperator;
+import simbryo.dynamics.tissue.embryo.EmbryoDynamics;
+import simbryo.particles.isosurf.impl.Plane;
+
+/**
+ * Parallel operator tests
+ *
+ * @author royer
+ */
+public class ParallelOperatorTests
+{
+
+  /**
+   * Tests that operators give the same results in parallel and serially.
+   */
+  @Test
+  public void testSameAsSerial()
+  {
+    float[] lSerial = run(false);
+    float[] lParallel = run(true);
+
+    assertArrayEquals(lSerial, lParallel, 0);
+  }
+
+  /**
+   * Tests that surface gradients computed in parallel follow a change of
+   * surface.
+   */
+  @Test
+  public void testSurfaceGradientFollowsSurfaceChanges()
+  {
+    EmbryoDynamics lEmbryoDynamics = new EmbryoDynamics(0.0001f,
+                                                        0.9f,
+                                                        32,
+                                                        new int[]
+                                                        { 16, 16, 16 });
+    Random lRandom = new Random(1);
+    int lNumberOfCells = 4000;
+    for (int i = 0; i < lNumberOfCells; i++)
+      lEmbryoDynamics.addParticle(lRandom.nextFloat(),
+                                  lRandom.nextFloat(),
+                                  lRandom.nextFloat());
+    Plane lPlane = new Plane(0, 0, 1);
+    lEmbryoDynamics.setSurface(lPlane);
+
+    VectorCellProperty lGradient = new VectorCellProperty(lEmbryoDynamics,
+                                                          3);
+    SurfaceGradientOperator lSurfaceGradientOperator =
+                                                     new SurfaceGradientOperator();
+    for (int s = 0; s < 3; s++)
+      lEmbryoDynamics.applyOperator(lSurfaceGradientOperator, lGradient);
+    for (int i = 0; i < lNumberOfCells; i++)
+      assertEquals(1, lGradient.getValue(i, 2), 1e-6);
+
+    long lModificationCount = lPlane.getModificationCount();
+    lPlane.setPoint(0.5f, 0.5f, 0.25f);
+    assertEquals(lModificationCount + 1, lPlane.getModificationCount());
+    lEmbryoDynamics.applyOperator(lSurfaceGradientOperator, lGradient);
+    for (int i = 0; i < lNumberOfCells; i++)
+      assertEquals(1, lGradient.getValue(i, 2), 1e-6);
+
+    lEmbryoDynamics.setSurface(new Plane(1, 0, 0));
+    lEmbryoDynamics.applyOperator(lSurfaceGradientOperator, lGradient);
+    for (int i = 0; i < lNumberOfCells; i++)
+      assertEquals(1, lGradient.getValue(i, 0), 1e-6);
+  }
+
+  private float[] run(boolean pParallel)
+  {
+    TissueDynamics lTissueDynamics = new TissueDynamics(0.0001f,
+                                                        0.9f,
+                                                        32,
+                                                        16,
+                                                        16,
+                                                        16);
+    lTissueDynamics.setParallelOperators(pParallel);
+
+    Random lRandom = new Random(1);
+    int lNumberOfCells = 4000;
+    for (int i = 0; i < lNumberOfCells; i++)
+    {
+      int lId = lTissueDynamics.addParticle(lRandom.nextFloat(),
+                                            lRandom.nextFloat(),
+                                            lRandom.nextFloat());
+      lTissueDynamics.setRadius(lId, 0.02f);
+    }
+    lTissueDynamics.updateNeighborhoodGrid();
+
+    CellProperty lCycle = new CellProperty(lTissueDynamics);
+    VectorCellProperty lPolarity = new VectorCellProperty(lTissueDynamics,
+                                                          3);
+    for (int i = 0; i < lNumberOfCells; i++)
+    {
+      lCycle.set(i, lRandom.nextFloat() * 3);
+      for (int d = 0; d < 3; d++)
+        lPolarity.setValue(i, d, lRandom.nextFloat());
+    }
+
+    StrogatzWaveOperator lStrogatzWaveOperator =
+                                               new StrogatzWaveOperator(0.01f,
+                                                                        0.1f,
+                                                                        0.1f);
+    NematicOrderOperator lNematicOrderOperator =
+                                               new NematicOrderOperator(0.1f,
+                                                                        0.1f);
+
+    for (int s = 0; s < 50; s++)
+    {
+      lTissueDynamics.applyOperator(lStrogatzWaveOperator, lCycle);
+      lTissueDynamics.applyOperator(lNematicOrderOperator, lPolarity);
+    }
+
+    float[] lResult = new float[4 * lNumberOfCells];
+    for (int i = 0; i < lNumberOfCells; i++)
+    {
+      lResult[i] = lCycle.getValue(i);
+      for (int d = 0; d < 3; d++)
+        lResult[lNumberOfCells + 3 * i + d] = lPolarity.getValue(i, d);
+    }
+    return lResult;
+  }
+
+}
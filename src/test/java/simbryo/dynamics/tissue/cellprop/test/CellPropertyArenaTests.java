@@ -0,0 +1,150 @@
+package simbryo.dynamics.tissue.cellprop.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import simbryo.dynamics.tissue.TissueDynamics;
+import simbryo.dynamics.tissue.cellprop.CellProperty;
+import simbryo.dynamics.tissue.cellprop.CellPropertyArena;
+import simbryo.dynamics.tissue.cellprop.CellPropertyArena.Layout;
+import simbryo.dynamics.tissue.cellprop.VectorCellProperty;
+
+/**
+ * Cell property arena tests
+ *
+ * @author royer
+ */
+public class CellPropertyArenaTests
+{
+
+  /**
+   * Tests that values are preserved when properties are added and when the
+   * layout changes, and that both layouts index the same values.
+   */
+  @Test
+  public void testLayouts()
+  {
+    TissueDynamics lTissueDynamics = newTissue();
+    CellProperty lCycle = new CellProperty(lTissueDynamics);
+    for (int id = 0; id < 10; id++)
+      lCycle.set(id, id);
+
+    VectorCellProperty lPolarity = new VectorCellProperty(lTissueDynamics,
+                                                          3);
+    for (int id = 0; id < 10; id++)
+      for (int d = 0; d < 3; d++)
+        lPolarity.setValue(id, d, 10 * id + d);
+
+    CellPropertyArena lArena = lTissueDynamics.getCellPropertyArena();
+    assertEquals(4, lArena.getStride());
+    assertEquals(1, lCycle.getStep());
+    assertEquals(3, lPolarity.getStep());
+    checkValues(lCycle, lPolarity);
+
+    lTissueDynamics.setCellPropertyArenaLayout(Layout.Interleaved);
+    assertEquals(4, lCycle.getStep());
+    assertEquals(4, lPolarity.getStep());
+    assertEquals(lCycle.getIndex(3) + 1, lPolarity.getIndex(3));
+    checkValues(lCycle, lPolarity);
+
+    lTissueDynamics.setCellPropertyArenaLayout(Layout.Columns);
+    checkValues(lCycle, lPolarity);
+  }
+
+  /**
+   * Tests that copying a particle copies all its property values, in both
+   * layouts, and that swapping one property does not affect others.
+   */
+  @Test
+  public void testCopyAndSwap()
+  {
+    for (Layout lLayout : Layout.values())
+    {
+      TissueDynamics lTissueDynamics = newTissue();
+      lTissueDynamics.setCellPropertyArenaLayout(lLayout);
+      CellProperty lCycle = new CellProperty(lTissueDynamics);
+      VectorCellProperty lPolarity =
+                                   new VectorCellProperty(lTissueDynamics,
+                                                          3);
+      for (int i = 0; i < 3; i++)
+        lTissueDynamics.addParticle(0.2f * (i + 1), 0.5f);
+      lCycle.set(1, 7);
+      lPolarity.setValue(1, 2, 5);
+
+      lTissueDynamics.copyParticle(1, 2);
+      assertEquals(7, lCycle.getValue(2), 0);
+      assertEquals(5, lPolarity.getValue(2, 2), 0);
+      assertEquals(0, lPolarity.getValue(2, 0), 0);
+
+      lCycle.set(0, 3);
+      lCycle.swap();
+      assertEquals(0, lCycle.getValue(0), 0);
+      assertEquals(5, lPolarity.getValue(1, 2), 0);
+      lCycle.swap();
+      assertEquals(3, lCycle.getValue(0), 0);
+
+      lCycle.set(0, 3, 1);
+      assertEquals(1, lCycle.getValue(2), 0);
+      assertEquals(0, lCycle.getValue(3), 0);
+    }
+  }
+
+  /**
+   * Tests that serialized arenas only contain the used cells and restore all
+   * values, in both blocks.
+   */
+  @Test
+  public void testSerialization()
+  {
+    for (Layout lLayout : Layout.values())
+    {
+      TissueDynamics lTissueDynamics = newTissue();
+      lTissueDynamics.setCellPropertyArenaLayout(lLayout);
+      CellProperty lCycle = new CellProperty(lTissueDynamics);
+      VectorCellProperty lPolarity =
+                                   new VectorCellProperty(lTissueDynamics,
+                                                          3);
+      lCycle.set(4, 2);
+      lCycle.swap();
+      lCycle.set(4, 1);
+      lPolarity.setValue(6, 1, 3);
+
+      CellPropertyArena lArena = lTissueDynamics.getCellPropertyArena();
+      assertEquals(7, lArena.getUsedNumberOfParticles());
+      assertEquals(2 * 7 * 4, lArena.snapshot(7).length);
+
+      byte[] lBytes = SerializationUtils.serialize(lArena);
+      CellPropertyArena lCopy = SerializationUtils.deserialize(lBytes);
+      CellProperty lCycleCopy = lCopy.getProperties().get(0);
+      CellProperty lPolarityCopy = lCopy.getProperties().get(1);
+
+      assertEquals(lLayout, lCopy.getLayout());
+      assertEquals(1, lCycleCopy.getValue(4), 0);
+      assertEquals(3, lPolarityCopy.getValue(6, 1), 0);
+      lCycleCopy.swap();
+      assertEquals(2, lCycleCopy.getValue(4), 0);
+      assertEquals(lArena.getBlock(0).length,
+                   lCopy.getBlock(0).length);
+    }
+  }
+
+  private static TissueDynamics newTissue()
+  {
+    return new TissueDynamics(0.0001f, 0.9f, 16, new int[]
+    { 4, 4 });
+  }
+
+  private static void checkValues(CellProperty pCycle,
+                                  VectorCellProperty pPolarity)
+  {
+    for (int id = 0; id < 10; id++)
+    {
+      assertEquals(id, pCycle.getValue(id), 0);
+      for (int d = 0; d < 3; d++)
+        assertEquals(10 * id + d, pPolarity.getValue(id, d), 0);
+    }
+  }
+
+}
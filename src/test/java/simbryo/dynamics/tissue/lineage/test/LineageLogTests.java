@@ -0,0 +1,134 @@
+package simbryo.dynamics.tissue.lineage.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+import simbryo.dynamics.tissue.TissueDynamics;
+import simbryo.dynamics.tissue.embryo.zoo.Drosophila;
+import simbryo.dynamics.tissue.lineage.LineageLog;
+
+/**
+ * Lineage log tests
+ *
+ * @author royer
+ */
+public class LineageLogTests
+{
+
+  /**
+   * Tests that divisions are recorded with new lineage ids for both daughters,
+   * that lineage ids follow cells when other cells are removed, and that
+   * ancestors can be queried.
+   */
+  @Test
+  public void testDivisionsAndRemovals()
+  {
+    TissueDynamics lTissueDynamics =
+                                   new TissueDynamics(0.0001f,
+                                                      0.9f,
+                                                      16,
+                                                      new int[]
+                                                      { 4, 4 });
+    lTissueDynamics.addParticle(0.2f, 0.5f);
+    lTissueDynamics.addParticle(0.8f, 0.5f);
+    LineageLog lLineageLog = lTissueDynamics.getLineageLog();
+    assertEquals(2, lLineageLog.getNumberOfCells());
+    assertEquals(-1, lLineageLog.getParent(0));
+
+    // cell 0 (lineage 0) divides into lineages 2 and 3:
+    int lDaughterId = lTissueDynamics.cloneParticle(0, 0.001f);
+    assertEquals(2, lDaughterId);
+    assertEquals(2, lLineageLog.getLineageId(0));
+    assertEquals(3, lLineageLog.getLineageId(2));
+    assertEquals(2, lLineageLog.getNumberOfEvents());
+
+    lTissueDynamics.simulationSteps(5);
+
+    // particle 2 (lineage 3) divides into lineages 4 and 5:
+    int lGrandDaughterId = lTissueDynamics.cloneParticle(2, 0.001f);
+    assertEquals(4, lLineageLog.getLineageId(2));
+    assertEquals(5, lLineageLog.getLineageId(lGrandDaughterId));
+    assertEquals(5, lLineageLog.getBirthTimeStepIndex(5));
+
+    // removing particle 1 moves the last particle (lineage 5) to id 1:
+    lTissueDynamics.removeParticle(1);
+    assertEquals(5, lLineageLog.getLineageId(1));
+
+    assertArrayEquals(new int[]
+    { 3, 0 }, lLineageLog.getAncestors(5));
+    assertEquals(0, lLineageLog.getCommonAncestor(5, 2));
+    assertEquals(3, lLineageLog.getCommonAncestor(4, 5));
+    assertEquals(-1, lLineageLog.getCommonAncestor(5, 1));
+
+    assertEquals(4, lLineageLog.getNumberOfEvents());
+    assertEquals(3, lLineageLog.getEventParent(2));
+    assertEquals(4, lLineageLog.getEventDaughter(2));
+    assertEquals(5, lLineageLog.getEventTimeStepIndex(3));
+
+    LineageLog lForkedLineageLog = lTissueDynamics.fork().getLineageLog();
+    assertEquals(4, lForkedLineageLog.getNumberOfEvents());
+    assertEquals(5, lForkedLineageLog.getLineageId(1));
+    assertArrayEquals(new int[]
+    { 3, 0 }, lForkedLineageLog.getAncestors(5));
+  }
+
+  /**
+   * Tests that the divisions of a developing embryo are recorded, and that the
+   * log can be exported.
+   *
+   * @throws IOException
+   *           N/A
+   */
+  @Test
+  public void testEmbryoLineageExport() throws IOException
+  {
+    Drosophila lDrosophila = new Drosophila(64, 16, 16, 16);
+    lDrosophila.simulationSteps(3000);
+
+    LineageLog lLineageLog = lDrosophila.getLineageLog();
+    int lNumberOfParticles = lDrosophila.getNumberOfParticles();
+    assertEquals(2 * (lNumberOfParticles - 1),
+                 lLineageLog.getNumberOfEvents());
+    for (int id = 0; id < lNumberOfParticles; id++)
+    {
+      int[] lAncestors =
+                       lLineageLog.getAncestors(lLineageLog.getLineageId(id));
+      assertEquals(0, lAncestors[lAncestors.length - 1]);
+    }
+
+    File lCSVFile = File.createTempFile("lineage", ".csv");
+    lLineageLog.writeCSV(lCSVFile);
+    List<String> lLines = Files.readAllLines(lCSVFile.toPath());
+    assertEquals(1 + lLineageLog.getNumberOfEvents(), lLines.size());
+    assertEquals(lLineageLog.getEventTimeStepIndex(0) + ","
+                 + lLineageLog.getEventParent(0)
+                 + ","
+                 + lLineageLog.getEventDaughter(0), lLines.get(1));
+    lCSVFile.delete();
+
+    File lBinaryFile = File.createTempFile("lineage", ".bin");
+    lLineageLog.writeBinary(lBinaryFile);
+    ByteBuffer lBuffer =
+                       ByteBuffer.wrap(Files.readAllBytes(lBinaryFile.toPath()))
+                                 .order(ByteOrder.LITTLE_ENDIAN);
+    int n = lLineageLog.getNumberOfEvents();
+    assertEquals(8 + 16 * n, lBuffer.capacity());
+    assertEquals(LineageLog.cMagic, lBuffer.getInt());
+    assertEquals(n, lBuffer.getInt());
+    assertEquals(lLineageLog.getEventTimeStepIndex(n - 1),
+                 lBuffer.getLong(8 + 8 * (n - 1)));
+    assertEquals(lLineageLog.getEventDaughter(n - 1),
+                 lBuffer.getInt(8 + 12 * n + 4 * (n - 1)));
+    lBinaryFile.delete();
+  }
+
+}
@@ -0,0 +1,129 @@
+package simbryo.dynamics.tissue.morphogen.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import simbryo.dynamics.tissue.TissueDynamics;
+import simbryo.dynamics.tissue.cellprop.CellProperty;
+import simbryo.dynamics.tissue.cellprop.operators.impl.MorphogenFieldOperator;
+import simbryo.dynamics.tissue.morphogen.MorphogenField;
+
+/**
+ * Morphogen field tests
+ *
+ * @author royer
+ */
+public class MorphogenFieldTests
+{
+
+  private static double sum(MorphogenField pMorphogenField)
+  {
+    double lSum = 0;
+    for (float lValue : pMorphogenField.getConcentrations())
+      lSum += lValue;
+    return lSum;
+  }
+
+  /**
+   * Tests that explicit and implicit diffusion conserve mass, spread
+   * symmetrically, and agree with each other.
+   */
+  @Test
+  public void testDiffusion()
+  {
+    MorphogenField lExplicit = new MorphogenField(16, 16, 16, 1e-3f, 0);
+    MorphogenField lImplicit = new MorphogenField(16, 16, 16, 1e-3f, 0);
+    lImplicit.setImplicit(true);
+
+    for (MorphogenField lField : new MorphogenField[]
+    { lExplicit, lImplicit })
+    {
+      lField.deposit(0.5f, 0.5f, 0.5f, 1);
+      assertEquals(1, sum(lField), 1e-5);
+      for (int s = 0; s < 20; s++)
+        lField.step(1);
+      assertEquals(1, sum(lField), 1e-4);
+
+      float lCenter = lField.sample(0.5f, 0.5f, 0.5f);
+      float lOffX = lField.sample(0.7f, 0.5f, 0.5f);
+      float lOffY = lField.sample(0.5f, 0.3f, 0.5f);
+      float lOffZ = lField.sample(0.5f, 0.5f, 0.7f);
+      assertTrue(lCenter > lOffX);
+      assertEquals(lOffX, lOffY, 1e-6f);
+      assertEquals(lOffX, lOffZ, 1e-6f);
+    }
+    assertTrue(lExplicit.getNumberOfSubSteps(1) > 1);
+
+    float lExplicitValue = lExplicit.sample(0.6f, 0.5f, 0.5f);
+    float lImplicitValue = lImplicit.sample(0.6f, 0.5f, 0.5f);
+    assertEquals(lExplicitValue, lImplicitValue, 0.1f * lExplicitValue);
+  }
+
+  /**
+   * Tests that implicit steps remain stable and positive for time steps far
+   * beyond the explicit stability limit, and that decay is applied.
+   */
+  @Test
+  public void testImplicitStabilityAndDecay()
+  {
+    MorphogenField lField = new MorphogenField(32, 32, 1, 1e-2f, 0);
+    lField.setImplicit(true);
+    lField.deposit(0.25f, 0.25f, 0.5f, 1);
+    lField.step(1000);
+    for (float lValue : lField.getConcentrations())
+      assertTrue(lValue >= 0 && lValue < 1);
+    assertEquals(1, sum(lField), 1e-3);
+
+    MorphogenField lDecaying = new MorphogenField(4, 4, 4, 1e-3f, 0.01f);
+    lDecaying.fill(1);
+    for (int s = 0; s < 10; s++)
+      lDecaying.step(1);
+    assertEquals(Math.exp(-0.1), lDecaying.sample(0.3f, 0.6f, 0.2f), 1e-3);
+  }
+
+  /**
+   * Tests that the operator deposits from source cells and samples the field
+   * back into a cell property, decreasing with the distance to the source.
+   */
+  @Test
+  public void testOperator()
+  {
+    TissueDynamics lTissueDynamics =
+                                   new TissueDynamics(0.0001f,
+                                                      0.9f,
+                                                      16,
+                                                      new int[]
+                                                      { 4, 4 });
+    lTissueDynamics.addParticle(0.2f, 0.5f);
+    lTissueDynamics.addParticle(0.4f, 0.5f);
+    lTissueDynamics.addParticle(0.8f, 0.5f);
+    CellProperty lConcentration = new CellProperty(lTissueDynamics, 1);
+    CellProperty lSource = new CellProperty(lTissueDynamics, 1);
+    lSource.set(0, 1);
+
+    MorphogenFieldOperator lOperator =
+                                     new MorphogenFieldOperator(new MorphogenField(32,
+                                                                                   32,
+                                                                                   1,
+                                                                                   1e-4f,
+                                                                                   1e-3f),
+                                                                1e-2f);
+    lTissueDynamics.addOperatorStage(TissueDynamics.cBrownianMotionStage,
+                                     "morphogen",
+                                     2,
+                                     lOperator,
+                                     lConcentration,
+                                     lSource);
+    lTissueDynamics.simulationSteps(200);
+
+    float c0 = lConcentration.getValue(0);
+    float c1 = lConcentration.getValue(1);
+    float c2 = lConcentration.getValue(2);
+    assertTrue(c0 > c1);
+    assertTrue(c1 > c2);
+    assertTrue(c2 > 0);
+  }
+
+}
@@ -0,0 +1,156 @@
+package simbryo.dynamics.tissue.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simbryo.dynamics.tissue.CoarseToFineSimulation;
+import simbryo.dynamics.tissue.CoarseToFineSimulation.Validation;
+import simbryo.dynamics.tissue.embryo.zoo.Drosophila;
+import simbryo.dynamics.tissue.embryo.zoo.Organoid;
+
+/**
+ * Coarse-to-fine simulation tests
+ *
+ * @author royer
+ */
+public class CoarseToFineSimulationTests
+{
+
+  /**
+   * Tests that a Drosophila embryo simulated coarse until 16 cells and at full
+   * resolution afterwards reaches the same stage as a full resolution
+   * simulation.
+   */
+  @Test
+  public void testDrosophilaHandover()
+  {
+    CoarseToFineSimulation<Drosophila> lSimulation =
+                                                   new CoarseToFineSimulation<>(() -> new Drosophila(64,
+                                                                                                     8,
+                                                                                                     8,
+                                                                                                     8),
+                                                                                () -> new Drosophila(64,
+                                                                                                     16,
+                                                                                                     16,
+                                                                                                     16),
+                                                                                4);
+    lSimulation.setHandoverCriterion(d -> d.getDivisionIndex() >= 4);
+
+    Drosophila lDrosophila = lSimulation.simulate(6000);
+    long lHandoverTimeStepIndex = lSimulation.getHandoverTimeStepIndex();
+    assertTrue(lHandoverTimeStepIndex > 3000);
+    assertTrue(lHandoverTimeStepIndex < 5000);
+    assertEquals(0, lHandoverTimeStepIndex % 4);
+    assertEquals(6000, lDrosophila.getTimeStepIndex());
+    assertEquals(5, lDrosophila.getDivisionIndex());
+    assertEquals(32, lDrosophila.getNumberOfParticles());
+    assertEquals(1,
+                 lDrosophila.getStageOperator(Drosophila.cCellCycleStage)
+                            .getTimeStepMultiplier());
+  }
+
+  /**
+   * Tests that events scheduled on the coarse tissue fire at the corresponding
+   * coarse steps: an Organoid, which divides on periodic scheduled events,
+   * reaches the same number of cells as at full resolution.
+   */
+  @Test
+  public void testOrganoidScheduledEvents()
+  {
+    CoarseToFineSimulation<Organoid> lSimulation =
+                                                 new CoarseToFineSimulation<>(() -> new Organoid(8,
+                                                                                                 8,
+                                                                                                 8),
+                                                                              () -> new Organoid(16,
+                                                                                                 16,
+                                                                                                 16),
+                                                                              4);
+    lSimulation.setHandoverNumberOfCells(8);
+
+    Organoid lOrganoid = lSimulation.simulate(3000);
+    long lHandoverTimeStepIndex = lSimulation.getHandoverTimeStepIndex();
+    assertTrue(lHandoverTimeStepIndex >= 1500);
+    assertTrue(lHandoverTimeStepIndex < 2000);
+    assertEquals(3000, lOrganoid.getTimeStepIndex());
+
+    Organoid lFullOrganoid = new Organoid(16, 16, 16);
+    lFullOrganoid.simulationSteps(3000);
+    assertEquals(64, lFullOrganoid.getNumberOfParticles());
+    assertEquals(lFullOrganoid.getNumberOfParticles(),
+                 lOrganoid.getNumberOfParticles());
+  }
+
+  /**
+   * Tests that the coarse tissue is simulated in batches between handover
+   * checks, so that its steady state monitor can fast-forward.
+   */
+  @Test
+  public void testBatchesAndFastForward()
+  {
+    final ArrayList<Drosophila> lCoarseTissues = new ArrayList<>();
+    CoarseToFineSimulation<Drosophila> lSimulation =
+                                                   new CoarseToFineSimulation<>(() -> {
+                                                     Drosophila lDrosophila =
+                                                                            new Drosophila(64,
+                                                                                           8,
+                                                                                           8,
+                                                                                           8);
+                                                     lDrosophila.getSteadyStateMonitor()
+                                                                .setEnabled(true);
+                                                     lCoarseTissues.add(lDrosophila);
+                                                     return lDrosophila;
+                                                   },
+                                                                                () -> new Drosophila(64,
+                                                                                                     16,
+                                                                                                     16,
+                                                                                                     16),
+                                                                                4);
+    lSimulation.setHandoverNumberOfCells(16);
+    lSimulation.setHandoverCheckPeriod(200);
+
+    lSimulation.simulate(6000);
+    assertEquals(1, lCoarseTissues.size());
+    Drosophila lCoarseTissue = lCoarseTissues.get(0);
+    assertEquals(0, lCoarseTissue.getTimeStepIndex() % 200);
+    assertEquals(4 * lCoarseTissue.getTimeStepIndex(),
+                 lSimulation.getHandoverTimeStepIndex());
+    assertTrue(lCoarseTissue.getNumberOfParticles() >= 16);
+    assertTrue(lCoarseTissue.getSteadyStateMonitor()
+                            .getNumberOfFastForwardedSteps() > 0);
+  }
+
+  /**
+   * Tests that the validation mode compares the final statistics of the
+   * coarse-to-fine and full resolution simulations.
+   */
+  @Test
+  public void testValidation()
+  {
+    CoarseToFineSimulation<Drosophila> lSimulation =
+                                                   new CoarseToFineSimulation<>(() -> new Drosophila(64,
+                                                                                                     8,
+                                                                                                     8,
+                                                                                                     8),
+                                                                                () -> new Drosophila(64,
+                                                                                                     16,
+                                                                                                     16,
+                                                                                                     16),
+                                                                                4);
+    lSimulation.setHandoverNumberOfCells(32);
+
+    Validation lValidation = lSimulation.validate(7000);
+    assertEquals(6999,
+                 lValidation.getCoarseToFineStatistics()
+                            .getTimeStepIndex());
+    assertEquals(6999, lValidation.getFullStatistics().getTimeStepIndex());
+    assertEquals(64,
+                 lValidation.getCoarseToFineStatistics()
+                            .getNumberOfCells());
+    assertTrue(lValidation.isValid(0.05f));
+  }
+
+}
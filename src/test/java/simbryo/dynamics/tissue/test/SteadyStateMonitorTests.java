@@ -0,0 +1,72 @@
+package simbryo.dynamics.tissue.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import simbryo.dynamics.tissue.TissueDynamics;
+import simbryo.dynamics.tissue.embryo.zoo.Drosophila;
+
+/**
+ * Steady state monitor tests
+ *
+ * @author royer
+ */
+public class SteadyStateMonitorTests
+{
+
+  /**
+   * Tests that a Drosophila embryo fast-forwards through the relaxation phases
+   * between mitotic waves and still reaches the same stage.
+   */
+  @Test
+  public void testDrosophilaFastForward()
+  {
+    Drosophila lDrosophila = new Drosophila(64, 16, 16, 16);
+    lDrosophila.getSteadyStateMonitor().setEnabled(true);
+    lDrosophila.simulationSteps(5500);
+
+    assertEquals(5500, lDrosophila.getTimeStepIndex());
+    assertEquals(32, lDrosophila.getNumberOfParticles());
+    assertTrue(lDrosophila.getSteadyStateMonitor()
+                          .getNumberOfFastForwards() > 0);
+    assertTrue(lDrosophila.getSteadyStateMonitor()
+                          .getNumberOfFastForwardedSteps() > 1000);
+    assertEquals(5500
+                 - lDrosophila.getSteadyStateMonitor()
+                              .getNumberOfFastForwardedSteps(),
+                 lDrosophila.getPipeline()
+                            .getStage(TissueDynamics.cIntegrationStage)
+                            .getNumberOfRuns());
+  }
+
+  /**
+   * Tests that tissues that do not predict their structural events never
+   * fast-forward.
+   */
+  @Test
+  public void testNoPrediction()
+  {
+    TissueDynamics lTissueDynamics =
+                                   new TissueDynamics(0.0001f,
+                                                      0.9f,
+                                                      16,
+                                                      new int[]
+                                                      { 4, 4 });
+    lTissueDynamics.getSteadyStateMonitor().setEnabled(true);
+    lTissueDynamics.addParticle(0.5f, 0.5f);
+    lTissueDynamics.setRadius(0, 0.05f);
+    lTissueDynamics.setTargetRadius(0, 0.05f);
+    lTissueDynamics.simulationSteps(500);
+
+    assertEquals(0,
+                 lTissueDynamics.getSteadyStateMonitor()
+                                .getNumberOfFastForwards());
+    assertEquals(500,
+                 lTissueDynamics.getPipeline()
+                                .getStage(TissueDynamics.cIntegrationStage)
+                                .getNumberOfRuns());
+  }
+
+}
@@ -0,0 +1,99 @@
+package simbryo.dynamics.tissue.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import simbryo.dynamics.tissue.StructuralChangeQueue;
+import simbryo.dynamics.tissue.StructuralChangeQueue.StructuralChangeType;
+import simbryo.dynamics.tissue.TissueDynamics;
+
+/**
+ * Structural change queue tests
+ *
+ * @author royer
+ */
+public class StructuralChangeQueueTests
+{
+
+  /**
+   * Tests that changes added concurrently, including beyond the initial
+   * capacity, are all sorted in application order.
+   */
+  @Test
+  public void testConcurrentAddAndSort()
+  {
+    StructuralChangeQueue lQueue = new StructuralChangeQueue();
+    int lNumberOfChanges = 5000;
+
+    IntStream.range(0, lNumberOfChanges).parallel().forEach(i -> {
+      StructuralChangeType lType =
+                                 StructuralChangeType.values()[i % 3];
+      lQueue.add(lType, i, i);
+    });
+
+    assertEquals(lNumberOfChanges, lQueue.sort());
+
+    for (int k = 1; k < lNumberOfChanges; k++)
+    {
+      StructuralChangeType lPreviousType = lQueue.getType(k - 1);
+      StructuralChangeType lType = lQueue.getType(k);
+      assertTrue(lPreviousType.ordinal() <= lType.ordinal());
+      if (lPreviousType == lType)
+      {
+        if (lType == StructuralChangeType.Remove)
+          assertTrue(lQueue.getId(k - 1) > lQueue.getId(k));
+        else
+          assertTrue(lQueue.getId(k - 1) < lQueue.getId(k));
+      }
+      assertEquals(lQueue.getId(k), lQueue.getParameter(k), 0);
+    }
+
+    lQueue.clear();
+    assertTrue(lQueue.isEmpty());
+    assertEquals(0, lQueue.sort());
+  }
+
+  /**
+   * Tests that divisions and removals are applied in one batch by the tissue.
+   */
+  @Test
+  public void testApplyStructuralChanges()
+  {
+    TissueDynamics lTissueDynamics = new TissueDynamics(0.0001f,
+                                                        0.9f,
+                                                        16,
+                                                        new int[]
+                                                        { 4, 4 });
+
+    for (int i = 0; i < 4; i++)
+    {
+      lTissueDynamics.addParticle(0.1f * (i + 1), 0.5f);
+      lTissueDynamics.setTargetRadius(i, 0.01f * (i + 1));
+    }
+
+    lTissueDynamics.requestRemoval(1);
+    lTissueDynamics.requestDivision(0, 0);
+    lTissueDynamics.requestRemoval(3);
+    lTissueDynamics.requestRelabel(2, 1);
+    lTissueDynamics.applyStructuralChanges();
+
+    assertEquals(3, lTissueDynamics.getNumberOfParticles());
+    assertTrue(lTissueDynamics.getStructuralChangeQueue().isEmpty());
+
+    float[] lPositions = new float[6];
+    lTissueDynamics.copyPositions(lPositions);
+
+    assertEquals(0.1f, lPositions[0], 1e-6f);
+    assertEquals(0.1f, lPositions[2], 0.01f);
+    assertEquals(0.3f, lPositions[4], 1e-6f);
+
+    assertEquals(0.01f, lTissueDynamics.getTargetRadius(1), 0);
+    assertEquals(0.03f, lTissueDynamics.getTargetRadius(2), 0);
+    assertEquals(0, lTissueDynamics.getSpecies(1));
+    assertEquals(1, lTissueDynamics.getSpecies(2));
+  }
+
+}
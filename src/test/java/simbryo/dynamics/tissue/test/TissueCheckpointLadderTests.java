@@ -0,0 +1,78 @@
+package simbryo.dynamics.tissue.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import simbryo.dynamics.tissue.TissueCheckpointLadder;
+import simbryo.dynamics.tissue.embryo.zoo.Organoid;
+import simbryo.util.serialization.CheckpointLadder;
+
+/**
+ * Tissue checkpoint ladder tests
+ *
+ * @author royer
+ */
+public class TissueCheckpointLadderTests
+{
+
+  /**
+   * Tests that tissue checkpoints are snapshots restored into tissues obtained
+   * from the factory, and that checkpoints in another format are deleted.
+   *
+   * @throws IOException
+   *           N/A
+   */
+  @Test
+  public void testTissueCheckpoints() throws IOException
+  {
+    File lCacheDirectory =
+                         Files.createTempDirectory("checkpoints")
+                              .toFile();
+    String lKey = CheckpointLadder.getKey(Organoid.class, 0, 16);
+    TissueCheckpointLadder<Organoid> lLadder =
+                                             new TissueCheckpointLadder<>(lCacheDirectory,
+                                                                          lKey,
+                                                                          500,
+                                                                          10);
+    AtomicInteger lNumberOfCreations = new AtomicInteger();
+    Supplier<Organoid> lFactory = () -> {
+      lNumberOfCreations.incrementAndGet();
+      return new Organoid(16, 16, 16);
+    };
+
+    Organoid lOrganoid = lLadder.getState(1200, lFactory);
+    assertEquals(1200, lOrganoid.getTimeStepIndex());
+    assertEquals(4, lOrganoid.getNumberOfParticles());
+    assertEquals(Arrays.asList(500L, 1000L),
+                 lLadder.getCheckpointTimeSteps());
+    assertEquals(1, lNumberOfCreations.get());
+
+    Organoid lRestored = lLadder.restore(1100, lFactory);
+    assertEquals(1000, lRestored.getTimeStepIndex());
+    assertEquals(2, lNumberOfCreations.get());
+    lRestored.simulationSteps(1000);
+    lOrganoid.simulationSteps(800);
+    assertEquals(lOrganoid.getNumberOfParticles(),
+                 lRestored.getNumberOfParticles());
+
+    File lFile = new File(lCacheDirectory, lKey + ".1000.ckpt");
+    Files.write(lFile.toPath(),
+                SerializationUtils.serialize(new Organoid(16, 16, 16)));
+    lRestored = lLadder.restore(1100, lFactory);
+    assertEquals(500, lRestored.getTimeStepIndex());
+    assertEquals(Arrays.asList(500L), lLadder.getCheckpointTimeSteps());
+
+    lLadder.clear();
+    lCacheDirectory.delete();
+  }
+
+}
@@ -0,0 +1,162 @@
+package simbryo.dynamics.tissue.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import simbryo.dynamics.tissue.TissueDynamics;
+import simbryo.dynamics.tissue.embryo.zoo.Drosophila;
+import simbryo.util.DoubleBufferingFloatArray;
+
+/**
+ * Tissue dynamics fork tests
+ *
+ * @author royer
+ */
+public class TissueDynamicsForkTests
+{
+
+  /**
+   * Tests that only the used prefix of a double-buffered array is serialized,
+   * and that it is restored with its full length.
+   */
+  @Test
+  public void testDoubleBufferingFloatArraySerialization()
+  {
+    DoubleBufferingFloatArray lArray =
+                                     new DoubleBufferingFloatArray(100000);
+    for (int i = 0; i < 10; i++)
+    {
+      lArray.getReadArray()[i] = i + 1;
+      lArray.getWriteArray()[i + 5] = -i;
+    }
+    assertEquals(15, lArray.getUsedLength());
+
+    byte[] lBytes = SerializationUtils.serialize(lArray);
+    assertTrue(lBytes.length < 1000);
+
+    DoubleBufferingFloatArray lCopy = SerializationUtils.clone(lArray);
+    assertArrayEquals(lArray.getReadArray(), lCopy.getReadArray(), 0);
+    assertArrayEquals(lArray.getWriteArray(), lCopy.getWriteArray(), 0);
+  }
+
+  /**
+   * Tests that a forked embryo starts from the same state and then evolves
+   * independently of the original.
+   */
+  @Test
+  public void testFork()
+  {
+    Drosophila lDrosophila = new Drosophila(64, 16, 16, 16);
+    lDrosophila.simulationSteps(1000);
+
+    Drosophila lFork = (Drosophila) lDrosophila.fork();
+    assertNotSame(lDrosophila, lFork);
+
+    int lNumberOfParticles = lDrosophila.getNumberOfParticles();
+    assertEquals(lNumberOfParticles, lFork.getNumberOfParticles());
+    assertEquals(lDrosophila.getTimeStepIndex(),
+                 lFork.getTimeStepIndex());
+    assertArrayEquals(lDrosophila.getPositions().getCurrentArray(),
+                      lFork.getPositions().getCurrentArray(),
+                      0);
+    assertArrayEquals(lDrosophila.getRadii().getCurrentArray(),
+                      lFork.getRadii().getCurrentArray(),
+                      0);
+    assertArrayEquals(lDrosophila.getPolarityProperty()
+                                 .getCurrentArray(),
+                      lFork.getPolarityProperty().getCurrentArray(),
+                      0);
+    for (int id = 0; id < lNumberOfParticles; id++)
+      assertEquals(lDrosophila.getTargetRadius(id),
+                   lFork.getTargetRadius(id),
+                   0);
+    assertEquals(lDrosophila.getNeighborhoodGrid()
+                            .getMaximalEffectiveNumberOfParticlesPerGridCell(),
+                 lFork.getNeighborhoodGrid()
+                      .getMaximalEffectiveNumberOfParticlesPerGridCell());
+    assertEquals(lDrosophila.getPipeline().getStages().size(),
+                 lFork.getPipeline().getStages().size());
+
+    float[] lPositions = Arrays.copyOf(lDrosophila.getPositions()
+                                                  .getCurrentArray(),
+                                       3 * lNumberOfParticles);
+
+    lFork.simulationSteps(100);
+
+    assertEquals(lDrosophila.getTimeStepIndex() + 100,
+                 lFork.getTimeStepIndex());
+    assertArrayEquals(lPositions,
+                      Arrays.copyOf(lDrosophila.getPositions()
+                                               .getCurrentArray(),
+                                    3 * lNumberOfParticles),
+                      0);
+  }
+
+  /**
+   * Tests that a fork only copies the live particles: values left beyond the
+   * last particle by removals are not carried over.
+   */
+  @Test
+  public void testForkCopiesLiveParticlesOnly()
+  {
+    TissueDynamics lTissueDynamics =
+                                   new TissueDynamics(0.0001f,
+                                                      0.9f,
+                                                      16,
+                                                      new int[]
+                                                      { 4, 4 });
+    for (int i = 0; i < 16; i++)
+    {
+      int id = lTissueDynamics.addParticle(0.2f + 0.04f * i, 0.5f);
+      lTissueDynamics.setRadius(id, 0.01f);
+      lTissueDynamics.setTargetRadius(id, 0.02f);
+    }
+    lTissueDynamics.getSteadyStateMonitor().setCheckPeriod(37);
+    lTissueDynamics.simulationSteps(10);
+    for (int id = 0; id < 16; id++)
+      lTissueDynamics.setSpecies(id, 1);
+    for (int i = 0; i < 6; i++)
+      lTissueDynamics.removeParticle(lTissueDynamics.getNumberOfParticles()
+                                     - 1);
+    assertEquals(10, lTissueDynamics.getNumberOfParticles());
+    assertTrue(lTissueDynamics.getPositions().getUsedLength() > 20);
+
+    TissueDynamics lFork = lTissueDynamics.fork();
+    assertEquals(10, lFork.getNumberOfParticles());
+    assertEquals(20, lFork.getPositions().getUsedLength());
+    assertEquals(10, lFork.getRadii().getUsedLength());
+    assertEquals(10, lFork.getTargetRadii().getUsedLength());
+    for (int id = 0; id < 16; id++)
+      assertEquals(id < 10 ? 1 : 0, lFork.getSpecies(id));
+    assertArrayEquals(Arrays.copyOf(lTissueDynamics.getPositions()
+                                                   .getReadArray(),
+                                    20),
+                      Arrays.copyOf(lFork.getPositions().getReadArray(),
+                                    20),
+                      0);
+    assertArrayEquals(Arrays.copyOf(lTissueDynamics.getPositions()
+                                                   .getWriteArray(),
+                                    20),
+                      Arrays.copyOf(lFork.getPositions().getWriteArray(),
+                                    20),
+                      0);
+    for (int id = 0; id < 10; id++)
+    {
+      assertEquals(lTissueDynamics.getRadius(id), lFork.getRadius(id), 0);
+      assertEquals(lTissueDynamics.getTargetRadius(id),
+                   lFork.getTargetRadius(id),
+                   0);
+    }
+    assertEquals(37, lFork.getSteadyStateMonitor().getCheckPeriod());
+    assertNotSame(lTissueDynamics.getSteadyStateMonitor(),
+                  lFork.getSteadyStateMonitor());
+  }
+
+}
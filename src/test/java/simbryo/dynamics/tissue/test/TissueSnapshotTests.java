@@ -0,0 +1,257 @@
+package simbryo.dynamics.tissue.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import simbryo.dynamics.tissue.TissueDynamics;
+import simbryo.dynamics.tissue.TissueSnapshot;
+import simbryo.dynamics.tissue.embryo.zoo.Drosophila;
+import simbryo.dynamics.tissue.embryo.zoo.Organoid;
+import simbryo.dynamics.tissue.embryo.zoo.Spheroid;
+
+/**
+ * Tissue snapshot tests
+ *
+ * @author royer
+ */
+public class TissueSnapshotTests
+{
+
+  /**
+   * Tests that a snapshot restores live particles and cell properties, with
+   * and without compression, and is much smaller than Java serialization.
+   *
+   * @throws IOException
+   *           N/A
+   */
+  @Test
+  public void testSaveAndLoad() throws IOException
+  {
+    Drosophila lDrosophila = new Drosophila(64, 16, 16, 16);
+    lDrosophila.simulationSteps(1000);
+    int lNumberOfParticles = lDrosophila.getNumberOfParticles();
+    long lSerializedLength =
+                           SerializationUtils.serialize(lDrosophila).length;
+
+    for (boolean lCompress : new boolean[]
+    { false, true })
+    {
+      File lFile = File.createTempFile("drosophila", ".snapshot");
+      long lLength = TissueSnapshot.save(lDrosophila, lFile, lCompress);
+      assertEquals(lFile.length(), lLength);
+      assertTrue(lLength * 10 < lSerializedLength);
+
+      Drosophila lRestored = new Drosophila(64, 16, 16, 16);
+      TissueSnapshot.load(lFile, lRestored);
+      lFile.delete();
+
+      assertEquals(lNumberOfParticles, lRestored.getNumberOfParticles());
+      assertEquals(lDrosophila.getTimeStepIndex(),
+                   lRestored.getTimeStepIndex());
+      assertArrayEquals(prefix(lDrosophila.getPositions()
+                                          .getCurrentArray(),
+                               3 * lNumberOfParticles),
+                        prefix(lRestored.getPositions()
+                                        .getCurrentArray(),
+                               3 * lNumberOfParticles),
+                        0);
+      for (int id = 0; id < lNumberOfParticles; id++)
+      {
+        assertEquals(lDrosophila.getRadius(id),
+                     lRestored.getRadius(id),
+                     0);
+        assertEquals(lDrosophila.getTargetRadius(id),
+                     lRestored.getTargetRadius(id),
+                     0);
+        for (int d = 0; d < 3; d++)
+          assertEquals(lDrosophila.getPolarityProperty().getValue(id, d),
+                       lRestored.getPolarityProperty().getValue(id, d),
+                       0);
+      }
+    }
+  }
+
+  /**
+   * Tests that subclass state and scheduled events are restored so that a
+   * restored tissue continues to develop like the original.
+   *
+   * @throws IOException
+   *           N/A
+   */
+  @Test
+  public void testContinuation() throws IOException
+  {
+    Organoid lOrganoid = new Organoid(16, 16, 16);
+    lOrganoid.simulationSteps(1200);
+    assertEquals(4, lOrganoid.getNumberOfParticles());
+
+    File lFile = File.createTempFile("organoid", ".snapshot");
+    TissueSnapshot.save(lOrganoid, lFile, true);
+    Organoid lRestored = new Organoid(16, 16, 16);
+    TissueSnapshot.load(lFile, lRestored);
+    lFile.delete();
+
+    assertEquals(1499, lRestored.getEventScheduler()
+                                .getNextEventTimeStepIndex());
+    lOrganoid.simulationSteps(800);
+    lRestored.simulationSteps(800);
+    assertEquals(16, lOrganoid.getNumberOfParticles());
+    assertEquals(lOrganoid.getNumberOfParticles(),
+                 lRestored.getNumberOfParticles());
+  }
+
+  /**
+   * Tests that snapshots saved to memory restore the same state as snapshot
+   * files, and that consecutive snapshots can be read from the same buffer.
+   *
+   * @throws IOException
+   *           N/A
+   */
+  @Test
+  public void testInMemory() throws IOException
+  {
+    Organoid lOrganoid = new Organoid(16, 16, 16);
+    lOrganoid.simulationSteps(1200);
+    ByteBuffer lFirst = TissueSnapshot.save(lOrganoid, true);
+    lOrganoid.simulationSteps(400);
+    ByteBuffer lSecond = TissueSnapshot.save(lOrganoid, false);
+
+    ByteBuffer lBuffer = ByteBuffer.allocate(lFirst.remaining()
+                                             + lSecond.remaining());
+    lBuffer.put(lFirst).put(lSecond).flip();
+
+    Organoid lRestored = new Organoid(16, 16, 16);
+    TissueSnapshot.load(lBuffer, lRestored);
+    assertEquals(1200, lRestored.getTimeStepIndex());
+    assertEquals(4, lRestored.getNumberOfParticles());
+
+    lRestored = new Organoid(16, 16, 16);
+    TissueSnapshot.load(lBuffer, lRestored);
+    assertEquals(0, lBuffer.remaining());
+    assertEquals(lOrganoid.getTimeStepIndex(),
+                 lRestored.getTimeStepIndex());
+    assertEquals(lOrganoid.getNumberOfParticles(),
+                 lRestored.getNumberOfParticles());
+    for (int id = 0; id < lOrganoid.getNumberOfParticles(); id++)
+      assertEquals(lOrganoid.getRadius(id), lRestored.getRadius(id), 0);
+  }
+
+  /**
+   * Tests that snapshots are rejected by tissues of another configuration.
+   *
+   * @throws IOException
+   *           N/A
+   */
+  @Test
+  public void testMismatch() throws IOException
+  {
+    Organoid lOrganoid = new Organoid(16, 16, 16);
+    File lFile = File.createTempFile("organoid", ".snapshot");
+    TissueSnapshot.save(lOrganoid, lFile, false);
+    try
+    {
+      TissueSnapshot.load(lFile,
+                          new TissueDynamics(0.0001f, 0.9f, 16, new int[]
+                          { 4, 4 }));
+      fail();
+    }
+    catch (IllegalArgumentException e)
+    {
+    }
+    finally
+    {
+      lFile.delete();
+    }
+  }
+
+  /**
+   * Tests that snapshots of another tissue class are rejected, even when the
+   * configuration matches.
+   */
+  @Test
+  public void testClassMismatch()
+  {
+    Spheroid lSpheroid = new Spheroid(16, 16, 16);
+    ByteBuffer lSnapshot = TissueSnapshot.save(lSpheroid, false);
+    try
+    {
+      TissueSnapshot.load(lSnapshot, new Organoid(16, 16, 16));
+      fail();
+    }
+    catch (IllegalArgumentException e)
+    {
+    }
+    catch (IOException e)
+    {
+      fail();
+    }
+  }
+
+  /**
+   * Tests that truncated or corrupt snapshots throw an IOException and leave
+   * the tissue untouched.
+   */
+  @Test
+  public void testCorrupt()
+  {
+    Organoid lOrganoid = new Organoid(16, 16, 16);
+    lOrganoid.simulationSteps(1200);
+    ByteBuffer lSnapshot = TissueSnapshot.save(lOrganoid, false);
+    byte[] lBytes = new byte[lSnapshot.remaining()];
+    lSnapshot.get(lBytes);
+
+    Organoid lTarget = new Organoid(16, 16, 16);
+    lTarget.simulationSteps(100);
+    int lNumberOfParticles = lTarget.getNumberOfParticles();
+    float[] lPositions = prefix(lTarget.getPositions()
+                                       .getCurrentArray(),
+                                3 * lNumberOfParticles);
+
+    ByteBuffer lTruncated = ByteBuffer.wrap(lBytes, 0, lBytes.length / 2);
+    ByteBuffer lTooManyParticles =
+                                 ByteBuffer.wrap(lBytes.clone())
+                                           .order(ByteOrder.LITTLE_ENDIAN);
+    lTooManyParticles.putInt(28, lTarget.getMaxNumberOfParticles() + 1);
+    ByteBuffer lWrongDataLength =
+                                ByteBuffer.wrap(lBytes.clone())
+                                          .order(ByteOrder.LITTLE_ENDIAN);
+    lWrongDataLength.putInt(28, lOrganoid.getNumberOfParticles() + 1);
+
+    for (ByteBuffer lCorrupt : Arrays.asList(lTruncated,
+                                             lTooManyParticles,
+                                             lWrongDataLength))
+    {
+      try
+      {
+        TissueSnapshot.load(lCorrupt, lTarget);
+        fail();
+      }
+      catch (IOException e)
+      {
+      }
+      assertEquals(100, lTarget.getTimeStepIndex());
+      assertEquals(lNumberOfParticles, lTarget.getNumberOfParticles());
+      assertArrayEquals(lPositions,
+                        prefix(lTarget.getPositions().getCurrentArray(),
+                               3 * lNumberOfParticles),
+                        0);
+    }
+  }
+
+  private static float[] prefix(float[] pArray, int pLength)
+  {
+    return Arrays.copyOf(pArray, pLength);
+  }
+
+}
@@ -0,0 +1,177 @@
+package simbryo.dynamics.tissue.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simbryo.dynamics.tissue.TissueDynamics;
+import simbryo.dynamics.tissue.TissueStatistics;
+import simbryo.dynamics.tissue.embryo.zoo.Drosophila;
+import simbryo.particles.integration.SemiImplicitContactIntegrator;
+import simbryo.util.geom.GeometryUtils;
+
+/**
+ * Tissue statistics tests
+ *
+ * @author royer
+ */
+public class TissueStatisticsTests
+{
+
+  private static int countContacts(TissueDynamics pTissueDynamics)
+  {
+    final int lDimension = pTissueDynamics.getDimension();
+    final float[] lPositions = pTissueDynamics.getPositions()
+                                              .getCurrentArray();
+    final float[] lRadii = pTissueDynamics.getRadii().getCurrentArray();
+    final int lNumberOfParticles = pTissueDynamics.getNumberOfParticles();
+
+    int lNumberOfContacts = 0;
+    for (int idu = 0; idu < lNumberOfParticles; idu++)
+      for (int idv = idu + 1; idv < lNumberOfParticles; idv++)
+      {
+        float lDistance = GeometryUtils.computeDistance(lDimension,
+                                                        lPositions,
+                                                        idu,
+                                                        idv);
+        if (lDistance < lRadii[idu] + lRadii[idv] && lDistance != 0)
+          lNumberOfContacts++;
+      }
+    return lNumberOfContacts;
+  }
+
+  /**
+   * Tests that the statistics published at each step of a developing embryo
+   * match the same aggregates computed by separate passes over the cells.
+   */
+  @Test
+  public void testStatisticsMatchSeparatePasses()
+  {
+    Drosophila lDrosophila = new Drosophila(64, 16, 16, 16);
+    lDrosophila.getStatisticsCollector().setPeriod(1);
+
+    // reference values computed by separate passes, just after the radius
+    // smoothing and just after the integration:
+    final double[] lReference = new double[7];
+    lDrosophila.getPipeline()
+               .addStageBefore(TissueDynamics.cCollisionStage,
+                               "reference",
+                               s -> {
+                                 int n = lDrosophila.getNumberOfParticles();
+                                 double lSumOfRadii = 0, lSumOfVolumes = 0;
+                                 for (int id = 0; id < n; id++)
+                                 {
+                                   double r = lDrosophila.getRadius(id);
+                                   lSumOfRadii += r;
+                                   lSumOfVolumes += 4 * Math.PI
+                                                    * r
+                                                    * r
+                                                    * r
+                                                    / 3;
+                                 }
+                                 lReference[0] = n;
+                                 lReference[1] = lSumOfRadii / n;
+                                 lReference[2] = lSumOfVolumes;
+                                 lReference[3] = 2.0
+                                                 * countContacts(lDrosophila)
+                                                 / n;
+                                 lReference[4] =
+                                               lDrosophila.getMaximalOverlap();
+                                 lReference[5] =
+                                               lDrosophila.getMaximalRadiusDeviation();
+                               });
+    lDrosophila.getPipeline()
+               .addStageBefore(TissueDynamics.cBoundsStage,
+                               "reference energy",
+                               s -> lReference[6] =
+                                                  lDrosophila.getKineticEnergy());
+
+    final ArrayList<TissueStatistics> lStatisticsList = new ArrayList<>();
+    lDrosophila.getStatisticsCollector().addListener(t -> {
+      assertEquals(lReference[0], t.getNumberOfCells(), 0);
+      assertEquals(lReference[1], t.getMeanRadius(), 1e-5 * lReference[1]);
+      assertEquals(lReference[2], t.getDensity(), 1e-4 * lReference[2]);
+      assertEquals(lReference[3], t.getMeanNumberOfNeighbors(), 1e-6);
+      assertEquals(lReference[4], t.getMaximalOverlap(), 1e-5);
+      assertEquals(lReference[5], t.getMaximalRadiusDeviation(), 1e-5);
+      assertEquals(lReference[6],
+                   t.getKineticEnergy(),
+                   1e-4 * lReference[6] + 1e-12);
+      lStatisticsList.add(t);
+    });
+
+    lDrosophila.simulationSteps(3000);
+
+    assertEquals(3000, lStatisticsList.size());
+    TissueStatistics lLastStatistics =
+                                     lDrosophila.getStatisticsCollector()
+                                                .getLastStatistics();
+    assertEquals(2999, lLastStatistics.getTimeStepIndex());
+    assertTrue(lLastStatistics.getNumberOfCells() > 1);
+    assertTrue(lStatisticsList.stream()
+                              .anyMatch(t -> t.getMeanNumberOfNeighbors() > 0));
+  }
+
+  /**
+   * Tests that statistics are only published every given number of steps, and
+   * that contacts are counted by the semi-implicit contact integrator.
+   */
+  @Test
+  public void testPeriodAndContactIntegrator()
+  {
+    TissueDynamics lTissueDynamics =
+                                   new TissueDynamics(0.0001f,
+                                                      0.9f,
+                                                      16,
+                                                      new int[]
+                                                      { 4, 4 });
+    for (int i = 0; i < 4; i++)
+      for (int j = 0; j < 4; j++)
+      {
+        int id = lTissueDynamics.addParticle(0.3f + 0.1f * i,
+                                             0.3f + 0.1f * j);
+        lTissueDynamics.setRadius(id, 0.06f);
+        lTissueDynamics.setTargetRadius(id, 0.06f);
+      }
+    lTissueDynamics.setContactIntegrator(new SemiImplicitContactIntegrator(4,
+                                                                           0.1f));
+
+    assertNull(lTissueDynamics.getStatisticsCollector()
+                              .getLastStatistics());
+    lTissueDynamics.simulationSteps(10);
+    assertNull(lTissueDynamics.getStatisticsCollector()
+                              .getLastStatistics());
+
+    final int[] lNumberOfContacts = new int[1];
+    lTissueDynamics.getPipeline()
+                   .addStageBefore(TissueDynamics.cCollisionStage,
+                                   "reference",
+                                   s -> lNumberOfContacts[0] =
+                                                             countContacts(lTissueDynamics));
+
+    final ArrayList<TissueStatistics> lStatisticsList = new ArrayList<>();
+    lTissueDynamics.getStatisticsCollector().setPeriod(7);
+    lTissueDynamics.getStatisticsCollector().addListener(t -> {
+      assertEquals(2.0 * lNumberOfContacts[0] / 16,
+                   t.getMeanNumberOfNeighbors(),
+                   1e-6);
+      lStatisticsList.add(t);
+    });
+    lTissueDynamics.simulationSteps(30);
+
+    assertEquals(4, lStatisticsList.size());
+    assertEquals(14, lStatisticsList.get(0).getTimeStepIndex());
+    assertEquals(35, lStatisticsList.get(3).getTimeStepIndex());
+    assertEquals(16, lStatisticsList.get(0).getNumberOfCells());
+    assertEquals(Math.PI * 16 * 0.06 * 0.06,
+                 lStatisticsList.get(0).getDensity(),
+                 1e-5);
+    assertTrue(lStatisticsList.get(0).getMeanNumberOfNeighbors() > 2);
+    assertTrue(lStatisticsList.get(0).getMaximalOverlap() > 0);
+  }
+
+}
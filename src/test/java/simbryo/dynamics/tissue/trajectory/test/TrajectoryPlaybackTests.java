@@ -0,0 +1,128 @@
+package simbryo.dynamics.tissue.trajectory.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import simbryo.dynamics.tissue.embryo.zoo.Drosophila;
+import simbryo.dynamics.tissue.trajectory.TrajectoryPlayback;
+import simbryo.dynamics.tissue.trajectory.TrajectoryReader;
+import simbryo.dynamics.tissue.trajectory.TrajectoryRecorder;
+
+/**
+ * Trajectory playback tests
+ *
+ * @author royer
+ */
+public class TrajectoryPlaybackTests
+{
+
+  /**
+   * Tests that playback serves recorded frames exactly at their time step
+   * indices, and interpolates positions and radii between them.
+   *
+   * @throws IOException
+   *           N/A
+   */
+  @Test
+  public void testPlayback() throws IOException
+  {
+    File lDirectory = Files.createTempDirectory("playback").toFile();
+    Drosophila lDrosophila = new Drosophila(64, 16, 16, 16);
+
+    ArrayList<float[]> lPositionList = new ArrayList<>();
+    ArrayList<float[]> lRadiiList = new ArrayList<>();
+    try (TrajectoryRecorder lRecorder =
+                                      new TrajectoryRecorder(lDirectory,
+                                                             lDrosophila,
+                                                             lDrosophila.getPolarityProperty()))
+    {
+      lRecorder.addToPipeline(100);
+      for (int i = 0; i < 4; i++)
+      {
+        lDrosophila.simulationSteps(100);
+        int lNumberOfParticles = lDrosophila.getNumberOfParticles();
+        lPositionList.add(Arrays.copyOf(lDrosophila.getPositions()
+                                                   .getCurrentArray(),
+                                        3 * lNumberOfParticles));
+        lRadiiList.add(Arrays.copyOf(lDrosophila.getRadii()
+                                                .getCurrentArray(),
+                                     lNumberOfParticles));
+      }
+    }
+
+    try (TrajectoryReader lReader = new TrajectoryReader(lDirectory))
+    {
+      TrajectoryPlayback lPlayback = new TrajectoryPlayback(lReader,
+                                                            0,
+                                                            64,
+                                                            16,
+                                                            16,
+                                                            16);
+      assertEquals(100, lPlayback.getTimeStepIndex());
+
+      for (int f = 0; f < 4; f++)
+      {
+        lPlayback.setTimeStepIndex(100 * (f + 1));
+        float[] lExpected = lPositionList.get(f);
+        assertEquals(lExpected.length / 3,
+                     lPlayback.getNumberOfParticles());
+        assertArrayEquals(lExpected,
+                          Arrays.copyOf(lPlayback.getPositions()
+                                                 .getCurrentArray(),
+                                        lExpected.length),
+                          0);
+        assertArrayEquals(lRadiiList.get(f),
+                          Arrays.copyOf(lPlayback.getRadii()
+                                                 .getCurrentArray(),
+                                        lExpected.length / 3),
+                          0);
+      }
+
+      lPlayback.setTimeStepIndex(100);
+      lPlayback.simulationSteps(50);
+      assertEquals(150, lPlayback.getTimeStepIndex());
+      float[] lPositions = lPlayback.getPositions().getCurrentArray();
+      float[] lPositions0 = lPositionList.get(0);
+      float[] lPositions1 = lPositionList.get(1);
+      int lLength = Math.min(lPositions0.length, lPositions1.length);
+      for (int i = 0; i < lLength; i++)
+        assertEquals(0.5f * (lPositions0[i] + lPositions1[i]),
+                     lPositions[i],
+                     1e-6f);
+
+      float[] lPolarities = new float[3 * lPlayback.getNumberOfParticles()];
+      lPlayback.getPolarityProperty()
+               .copyCurrentArrayTo(lPolarities, lPolarities.length);
+      for (int id = 0; id < lLength / 3; id++)
+      {
+        float lNorm = 0;
+        for (int d = 0; d < 3; d++)
+          lNorm += lPolarities[3 * id + d] * lPolarities[3 * id + d];
+        assertEquals(1, lNorm, 1e-4f);
+      }
+
+      lPlayback.setInterpolation(false);
+      assertArrayEquals(lPositions0,
+                        Arrays.copyOf(lPlayback.getPositions()
+                                               .getCurrentArray(),
+                                      lPositions0.length),
+                        0);
+
+      lPlayback.setTimeStepIndex(0);
+      assertArrayEquals(lPositions0,
+                        Arrays.copyOf(lPlayback.getPositions()
+                                               .getCurrentArray(),
+                                      lPositions0.length),
+                        0);
+    }
+  }
+
+}
@@ -0,0 +1,174 @@
+package simbryo.dynamics.tissue.trajectory.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import simbryo.dynamics.tissue.embryo.zoo.Drosophila;
+import simbryo.dynamics.tissue.trajectory.TrajectoryReader;
+import simbryo.dynamics.tissue.trajectory.TrajectoryRecorder;
+
+/**
+ * Trajectory recorder and reader tests
+ *
+ * @author royer
+ */
+public class TrajectoryTests
+{
+
+  /**
+   * Tests that frames recorded across several chunks can be read back in any
+   * order, for any range of cells.
+   *
+   * @throws IOException
+   *           N/A
+   */
+  @Test
+  public void testRecordAndRead() throws IOException
+  {
+    File lDirectory = Files.createTempDirectory("trajectory").toFile();
+    Drosophila lDrosophila = new Drosophila(64, 16, 16, 16);
+
+    ArrayList<float[]> lPositionList = new ArrayList<>();
+    ArrayList<float[]> lPolarityList = new ArrayList<>();
+    try (TrajectoryRecorder lRecorder =
+                                      new TrajectoryRecorder(lDirectory,
+                                                             100,
+                                                             lDrosophila,
+                                                             lDrosophila.getPolarityProperty()))
+    {
+      lRecorder.addToPipeline(100);
+      for (int i = 0; i < 10; i++)
+      {
+        lDrosophila.simulationSteps(100);
+        int lNumberOfParticles = lDrosophila.getNumberOfParticles();
+        lPositionList.add(Arrays.copyOf(lDrosophila.getPositions()
+                                                   .getCurrentArray(),
+                                        3 * lNumberOfParticles));
+        float[] lPolarity = new float[3 * lNumberOfParticles];
+        lDrosophila.getPolarityProperty()
+                   .copyCurrentArrayTo(lPolarity, lPolarity.length);
+        lPolarityList.add(lPolarity);
+      }
+      assertEquals(10, lRecorder.getNumberOfFrames());
+    }
+    assertTrue(new File(lDirectory,
+                        TrajectoryRecorder.getChunkFileName(1)).exists());
+
+    try (TrajectoryReader lReader = new TrajectoryReader(lDirectory))
+    {
+      assertEquals(10, lReader.getNumberOfFrames());
+      assertEquals(3, lReader.getDimension());
+      assertEquals(1, lReader.getNumberOfProperties());
+      assertEquals(3, lReader.getPropertyDimension(0));
+      assertEquals(100, lReader.getTimeStepIndex(0));
+      assertEquals(-1, lReader.getFrameIndex(99));
+      assertEquals(4, lReader.getFrameIndex(550));
+      assertEquals(9, lReader.getFrameIndex(5000));
+
+      for (int f = 9; f >= 0; f--)
+      {
+        float[] lExpected = lPositionList.get(f);
+        int lNumberOfParticles = lReader.getNumberOfParticles(f);
+        assertEquals(lExpected.length / 3, lNumberOfParticles);
+
+        float[] lPositions = new float[3 * lNumberOfParticles];
+        lReader.readPositions(f, 0, lNumberOfParticles, lPositions);
+        assertArrayEquals(lExpected, lPositions, 0);
+
+        float[] lPolarity = new float[3];
+        int lLastId = lNumberOfParticles - 1;
+        lReader.readProperty(f, 0, lLastId, lNumberOfParticles, lPolarity);
+        assertArrayEquals(Arrays.copyOfRange(lPolarityList.get(f),
+                                             3 * lLastId,
+                                             3 * lNumberOfParticles),
+                          lPolarity,
+                          0);
+      }
+    }
+
+    for (File lFile : lDirectory.listFiles())
+      lFile.delete();
+    lDirectory.delete();
+  }
+
+  /**
+   * Tests that delta-encoded frames are decoded within the quantization
+   * precision, in any order, and take less space than raw frames.
+   *
+   * @throws IOException
+   *           N/A
+   */
+  @Test
+  public void testDeltaEncoding() throws IOException
+  {
+    File lDirectory = Files.createTempDirectory("trajectory").toFile();
+    Drosophila lDrosophila = new Drosophila(64, 16, 16, 16);
+    final float lPrecision = 1e-5f;
+    lDrosophila.simulationSteps(7000);
+
+    ArrayList<float[]> lPositionList = new ArrayList<>();
+    ArrayList<float[]> lPolarityList = new ArrayList<>();
+    long lRawLength = 0;
+    try (TrajectoryRecorder lRecorder =
+                                      new TrajectoryRecorder(lDirectory,
+                                                             TrajectoryRecorder.cDefaultChunkSize,
+                                                             lPrecision,
+                                                             4,
+                                                             lDrosophila,
+                                                             lDrosophila.getPolarityProperty()))
+    {
+      lRecorder.addToPipeline(10);
+      for (int i = 0; i < 10; i++)
+      {
+        lDrosophila.simulationSteps(10);
+        int lNumberOfParticles = lDrosophila.getNumberOfParticles();
+        lPositionList.add(Arrays.copyOf(lDrosophila.getPositions()
+                                                   .getCurrentArray(),
+                                        3 * lNumberOfParticles));
+        float[] lPolarity = new float[3 * lNumberOfParticles];
+        lDrosophila.getPolarityProperty()
+                   .copyCurrentArrayTo(lPolarity, lPolarity.length);
+        lPolarityList.add(lPolarity);
+        lRawLength += 4 * 7 * lNumberOfParticles;
+      }
+    }
+    try (TrajectoryReader lReader = new TrajectoryReader(lDirectory))
+    {
+      assertEquals(10, lReader.getNumberOfFrames());
+      long lEncodedLength = 0;
+      for (int f = 0; f < 10; f++)
+        lEncodedLength += lReader.getFrameLength(f);
+      assertTrue(lEncodedLength < lRawLength / 2);
+      assertEquals(lPrecision, lReader.getPrecision(), 0);
+      assertEquals(4, lReader.getKeyFrameInterval());
+
+      for (int f : new int[]
+      { 6, 7, 2, 9, 0, 5 })
+      {
+        float[] lExpected = lPositionList.get(f);
+        int lNumberOfParticles = lReader.getNumberOfParticles(f);
+        float[] lPositions = new float[3 * lNumberOfParticles];
+        lReader.readPositions(f, 0, lNumberOfParticles, lPositions);
+        assertArrayEquals(lExpected, lPositions, lPrecision);
+
+        float[] lPolarity = new float[3 * lNumberOfParticles];
+        lReader.readProperty(f, 0, 0, lNumberOfParticles, lPolarity);
+        assertArrayEquals(lPolarityList.get(f), lPolarity, lPrecision);
+      }
+    }
+
+    for (File lFile : lDirectory.listFiles())
+      lFile.delete();
+    lDirectory.delete();
+  }
+
+}
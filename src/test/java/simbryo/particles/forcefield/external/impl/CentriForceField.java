@@ -1,6 +1,5 @@
 package simbryo.particles.forcefield.external.impl;
 
-import simbryo.particles.ParticleSystem;
 import simbryo.particles.forcefield.external.ExternalForceFieldBase;
 import simbryo.particles.forcefield.external.ExternalForceFieldInterface;
 
@@ -33,61 +32,61 @@ public class CentriForceField extends ExternalForceFieldBase
 
   }
 
-  @SuppressWarnings("unused")
   @Override
-  public void applyForceField(int pBeginId,
-                              int pEndId,
-                              float[] pForceFactor,
-                              ParticleSystem pParticleSystem)
+  public void addForces(int pBeginId,
+                        int pEndId,
+                        float[] pFactor,
+                        int pDimension,
+                        float[] pPositions,
+                        float[] pRadii,
+                        float[] pVelocities)
   {
-    final int lDimension = pParticleSystem.getDimension();
-
-    final float[] lPositionsRead = pParticleSystem.getPositions()
-                                                  .getReadArray();
-    final float[] lPositionsWrite = pParticleSystem.getPositions()
-                                                   .getWriteArray();
-    final float[] lVelocitiesRead = pParticleSystem.getVelocities()
-                                                   .getReadArray();
-    final float[] lVelocitiesWrite = pParticleSystem.getVelocities()
-                                                    .getWriteArray();
-
-    final int lIndexStart = pBeginId * lDimension;
-    final int lIndexEnd = pEndId * lDimension;
-
-    final float[] lVector = new float[lDimension];
+    final float lForceIntensity = mForceIntensity;
+    final float[] lCenter = mCenter;
+
+    if (pFactor == null)
+      for (int id = pBeginId, i =
+                                pBeginId * pDimension; id < pEndId; id++, i +=
+                                                                            pDimension)
+        addForce(pDimension,
+                 pPositions,
+                 pVelocities,
+                 lCenter,
+                 i,
+                 lForceIntensity);
+    else
+      for (int id = pBeginId, i =
+                                pBeginId * pDimension; id < pEndId; id++, i +=
+                                                                            pDimension)
+        addForce(pDimension,
+                 pPositions,
+                 pVelocities,
+                 lCenter,
+                 i,
+                 lForceIntensity * pFactor[id]);
+  }
 
-    for (int i =
-               lIndexStart, id =
-                               pBeginId; i < lIndexEnd; i +=
-                                                          lDimension, id++)
+  private static void addForce(final int pDimension,
+                               final float[] pPositions,
+                               final float[] pVelocities,
+                               final float[] pCenter,
+                               final int pIndex,
+                               final float pForce)
+  {
+    float lSquaredLength = 0;
+    for (int d = 0; d < pDimension; d++)
     {
-      float lSquaredLength = 0;
-      for (int d = 0; d < lDimension; d++)
-      {
-        float px = lPositionsRead[i + d];
-        float cx = mCenter[d];
-        float dx = cx - px;
-        lVector[d] = dx;
-
-        lSquaredLength += dx * dx;
-      }
-
-      float lInverseLengthTimesForce =
-                                     (float) (mForceIntensity
-                                              * (pForceFactor != null ? pForceFactor[id]
-                                                                      : 1)
-                                              / Math.sqrt(lSquaredLength));
-
-      for (int d = 0; d < lDimension; d++)
-      {
-        lVelocitiesWrite[i + d] = lVelocitiesRead[i + d]
-                                  + lVector[d]
-                                    * lInverseLengthTimesForce;
-      }
-
+      float dx = pCenter[d] - pPositions[pIndex + d];
+      lSquaredLength += dx * dx;
     }
 
-    pParticleSystem.getVelocities().swap();
+    final float lInverseLengthTimesForce =
+                                         (float) (pForce
+                                                  / Math.sqrt(lSquaredLength));
+
+    for (int d = 0; d < pDimension; d++)
+      pVelocities[pIndex + d] += (pCenter[d] - pPositions[pIndex + d])
+                                 * lInverseLengthTimesForce;
   }
 
 }
@@ -1,6 +1,5 @@
 package simbryo.particles.forcefield.external.impl;
 
-import simbryo.particles.ParticleSystem;
 import simbryo.particles.forcefield.external.ExternalForceFieldBase;
 import simbryo.particles.forcefield.external.ExternalForceFieldInterface;
 import simbryo.particles.isosurf.IsoSurfaceInterface;
@@ -53,81 +52,77 @@ public class OneSidedIsoSurfaceForceField extends
     mIsoSurfaceInterface = pIsoSurfaceInterface;
   }
 
-  @SuppressWarnings("unused")
   @Override
-  public void applyForceField(int pBeginId,
-                              int pEndId,
-                              float[] pForceFactor,
-                              ParticleSystem pParticleSystem)
+  public void addForces(int pBeginId,
+                        int pEndId,
+                        float[] pFactor,
+                        int pDimension,
+                        float[] pPositions,
+                        float[] pRadii,
+                        float[] pVelocities)
   {
-    final int lDimension = pParticleSystem.getDimension();
-
-    final float[] lPositionsRead = pParticleSystem.getPositions()
-                                                  .getReadArray();
-    final float[] lPositionsWrite = pParticleSystem.getPositions()
-                                                   .getWriteArray();
-    final float[] lVelocitiesRead = pParticleSystem.getVelocities()
-                                                   .getReadArray();
-    final float[] lVelocitiesWrite = pParticleSystem.getVelocities()
-                                                    .getWriteArray();
-
-    final float[] lRadiiRead = pParticleSystem.getRadii()
-                                              .getWriteArray();
-
-    float lForceIntensity = mForceIntensity;
-    boolean lConstraintInside = mZeroInside;
-    boolean lConstraintWithRadius = mConstraintWithRadius;
-
-    final int lIndexStart = pBeginId * lDimension;
-    final int lIndexEnd = pEndId * lDimension;
-
-    for (int i =
-               lIndexStart, id =
-                               pBeginId; i < lIndexEnd; i +=
-                                                          lDimension, id++)
-    {
-      mIsoSurfaceInterface.clear();
-
-      for (int d = 0; d < lDimension; d++)
-      {
-        float px = lPositionsRead[i + d];
-        mIsoSurfaceInterface.addCoordinate(px);
-      }
-
-      float lDistance = mIsoSurfaceInterface.getDistance();
-
-      float lRadius = lRadiiRead[id];
-
-      float lValue = (lConstraintInside ? -1 : 1)
-                     * (lConstraintWithRadius ? lRadius : 0);
+    final IsoSurfaceInterface lIsoSurface = mIsoSurfaceInterface;
+    final boolean lConstraintInside = mZeroInside;
+
+    // the force points along the gradient when constraining inside, and
+    // against it otherwise:
+    final float lForceIntensity = (lConstraintInside ? 1 : -1)
+                                  * mForceIntensity;
+
+    // offset of the surface in units of radius:
+    final float lRadiusFactor = (lConstraintInside ? -1 : 1)
+                                * (mConstraintWithRadius ? 1 : 0);
+
+    if (pFactor == null)
+      for (int id = pBeginId, i =
+                                pBeginId * pDimension; id < pEndId; id++, i +=
+                                                                            pDimension)
+        addForce(pDimension,
+                 pPositions,
+                 pVelocities,
+                 lIsoSurface,
+                 lConstraintInside,
+                 lRadiusFactor * pRadii[id],
+                 i,
+                 lForceIntensity);
+    else
+      for (int id = pBeginId, i =
+                                pBeginId * pDimension; id < pEndId; id++, i +=
+                                                                            pDimension)
+        addForce(pDimension,
+                 pPositions,
+                 pVelocities,
+                 lIsoSurface,
+                 lConstraintInside,
+                 lRadiusFactor * pRadii[id],
+                 i,
+                 lForceIntensity * pFactor[id]);
+  }
 
-      float lSignedDistanceToEllipoid = lDistance - lValue;
+  private static void addForce(final int pDimension,
+                               final float[] pPositions,
+                               final float[] pVelocities,
+                               final IsoSurfaceInterface pIsoSurface,
+                               final boolean pConstraintInside,
+                               final float pOffset,
+                               final int pIndex,
+                               final float pForce)
+  {
+    pIsoSurface.clear();
 
-      float lForceIntensityPerParticle = lForceIntensity
-                                         * (pForceFactor != null ? pForceFactor[id]
-                                                                 : 1);
+    for (int d = 0; d < pDimension; d++)
+      pIsoSurface.addCoordinate(pPositions[pIndex + d]);
 
-      if (lConstraintInside && lSignedDistanceToEllipoid >= 0)
-        for (int d = 0; d < lDimension; d++)
-        {
-          float dx = mIsoSurfaceInterface.getNormalizedGardient(d);
-          lVelocitiesWrite[i + d] = lVelocitiesRead[i + d]
-                                    + dx * lForceIntensityPerParticle;
-        }
-      else if (!lConstraintInside && lSignedDistanceToEllipoid < 0)
-        for (int d = 0; d < lDimension; d++)
-        {
-          float dx = mIsoSurfaceInterface.getNormalizedGardient(d);
-          lVelocitiesWrite[i + d] = lVelocitiesRead[i + d]
-                                    - dx * lForceIntensityPerParticle;
-        }
-      else
-        for (int d = 0; d < lDimension; d++)
-          lVelocitiesWrite[i + d] = lVelocitiesRead[i + d];
+    final float lSignedDistance = pIsoSurface.getDistance() - pOffset;
 
-    }
+    final boolean lActive = pConstraintInside ? lSignedDistance >= 0
+                                              : lSignedDistance < 0;
+    if (!lActive)
+      return;
 
-    pParticleSystem.getVelocities().swap();
+    for (int d = 0; d < pDimension; d++)
+      pVelocities[pIndex + d] += pIsoSurface.getNormalizedGardient(d)
+                                 * pForce;
   }
 
 }
@@ -0,0 +1,92 @@
+package simbryo.particles.forcefield.external.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import simbryo.particles.ParticleSystem;
+import simbryo.particles.forcefield.external.impl.CentriForceField;
+import simbryo.particles.forcefield.external.impl.CompositeExternalForceField;
+import simbryo.particles.forcefield.external.impl.CylindricalForceField;
+
+/**
+ * Composite external force field tests
+ *
+ * @author royer
+ */
+public class CompositeExternalForceFieldTests
+{
+
+  /**
+   * Tests that a composite force field gives the same velocities as applying
+   * each force field separately.
+   */
+  @Test
+  public void testSameAsSeparate()
+  {
+    int lNumberOfParticles = 3000;
+    float[] lMask = new float[lNumberOfParticles];
+    Random lRandom = new Random(1);
+    for (int i = 0; i < lNumberOfParticles; i++)
+      lMask[i] = lRandom.nextFloat();
+
+    CentriForceField lCentriForceField =
+                                       new CentriForceField(0.001f,
+                                                            0.5f,
+                                                            0.5f,
+                                                            0.5f);
+    CylindricalForceField lCylindricalForceField =
+                                                 new CylindricalForceField(2,
+                                                                           -0.002f,
+                                                                           0.4f,
+                                                                           0.6f,
+                                                                           0.5f);
+
+    ParticleSystem lSeparate = createParticleSystem(lNumberOfParticles);
+    lSeparate.applyForceField(lCentriForceField);
+    lSeparate.applyForceField(lCylindricalForceField,
+                              0,
+                              lNumberOfParticles,
+                              lMask);
+
+    CompositeExternalForceField lCompositeForceField =
+                                                     new CompositeExternalForceField();
+    lCompositeForceField.addForceField(lCentriForceField);
+    lCompositeForceField.addForceField(lCylindricalForceField, lMask);
+
+    ParticleSystem lComposite = createParticleSystem(lNumberOfParticles);
+    lComposite.applyForceField(lCompositeForceField);
+
+    float[] lVelocitiesSeparate = new float[3 * lNumberOfParticles];
+    float[] lVelocitiesComposite = new float[3 * lNumberOfParticles];
+    lSeparate.copyVelocities(lVelocitiesSeparate);
+    lComposite.copyVelocities(lVelocitiesComposite);
+
+    for (int i = 0; i < lVelocitiesSeparate.length; i++)
+      assertEquals(lVelocitiesSeparate[i],
+                   lVelocitiesComposite[i],
+                   1e-7f);
+  }
+
+  private ParticleSystem createParticleSystem(int pNumberOfParticles)
+  {
+    Random lRandom = new Random(42);
+    ParticleSystem lParticleSystem = new ParticleSystem(16,
+                                                        pNumberOfParticles,
+                                                        new int[]
+                                                        { 8, 8, 8 });
+    for (int i = 0; i < pNumberOfParticles; i++)
+    {
+      int lId = lParticleSystem.addParticle(lRandom.nextFloat(),
+                                            lRandom.nextFloat(),
+                                            lRandom.nextFloat());
+      lParticleSystem.setVelocity(lId,
+                                  0.01f * lRandom.nextFloat(),
+                                  0,
+                                  0);
+    }
+    return lParticleSystem;
+  }
+
+}
@@ -3,7 +3,8 @@ package simbryo.particles.forcefield.interaction.impl;
 import simbryo.particles.ParticleSystem;
 import simbryo.particles.forcefield.interaction.InteractionForceFieldBase;
 import simbryo.particles.forcefield.interaction.InteractionForceFieldInterface;
-import simbryo.particles.neighborhood.NeighborhoodGrid;
+import simbryo.particles.forcefield.interaction.SpeciesInteractionMatrix;
+import simbryo.particles.neighborhood.NeighborhoodCache;
 import simbryo.util.geom.GeometryUtils;
 
 /**
@@ -21,8 +22,6 @@ public class CohesionForceField extends InteractionForceFieldBase
 
   private float mDrag;
 
-  private int[] mNeighboorsArray;
-
   /**
    * Constructs a cohesion force field given a force intensity and drag
    * coefficient. The drag coefficient is often necessary to prevent excessive
@@ -48,12 +47,6 @@ public class CohesionForceField extends InteractionForceFieldBase
   {
     final int lDimension = pParticleSystem.getDimension();
 
-    NeighborhoodGrid lNeighborhoodGrid =
-                                       pParticleSystem.getNeighborhoodGrid();
-    final int lMaxNumberOfParticlesPerGridCell =
-                                               lNeighborhoodGrid.getMaxParticlesPerGridCell();
-    final int lTotalNumberOfCells = lNeighborhoodGrid.getVolume();
-
     final float[] lPositionsRead = pParticleSystem.getPositions()
                                                   .getReadArray();
     final float[] lPositionsWrite = pParticleSystem.getPositions()
@@ -65,24 +58,22 @@ public class CohesionForceField extends InteractionForceFieldBase
     final float[] lRadii =
                          pParticleSystem.getRadii().getCurrentArray();
 
+    final SpeciesInteractionMatrix lSpeciesInteractionMatrix =
+                                                             mSpeciesInteractionMatrix;
+    lSpeciesInteractionMatrix.checkCompatible(pParticleSystem);
+    final float[] lSpeciesFactors = lSpeciesInteractionMatrix.getArray();
+    final int lNumberOfSpecies =
+                               lSpeciesInteractionMatrix.getNumberOfSpecies();
+    final byte[] lSpecies = pParticleSystem.getSpeciesArray();
+
     pParticleSystem.getVelocities().copyAndMult(pBeginId * lDimension,
                                                 pEndId * lDimension,
                                                 mDrag);
 
-    int lNeighboorhoodListMaxLength = lMaxNumberOfParticlesPerGridCell
-                                      * lTotalNumberOfCells;
-    if (mNeighboorsArray == null
-        || mNeighboorsArray.length != lNeighboorhoodListMaxLength)
-    {
-      mNeighboorsArray = new int[lNeighboorhoodListMaxLength];
-    }
-
-    final int[] lNeighboors = mNeighboorsArray;
-    final int[] lNeighboorsTemp = mNeighboorsArray;
-    final float[] lCellCoord = new float[lDimension];
-    final int[] lCellCoordMin = new int[lDimension];
-    final int[] lCellCoordMax = new int[lDimension];
-    final int[] lCellCoordCurrent = new int[lDimension];
+    final NeighborhoodCache lNeighborhoodCache =
+                                               pParticleSystem.updateNeighborhoodCache(1);
+    final int[] lOffsets = lNeighborhoodCache.getOffsets();
+    final int[] lNeighboors = lNeighborhoodCache.getNeighbors();
 
     for (int idu =
                  pBeginId, i = idu
@@ -91,19 +82,9 @@ public class CohesionForceField extends InteractionForceFieldBase
     {
 
       final float ru = lRadii[idu];
+      final int lSpeciesRow = lSpecies[idu] * lNumberOfSpecies;
 
-      int lNumberOfNeighboors =
-                              lNeighborhoodGrid.getAllNeighborsForParticle(lNeighboors,
-                                                                           lNeighboorsTemp,
-                                                                           lPositionsRead,
-                                                                           idu,
-                                                                           ru,
-                                                                           lCellCoord,
-                                                                           lCellCoordMin,
-                                                                           lCellCoordMax,
-                                                                           lCellCoordCurrent);
-
-      for (int k = 0; k < lNumberOfNeighboors; k++)
+      for (int k = lOffsets[idu]; k < lOffsets[idu + 1]; k++)
       {
         final int idv = lNeighboors[k];
 
@@ -137,6 +118,7 @@ public class CohesionForceField extends InteractionForceFieldBase
                                           * (pForceFactor != null ? pForceFactor[idu]
                                                                     * pForceFactor[idv]
                                                                   : 1)
+                                          * lSpeciesFactors[lSpeciesRow + lSpecies[idv]]
                                           * lInvDistance;
 
             for (int d = 0; d < lDimension; d++)
@@ -3,7 +3,8 @@ package simbryo.particles.forcefield.interaction.impl;
 import simbryo.particles.ParticleSystem;
 import simbryo.particles.forcefield.interaction.InteractionForceFieldBase;
 import simbryo.particles.forcefield.interaction.InteractionForceFieldInterface;
-import simbryo.particles.neighborhood.NeighborhoodGrid;
+import simbryo.particles.forcefield.interaction.SpeciesInteractionMatrix;
+import simbryo.particles.neighborhood.NeighborhoodCache;
 import simbryo.util.geom.GeometryUtils;
 
 /**
@@ -24,7 +25,8 @@ public class CollisionForceField extends InteractionForceFieldBase
   private float mDrag;
   private boolean mForbidOverlap = true;
 
-  private int[] mNeighboorsArray;
+  private volatile int mNumberOfContacts;
+  private volatile float mMaximalOverlap;
 
   /**
    * Constructs a collision force field given a force intensity and drag
@@ -50,6 +52,16 @@ public class CollisionForceField extends InteractionForceFieldBase
     setForbidOverlap(pForbidOverlap);
   }
 
+  /**
+   * Returns the drag coefficient.
+   * 
+   * @return drag coefficient
+   */
+  public float getDrag()
+  {
+    return mDrag;
+  }
+
   /**
    * Returns true if overlap is forbidden.
    * 
@@ -71,6 +83,29 @@ public class CollisionForceField extends InteractionForceFieldBase
     mForbidOverlap = pForbidOverlap;
   }
 
+  /**
+   * Returns the number of pairs of overlapping particles found during the last
+   * application of this force field. Contacts are counted as they are handled,
+   * at no extra cost.
+   * 
+   * @return number of contacts
+   */
+  public int getNumberOfContacts()
+  {
+    return mNumberOfContacts;
+  }
+
+  /**
+   * Returns the maximal overlap between two particles found during the last
+   * application of this force field, relative to the sum of their radii.
+   * 
+   * @return maximal relative overlap
+   */
+  public float getMaximalOverlap()
+  {
+    return mMaximalOverlap;
+  }
+
   @SuppressWarnings("unused")
   @Override
   public void applyForceField(int pBeginId,
@@ -80,12 +115,6 @@ public class CollisionForceField extends InteractionForceFieldBase
   {
     final int lDimension = pParticleSystem.getDimension();
 
-    NeighborhoodGrid lNeighborhoodGrid =
-                                       pParticleSystem.getNeighborhoodGrid();
-    final int lMaxNumberOfParticlesPerGridCell =
-                                               lNeighborhoodGrid.getMaxParticlesPerGridCell();
-    final int lTotalNumberOfCells = lNeighborhoodGrid.getVolume();
-
     final float[] lPositionsRead = pParticleSystem.getPositions()
                                                   .getReadArray();
     final float[] lPositionsWrite = pParticleSystem.getPositions()
@@ -97,24 +126,25 @@ public class CollisionForceField extends InteractionForceFieldBase
     final float[] lRadii =
                          pParticleSystem.getRadii().getCurrentArray();
 
+    final SpeciesInteractionMatrix lSpeciesInteractionMatrix =
+                                                             mSpeciesInteractionMatrix;
+    lSpeciesInteractionMatrix.checkCompatible(pParticleSystem);
+    final float[] lSpeciesFactors = lSpeciesInteractionMatrix.getArray();
+    final int lNumberOfSpecies =
+                               lSpeciesInteractionMatrix.getNumberOfSpecies();
+    final byte[] lSpecies = pParticleSystem.getSpeciesArray();
+
     pParticleSystem.getVelocities().copyAndMult(pBeginId * lDimension,
                                                 pEndId * lDimension,
                                                 mDrag);
 
-    int lNeighboorhoodListMaxLength = lMaxNumberOfParticlesPerGridCell
-                                      * lTotalNumberOfCells;
-    if (mNeighboorsArray == null
-        || mNeighboorsArray.length != lNeighboorhoodListMaxLength)
-    {
-      mNeighboorsArray = new int[lNeighboorhoodListMaxLength];
-    }
+    final NeighborhoodCache lNeighborhoodCache =
+                                               pParticleSystem.updateNeighborhoodCache(1);
+    final int[] lOffsets = lNeighborhoodCache.getOffsets();
+    final int[] lNeighboors = lNeighborhoodCache.getNeighbors();
 
-    final int[] lNeighboors = mNeighboorsArray;
-    final int[] lNeighboorsTemp = mNeighboorsArray;
-    final float[] lCellCoord = new float[lDimension];
-    final int[] lCellCoordMin = new int[lDimension];
-    final int[] lCellCoordMax = new int[lDimension];
-    final int[] lCellCoordCurrent = new int[lDimension];
+    int lNumberOfContacts = 0;
+    float lMaximalOverlap = 0;
 
     for (int idu =
                  pBeginId, i = idu
@@ -123,19 +153,9 @@ public class CollisionForceField extends InteractionForceFieldBase
     {
 
       final float ru = lRadii[idu];
+      final int lSpeciesRow = lSpecies[idu] * lNumberOfSpecies;
 
-      int lNumberOfNeighboors =
-                              lNeighborhoodGrid.getAllNeighborsForParticle(lNeighboors,
-                                                                           lNeighboorsTemp,
-                                                                           lPositionsRead,
-                                                                           idu,
-                                                                           ru,
-                                                                           lCellCoord,
-                                                                           lCellCoordMin,
-                                                                           lCellCoordMax,
-                                                                           lCellCoordCurrent);
-
-      for (int k = 0; k < lNumberOfNeighboors; k++)
+      for (int k = lOffsets[idu]; k < lOffsets[idu + 1]; k++)
       {
         final int idv = lNeighboors[k];
 
@@ -161,6 +181,8 @@ public class CollisionForceField extends InteractionForceFieldBase
           // testing sphere collision:
           if (lGap < 0 && lDistance != 0)
           {
+            lNumberOfContacts++;
+            lMaximalOverlap = Math.max(lMaximalOverlap, -lGap / (ru + rv));
 
             // Collision -> apply force.
             float lInvDistance = 1.0f / lDistance;
@@ -168,6 +190,7 @@ public class CollisionForceField extends InteractionForceFieldBase
                                           * (pForceFactor != null ? pForceFactor[idu]
                                                                     * pForceFactor[idv]
                                                                   : 1)
+                                          * lSpeciesFactors[lSpeciesRow + lSpecies[idv]]
                                           * lInvDistance;
 
             for (int d = 0; d < lDimension; d++)
@@ -200,6 +223,9 @@ public class CollisionForceField extends InteractionForceFieldBase
 
     }
 
+    mNumberOfContacts = lNumberOfContacts;
+    mMaximalOverlap = lMaximalOverlap;
+
     if (isForbidOverlap())
       pParticleSystem.getPositions().swap();
 
@@ -0,0 +1,90 @@
+package simbryo.particles.forcefield.interaction.law.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import simbryo.particles.ParticleSystem;
+import simbryo.particles.forcefield.ForceFieldInterface;
+import simbryo.particles.forcefield.interaction.impl.CollisionForceField;
+import simbryo.particles.forcefield.interaction.impl.TabulatedForceField;
+import simbryo.particles.forcefield.interaction.law.PairForceLaws;
+import simbryo.particles.forcefield.interaction.law.PairForceTable;
+
+/**
+ * Pair force table tests
+ *
+ * @author royer
+ */
+public class PairForceTableTests
+{
+
+  /**
+   * Tests interpolation accuracy and cut-off
+   */
+  @Test
+  public void testInterpolation()
+  {
+    PairForceTable lTable =
+                          new PairForceTable(PairForceLaws.harmonic(0.1f),
+                                             0.5f,
+                                             4096);
+
+    for (float g = -0.5f; g < 0.45f; g += 0.01f)
+      assertEquals(0.1f - g, lTable.getForce(g), 1e-3f);
+
+    assertEquals(0, lTable.getForce(0.5f), 0);
+    assertEquals(0, lTable.getForce(2f), 0);
+
+    PairForceTable lCollisionTable =
+                                   new PairForceTable(PairForceLaws.collision(),
+                                                      0.5f,
+                                                      1024);
+
+    assertEquals(1, lCollisionTable.getForce(-0.2f), 1e-6f);
+    assertEquals(0, lCollisionTable.getForce(0.2f), 1e-6f);
+  }
+
+  /**
+   * Tests that a tabulated collision law gives the same result as the collision
+   * force field.
+   */
+  @Test
+  public void testTabulatedCollision()
+  {
+    float[] lVelocitiesCollision = applyToTwoParticles(new CollisionForceField(0.01f,
+                                                                               1f,
+                                                                               false));
+    float[] lVelocitiesTabulated =
+                                 applyToTwoParticles(new TabulatedForceField(0.01f,
+                                                                             1f,
+                                                                             PairForceLaws.collision(),
+                                                                             0.5f));
+
+    for (int i = 0; i < lVelocitiesCollision.length; i++)
+      assertEquals(lVelocitiesCollision[i],
+                   lVelocitiesTabulated[i],
+                   1e-6f);
+
+    assertEquals(-0.01f * 0.6f, lVelocitiesTabulated[0], 1e-6f);
+    assertEquals(+0.01f * 0.8f, lVelocitiesTabulated[3], 1e-6f);
+  }
+
+  private float[] applyToTwoParticles(ForceFieldInterface pForceField)
+  {
+    ParticleSystem lParticleSystem = new ParticleSystem(16, 4, new int[]
+    { 4, 4 });
+
+    lParticleSystem.addParticle(0.5f, 0.5f);
+    lParticleSystem.addParticle(0.53f, 0.54f);
+    lParticleSystem.setRadius(0, 0.05f);
+    lParticleSystem.setRadius(1, 0.05f);
+    lParticleSystem.updateNeighborhoodGrid();
+
+    lParticleSystem.applyForceField(pForceField);
+
+    float[] lVelocities = new float[4];
+    lParticleSystem.copyVelocities(lVelocities);
+    return lVelocities;
+  }
+
+}
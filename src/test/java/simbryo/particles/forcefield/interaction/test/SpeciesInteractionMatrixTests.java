@@ -0,0 +1,72 @@
+package simbryo.particles.forcefield.interaction.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import simbryo.particles.ParticleSystem;
+import simbryo.particles.forcefield.interaction.SpeciesInteractionMatrix;
+import simbryo.particles.forcefield.interaction.impl.CollisionForceField;
+
+/**
+ * Species interaction matrix tests
+ *
+ * @author royer
+ */
+public class SpeciesInteractionMatrixTests
+{
+
+  /**
+   * Tests that collision forces are scaled by the species interaction matrix.
+   */
+  @Test
+  public void testHeterotypicCollision()
+  {
+    ParticleSystem lParticleSystem = new ParticleSystem(16, 4, new int[]
+    { 4, 4 });
+
+    lParticleSystem.addParticle(0.5f, 0.5f);
+    lParticleSystem.addParticle(0.53f, 0.54f);
+    lParticleSystem.addParticle(0.47f, 0.46f);
+    lParticleSystem.setRadius(0, 0.05f);
+    lParticleSystem.setRadius(1, 0.05f);
+    lParticleSystem.setRadius(2, 0.05f);
+    lParticleSystem.setSpecies(1, 1);
+    lParticleSystem.updateNeighborhoodGrid();
+
+    CollisionForceField lCollisionForceField =
+                                             new CollisionForceField(0.01f,
+                                                                     1f,
+                                                                     false);
+
+    try
+    {
+      lParticleSystem.applyForceField(lCollisionForceField);
+      fail();
+    }
+    catch (IllegalArgumentException e)
+    {
+      // expected: the default matrix only has one species
+    }
+
+    SpeciesInteractionMatrix lMatrix = new SpeciesInteractionMatrix(2);
+    lMatrix.set(0, 1, 0);
+    lMatrix.set(1, 1, 0.5f);
+    lCollisionForceField.setSpeciesInteractionMatrix(lMatrix);
+    assertEquals(0, lMatrix.get(1, 0), 0);
+
+    lParticleSystem.applyForceField(lCollisionForceField);
+
+    float[] lVelocities = new float[6];
+    lParticleSystem.copyVelocities(lVelocities);
+
+    // particle 1 is of another species and does not interact:
+    assertEquals(0, lVelocities[2], 0);
+    assertEquals(0, lVelocities[3], 0);
+
+    // particles 0 and 2 are of the same species and repel each other:
+    assertEquals(0.01f * 0.6f, lVelocities[0], 1e-6f);
+    assertEquals(-0.01f * 0.6f, lVelocities[4], 1e-6f);
+  }
+
+}
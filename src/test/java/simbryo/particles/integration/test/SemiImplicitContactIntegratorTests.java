@@ -0,0 +1,122 @@
+package simbryo.particles.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import simbryo.particles.ParticleSystem;
+import simbryo.particles.forcefield.interaction.impl.CollisionForceField;
+import simbryo.particles.integration.SemiImplicitContactIntegrator;
+
+/**
+ * Semi-implicit contact integrator tests
+ *
+ * @author royer
+ */
+public class SemiImplicitContactIntegratorTests
+{
+
+  /**
+   * Tests that without sweeps the velocities are the same as with the explicit
+   * collision force field.
+   */
+  @Test
+  public void testSameAsExplicitWithoutSweeps()
+  {
+    CollisionForceField lCollisionForceField =
+                                             new CollisionForceField(0.01f,
+                                                                     0.9f,
+                                                                     false);
+
+    ParticleSystem lExplicit = createParticleSystem();
+    lExplicit.applyForceField(lCollisionForceField);
+
+    ParticleSystem lSemiImplicit = createParticleSystem();
+    new SemiImplicitContactIntegrator(0,
+                                      0.1f).updateVelocities(lSemiImplicit,
+                                                             lCollisionForceField);
+
+    float[] lVelocitiesExplicit = new float[6];
+    float[] lVelocitiesSemiImplicit = new float[6];
+    lExplicit.copyVelocities(lVelocitiesExplicit);
+    lSemiImplicit.copyVelocities(lVelocitiesSemiImplicit);
+
+    for (int i = 0; i < lVelocitiesExplicit.length; i++)
+      assertEquals(lVelocitiesExplicit[i],
+                   lVelocitiesSemiImplicit[i],
+                   1e-6f);
+  }
+
+  /**
+   * Tests that a stiff contact separates two particles without overshooting
+   * the way explicit integration does.
+   */
+  @Test
+  public void testStiffContact()
+  {
+    float lExplicitMaxDistance = separate(null);
+    float lSemiImplicitMaxDistance =
+                                   separate(new SemiImplicitContactIntegrator(4,
+                                                                              0.1f));
+
+    System.out.println("explicit: " + lExplicitMaxDistance
+                       + " semi-implicit: "
+                       + lSemiImplicitMaxDistance);
+
+    assertTrue(lExplicitMaxDistance > 0.5f);
+    assertTrue(lSemiImplicitMaxDistance > 0.1f);
+    assertTrue(lSemiImplicitMaxDistance < 0.25f);
+  }
+
+  private float separate(SemiImplicitContactIntegrator pIntegrator)
+  {
+    CollisionForceField lCollisionForceField =
+                                             new CollisionForceField(0.05f,
+                                                                     0.9f,
+                                                                     false);
+
+    ParticleSystem lParticleSystem = new ParticleSystem(16, 4, new int[]
+    { 4, 4 });
+    lParticleSystem.addParticle(0.49f, 0.5f);
+    lParticleSystem.addParticle(0.51f, 0.5f);
+    lParticleSystem.setRadius(0, 0.05f);
+    lParticleSystem.setRadius(1, 0.05f);
+    lParticleSystem.updateNeighborhoodGrid();
+
+    float[] lPositions = new float[4];
+    float lMaxDistance = 0;
+    for (int s = 0; s < 100; s++)
+    {
+      if (pIntegrator == null)
+        lParticleSystem.applyForceField(lCollisionForceField);
+      else
+        pIntegrator.updateVelocities(lParticleSystem,
+                                     lCollisionForceField);
+      lParticleSystem.intergrateEuler();
+      lParticleSystem.updateNeighborhoodGrid();
+
+      lParticleSystem.copyPositions(lPositions);
+      lMaxDistance = Math.max(lMaxDistance,
+                              lPositions[2] - lPositions[0]);
+    }
+    return lMaxDistance;
+  }
+
+  private ParticleSystem createParticleSystem()
+  {
+    ParticleSystem lParticleSystem = new ParticleSystem(16, 4, new int[]
+    { 4, 4 });
+
+    lParticleSystem.addParticle(0.5f, 0.5f);
+    lParticleSystem.addParticle(0.53f, 0.54f);
+    lParticleSystem.addParticle(0.46f, 0.47f);
+    for (int id = 0; id < 3; id++)
+    {
+      lParticleSystem.setRadius(id, 0.05f);
+      lParticleSystem.setVelocity(id, 0.001f * id, -0.002f);
+    }
+    lParticleSystem.updateNeighborhoodGrid();
+    return lParticleSystem;
+  }
+
+}
@@ -0,0 +1,118 @@
+package simbryo.particles.neighborhood.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import simbryo.particles.ParticleSystem;
+import simbryo.particles.neighborhood.NeighborhoodCache;
+import simbryo.particles.neighborhood.NeighborhoodScratch;
+
+/**
+ * Neighborhood cache tests
+ *
+ * @author royer
+ */
+public class NeighborhoodCacheTests
+{
+
+  private static ParticleSystem createRandomParticleSystem()
+  {
+    Random lRandom = new Random(7);
+    ParticleSystem lParticleSystem = new ParticleSystem(32,
+                                                        4096,
+                                                        new int[]
+                                                        { 16, 16 });
+    for (int i = 0; i < 2000; i++)
+    {
+      int lId =
+              lParticleSystem.addParticle(0.05f + 0.9f
+                                                  * lRandom.nextFloat(),
+                                          0.05f + 0.9f
+                                                  * lRandom.nextFloat());
+      lParticleSystem.setRadius(lId,
+                                0.005f + 0.01f * lRandom.nextFloat());
+    }
+    lParticleSystem.updateNeighborhoodGrid();
+    return lParticleSystem;
+  }
+
+  /**
+   * Tests that the cached adjacency lists contain the same neighbors as direct
+   * neighborhood grid queries.
+   */
+  @Test
+  public void testSameAsGridQueries()
+  {
+    ParticleSystem lParticleSystem = createRandomParticleSystem();
+
+    float lRadiusFactor = 1.5f;
+    NeighborhoodCache lNeighborhoodCache =
+                                         lParticleSystem.updateNeighborhoodCache(lRadiusFactor);
+    int[] lOffsets = lNeighborhoodCache.getOffsets();
+    int[] lNeighbors = lNeighborhoodCache.getNeighbors();
+
+    NeighborhoodScratch lScratch =
+                                 new NeighborhoodScratch(lParticleSystem.getNeighborhoodGrid());
+    float[] lPositions = lParticleSystem.getPositions()
+                                        .getCurrentArray();
+
+    for (int id = 0; id < lParticleSystem.getNumberOfParticles(); id++)
+    {
+      int lNumberOfNeighbors =
+                             lScratch.getAllNeighborsForParticle(lParticleSystem.getNeighborhoodGrid(),
+                                                                 lPositions,
+                                                                 id,
+                                                                 lRadiusFactor
+                                                                     * lParticleSystem.getRadius(id));
+      int[] lExpected = Arrays.copyOf(lScratch.getNeighbors(),
+                                      lNumberOfNeighbors);
+      int[] lCached = Arrays.copyOfRange(lNeighbors,
+                                         lOffsets[id],
+                                         lOffsets[id + 1]);
+      Arrays.sort(lExpected);
+      Arrays.sort(lCached);
+
+      assertArrayEquals(lExpected, lCached);
+      assertTrue(Arrays.binarySearch(lCached, id) >= 0);
+    }
+  }
+
+  /**
+   * Tests that the cache is rebuilt only when needed and that the radius
+   * factor only increases.
+   */
+  @Test
+  public void testInvalidation()
+  {
+    ParticleSystem lParticleSystem = createRandomParticleSystem();
+    NeighborhoodCache lNeighborhoodCache =
+                                         lParticleSystem.getNeighborhoodCache();
+
+    assertFalse(lNeighborhoodCache.isValid(lParticleSystem, 1));
+
+    assertSame(lNeighborhoodCache,
+               lParticleSystem.updateNeighborhoodCache(1.2f));
+    assertTrue(lNeighborhoodCache.isValid(lParticleSystem, 1));
+    assertFalse(lNeighborhoodCache.isValid(lParticleSystem, 1.5f));
+
+    lParticleSystem.updateNeighborhoodCache(1.5f);
+    lParticleSystem.updateNeighborhoodCache(1);
+    assertEquals(1.5f, lNeighborhoodCache.getRadiusFactor(), 0);
+    assertTrue(lNeighborhoodCache.isValid(lParticleSystem, 1.5f));
+
+    lParticleSystem.updateNeighborhoodGrid();
+    assertFalse(lNeighborhoodCache.isValid(lParticleSystem, 1));
+
+    lParticleSystem.updateNeighborhoodCache(1);
+    lParticleSystem.removeParticle(0);
+    assertFalse(lNeighborhoodCache.isValid(lParticleSystem, 1));
+  }
+
+}
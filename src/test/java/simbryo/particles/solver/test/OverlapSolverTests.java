@@ -0,0 +1,135 @@
+package simbryo.particles.solver.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import simbryo.dynamics.tissue.TissueDynamics;
+import simbryo.particles.ParticleSystem;
+import simbryo.particles.solver.OverlapSolver;
+
+/**
+ * Overlap solver tests
+ *
+ * @author royer
+ */
+public class OverlapSolverTests
+{
+
+  /**
+   * Tests that two overlapping particles are separated symmetrically in one
+   * iteration.
+   */
+  @Test
+  public void testTwoParticles()
+  {
+    ParticleSystem lParticleSystem = new ParticleSystem(16, 4, new int[]
+    { 4, 4 });
+
+    lParticleSystem.addParticle(0.5f, 0.5f);
+    lParticleSystem.addParticle(0.56f, 0.5f);
+    lParticleSystem.setRadius(0, 0.05f);
+    lParticleSystem.setRadius(1, 0.05f);
+    lParticleSystem.updateNeighborhoodGrid();
+
+    OverlapSolver lOverlapSolver = new OverlapSolver(1, 0);
+    float lMaxOverlap = lOverlapSolver.solve(lParticleSystem);
+
+    assertEquals(0.4f, lMaxOverlap, 1e-5f);
+
+    float[] lPositions = new float[4];
+    lParticleSystem.copyPositions(lPositions);
+
+    assertEquals(0.48f, lPositions[0], 1e-5f);
+    assertEquals(0.58f, lPositions[2], 1e-5f);
+    assertEquals(0.5f, lPositions[1], 1e-5f);
+    assertEquals(0.5f, lPositions[3], 1e-5f);
+  }
+
+  /**
+   * Tests that the solver converges on a random packing.
+   */
+  @Test
+  public void testRandomPacking()
+  {
+    Random lRandom = new Random(42);
+    ParticleSystem lParticleSystem = new ParticleSystem(16,
+                                                        4096,
+                                                        new int[]
+                                                        { 32, 32 });
+
+    for (int i = 0; i < 1000; i++)
+    {
+      int lId = lParticleSystem.addParticle(0.1f
+                                            + 0.8f * lRandom.nextFloat(),
+                                            0.1f + 0.8f
+                                                   * lRandom.nextFloat());
+      lParticleSystem.setRadius(lId, 0.01f);
+    }
+    lParticleSystem.updateNeighborhoodGrid();
+
+    OverlapSolver lOverlapSolver = new OverlapSolver(200, 0.01f);
+    lOverlapSolver.setRelaxation(1.5f);
+
+    float lInitialMaxOverlap = new OverlapSolver(1, 0).solve(lParticleSystem);
+    assertTrue(lInitialMaxOverlap > 0.1f);
+
+    for (int i = 0; i < 10; i++)
+    {
+      lOverlapSolver.solve(lParticleSystem);
+      lParticleSystem.updateNeighborhoodGrid();
+    }
+    float lMaxOverlap = lOverlapSolver.solve(lParticleSystem);
+
+    System.out.println("iterations: "
+                       + lOverlapSolver.getLastNumberOfIterations()
+                       + " max overlap: "
+                       + lMaxOverlap);
+
+    assertTrue(lMaxOverlap <= 0.01f);
+  }
+
+  /**
+   * Tests that the overlap stage of a tissue updates the neighborhood grid
+   * before solving, so that it sees contacts created since the last grid
+   * update.
+   */
+  @Test
+  public void testTissueUpdatesGridBeforeSolving()
+  {
+    TissueDynamics lTissueDynamics =
+                                   new TissueDynamics(0.0001f,
+                                                      0.9f,
+                                                      16,
+                                                      new int[]
+                                                      { 8, 8 });
+    lTissueDynamics.addParticle(0.2f, 0.8f);
+    lTissueDynamics.addParticle(0.8f, 0.8f);
+    for (int id = 0; id < 2; id++)
+    {
+      lTissueDynamics.setRadius(id, 0.05f);
+      lTissueDynamics.setTargetRadius(id, 0.05f);
+    }
+    lTissueDynamics.updateNeighborhoodGrid();
+    lTissueDynamics.setPosition(0, 0.2f, 0.2f);
+    lTissueDynamics.setPosition(1, 0.26f, 0.2f);
+
+    OverlapSolver lOverlapSolver = new OverlapSolver(100, 0.001f);
+    lTissueDynamics.setOverlapSolver(lOverlapSolver);
+    lTissueDynamics.getPipeline()
+                   .getStage(TissueDynamics.cCollisionStage)
+                   .setEnabled(false);
+    lTissueDynamics.simulationSteps(1);
+
+    float[] lPositions = new float[4];
+    lTissueDynamics.copyPositions(lPositions);
+    float lDistance = (float) Math.hypot(lPositions[2] - lPositions[0],
+                                         lPositions[3] - lPositions[1]);
+    assertTrue(lOverlapSolver.getLastMaxOverlap() > 0);
+    assertTrue(lDistance > 0.1f * (1 - 0.01f));
+  }
+
+}
@@ -0,0 +1,113 @@
+package simbryo.util.pipeline.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import simbryo.util.pipeline.Pipeline;
+import simbryo.util.pipeline.PipelineStage;
+
+/**
+ * Pipeline tests
+ *
+ * @author royer
+ */
+public class PipelineTests
+{
+
+  /**
+   * Tests stage ordering, periods, phases and enable flags.
+   */
+  @Test
+  public void testScheduling()
+  {
+    ArrayList<String> lLog = new ArrayList<>();
+
+    Pipeline lPipeline = new Pipeline();
+    lPipeline.addStage("a", s -> lLog.add("a" + s));
+    lPipeline.addStage("c", s -> lLog.add("c" + s));
+    lPipeline.addStageBefore("c",
+                             new PipelineStage("b",
+                                               2,
+                                               1,
+                                               s -> lLog.add("b" + s)));
+    lPipeline.addStageAfter("c", "d", s -> lLog.add("d" + s));
+    lPipeline.getStage("d").setEnabled(false);
+
+    for (long s = 0; s < 4; s++)
+      lPipeline.step(s);
+
+    assertEquals("[a0, c0, a1, b1, c1, a2, c2, a3, b3, c3]",
+                 lLog.toString());
+
+    assertEquals(4, lPipeline.getStage("a").getNumberOfRuns());
+    assertEquals(2, lPipeline.getStage("b").getNumberOfRuns());
+    assertEquals(0, lPipeline.getStage("d").getNumberOfRuns());
+    assertTrue(lPipeline.getElapsedTimeInNanoseconds() > 0);
+
+    lPipeline.resetTimings();
+    assertEquals(0, lPipeline.getStage("a").getNumberOfRuns());
+    assertEquals(0, lPipeline.getElapsedTimeInNanoseconds());
+
+    lPipeline.removeStage("a");
+    assertEquals(3, lPipeline.getStages().size());
+    assertEquals("b", lPipeline.getStages().get(0).getName());
+  }
+
+  /**
+   * Tests that invalid stage definitions are rejected.
+   */
+  @Test
+  public void testInvalidStages()
+  {
+    Pipeline lPipeline = new Pipeline();
+    lPipeline.addStage("a", s -> {
+    });
+
+    assertIllegal(() -> lPipeline.addStage("a", s -> {
+    }));
+    assertIllegal(() -> lPipeline.addStageBefore("z", "b", s -> {
+    }));
+    assertIllegal(() -> lPipeline.getStage("a").setPeriod(0));
+    assertIllegal(() -> lPipeline.getStage("a").setPeriod(4, 4));
+  }
+
+  /**
+   * Tests counting the steps at which a stage is due within a range.
+   */
+  @Test
+  public void testNumberOfDueSteps()
+  {
+    PipelineStage lStage = new PipelineStage("a", 10, 3, s -> {
+    });
+
+    for (int b = 0; b < 30; b++)
+      for (int e = b; e < 60; e++)
+      {
+        long lCount = 0;
+        for (int t = b; t < e; t++)
+          if (lStage.isDue(t))
+            lCount++;
+        assertEquals(lCount, lStage.getNumberOfDueSteps(b, e));
+      }
+
+    lStage.setEnabled(false);
+    assertEquals(0, lStage.getNumberOfDueSteps(0, 100));
+  }
+
+  private static void assertIllegal(Runnable pRunnable)
+  {
+    try
+    {
+      pRunnable.run();
+    }
+    catch (IllegalArgumentException e)
+    {
+      return;
+    }
+    throw new AssertionError("IllegalArgumentException expected");
+  }
+
+}
@@ -0,0 +1,168 @@
+package simbryo.util.sequence.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simbryo.dynamics.tissue.TissueDynamics;
+import simbryo.util.sequence.EventScheduler;
+import simbryo.util.sequence.ScheduledEvent;
+
+/**
+ * Event scheduler tests
+ *
+ * @author royer
+ */
+public class EventSchedulerTests
+{
+
+  /**
+   * Tests that one-shot and periodic events fire in time order, and that
+   * cancelled events do not fire.
+   */
+  @Test
+  public void testOneShotAndPeriodicEvents()
+  {
+    EventScheduler lEventScheduler = new EventScheduler();
+    ArrayList<String> lLog = new ArrayList<>();
+
+    lEventScheduler.scheduleAt(5, t -> lLog.add("a" + t));
+    lEventScheduler.scheduleAt(2, t -> lLog.add("b" + t));
+    ScheduledEvent lCancelled =
+                              lEventScheduler.scheduleAt(3,
+                                                         t -> lLog.add("c"
+                                                                       + t));
+    ScheduledEvent lPeriodic =
+                             lEventScheduler.schedulePeriodic(1,
+                                                              3,
+                                                              t -> lLog.add("p"
+                                                                            + t));
+    assertEquals(4, lEventScheduler.getNumberOfEvents());
+    assertEquals(1, lEventScheduler.getNextEventTimeStepIndex());
+
+    lEventScheduler.cancel(lCancelled);
+    assertEquals(3, lEventScheduler.getNumberOfEvents());
+
+    for (long t = 0; t < 8; t++)
+      lEventScheduler.fireUntil(t);
+
+    assertEquals("[p1, b2, p4, a5, p7]", lLog.toString());
+    assertEquals(10, lEventScheduler.getNextEventTimeStepIndex());
+
+    lEventScheduler.cancel(lPeriodic);
+    assertEquals(0, lEventScheduler.getNumberOfEvents());
+    assertEquals(Long.MAX_VALUE,
+                 lEventScheduler.getNextEventTimeStepIndex());
+  }
+
+  /**
+   * Tests that periodic events that missed several periods fire once per
+   * period, in order with other events.
+   */
+  @Test
+  public void testCatchUp()
+  {
+    EventScheduler lEventScheduler = new EventScheduler();
+    ArrayList<Long> lLog = new ArrayList<>();
+
+    lEventScheduler.schedulePeriodic(0, 10, t -> lLog.add(t));
+    lEventScheduler.scheduleAt(25, t -> lLog.add(-t));
+
+    assertEquals(6, lEventScheduler.fireUntil(40));
+    assertEquals("[0, 10, 20, -25, 30, 40]", lLog.toString());
+    assertEquals(50, lEventScheduler.getNextEventTimeStepIndex());
+  }
+
+  /**
+   * Tests that skipped events do not fire, and that periodic events resume at
+   * their next period.
+   */
+  @Test
+  public void testSkipUntil()
+  {
+    EventScheduler lEventScheduler = new EventScheduler();
+    ArrayList<Long> lLog = new ArrayList<>();
+
+    lEventScheduler.schedulePeriodic(5, 10, t -> lLog.add(t));
+    lEventScheduler.scheduleAt(20, t -> lLog.add(-t));
+    lEventScheduler.scheduleAt(40, t -> lLog.add(-t));
+
+    assertEquals(1, lEventScheduler.skipUntil(35));
+    assertEquals(2, lEventScheduler.getNumberOfEvents());
+    assertEquals(35, lEventScheduler.getNextEventTimeStepIndex());
+
+    lEventScheduler.fireUntil(45);
+    assertEquals("[35, -40, 45]", lLog.toString());
+  }
+
+  /**
+   * Tests that with a time scale, events scheduled at event time step t fire at
+   * simulation time step ceil(t/k), and are given their event time step.
+   */
+  @Test
+  public void testTimeScale()
+  {
+    EventScheduler lEventScheduler = new EventScheduler();
+    ArrayList<String> lLog = new ArrayList<>();
+
+    lEventScheduler.schedulePeriodic(9, 10, t -> lLog.add("p" + t));
+    lEventScheduler.scheduleAt(12, t -> lLog.add("a" + t));
+    lEventScheduler.setTimeScale(4);
+    assertEquals(3, lEventScheduler.getNextEventTimeStepIndex());
+
+    for (long s = 0; s < 8; s++)
+      if (lEventScheduler.fireUntil(s) > 0)
+        lLog.add("@" + s);
+    assertEquals("[p9, a12, @3, p19, @5]", lLog.toString());
+    assertEquals(8, lEventScheduler.getNextEventTimeStepIndex());
+
+    lEventScheduler.skipUntil(20);
+    assertEquals(23, lEventScheduler.getNextEventTimeStepIndex());
+    lEventScheduler.setTimeScale(1);
+    assertEquals(89, lEventScheduler.getNextEventTimeStepIndex());
+  }
+
+  /**
+   * Tests that per-cell events follow cells when cells are removed from a
+   * tissue.
+   */
+  @Test
+  public void testCellEvents()
+  {
+    TissueDynamics lTissueDynamics =
+                                   new TissueDynamics(0.0001f,
+                                                      0.9f,
+                                                      16,
+                                                      new int[]
+                                                      { 4, 4 });
+    for (int i = 0; i < 4; i++)
+      lTissueDynamics.addParticle(0.2f * (i + 1), 0.5f);
+
+    final float[] lPositions = lTissueDynamics.getPositions()
+                                              .getCurrentArray();
+    EventScheduler lEventScheduler = lTissueDynamics.getEventScheduler();
+    ArrayList<Float> lScheduledX = new ArrayList<>();
+    ArrayList<Float> lFiredX = new ArrayList<>();
+    for (int id = 0; id < 4; id++)
+    {
+      final float x = lPositions[2 * id];
+      lEventScheduler.scheduleForCell(10, id, (t, c) -> {
+        lScheduledX.add(x);
+        lFiredX.add(lPositions[2 * c]);
+      });
+    }
+
+    float lRemovedX = lPositions[2 * 1];
+    lTissueDynamics.removeParticle(1);
+    assertEquals(3, lEventScheduler.getNumberOfEvents());
+
+    assertEquals(3, lEventScheduler.fireUntil(10));
+    assertEquals(lScheduledX, lFiredX);
+    assertFalse(lScheduledX.contains(lRemovedX));
+    assertEquals(0, lEventScheduler.getNumberOfEvents());
+  }
+
+}
@@ -0,0 +1,163 @@
+package simbryo.util.serialization.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import simbryo.SimulationInterface;
+import simbryo.util.serialization.CheckpointLadder;
+
+/**
+ * Checkpoint ladder tests
+ *
+ * @author royer
+ */
+public class CheckpointLadderTests
+{
+
+  private static class CountingSimulation implements
+                                          SimulationInterface,
+                                          Serializable
+  {
+    private static final long serialVersionUID = 1L;
+
+    private long mTimeStepIndex;
+    private long mNumberOfStepsSimulated;
+
+    @Override
+    public long getTimeStepIndex()
+    {
+      return mTimeStepIndex;
+    }
+
+    @Override
+    public void simulationSteps(int pNumberOfSteps)
+    {
+      mTimeStepIndex += pNumberOfSteps;
+      mNumberOfStepsSimulated += pNumberOfSteps;
+    }
+  }
+
+  /**
+   * Tests that requests restore the nearest earlier checkpoint and only
+   * simulate the remaining steps, and that old checkpoints are evicted.
+   *
+   * @throws IOException
+   *           N/A
+   */
+  @Test
+  public void testLadder() throws IOException
+  {
+    File lCacheDirectory =
+                         Files.createTempDirectory("checkpoints")
+                              .toFile();
+    String lKey = CheckpointLadder.getKey(CountingSimulation.class,
+                                          7,
+                                          1.5f,
+                                          "a b");
+    assertEquals("CountingSimulation_1.5_a-b_seed7_v"
+                 + CheckpointLadder.cFormatVersion, lKey);
+    assertEquals("CountingSimulation_1.5_unseeded_v"
+                 + CheckpointLadder.cFormatVersion,
+                 CheckpointLadder.getUnseededKey(CountingSimulation.class,
+                                                 1.5f));
+
+    CheckpointLadder<CountingSimulation> lLadder =
+                                                 new CheckpointLadder<>(lCacheDirectory,
+                                                                        lKey,
+                                                                        100,
+                                                                        3);
+    AtomicInteger lNumberOfCreations = new AtomicInteger();
+    Supplier<CountingSimulation> lFactory = () -> {
+      lNumberOfCreations.incrementAndGet();
+      return new CountingSimulation();
+    };
+
+    assertNull(lLadder.restore(1000, lFactory));
+
+    CountingSimulation lSimulation = lLadder.getState(350, lFactory);
+    assertEquals(350, lSimulation.getTimeStepIndex());
+    assertEquals(350, lSimulation.mNumberOfStepsSimulated);
+    assertEquals(1, lNumberOfCreations.get());
+    assertEquals(Arrays.asList(100L, 200L, 300L),
+                 lLadder.getCheckpointTimeSteps());
+
+    lSimulation = lLadder.getState(320, lFactory);
+    assertEquals(320, lSimulation.getTimeStepIndex());
+    assertEquals(320, lSimulation.mNumberOfStepsSimulated);
+    assertEquals(1, lNumberOfCreations.get());
+
+    lSimulation = lLadder.getState(450, lFactory);
+    assertEquals(450, lSimulation.getTimeStepIndex());
+    assertEquals(450, lSimulation.mNumberOfStepsSimulated);
+    assertEquals(3, lLadder.getCheckpointTimeSteps().size());
+    assertEquals(400L,
+                 (long) lLadder.getCheckpointTimeSteps().get(2));
+
+    lLadder.clear();
+    assertEquals(0, lLadder.getCheckpointTimeSteps().size());
+    lCacheDirectory.delete();
+  }
+
+  /**
+   * Tests that checkpoints that cannot be restored are deleted, whatever the
+   * exception thrown, and that the ladder falls back to earlier checkpoints.
+   *
+   * @throws IOException
+   *           N/A
+   */
+  @Test
+  public void testBadCheckpoints() throws IOException
+  {
+    File lCacheDirectory =
+                         Files.createTempDirectory("checkpoints")
+                              .toFile();
+    String lKey = CheckpointLadder.getKey(CountingSimulation.class, 7);
+    CheckpointLadder<CountingSimulation> lLadder =
+                                                 new CheckpointLadder<CountingSimulation>(lCacheDirectory,
+                                                                                          lKey,
+                                                                                          100,
+                                                                                          10)
+                                                 {
+                                                   @Override
+                                                   protected CountingSimulation readCheckpoint(File pFile,
+                                                                                               Supplier<CountingSimulation> pFactory) throws Exception
+                                                   {
+                                                     CountingSimulation lSimulation =
+                                                                                    super.readCheckpoint(pFile,
+                                                                                                         pFactory);
+                                                     if (lSimulation.getTimeStepIndex() == 200)
+                                                       throw new NullPointerException();
+                                                     return lSimulation;
+                                                   }
+                                                 };
+    Supplier<CountingSimulation> lFactory = CountingSimulation::new;
+    lLadder.getState(300, lFactory);
+    assertEquals(Arrays.asList(100L, 200L, 300L),
+                 lLadder.getCheckpointTimeSteps());
+
+    Files.write(new File(lCacheDirectory,
+                         lKey + ".300.ckpt").toPath(),
+                new byte[]
+                { 1, 2, 3 });
+
+    CountingSimulation lSimulation = lLadder.getState(350, lFactory);
+    assertEquals(350, lSimulation.getTimeStepIndex());
+    assertEquals(350, lSimulation.mNumberOfStepsSimulated);
+    assertEquals(Arrays.asList(100L, 200L, 300L),
+                 lLadder.getCheckpointTimeSteps());
+
+    lLadder.clear();
+    lCacheDirectory.delete();
+  }
+
+}
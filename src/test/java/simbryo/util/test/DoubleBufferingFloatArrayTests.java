@@ -0,0 +1,67 @@
+package simbryo.util.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import simbryo.util.DoubleBufferingFloatArray;
+
+/**
+ * Double buffering float array tests
+ *
+ * @author royer
+ */
+public class DoubleBufferingFloatArrayTests
+{
+
+  /**
+   * Tests that in-place updates do not touch the previous array of
+   * double-buffered arrays.
+   */
+  @Test
+  public void testInPlaceUpdate()
+  {
+    DoubleBufferingFloatArray lArray = new DoubleBufferingFloatArray(4);
+    assertFalse(lArray.isSingleBuffered());
+    assertNotSame(lArray.getReadArray(), lArray.getWriteArray());
+
+    lArray.getCurrentArray()[1] = 1;
+    lArray.copyDefault();
+    lArray.getInPlaceArray()[1] += 2;
+
+    assertEquals(3, lArray.getCurrentArray()[1], 0);
+    assertEquals(1, lArray.getPreviousArray()[1], 0);
+  }
+
+  /**
+   * Tests that single-buffered arrays share read and write arrays, and survive
+   * serialization.
+   */
+  @Test
+  public void testSingleBuffered()
+  {
+    DoubleBufferingFloatArray lArray =
+                                     new DoubleBufferingFloatArray(4, true);
+    assertTrue(lArray.isSingleBuffered());
+    assertSame(lArray.getReadArray(), lArray.getWriteArray());
+
+    lArray.getWriteArray()[2] = 5;
+    lArray.swap();
+    assertEquals(5, lArray.getCurrentArray()[2], 0);
+    assertEquals(3, lArray.getUsedLength());
+
+    DoubleBufferingFloatArray lCopy = SerializationUtils.clone(lArray);
+    assertTrue(lCopy.isSingleBuffered());
+    assertSame(lCopy.getReadArray(), lCopy.getWriteArray());
+    assertArrayEquals(lArray.getCurrentArray(),
+                      lCopy.getCurrentArray(),
+                      0);
+  }
+
+}